@@ -18,8 +18,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.ConceptSource;
 import org.openmrs.GlobalProperty;
+import org.openmrs.LocationAttribute;
 import org.openmrs.LocationAttributeType;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
 import org.openmrs.Person;
+import org.openmrs.PersonAddress;
 import org.openmrs.PersonName;
 import org.openmrs.Privilege;
 import org.openmrs.Provider;
@@ -31,6 +35,7 @@ import org.openmrs.api.PersonService;
 import org.openmrs.api.ProviderService;
 import org.openmrs.api.UserService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
 import org.openmrs.customdatatype.datatype.FreeTextDatatype;
 import org.openmrs.event.Event;
 import org.openmrs.event.EventListener;
@@ -41,22 +46,53 @@ import org.openmrs.module.ModuleActivator;
 import org.openmrs.module.ModuleException;
 import org.openmrs.module.emrapi.account.AccountService;
 import org.openmrs.module.emrapi.adt.EmrApiVisitAssignmentHandler;
+import org.openmrs.module.emrapi.event.DefaultPrinterEventListener;
+import org.openmrs.module.emrapi.event.EmrApiEventExecutor;
+import org.openmrs.module.emrapi.event.PatientBlockKeyEventListener;
+import org.openmrs.module.emrapi.event.PatientIdentifierEventListener;
 import org.openmrs.module.emrapi.event.PatientViewedEventListener;
+import org.openmrs.module.emrapi.event.PersonNameEventListener;
+import org.openmrs.module.emrapi.merge.PatientMergeJobService;
+import org.openmrs.module.emrapi.patient.LastViewedPatientStore;
+import org.openmrs.module.emrapi.patient.PatientIdentifierCache;
+import org.openmrs.module.emrapi.printer.DefaultPrinterCache;
+import org.openmrs.module.emrapi.printer.PrintSpoolService;
+import org.openmrs.module.emrapi.printer.Printer;
 import org.openmrs.module.emrapi.printer.PrinterDatatype;
 import org.openmrs.module.emrapi.utils.GeneralUtils;
 import org.openmrs.util.OpenmrsConstants;
 
 import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
  */
 public class EmrApiActivator extends BaseModuleActivator implements DaemonTokenAware {
 
+    private static final long LAST_VIEWED_PATIENTS_FLUSH_INTERVAL_SECONDS = 30;
+
+    private static final long EVENT_EXECUTOR_STOP_TIMEOUT_MILLIS = 10000;
+
     protected final Log log = LogFactory.getLog(getClass());
 
     private EventListener eventListener;
 
+    private EventListener patientIdentifierEventListener;
+
+    private EventListener personNameEventListener;
+
+    private EventListener patientBlockKeyEventListener;
+
+    private EventListener defaultPrinterEventListener;
+
+    private EmrApiEventExecutor eventExecutor;
+
+    private ScheduledExecutorService lastViewedPatientsFlusher;
+
     private DaemonToken daemonToken;
 
     /**
@@ -111,10 +147,96 @@ public class EmrApiActivator extends BaseModuleActivator implements DaemonTokenA
         createUnknownProvider(administrationService, providerService, personService);
 
         createConceptSource(conceptService);
-        eventListener = new PatientViewedEventListener(daemonToken);
+        EmrApiProperties emrProperties = Context.getRegisteredComponents(EmrApiProperties.class).get(0);
+        eventExecutor = Context.getRegisteredComponents(EmrApiEventExecutor.class).get(0);
+        if (!eventExecutor.isRunning()) {
+            eventExecutor.start(daemonToken, emrProperties.getEventExecutorPoolSize(),
+                    emrProperties.getEventExecutorQueueCapacity());
+        }
+
+        LastViewedPatientStore lastViewedPatientStore = Context.getRegisteredComponents(LastViewedPatientStore.class).get(0);
+        eventListener = new PatientViewedEventListener(eventExecutor, emrProperties, lastViewedPatientStore);
         Event.subscribe(EmrApiConstants.EVENT_TOPIC_NAME_PATIENT_VIEWED, eventListener);
+        startFlushingLastViewedPatients(lastViewedPatientStore);
+
+        PatientIdentifierCache patientIdentifierCache = Context.getRegisteredComponents(PatientIdentifierCache.class).get(0);
+        patientIdentifierEventListener = new PatientIdentifierEventListener(eventExecutor, patientIdentifierCache);
+        for (Event.Action action : PatientIdentifierEventListener.ACTIONS) {
+            Event.subscribe(PatientIdentifier.class, action.name(), patientIdentifierEventListener);
+        }
+        for (Event.Action action : PatientIdentifierEventListener.PATIENT_ACTIONS) {
+            Event.subscribe(Patient.class, action.name(), patientIdentifierEventListener);
+        }
+
+        personNameEventListener = new PersonNameEventListener(eventExecutor);
+        for (Event.Action action : PersonNameEventListener.ACTIONS) {
+            Event.subscribe(PersonName.class, action.name(), personNameEventListener);
+        }
+
+        patientBlockKeyEventListener = new PatientBlockKeyEventListener(eventExecutor);
+        for (Event.Action action : PatientBlockKeyEventListener.ACTIONS) {
+            Event.subscribe(Person.class, action.name(), patientBlockKeyEventListener);
+            Event.subscribe(Patient.class, action.name(), patientBlockKeyEventListener);
+            Event.subscribe(PersonAddress.class, action.name(), patientBlockKeyEventListener);
+        }
+
+        DefaultPrinterCache defaultPrinterCache = Context.getRegisteredComponents(DefaultPrinterCache.class).get(0);
+        defaultPrinterEventListener = new DefaultPrinterEventListener(defaultPrinterCache);
+        for (Event.Action action : DefaultPrinterEventListener.ACTIONS) {
+            Event.subscribe(LocationAttribute.class, action.name(), defaultPrinterEventListener);
+            Event.subscribe(Printer.class, action.name(), defaultPrinterEventListener);
+        }
 
         createPersonImageFolder();
+
+        Context.getService(PatientMergeJobService.class).startMergeJobs(daemonToken);
+        Context.getService(PrintSpoolService.class).startDraining(daemonToken);
+    }
+
+    private void startFlushingLastViewedPatients(final LastViewedPatientStore store) {
+        lastViewedPatientsFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "emrapi-last-viewed-patients-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        lastViewedPatientsFlusher.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                if (store.hasPendingWrites()) {
+                    eventExecutor.submit("lastViewedPatients.flush", new Runnable() {
+
+                        @Override
+                        public void run() {
+                            store.flush();
+                        }
+                    });
+                }
+            }
+        }, LAST_VIEWED_PATIENTS_FLUSH_INTERVAL_SECONDS, LAST_VIEWED_PATIENTS_FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Flushes on a daemon thread (which has a session and all privileges) and waits for it to finish
+     */
+    private void flushLastViewedPatients(final LastViewedPatientStore store) {
+        Thread thread = Daemon.runInDaemonThread(new Runnable() {
+
+            @Override
+            public void run() {
+                store.flush();
+            }
+        }, daemonToken);
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     private void createPersonImageFolder() {
@@ -258,11 +380,60 @@ public class EmrApiActivator extends BaseModuleActivator implements DaemonTokenA
         return conceptSource;
     }
 
+    @Override
+    public void willStop() {
+        // a running merge job stops after its current chunk, and resumes when the module starts again
+        Context.getService(PatientMergeJobService.class).stopMergeJobs();
+        // spooled print jobs stay queued until the module starts again
+        Context.getService(PrintSpoolService.class).stopDraining();
+
+        if (lastViewedPatientsFlusher != null) {
+            lastViewedPatientsFlusher.shutdownNow();
+            lastViewedPatientsFlusher = null;
+        }
+        if (eventExecutor != null) {
+            // lets the views that are already queued reach the store before the last flush
+            eventExecutor.stop(EVENT_EXECUTOR_STOP_TIMEOUT_MILLIS);
+            eventExecutor = null;
+
+            LastViewedPatientStore store = Context.getRegisteredComponents(LastViewedPatientStore.class).get(0);
+            if (store.hasPendingWrites()) {
+                flushLastViewedPatients(store);
+            }
+        }
+    }
+
     @Override
     public void stopped() {
         if (eventListener != null){
             Event.unsubscribe(EmrApiConstants.EVENT_TOPIC_NAME_PATIENT_VIEWED, eventListener);
         }
+        if (patientIdentifierEventListener != null) {
+            for (Event.Action action : PatientIdentifierEventListener.ACTIONS) {
+                Event.unsubscribe(PatientIdentifier.class, action, patientIdentifierEventListener);
+            }
+            for (Event.Action action : PatientIdentifierEventListener.PATIENT_ACTIONS) {
+                Event.unsubscribe(Patient.class, action, patientIdentifierEventListener);
+            }
+        }
+        if (personNameEventListener != null) {
+            for (Event.Action action : PersonNameEventListener.ACTIONS) {
+                Event.unsubscribe(PersonName.class, action, personNameEventListener);
+            }
+        }
+        if (patientBlockKeyEventListener != null) {
+            for (Event.Action action : PatientBlockKeyEventListener.ACTIONS) {
+                Event.unsubscribe(Person.class, action, patientBlockKeyEventListener);
+                Event.unsubscribe(Patient.class, action, patientBlockKeyEventListener);
+                Event.unsubscribe(PersonAddress.class, action, patientBlockKeyEventListener);
+            }
+        }
+        if (defaultPrinterEventListener != null) {
+            for (Event.Action action : DefaultPrinterEventListener.ACTIONS) {
+                Event.unsubscribe(LocationAttribute.class, action, defaultPrinterEventListener);
+                Event.unsubscribe(Printer.class, action, defaultPrinterEventListener);
+            }
+        }
     }
 
     @Override
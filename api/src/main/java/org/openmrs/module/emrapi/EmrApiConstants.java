@@ -53,6 +53,8 @@ public class EmrApiConstants {
 
     public static final String GP_PERSON_IMAGES_DIRECTORY = "emr.personImagesDirectory";
 
+    public static final String GP_ENCOUNTER_MATCHER = "emr.encounterMatcher";
+
     public static final String LOCATION_TAG_SUPPORTS_VISITS = "Visit Location";
 
     public static final String LOCATION_TAG_SUPPORTS_LOGIN = "Login Location";
@@ -83,6 +85,8 @@ public class EmrApiConstants {
 
     public static final String PRIVILEGE_PRINTERS_MANAGE_PRINTERS = "Printers - Manage Printers";
 
+    public static final String PRIVILEGE_MERGE_PATIENTS = "Merge Patients";
+
     public static final String PRIVILEGE_DELETE_ENCOUNTER = "Task: emr.patient.encounter.delete";
 
     public static final String PRIVILEGE_EDIT_ENCOUNTER = "Task: emr.patient.encounter.edit";
@@ -163,6 +167,22 @@ public class EmrApiConstants {
 
     public static final int DEFAULT_LAST_VIEWED_PATIENT_SIZE_LIMIT = 50;
 
+    public static final String GP_EVENT_EXECUTOR_POOL_SIZE = "emrapi.eventExecutorPoolSize";
+
+    public static final String GP_EVENT_EXECUTOR_QUEUE_CAPACITY = "emrapi.eventExecutorQueueCapacity";
+
+    public static final String GP_PERSON_IMAGE_THUMBNAIL_SIZES = "emrapi.personImageThumbnailSizes";
+
+    public static final String DEFAULT_PERSON_IMAGE_THUMBNAIL_SIZES = "64,200";
+
+    public static final String GP_PERSON_IMAGE_MAX_BYTES = "emrapi.personImageMaxBytes";
+
+    public static final int DEFAULT_PERSON_IMAGE_MAX_BYTES = 10 * 1024 * 1024;
+
+    public static final String GP_PERSON_IMAGE_MAX_PIXELS = "emrapi.personImageMaxPixels";
+
+    public static final int DEFAULT_PERSON_IMAGE_MAX_PIXELS = 4000000;
+
     /*public static final String CONCEPT_CODE_DISPOSITION = "Disposition";
 
     public static final String CONCEPTDISPOSITION_ANSWER_ADMIT = "Admit";
@@ -14,6 +14,8 @@
 
 package org.openmrs.module.emrapi;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
 import org.openmrs.ConceptMapType;
 import org.openmrs.ConceptSource;
@@ -29,6 +31,7 @@ import org.openmrs.Provider;
 import org.openmrs.Role;
 import org.openmrs.VisitType;
 import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
+import org.openmrs.module.emrapi.event.EmrApiEventExecutor;
 import org.openmrs.module.emrapi.utils.GeneralUtils;
 import org.openmrs.module.emrapi.utils.ModuleProperties;
 import org.openmrs.util.OpenmrsUtil;
@@ -40,6 +43,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
  * Properties (some constant, some configured via GPs) for this module.
@@ -47,6 +52,8 @@ import java.util.List;
 @Component("emrApiProperties")
 public class EmrApiProperties extends ModuleProperties {
 
+    private static final Log log = LogFactory.getLog(EmrApiProperties.class);
+
     public Location getUnknownLocation() {
 		return getLocationByGlobalProperty(EmrApiConstants.GP_UNKNOWN_LOCATION);
 	}
@@ -273,6 +280,72 @@ public class EmrApiProperties extends ModuleProperties {
         return EmrApiConstants.DEFAULT_LAST_VIEWED_PATIENT_SIZE_LIMIT;
     }
 
+    public int getEventExecutorPoolSize() {
+        return getPositiveIntegerGlobalProperty(EmrApiConstants.GP_EVENT_EXECUTOR_POOL_SIZE,
+                EmrApiEventExecutor.DEFAULT_POOL_SIZE);
+    }
+
+    public int getEventExecutorQueueCapacity() {
+        return getPositiveIntegerGlobalProperty(EmrApiConstants.GP_EVENT_EXECUTOR_QUEUE_CAPACITY,
+                EmrApiEventExecutor.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    private int getPositiveIntegerGlobalProperty(String globalProperty, int defaultValue) {
+        String value = administrationService.getGlobalProperty(globalProperty);
+        if (StringUtils.hasText(value)) {
+            try {
+                int parsed = Integer.parseInt(value.trim());
+                if (parsed > 0) {
+                    return parsed;
+                }
+            }
+            catch (NumberFormatException e) {
+                // logged below
+            }
+            log.warn("Global property " + globalProperty + " must be a positive integer, ignoring " + value
+                    + " and using " + defaultValue);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the size above which an uploaded person image is refused
+     */
+    public int getPersonImageMaxBytes() {
+        return getPositiveIntegerGlobalProperty(EmrApiConstants.GP_PERSON_IMAGE_MAX_BYTES,
+                EmrApiConstants.DEFAULT_PERSON_IMAGE_MAX_BYTES);
+    }
+
+    /**
+     * @return the number of pixels above which a person image is scaled down while it is decoded
+     */
+    public int getPersonImageMaxPixels() {
+        return getPositiveIntegerGlobalProperty(EmrApiConstants.GP_PERSON_IMAGE_MAX_PIXELS,
+                EmrApiConstants.DEFAULT_PERSON_IMAGE_MAX_PIXELS);
+    }
+
+    /**
+     * @return the largest width or height of each person image thumbnail, smallest first
+     */
+    public List<Integer> getPersonImageThumbnailSizes() {
+        String value = administrationService.getGlobalProperty(EmrApiConstants.GP_PERSON_IMAGE_THUMBNAIL_SIZES,
+                EmrApiConstants.DEFAULT_PERSON_IMAGE_THUMBNAIL_SIZES);
+        SortedSet<Integer> sizes = new TreeSet<Integer>();
+        for (String size : StringUtils.commaDelimitedListToStringArray(value)) {
+            try {
+                int parsed = Integer.parseInt(size.trim());
+                if (parsed > 0) {
+                    sizes.add(parsed);
+                }
+            }
+            catch (NumberFormatException e) {
+                log.warn("Global property " + EmrApiConstants.GP_PERSON_IMAGE_THUMBNAIL_SIZES
+                        + " must be a list of positive integers, ignoring " + size);
+            }
+        }
+        return new ArrayList<Integer>(sizes);
+    }
+
     public File getPersonImageDirectory() {
         String personImagesDir = getGlobalProperty(EmrApiConstants.GP_PERSON_IMAGES_DIRECTORY, false);
         if (personImagesDir == null || personImagesDir.isEmpty()) {
@@ -184,6 +184,17 @@ public interface AdtService extends OpenmrsService {
      */
     void mergePatients(Patient preferred, Patient notPreferred);
 
+    /**
+     * Works out which visits {@link #mergePatients(Patient, Patient)} would merge, without changing anything. Calling
+     * {@link #mergeVisits(Visit, Visit)} for each step, in order, leaves no overlapping visits, so that mergePatients
+     * can then be called in a short transaction.
+     *
+     * @param preferred
+     * @param notPreferred
+     * @return the visit merges, in the order they must be done
+     */
+    List<VisitMerge> planVisitMerges(Patient preferred, Patient notPreferred);
+
     /**
      * Merge a set of consecutive patient visits
      * @param visits
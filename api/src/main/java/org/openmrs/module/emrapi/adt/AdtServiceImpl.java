@@ -41,6 +41,7 @@ import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.adt.exception.ExistingVisitDuringTimePeriodException;
+import org.openmrs.module.emrapi.db.EmrVisitDAO;
 import org.openmrs.module.emrapi.diagnosis.DiagnosisService;
 import org.openmrs.module.emrapi.disposition.Disposition;
 import org.openmrs.module.emrapi.disposition.DispositionService;
@@ -59,10 +60,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 
@@ -90,6 +94,13 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
 
     private DispositionService dispositionService;
 
+    private EmrVisitDAO emrVisitDAO;
+
+    /**
+     * The test patient attribute type is looked up by a fixed uuid, so its id only needs to be resolved once
+     */
+    private volatile Integer testPatientPersonAttributeTypeId;
+
     @Autowired(required = false)
     private List<PatientMergeAction> patientMergeActions;
 
@@ -134,6 +145,10 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
         this.dispositionService = dispositionService;
     }
 
+    public void setEmrVisitDAO(EmrVisitDAO emrVisitDAO) {
+        this.emrVisitDAO = emrVisitDAO;
+    }
+
     public void setPatientMergeActions(List<PatientMergeAction> patientMergeActions) {
         this.patientMergeActions = patientMergeActions;
     }
@@ -192,16 +207,7 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
 
     @Override
     public boolean visitsOverlap(Visit v1, Visit v2) {
-        Location where1 = v1.getLocation();
-        Location where2 = v2.getLocation();
-        if ((where1 == null && where2 == null) ||
-                isSameOrAncestor(where1, where2) ||
-                isSameOrAncestor(where2, where1)) {
-            // "same" location, so check if date ranges overlap (assuming startDatetime is never null)
-            return (OpenmrsUtil.compareWithNullAsLatest(v1.getStartDatetime(), v2.getStopDatetime()) <= 0)
-                    && (OpenmrsUtil.compareWithNullAsLatest(v2.getStartDatetime(), v1.getStopDatetime()) <= 0);
-        }
-        return false;
+        return new VisitOverlapFinder().overlap(v1, v2);
     }
 
     /**
@@ -463,14 +469,11 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
             throw new IllegalArgumentException("Location is required");
         }
         Set<Location> locations = getChildLocationsRecursively(location, null);
-        List<Visit> candidates = visitService.getVisits(null, null, locations, null, null, null, null, null, null, false,
-                false);
+        List<Visit> candidates = getActiveVisitsOfRealPatients(locations);
 
         List<VisitDomainWrapper> active = new ArrayList<VisitDomainWrapper>();
         for (Visit candidate : candidates) {
-            if (itBelongsToARealPatient(candidate)) {
-                active.add(wrap(candidate));
-            }
+            active.add(wrap(candidate));
         }
 
         return active;
@@ -483,14 +486,12 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
             throw new IllegalArgumentException("Location is required");
         }
         Set<Location> locations = getChildLocationsRecursively(visitLocation, null);
-        List<Visit> candidates = visitService.getVisits(null, null, locations, null, null, null, null, null, null, false,
-                false);
+        List<Visit> candidates = getActiveVisitsOfRealPatients(locations);
 
         List<VisitDomainWrapper> inpatientVisits = new ArrayList<VisitDomainWrapper>();
         for (Visit candidate : candidates) {
             VisitDomainWrapper visitDomainWrapper = wrap(candidate);
-            if (itBelongsToARealPatient(candidate)
-                    && visitDomainWrapper.isAdmitted()) {
+            if (visitDomainWrapper.isAdmitted()) {
                 if(ward!=null){
                     Encounter latestAdtEncounter = visitDomainWrapper.getLatestAdtEncounter();
                     if(latestAdtEncounter!=null &&
@@ -506,10 +507,18 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
         return inpatientVisits;
     }
 
-    private boolean itBelongsToARealPatient(Visit candidate) {
-        Patient patient = candidate.getPatient();
-        PatientDomainWrapper domainWrapper = new PatientDomainWrapper(patient, emrApiProperties, null, null, null, null);
-        return !domainWrapper.isTestPatient();
+    /**
+     * Test patients are filtered out in the query, so their visits (and attributes) are never loaded
+     */
+    private List<Visit> getActiveVisitsOfRealPatients(Set<Location> locations) {
+        return emrVisitDAO.getActiveVisits(locations, getTestPatientPersonAttributeTypeId());
+    }
+
+    private Integer getTestPatientPersonAttributeTypeId() {
+        if (testPatientPersonAttributeTypeId == null) {
+            testPatientPersonAttributeTypeId = emrApiProperties.getTestPatientPersonAttributeType().getId();
+        }
+        return testPatientPersonAttributeTypeId;
     }
 
     @Override
@@ -568,38 +577,9 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
             throw new IllegalArgumentException("Cannot merge a permanent record into an unknown one");
         }
 
-        List<Visit> preferredVisits = visitService.getVisitsByPatient(preferred, true, false);
-        List<Visit> notPreferredVisits = visitService.getVisitsByPatient(notPreferred, true, false);
-
-        // if the non-preferred patient has any visits that overlap with visits of the preferred patient, we need to merge them together
-        for (Visit losing : notPreferredVisits) {
-            if (!losing.isVoided()) {
-                for (Visit winning : preferredVisits) {
-                    if (!winning.isVoided() && visitsOverlap(losing, winning)) {
-                        mergeVisits(winning, losing);
-                        break;
-                    }
-                }
-            }
-        }
-
-        // merging in visits from the non-preferred patient (and extending visit durations) may have caused preferred-patient visits to overlap
-        Collections.sort(preferredVisits, new Comparator<Visit>() {
-            @Override
-            public int compare(Visit left, Visit right) {
-                return OpenmrsUtil.compareWithNullAsEarliest(left.getStartDatetime(), right.getStartDatetime());
-            }
-        });
-        for (int i = 0; i < preferredVisits.size(); ++i) {
-            Visit visit = preferredVisits.get(i);
-            if (!visit.isVoided()) {
-                for (int j = i + 1; j < preferredVisits.size(); ++j) {
-                    Visit candidate = preferredVisits.get(j);
-                    if (!candidate.isVoided() && visitsOverlap(visit, candidate)) {
-                        mergeVisits(visit, candidate);
-                    }
-                }
-            }
+        // merge together visits that overlap, including those that only overlap because of an earlier merge
+        for (VisitMerge visitMerge : planVisitMerges(preferred, notPreferred)) {
+            mergeVisits(visitMerge.getPreferred(), visitMerge.getNonPreferred());
         }
 
         if (patientMergeActions != null) {
@@ -626,6 +606,149 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
 
     }
 
+    @Transactional(readOnly = true)
+    @Override
+    public List<VisitMerge> planVisitMerges(Patient preferred, Patient notPreferred) {
+        // work on copies of the visits, so that the plan can be made without changing (or locking) anything
+        Map<Visit, Visit> realVisits = new IdentityHashMap<Visit, Visit>();
+        List<Visit> preferredVisits = copyVisits(visitService.getVisitsByPatient(preferred, true, false), realVisits);
+        List<Visit> notPreferredVisits = copyVisits(visitService.getVisitsByPatient(notPreferred, true, false), realVisits);
+        List<VisitMerge> plan = new ArrayList<VisitMerge>();
+
+        // if the non-preferred patient has any visits that overlap with visits of the preferred patient, we need to merge them together
+        mergeOverlappingVisitsInto(nonVoided(preferredVisits), nonVoided(notPreferredVisits), plan, realVisits);
+
+        // merging in visits from the non-preferred patient (and extending visit durations) may have caused preferred-patient visits to overlap
+        Collections.sort(preferredVisits, new Comparator<Visit>() {
+            @Override
+            public int compare(Visit left, Visit right) {
+                return OpenmrsUtil.compareWithNullAsEarliest(left.getStartDatetime(), right.getStartDatetime());
+            }
+        });
+        mergeOverlappingVisits(nonVoided(preferredVisits), plan, realVisits);
+
+        return plan;
+    }
+
+    private List<Visit> copyVisits(List<Visit> visits, Map<Visit, Visit> realVisits) {
+        List<Visit> copies = new ArrayList<Visit>();
+        for (Visit visit : visits) {
+            Visit copy = new Visit();
+            copy.setLocation(visit.getLocation());
+            copy.setStartDatetime(visit.getStartDatetime());
+            copy.setStopDatetime(visit.getStopDatetime());
+            copy.setVoided(visit.isVoided());
+            realVisits.put(copy, visit);
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Does to the copies what {@link #mergeVisits(Visit, Visit)} will do to the real visits, and adds the step to the plan
+     */
+    private void planMerge(Visit preferred, Visit nonPreferred, List<VisitMerge> plan, Map<Visit, Visit> realVisits) {
+        if (OpenmrsUtil.compareWithNullAsEarliest(nonPreferred.getStartDatetime(), preferred.getStartDatetime()) < 0) {
+            preferred.setStartDatetime(nonPreferred.getStartDatetime());
+        }
+        if (preferred.getStopDatetime() != null && OpenmrsUtil.compareWithNullAsLatest(preferred.getStopDatetime(), nonPreferred.getStopDatetime()) < 0) {
+            preferred.setStopDatetime(nonPreferred.getStopDatetime());
+        }
+        nonPreferred.setVoided(true);
+        plan.add(new VisitMerge(realVisits.get(preferred), realVisits.get(nonPreferred)));
+    }
+
+    /**
+     * Merges each losing visit, in order, into the first winning visit that overlaps it (including whatever that visit
+     * absorbed before). A merged visit covers the union of two overlapping time ranges, so a losing visit overlaps it iff
+     * it overlaps its original range or one of the visits merged into it; only those candidates are checked.
+     */
+    private void mergeOverlappingVisitsInto(List<Visit> winningVisits, List<Visit> losingVisits, List<VisitMerge> plan,
+                                            Map<Visit, Visit> realVisits) {
+        VisitOverlapFinder finder = new VisitOverlapFinder();
+        Map<Visit, List<Visit>> winningCandidates = finder.findCandidates(losingVisits, winningVisits);
+        Map<Visit, List<Visit>> losingCandidates = finder.findCandidates(losingVisits);
+        final Map<Visit, Integer> winningPositions = positions(winningVisits);
+        Map<Visit, Visit> mergedInto = new IdentityHashMap<Visit, Visit>();
+
+        for (Visit losing : losingVisits) {
+            List<Visit> candidates = new ArrayList<Visit>(winningCandidates.get(losing));
+            for (Visit other : losingCandidates.get(losing)) {
+                if (mergedInto.containsKey(other)) {
+                    candidates.add(mergedInto.get(other));
+                }
+            }
+            Collections.sort(candidates, new Comparator<Visit>() {
+                @Override
+                public int compare(Visit left, Visit right) {
+                    return winningPositions.get(left).compareTo(winningPositions.get(right));
+                }
+            });
+            for (Visit winning : candidates) {
+                if (!winning.isVoided() && finder.overlap(losing, winning)) {
+                    planMerge(winning, losing, plan, realVisits);
+                    mergedInto.put(losing, winning);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Goes through the visits in order, merging into each one the later visits that overlap it as it grows, in order
+     */
+    private void mergeOverlappingVisits(List<Visit> visits, List<VisitMerge> plan, Map<Visit, Visit> realVisits) {
+        VisitOverlapFinder finder = new VisitOverlapFinder();
+        Map<Visit, List<Visit>> candidates = finder.findCandidates(visits);
+        Map<Visit, Integer> positions = positions(visits);
+
+        for (int i = 0; i < visits.size(); ++i) {
+            Visit visit = visits.get(i);
+            if (visit.isVoided()) {
+                continue;
+            }
+            PriorityQueue<Integer> pending = new PriorityQueue<Integer>();
+            Set<Integer> queued = new HashSet<Integer>();
+            queueLaterCandidates(candidates.get(visit), i, positions, pending, queued);
+            while (!pending.isEmpty()) {
+                int j = pending.poll();
+                Visit candidate = visits.get(j);
+                if (!candidate.isVoided() && finder.overlap(visit, candidate)) {
+                    planMerge(visit, candidate, plan, realVisits);
+                    queueLaterCandidates(candidates.get(candidate), j, positions, pending, queued);
+                }
+            }
+        }
+    }
+
+    private void queueLaterCandidates(List<Visit> candidates, int after, Map<Visit, Integer> positions,
+                                      PriorityQueue<Integer> pending, Set<Integer> queued) {
+        for (Visit candidate : candidates) {
+            Integer position = positions.get(candidate);
+            if (position > after && queued.add(position)) {
+                pending.add(position);
+            }
+        }
+    }
+
+    private Map<Visit, Integer> positions(List<Visit> visits) {
+        Map<Visit, Integer> positions = new IdentityHashMap<Visit, Integer>();
+        for (int i = 0; i < visits.size(); i++) {
+            positions.put(visits.get(i), i);
+        }
+        return positions;
+    }
+
+    private List<Visit> nonVoided(List<Visit> visits) {
+        List<Visit> nonVoided = new ArrayList<Visit>();
+        for (Visit visit : visits) {
+            if (!visit.isVoided()) {
+                nonVoided.add(visit);
+            }
+        }
+        return nonVoided;
+    }
+
     private PatientDomainWrapper wrap(Patient notPreferred) {
         return new PatientDomainWrapper(notPreferred, emrApiProperties, this, visitService, encounterService, diagnosisService);
     }
@@ -668,6 +791,7 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
         return false;
     }
 
+    @Transactional
     public Visit mergeConsecutiveVisits(List<Integer> visits, Patient patient){
         if (areConsecutiveVisits(visits, patient) ) {
             Visit mergedVisit = visitService.getVisit(visits.get(0));
@@ -680,7 +804,12 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
         }
         return null;
     }
+    @Transactional
     public Visit mergeVisits(Visit preferred, Visit nonPreferred) {
+        // move encounters (and their obs and orders) from losing into winning, in bulk rather than saving each one;
+        // this refreshes winning, so do it before changing anything on it
+        emrVisitDAO.moveEncounters(nonPreferred, preferred);
+
         // extend date range of winning
         if (OpenmrsUtil.compareWithNullAsEarliest(nonPreferred.getStartDatetime(), preferred.getStartDatetime()) < 0) {
             preferred.setStartDatetime(nonPreferred.getStartDatetime());
@@ -689,14 +818,6 @@ public class AdtServiceImpl extends BaseOpenmrsService implements AdtService {
             preferred.setStopDatetime(nonPreferred.getStopDatetime());
         }
 
-        // move encounters from losing into winning
-        if (nonPreferred.getEncounters() != null) {
-            for (Encounter e : nonPreferred.getEncounters()) {
-                e.setPatient(preferred.getPatient());
-                preferred.addEncounter(e);
-                encounterService.saveEncounter(e);
-            }
-        }
         nonPreferred.setEncounters(null); // we need to manually the encounters from the non-preferred visit before voiding or all the encounters we just moved will also get voided!
 
         visitService.voidVisit(nonPreferred, "EMR - Merge Patients: merged into visit " + preferred.getVisitId());
@@ -0,0 +1,42 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.adt;
+
+import org.openmrs.Visit;
+
+/**
+ * One step of merging two patients: the non-preferred visit is to be merged into the preferred one
+ *
+ * @see AdtService#planVisitMerges(org.openmrs.Patient, org.openmrs.Patient)
+ */
+public class VisitMerge {
+
+    private final Visit preferred;
+
+    private final Visit nonPreferred;
+
+    public VisitMerge(Visit preferred, Visit nonPreferred) {
+        this.preferred = preferred;
+        this.nonPreferred = nonPreferred;
+    }
+
+    public Visit getPreferred() {
+        return preferred;
+    }
+
+    public Visit getNonPreferred() {
+        return nonPreferred;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.adt;
+
+import org.openmrs.Location;
+import org.openmrs.Visit;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Finds overlapping visits, in the sense of {@link AdtService#visitsOverlap(Visit, Visit)}, without comparing every
+ * pair of visits. Visits are grouped by the root of their location tree (visits in unrelated trees never overlap) and
+ * each group is swept in start order, keeping only the visits that have not stopped yet, so this is O(n log n) plus
+ * the number of pairs that overlap in time.
+ * <p/>
+ * The ancestors of each location are looked up once per instance, so use a new instance for each operation.
+ */
+public class VisitOverlapFinder {
+
+    private static final Object NO_LOCATION = new Object();
+
+    private final Map<Location, Set<Location>> ancestors = new HashMap<Location, Set<Location>>();
+
+    /**
+     * Same as {@link AdtService#visitsOverlap(Visit, Visit)}
+     */
+    public boolean overlap(Visit v1, Visit v2) {
+        return locationsOverlap(v1.getLocation(), v2.getLocation()) && timesOverlap(v1, v2);
+    }
+
+    /**
+     * @return true if any visit of the first collection overlaps any visit of the second one
+     */
+    public boolean anyOverlap(Collection<Visit> visits, Collection<Visit> otherVisits) {
+        Map<Visit, List<Visit>> candidates = findCandidates(new ArrayList<Visit>(visits), new ArrayList<Visit>(otherVisits));
+        for (Map.Entry<Visit, List<Visit>> entry : candidates.entrySet()) {
+            for (Visit other : entry.getValue()) {
+                if (overlap(entry.getKey(), other)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds, for each visit, the visits of the other list whose time range overlaps its own and whose location is in
+     * the same location tree. This is a superset of the visits that {@link #overlap} it, as sibling locations share a
+     * tree without overlapping.
+     *
+     * @param visits the visits to find candidates for
+     * @param otherVisits the visits to look in
+     * @return the candidates of each visit, keyed by identity, in the order of the other list
+     */
+    public Map<Visit, List<Visit>> findCandidates(List<Visit> visits, List<Visit> otherVisits) {
+        return sweep(visits, otherVisits);
+    }
+
+    /**
+     * Same as {@link #findCandidates(List, List)} between the visits of a single list, leaving out each visit itself
+     */
+    public Map<Visit, List<Visit>> findCandidates(List<Visit> visits) {
+        return sweep(visits, null);
+    }
+
+    private Map<Visit, List<Visit>> sweep(List<Visit> visits, List<Visit> otherVisits) {
+        Map<Visit, List<Visit>> candidates = new IdentityHashMap<Visit, List<Visit>>();
+        for (Visit visit : visits) {
+            candidates.put(visit, new ArrayList<Visit>());
+        }
+        Map<Visit, Integer> otherPositions = new IdentityHashMap<Visit, Integer>();
+        List<Visit> all = new ArrayList<Visit>(visits);
+        if (otherVisits != null) {
+            for (int i = 0; i < otherVisits.size(); i++) {
+                otherPositions.put(otherVisits.get(i), i);
+            }
+            all.addAll(otherVisits);
+        } else {
+            for (int i = 0; i < visits.size(); i++) {
+                otherPositions.put(visits.get(i), i);
+            }
+        }
+
+        for (List<Visit> group : groupByLocationTree(all)) {
+            Collections.sort(group, new Comparator<Visit>() {
+
+                @Override
+                public int compare(Visit left, Visit right) {
+                    return OpenmrsUtil.compareWithNullAsLatest(left.getStartDatetime(), right.getStartDatetime());
+                }
+            });
+            PriorityQueue<Visit> notStopped = new PriorityQueue<Visit>(Math.max(1, group.size()), new Comparator<Visit>() {
+
+                @Override
+                public int compare(Visit left, Visit right) {
+                    return OpenmrsUtil.compareWithNullAsLatest(left.getStopDatetime(), right.getStopDatetime());
+                }
+            });
+            for (Visit visit : group) {
+                // visits that stopped before this one started can't overlap it or any visit that starts later
+                while (!notStopped.isEmpty() && OpenmrsUtil.compareWithNullAsLatest(notStopped.peek().getStopDatetime(),
+                        visit.getStartDatetime()) < 0) {
+                    notStopped.poll();
+                }
+                for (Visit earlier : notStopped) {
+                    if (timesOverlap(earlier, visit)) {
+                        addCandidates(candidates, otherVisits == null, earlier, visit);
+                    }
+                }
+                notStopped.add(visit);
+            }
+        }
+
+        for (List<Visit> list : candidates.values()) {
+            sortByPosition(list, otherPositions);
+        }
+        return candidates;
+    }
+
+    private void addCandidates(Map<Visit, List<Visit>> candidates, boolean singleList, Visit one, Visit other) {
+        boolean oneIsVisit = candidates.containsKey(one);
+        boolean otherIsVisit = candidates.containsKey(other);
+        if (singleList) {
+            candidates.get(one).add(other);
+            candidates.get(other).add(one);
+        } else if (oneIsVisit && !otherIsVisit) {
+            candidates.get(one).add(other);
+        } else if (otherIsVisit && !oneIsVisit) {
+            candidates.get(other).add(one);
+        }
+    }
+
+    private void sortByPosition(List<Visit> list, final Map<Visit, Integer> positions) {
+        Collections.sort(list, new Comparator<Visit>() {
+
+            @Override
+            public int compare(Visit left, Visit right) {
+                return positions.get(left).compareTo(positions.get(right));
+            }
+        });
+    }
+
+    private Collection<List<Visit>> groupByLocationTree(List<Visit> visits) {
+        Map<Object, List<Visit>> groups = new LinkedHashMap<Object, List<Visit>>();
+        for (Visit visit : visits) {
+            Object root = getRoot(visit.getLocation());
+            List<Visit> group = groups.get(root);
+            if (group == null) {
+                group = new ArrayList<Visit>();
+                groups.put(root, group);
+            }
+            group.add(visit);
+        }
+        return groups.values();
+    }
+
+    private Object getRoot(Location location) {
+        if (location == null) {
+            return NO_LOCATION;
+        }
+        Location root = location;
+        for (Location ancestor : getSelfAndAncestors(location)) {
+            root = ancestor;
+        }
+        return root;
+    }
+
+    private boolean locationsOverlap(Location where1, Location where2) {
+        if (where1 == null || where2 == null) {
+            return where1 == null && where2 == null;
+        }
+        return getSelfAndAncestors(where2).contains(where1) || getSelfAndAncestors(where1).contains(where2);
+    }
+
+    /**
+     * "same" location, so check if date ranges overlap (assuming startDatetime is never null)
+     */
+    private boolean timesOverlap(Visit v1, Visit v2) {
+        return (OpenmrsUtil.compareWithNullAsLatest(v1.getStartDatetime(), v2.getStopDatetime()) <= 0)
+                && (OpenmrsUtil.compareWithNullAsLatest(v2.getStartDatetime(), v1.getStopDatetime()) <= 0);
+    }
+
+    private Set<Location> getSelfAndAncestors(Location location) {
+        Set<Location> selfAndAncestors = ancestors.get(location);
+        if (selfAndAncestors == null) {
+            selfAndAncestors = new LinkedHashSet<Location>();
+            for (Location l = location; l != null && selfAndAncestors.add(l); l = l.getParentLocation()) {
+            }
+            ancestors.put(location, selfAndAncestors);
+        }
+        return selfAndAncestors;
+    }
+}
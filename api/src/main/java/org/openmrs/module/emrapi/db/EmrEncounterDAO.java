@@ -3,7 +3,9 @@ package org.openmrs.module.emrapi.db;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
+import org.openmrs.Visit;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -22,4 +24,60 @@ public interface EmrEncounterDAO {
      */
     List<Encounter> getEncountersByObsValueText(Concept obsConcept, String valueText, EncounterType encounterType, boolean includeVoided);
 
+    /**
+     * Returns the encounters of the given type within a visit, most recent first, without loading the rest of the
+     * visit's encounters
+     *
+     * @param visit the visit the encounters belong to
+     * @param encounterType the type of encounter to fetch
+     * @return
+     */
+    List<Encounter> getEncountersByVisitAndType(Visit visit, EncounterType encounterType);
+
+    /**
+     * Initializes the obs of the given encounters, including their group members and the concepts (with names)
+     * used as questions and coded answers, with a fixed number of queries regardless of how many encounters there are
+     *
+     * @param encounters encounters already attached to the current session
+     */
+    void fetchObservations(Collection<Encounter> encounters);
+
+    /**
+     * Initializes the encounter providers (and their providers) of the given encounters in a single query
+     *
+     * @param encounters encounters already attached to the current session
+     */
+    void fetchProviders(Collection<Encounter> encounters);
+
+    /**
+     * Initializes the orders of the given encounters, and the concepts (with names) they are for
+     *
+     * @param encounters encounters already attached to the current session
+     */
+    void fetchOrders(Collection<Encounter> encounters);
+
+    /**
+     * Returns the ids of all encounters within a visit, oldest first, without loading the encounters themselves
+     *
+     * @param visit the visit the encounters belong to
+     * @return
+     */
+    List<Integer> getEncounterIdsByVisit(Visit visit);
+
+    /**
+     * Returns the encounters with the given ids, oldest first
+     *
+     * @param encounterIds ids of the encounters to load
+     * @return
+     */
+    List<Encounter> getEncountersByIds(List<Integer> encounterIds);
+
+    /**
+     * Removes the given encounters, along with their obs, orders and encounter providers, from the current session so
+     * they can be garbage collected once they are no longer referenced
+     *
+     * @param encounters encounters that have already been read and will not be changed
+     */
+    void evict(Collection<Encounter> encounters);
+
 }
@@ -0,0 +1,32 @@
+package org.openmrs.module.emrapi.db;
+
+import org.openmrs.Location;
+import org.openmrs.Visit;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface EmrVisitDAO {
+
+    /**
+     * Returns the active (not stopped) non-voided visits at any of the given locations, leaving out visits of patients
+     * that have a non-voided person attribute of the given type with the value "true", e.g. test patients
+     *
+     * @param locations the visit locations
+     * @param excludedPersonAttributeTypeId id of the person attribute type that marks patients to leave out
+     * @return the visits, most recently started first
+     */
+    List<Visit> getActiveVisits(Collection<Location> locations, Integer excludedPersonAttributeTypeId);
+
+    /**
+     * Moves all encounters of one visit into another with set-based updates, reassigning their obs and orders too if
+     * the visits belong to different patients. Pending changes are flushed first, the moved encounters are evicted from
+     * the session and the target visit is refreshed, so that both reflect the database afterwards.
+     *
+     * @param from the visit to take the encounters from
+     * @param to the visit to move the encounters into
+     * @return the number of encounters moved
+     */
+    int moveEncounters(Visit from, Visit to);
+
+}
@@ -1,14 +1,19 @@
 package org.openmrs.module.emrapi.db;
 
 import org.hibernate.Criteria;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
 import org.openmrs.Obs;
+import org.openmrs.Visit;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class HibernateEmrEncounterDAO implements EmrEncounterDAO {
@@ -47,4 +52,126 @@ public class HibernateEmrEncounterDAO implements EmrEncounterDAO {
         return criteria.list();
     }
 
+    @Override
+    public List<Encounter> getEncountersByVisitAndType(Visit visit, EncounterType encounterType) {
+
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
+
+        criteria.add(Restrictions.eq("visit", visit));
+        criteria.add(Restrictions.eq("encounterType", encounterType));
+
+        criteria.addOrder(Order.desc("encounterDatetime"));
+        criteria.addOrder(Order.desc("encounterId"));
+
+        return criteria.list();
+    }
+
+    @Override
+    public void fetchObservations(Collection<Encounter> encounters) {
+        List<Integer> encounterIds = getEncounterIds(encounters);
+        if (encounterIds.isEmpty()) {
+            return;
+        }
+
+        // each query fills in collections of entities that are already in the session, so the results are not used
+        sessionFactory.getCurrentSession()
+                .createQuery("select distinct e from Encounter e left join fetch e.obs where e.encounterId in (:encounterIds)")
+                .setParameterList("encounterIds", encounterIds)
+                .list();
+
+        sessionFactory.getCurrentSession()
+                .createQuery("select distinct o from Obs o left join fetch o.groupMembers where o.encounter.encounterId in (:encounterIds)")
+                .setParameterList("encounterIds", encounterIds)
+                .list();
+
+        sessionFactory.getCurrentSession()
+                .createQuery("select distinct c from Concept c join fetch c.datatype left join fetch c.names " +
+                        "where c.conceptId in (select o.concept.conceptId from Obs o where o.encounter.encounterId in (:encounterIds)) " +
+                        "or c.conceptId in (select o.valueCoded.conceptId from Obs o where o.encounter.encounterId in (:encounterIds))")
+                .setParameterList("encounterIds", encounterIds)
+                .list();
+    }
+
+    @Override
+    public void fetchProviders(Collection<Encounter> encounters) {
+        List<Integer> encounterIds = getEncounterIds(encounters);
+        if (encounterIds.isEmpty()) {
+            return;
+        }
+
+        sessionFactory.getCurrentSession()
+                .createQuery("select distinct e from Encounter e left join fetch e.encounterProviders ep left join fetch ep.provider " +
+                        "where e.encounterId in (:encounterIds)")
+                .setParameterList("encounterIds", encounterIds)
+                .list();
+    }
+
+    @Override
+    public void fetchOrders(Collection<Encounter> encounters) {
+        List<Integer> encounterIds = getEncounterIds(encounters);
+        if (encounterIds.isEmpty()) {
+            return;
+        }
+
+        sessionFactory.getCurrentSession()
+                .createQuery("select distinct e from Encounter e left join fetch e.orders where e.encounterId in (:encounterIds)")
+                .setParameterList("encounterIds", encounterIds)
+                .list();
+
+        sessionFactory.getCurrentSession()
+                .createQuery("select distinct c from Concept c join fetch c.datatype left join fetch c.names " +
+                        "where c.conceptId in (select o.concept.conceptId from Order o where o.encounter.encounterId in (:encounterIds))")
+                .setParameterList("encounterIds", encounterIds)
+                .list();
+    }
+
+    @Override
+    public List<Integer> getEncounterIdsByVisit(Visit visit) {
+
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
+
+        criteria.setProjection(Projections.property("encounterId"));
+        criteria.add(Restrictions.eq("visit", visit));
+
+        criteria.addOrder(Order.asc("encounterDatetime"));
+        criteria.addOrder(Order.asc("encounterId"));
+
+        return criteria.list();
+    }
+
+    @Override
+    public List<Encounter> getEncountersByIds(List<Integer> encounterIds) {
+        if (encounterIds.isEmpty()) {
+            return new ArrayList<Encounter>();
+        }
+
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
+
+        criteria.add(Restrictions.in("encounterId", encounterIds));
+
+        criteria.addOrder(Order.asc("encounterDatetime"));
+        criteria.addOrder(Order.asc("encounterId"));
+
+        return criteria.list();
+    }
+
+    @Override
+    public void evict(Collection<Encounter> encounters) {
+        Session session = sessionFactory.getCurrentSession();
+        // obs, orders and encounter providers are mapped with cascade="all", so evicting the encounter evicts them too
+        for (Encounter encounter : encounters) {
+            session.evict(encounter);
+        }
+    }
+
+    private List<Integer> getEncounterIds(Collection<Encounter> encounters) {
+        List<Integer> encounterIds = new ArrayList<Integer>();
+        for (Encounter encounter : encounters) {
+            if (encounter.getEncounterId() != null) {
+                encounterIds.add(encounter.getEncounterId());
+            }
+        }
+        return encounterIds;
+    }
+
 }
@@ -0,0 +1,79 @@
+package org.openmrs.module.emrapi.db;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.Encounter;
+import org.openmrs.Location;
+import org.openmrs.Visit;
+import org.openmrs.api.context.Context;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public class HibernateEmrVisitDAO implements EmrVisitDAO {
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public List<Visit> getActiveVisits(Collection<Location> locations, Integer excludedPersonAttributeTypeId) {
+        if (locations.isEmpty()) {
+            return new ArrayList<Visit>();
+        }
+
+        return sessionFactory.getCurrentSession()
+                .createQuery("select v from Visit v where v.location in (:locations) and v.stopDatetime is null " +
+                        "and v.voided = false and not exists (select pa.personAttributeId from PersonAttribute pa " +
+                        "where pa.person.id = v.patient.id and pa.attributeType.id = :attributeTypeId " +
+                        "and pa.value = 'true' and pa.voided = false) " +
+                        "order by v.startDatetime desc, v.visitId desc")
+                .setParameterList("locations", locations)
+                .setInteger("attributeTypeId", excludedPersonAttributeTypeId)
+                .list();
+    }
+
+    @Override
+    public int moveEncounters(Visit from, Visit to) {
+        Session session = sessionFactory.getCurrentSession();
+        session.flush();
+
+        Integer patientId = to.getPatient().getPatientId();
+        if (!patientId.equals(from.getPatient().getPatientId())) {
+            session.createSQLQuery("update obs set person_id = :personId where encounter_id in "
+                    + "(select encounter_id from encounter where visit_id = :visitId)")
+                    .setInteger("personId", patientId)
+                    .setInteger("visitId", from.getVisitId())
+                    .executeUpdate();
+            session.createSQLQuery("update orders set patient_id = :patientId where encounter_id in "
+                    + "(select encounter_id from encounter where visit_id = :visitId)")
+                    .setInteger("patientId", patientId)
+                    .setInteger("visitId", from.getVisitId())
+                    .executeUpdate();
+        }
+        int moved = session.createQuery("update Encounter e set e.visit = :to, e.patient = :patient, "
+                + "e.changedBy = :changedBy, e.dateChanged = :dateChanged where e.visit = :from")
+                .setParameter("to", to)
+                .setParameter("patient", to.getPatient())
+                .setParameter("changedBy", Context.getAuthenticatedUser())
+                .setTimestamp("dateChanged", new Date())
+                .setParameter("from", from)
+                .executeUpdate();
+
+        // the encounters (and their obs and orders, through the cascade) held by the session are now stale
+        if (from.getEncounters() != null && Hibernate.isInitialized(from.getEncounters())) {
+            for (Encounter encounter : from.getEncounters()) {
+                session.evict(encounter);
+            }
+        }
+        session.refresh(to);
+
+        return moved;
+    }
+
+}
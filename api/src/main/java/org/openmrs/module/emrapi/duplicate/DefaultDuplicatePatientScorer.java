@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A weighted sum of how well the family names, given names, birthdates, genders and cities or villages agree. Each of
+ * them scores 1 if it agrees, 0 if it doesn't, and half if either patient doesn't have it, so missing data neither
+ * proves nor disproves anything. Names agree partly if they only sound the same, and birthdates if they are in the same
+ * year or estimated and close. The weights can be changed in the bean definition.
+ */
+public class DefaultDuplicatePatientScorer implements DuplicatePatientScorer {
+
+    private static final double UNKNOWN = 0.5;
+
+    private static final double SOUNDS_THE_SAME = 0.8;
+
+    private static final double SAME_BIRTH_YEAR = 0.6;
+
+    private static final double CLOSE_ESTIMATED_BIRTH_YEAR = 0.5;
+
+    private static final int ESTIMATED_BIRTH_YEAR_TOLERANCE = 2;
+
+    private double familyNameWeight = 0.3;
+
+    private double givenNameWeight = 0.25;
+
+    private double birthdateWeight = 0.25;
+
+    private double genderWeight = 0.1;
+
+    private double cityVillageWeight = 0.1;
+
+    public void setFamilyNameWeight(double familyNameWeight) {
+        this.familyNameWeight = familyNameWeight;
+    }
+
+    public void setGivenNameWeight(double givenNameWeight) {
+        this.givenNameWeight = givenNameWeight;
+    }
+
+    public void setBirthdateWeight(double birthdateWeight) {
+        this.birthdateWeight = birthdateWeight;
+    }
+
+    public void setGenderWeight(double genderWeight) {
+        this.genderWeight = genderWeight;
+    }
+
+    public void setCityVillageWeight(double cityVillageWeight) {
+        this.cityVillageWeight = cityVillageWeight;
+    }
+
+    @Override
+    public double score(PatientMatchRecord record, PatientMatchRecord otherRecord) {
+        double total = familyNameWeight + givenNameWeight + birthdateWeight + genderWeight + cityVillageWeight;
+        if (total <= 0) {
+            return 0;
+        }
+        double score = familyNameWeight * scoreNames(record.getFamilyNames(), record.getFamilyNameKeys(),
+                otherRecord.getFamilyNames(), otherRecord.getFamilyNameKeys())
+                + givenNameWeight * scoreNames(record.getGivenNames(), record.getGivenNameKeys(),
+                otherRecord.getGivenNames(), otherRecord.getGivenNameKeys())
+                + birthdateWeight * scoreBirthdates(record, otherRecord)
+                + genderWeight * scoreGenders(record.getGender(), otherRecord.getGender())
+                + cityVillageWeight * scoreSets(record.getCityVillages(), otherRecord.getCityVillages());
+        return score / total;
+    }
+
+    private double scoreNames(Set<String> names, Set<String> keys, Set<String> otherNames, Set<String> otherKeys) {
+        if (names.isEmpty() || otherNames.isEmpty()) {
+            return UNKNOWN;
+        }
+        if (!Collections.disjoint(names, otherNames)) {
+            return 1;
+        }
+        return Collections.disjoint(keys, otherKeys) ? 0 : SOUNDS_THE_SAME;
+    }
+
+    private double scoreBirthdates(PatientMatchRecord record, PatientMatchRecord otherRecord) {
+        if (record.getBirthdate() == null || otherRecord.getBirthdate() == null) {
+            return UNKNOWN;
+        }
+        int years = Math.abs(record.getBirthYear() - otherRecord.getBirthYear());
+        if (years == 0) {
+            return record.getBirthdate().getTime() == otherRecord.getBirthdate().getTime() ? 1 : SAME_BIRTH_YEAR;
+        }
+        boolean estimated = record.isBirthdateEstimated() || otherRecord.isBirthdateEstimated();
+        return estimated && years <= ESTIMATED_BIRTH_YEAR_TOLERANCE ? CLOSE_ESTIMATED_BIRTH_YEAR : 0;
+    }
+
+    private double scoreGenders(String gender, String otherGender) {
+        if (gender == null || otherGender == null) {
+            return UNKNOWN;
+        }
+        return gender.equalsIgnoreCase(otherGender) ? 1 : 0;
+    }
+
+    private double scoreSets(Set<String> values, Set<String> otherValues) {
+        if (values.isEmpty() || otherValues.isEmpty()) {
+            return UNKNOWN;
+        }
+        return Collections.disjoint(values, otherValues) ? 0 : 1;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+/**
+ * Two patients that may be the same person, with the score that says how likely it is
+ */
+public class DuplicatePatientCandidate implements Comparable<DuplicatePatientCandidate> {
+
+    private final Integer patientId;
+
+    private final Integer otherPatientId;
+
+    private final double score;
+
+    public DuplicatePatientCandidate(Integer patientId, Integer otherPatientId, double score) {
+        this.patientId = patientId;
+        this.otherPatientId = otherPatientId;
+        this.score = score;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public Integer getOtherPatientId() {
+        return otherPatientId;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Highest score first, then by patient ids
+     */
+    @Override
+    public int compareTo(DuplicatePatientCandidate other) {
+        int result = Double.compare(other.score, score);
+        if (result == 0) {
+            result = patientId.compareTo(other.patientId);
+        }
+        if (result == 0) {
+            result = otherPatientId.compareTo(other.otherPatientId);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return patientId + " ~ " + otherPatientId + " (" + score + ")";
+    }
+}
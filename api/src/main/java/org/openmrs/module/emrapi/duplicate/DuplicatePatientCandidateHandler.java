@@ -0,0 +1,26 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+/**
+ * Receives the candidates of a duplicate search as they are found
+ *
+ * @see DuplicatePatientService#findDuplicates(double, DuplicatePatientCandidateHandler)
+ */
+public interface DuplicatePatientCandidateHandler {
+
+    void handle(DuplicatePatientCandidate candidate);
+
+}
@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface DuplicatePatientDAO {
+
+    /**
+     * Loads the match records of the given non-voided patients
+     *
+     * @param patientIds
+     * @param maxBlockSize only load the blocking keys that no more than this many patients share, or null for all
+     * @return the records, in no particular order
+     */
+    List<PatientMatchRecord> getMatchRecords(Collection<Integer> patientIds, Integer maxBlockSize);
+
+    /**
+     * Replaces the stored blocking keys of a patient
+     *
+     * @param patientId
+     * @param blockKeys the new keys, empty to remove them all
+     */
+    void saveBlockKeys(Integer patientId, Set<String> blockKeys);
+
+    /**
+     * @param afterPatientId only consider patients with a greater id, or all if null
+     * @param maxResults
+     * @return the ids of non-voided patients that have no blocking keys, in order
+     */
+    List<Integer> getPatientIdsWithoutBlockKeys(Integer afterPatientId, int maxResults);
+
+    /**
+     * Pages through all blocking keys, ordered by key and then patient id
+     *
+     * @param afterBlockKey the key of the last row of the previous page, or null for the first page
+     * @param afterPatientId the patient id of the last row of the previous page
+     * @param maxResults
+     * @return rows of the key and the patient id
+     */
+    List<Object[]> getBlockKeys(String afterBlockKey, Integer afterPatientId, int maxResults);
+
+}
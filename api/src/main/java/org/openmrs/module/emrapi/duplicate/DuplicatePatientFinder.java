@@ -0,0 +1,224 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Goes through the blocking key table in key order, and compares the patients of each block with each other. Blocks
+ * are gathered until they hold a batch of patients, whose match records are then loaded in a few queries on the
+ * calling thread and scored on a pool of threads. Blocks shared by more than the maximum block size are skipped, as
+ * their key is too common to say anything.
+ * <p/>
+ * Two patients may share several blocks; they are only compared in the one with the smallest key they share, so that
+ * nothing has to be remembered between batches and each pair is reported once.
+ */
+public class DuplicatePatientFinder {
+
+    public static final int DEFAULT_MAX_BLOCK_SIZE = 100;
+
+    public static final int DEFAULT_BATCH_SIZE = 2000;
+
+    private static final int PAGE_SIZE = 5000;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final DuplicatePatientDAO dao;
+
+    private final DuplicatePatientScorer scorer;
+
+    private int maxBlockSize = DEFAULT_MAX_BLOCK_SIZE;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public DuplicatePatientFinder(DuplicatePatientDAO dao, DuplicatePatientScorer scorer) {
+        this.dao = dao;
+        this.scorer = scorer;
+    }
+
+    public void setMaxBlockSize(int maxBlockSize) {
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Must be called with an open session
+     *
+     * @param minimumScore only report pairs scoring at least this
+     * @param handler receives the pairs, best first within each batch of blocks
+     * @return the number of pairs reported
+     */
+    public int findDuplicates(double minimumScore, DuplicatePatientCandidateHandler handler) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            int found = 0;
+            int skippedBlocks = 0;
+            List<Block> batch = new ArrayList<Block>();
+            Set<Integer> batchPatientIds = new LinkedHashSet<Integer>();
+            Block block = null;
+            String afterBlockKey = null;
+            Integer afterPatientId = null;
+            List<Object[]> page;
+            do {
+                page = dao.getBlockKeys(afterBlockKey, afterPatientId, PAGE_SIZE);
+                for (Object[] row : page) {
+                    afterBlockKey = (String) row[0];
+                    afterPatientId = (Integer) row[1];
+                    if (block != null && block.key.equals(afterBlockKey)) {
+                        block.patientIds.add(afterPatientId);
+                        continue;
+                    }
+                    if (block != null) {
+                        if (block.patientIds.size() > maxBlockSize) {
+                            skippedBlocks++;
+                        } else if (block.patientIds.size() > 1) {
+                            batch.add(block);
+                            batchPatientIds.addAll(block.patientIds);
+                        }
+                        if (batchPatientIds.size() >= batchSize) {
+                            found += score(batch, batchPatientIds, minimumScore, handler, executor);
+                            batch.clear();
+                            batchPatientIds.clear();
+                        }
+                    }
+                    block = new Block(afterBlockKey);
+                    block.patientIds.add(afterPatientId);
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            if (block != null && block.patientIds.size() > 1 && block.patientIds.size() <= maxBlockSize) {
+                batch.add(block);
+                batchPatientIds.addAll(block.patientIds);
+            }
+            found += score(batch, batchPatientIds, minimumScore, handler, executor);
+
+            if (skippedBlocks > 0) {
+                log.info("Skipped " + skippedBlocks + " blocks of more than " + maxBlockSize + " patients");
+            }
+            return found;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int score(List<Block> blocks, Set<Integer> patientIds, final double minimumScore,
+                      DuplicatePatientCandidateHandler handler, ExecutorService executor) {
+        if (blocks.isEmpty()) {
+            return 0;
+        }
+        final Map<Integer, PatientMatchRecord> records = new HashMap<Integer, PatientMatchRecord>();
+        for (PatientMatchRecord record : dao.getMatchRecords(patientIds, maxBlockSize)) {
+            records.put(record.getPatientId(), record);
+        }
+
+        List<Future<List<DuplicatePatientCandidate>>> results = new ArrayList<Future<List<DuplicatePatientCandidate>>>();
+        for (final Block block : blocks) {
+            results.add(executor.submit(new Callable<List<DuplicatePatientCandidate>>() {
+
+                @Override
+                public List<DuplicatePatientCandidate> call() {
+                    return scoreBlock(block, records, minimumScore);
+                }
+            }));
+        }
+
+        List<DuplicatePatientCandidate> candidates = new ArrayList<DuplicatePatientCandidate>();
+        for (Future<List<DuplicatePatientCandidate>> result : results) {
+            try {
+                candidates.addAll(result.get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new APIException("Interrupted while looking for duplicate patients", e);
+            }
+            catch (ExecutionException e) {
+                throw new APIException("Failed to score duplicate patients", e.getCause());
+            }
+        }
+        Collections.sort(candidates);
+        for (DuplicatePatientCandidate candidate : candidates) {
+            handler.handle(candidate);
+        }
+        return candidates.size();
+    }
+
+    private List<DuplicatePatientCandidate> scoreBlock(Block block, Map<Integer, PatientMatchRecord> records,
+                                                       double minimumScore) {
+        List<DuplicatePatientCandidate> candidates = new ArrayList<DuplicatePatientCandidate>();
+        for (int i = 0; i < block.patientIds.size(); i++) {
+            PatientMatchRecord record = records.get(block.patientIds.get(i));
+            if (record == null) {
+                // voided since its keys were saved
+                continue;
+            }
+            for (int j = i + 1; j < block.patientIds.size(); j++) {
+                PatientMatchRecord otherRecord = records.get(block.patientIds.get(j));
+                if (otherRecord != null && block.key.equals(smallestSharedKey(record, otherRecord))) {
+                    double score = scorer.score(record, otherRecord);
+                    if (score >= minimumScore) {
+                        candidates.add(new DuplicatePatientCandidate(record.getPatientId(), otherRecord.getPatientId(), score));
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private String smallestSharedKey(PatientMatchRecord record, PatientMatchRecord otherRecord) {
+        String smallest = null;
+        for (String key : record.getBlockKeys()) {
+            if ((smallest == null || key.compareTo(smallest) < 0) && otherRecord.getBlockKeys().contains(key)) {
+                smallest = key;
+            }
+        }
+        return smallest;
+    }
+
+    private static class Block {
+
+        private final String key;
+
+        private final List<Integer> patientIds = new ArrayList<Integer>();
+
+        private Block(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.openmrs.annotation.Authorized;
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.emrapi.EmrApiConstants;
+
+import java.util.List;
+
+/**
+ * Finds patients that may be duplicates of each other, e.g. to review them before calling
+ * {@link org.openmrs.module.emrapi.adt.AdtService#mergePatients(org.openmrs.Patient, org.openmrs.Patient)}. Only
+ * patients that share a blocking key are compared, see {@link PatientBlockKeyGenerator}.
+ */
+public interface DuplicatePatientService extends OpenmrsService {
+
+    /**
+     * Recomputes the blocking keys of a patient, removing them if the patient is voided or missing
+     *
+     * @param patientId
+     */
+    void saveBlockKeys(Integer patientId);
+
+    /**
+     * Creates the blocking keys of one batch of patients that do not have any yet
+     *
+     * @param afterPatientId only consider patients with a greater id, or all if null
+     * @param maxPatients the batch size
+     * @return the id of the last patient in the batch, or null if there were none left
+     */
+    Integer createMissingBlockKeys(Integer afterPatientId, int maxPatients);
+
+    /**
+     * Compares the patients of every block, passing the pairs that score high enough to the handler as they are found
+     *
+     * @param minimumScore between 0 and 1
+     * @param handler
+     * @return the number of pairs found
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    int findDuplicates(double minimumScore, DuplicatePatientCandidateHandler handler);
+
+    /**
+     * @param minimumScore between 0 and 1
+     * @param maxResults
+     * @return the best scoring pairs, best first
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    List<DuplicatePatientCandidate> getDuplicates(double minimumScore, int maxResults);
+
+}
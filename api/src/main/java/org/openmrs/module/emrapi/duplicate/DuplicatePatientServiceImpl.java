@@ -0,0 +1,106 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class DuplicatePatientServiceImpl extends BaseOpenmrsService implements DuplicatePatientService {
+
+    private DuplicatePatientDAO dao;
+
+    private DuplicatePatientScorer scorer = new DefaultDuplicatePatientScorer();
+
+    private PatientBlockKeyGenerator blockKeyGenerator = new PatientBlockKeyGenerator();
+
+    private int maxBlockSize = DuplicatePatientFinder.DEFAULT_MAX_BLOCK_SIZE;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public void setDao(DuplicatePatientDAO dao) {
+        this.dao = dao;
+    }
+
+    public void setScorer(DuplicatePatientScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    public void setMaxBlockSize(int maxBlockSize) {
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    @Override
+    @Transactional
+    public void saveBlockKeys(Integer patientId) {
+        List<PatientMatchRecord> records = dao.getMatchRecords(Collections.singleton(patientId), null);
+        if (records.isEmpty()) {
+            dao.saveBlockKeys(patientId, Collections.<String>emptySet());
+        } else {
+            dao.saveBlockKeys(patientId, blockKeyGenerator.getBlockKeys(records.get(0)));
+        }
+    }
+
+    @Override
+    @Transactional
+    public Integer createMissingBlockKeys(Integer afterPatientId, int maxPatients) {
+        List<Integer> patientIds = dao.getPatientIdsWithoutBlockKeys(afterPatientId, maxPatients);
+        if (patientIds.isEmpty()) {
+            return null;
+        }
+        for (PatientMatchRecord record : dao.getMatchRecords(patientIds, null)) {
+            dao.saveBlockKeys(record.getPatientId(), blockKeyGenerator.getBlockKeys(record));
+        }
+        return patientIds.get(patientIds.size() - 1);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int findDuplicates(double minimumScore, DuplicatePatientCandidateHandler handler) {
+        DuplicatePatientFinder finder = new DuplicatePatientFinder(dao, scorer);
+        finder.setMaxBlockSize(maxBlockSize);
+        finder.setThreads(threads);
+        return finder.findDuplicates(minimumScore, handler);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<DuplicatePatientCandidate> getDuplicates(double minimumScore, final int maxResults) {
+        // worst of the best first, so that it is the one to drop
+        final PriorityQueue<DuplicatePatientCandidate> best = new PriorityQueue<DuplicatePatientCandidate>(
+                Math.max(1, maxResults + 1), Collections.reverseOrder());
+        findDuplicates(minimumScore, new DuplicatePatientCandidateHandler() {
+
+            @Override
+            public void handle(DuplicatePatientCandidate candidate) {
+                best.add(candidate);
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            }
+        });
+        List<DuplicatePatientCandidate> duplicates = new ArrayList<DuplicatePatientCandidate>(best);
+        Collections.sort(duplicates);
+        return duplicates;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class HibernateDuplicatePatientDAO implements DuplicatePatientDAO {
+
+    /**
+     * Keeps "in" lists within what every database accepts
+     */
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public List<PatientMatchRecord> getMatchRecords(Collection<Integer> patientIds, Integer maxBlockSize) {
+        Map<Integer, PatientMatchRecord> records = new LinkedHashMap<Integer, PatientMatchRecord>();
+        List<Integer> ids = new ArrayList<Integer>(patientIds);
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+            loadMatchRecords(ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size())), maxBlockSize, records);
+        }
+        return new ArrayList<PatientMatchRecord>(records.values());
+    }
+
+    private void loadMatchRecords(List<Integer> patientIds, Integer maxBlockSize, Map<Integer, PatientMatchRecord> records) {
+        Session session = sessionFactory.getCurrentSession();
+        List<Object[]> patients = session.createQuery("select p.patientId, p.gender, p.birthdate, p.birthdateEstimated "
+                + "from Patient p where p.voided = false and p.patientId in (:patientIds)")
+                .setParameterList("patientIds", patientIds).list();
+        for (Object[] row : patients) {
+            PatientMatchRecord record = new PatientMatchRecord((Integer) row[0]);
+            record.setGender((String) row[1]);
+            record.setBirthdate((Date) row[2]);
+            record.setBirthdateEstimated(Boolean.TRUE.equals(row[3]));
+            records.put(record.getPatientId(), record);
+        }
+
+        List<Object[]> names = session.createQuery("select pn.person.personId, pn.givenName, pn.familyName "
+                + "from PersonName pn where pn.voided = false and pn.person.personId in (:patientIds)")
+                .setParameterList("patientIds", patientIds).list();
+        for (Object[] row : names) {
+            PatientMatchRecord record = records.get(row[0]);
+            if (record != null) {
+                record.addName((String) row[1], (String) row[2]);
+            }
+        }
+
+        List<Object[]> addresses = session.createQuery("select pa.person.personId, pa.cityVillage "
+                + "from PersonAddress pa where pa.voided = false and pa.cityVillage is not null "
+                + "and pa.person.personId in (:patientIds)")
+                .setParameterList("patientIds", patientIds).list();
+        for (Object[] row : addresses) {
+            PatientMatchRecord record = records.get(row[0]);
+            if (record != null) {
+                record.addCityVillage((String) row[1]);
+            }
+        }
+
+        String blockKeysQuery = "select k.patientId, k.blockKey from PatientBlockKey k where k.patientId in (:patientIds)";
+        if (maxBlockSize != null) {
+            blockKeysQuery += " and (select count(*) from PatientBlockKey o where o.blockKey = k.blockKey) <= :maxBlockSize";
+        }
+        Query query = session.createQuery(blockKeysQuery).setParameterList("patientIds", patientIds);
+        if (maxBlockSize != null) {
+            query.setLong("maxBlockSize", maxBlockSize);
+        }
+        for (Object[] row : (List<Object[]>) query.list()) {
+            PatientMatchRecord record = records.get(row[0]);
+            if (record != null) {
+                record.addBlockKey((String) row[1]);
+            }
+        }
+    }
+
+    @Override
+    public void saveBlockKeys(Integer patientId, Set<String> blockKeys) {
+        Session session = sessionFactory.getCurrentSession();
+        session.createQuery("delete from PatientBlockKey k where k.patientId = :patientId")
+                .setInteger("patientId", patientId).executeUpdate();
+        for (String blockKey : blockKeys) {
+            session.save(new PatientBlockKey(patientId, blockKey));
+        }
+    }
+
+    @Override
+    public List<Integer> getPatientIdsWithoutBlockKeys(Integer afterPatientId, int maxResults) {
+        return sessionFactory.getCurrentSession()
+                .createQuery("select p.patientId from Patient p where p.voided = false and p.patientId > :afterPatientId "
+                        + "and not exists (select k.patientBlockKeyId from PatientBlockKey k where k.patientId = p.patientId) "
+                        + "order by p.patientId")
+                .setInteger("afterPatientId", afterPatientId != null ? afterPatientId : 0)
+                .setMaxResults(maxResults).list();
+    }
+
+    @Override
+    public List<Object[]> getBlockKeys(String afterBlockKey, Integer afterPatientId, int maxResults) {
+        Query query;
+        if (afterBlockKey == null) {
+            query = sessionFactory.getCurrentSession()
+                    .createQuery("select k.blockKey, k.patientId from PatientBlockKey k order by k.blockKey, k.patientId");
+        } else {
+            query = sessionFactory.getCurrentSession()
+                    .createQuery("select k.blockKey, k.patientId from PatientBlockKey k "
+                            + "where k.blockKey > :afterBlockKey or (k.blockKey = :afterBlockKey and k.patientId > :afterPatientId) "
+                            + "order by k.blockKey, k.patientId")
+                    .setString("afterBlockKey", afterBlockKey)
+                    .setInteger("afterPatientId", afterPatientId);
+        }
+        return query.setMaxResults(maxResults).list();
+    }
+
+}
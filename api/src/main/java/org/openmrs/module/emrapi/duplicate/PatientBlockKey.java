@@ -0,0 +1,61 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+/**
+ * One blocking key of a patient. Only patients that share a blocking key are compared when looking for duplicates.
+ *
+ * @see PatientBlockKeyGenerator
+ */
+public class PatientBlockKey {
+
+    private Integer patientBlockKeyId;
+
+    private Integer patientId;
+
+    private String blockKey;
+
+    public PatientBlockKey() {
+    }
+
+    public PatientBlockKey(Integer patientId, String blockKey) {
+        this.patientId = patientId;
+        this.blockKey = blockKey;
+    }
+
+    public Integer getPatientBlockKeyId() {
+        return patientBlockKeyId;
+    }
+
+    public void setPatientBlockKeyId(Integer patientBlockKeyId) {
+        this.patientBlockKeyId = patientBlockKeyId;
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getBlockKey() {
+        return blockKey;
+    }
+
+    public void setBlockKey(String blockKey) {
+        this.blockKey = blockKey;
+    }
+}
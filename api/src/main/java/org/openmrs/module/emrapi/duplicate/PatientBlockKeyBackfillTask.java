@@ -0,0 +1,42 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Creates the blocking keys of existing patients, e.g. after the module is first installed. The keys of patients whose
+ * names change afterwards are kept up to date by {@link org.openmrs.module.emrapi.event.PersonNameEventListener}.
+ *
+ * @see DuplicatePatientService#createMissingBlockKeys(Integer, int)
+ */
+public class PatientBlockKeyBackfillTask extends AbstractTask {
+
+    public static final int BATCH_SIZE = 500;
+
+    @Override
+    public void execute() {
+        DuplicatePatientService duplicatePatientService = Context.getService(DuplicatePatientService.class);
+        Integer lastPatientId = null;
+        do {
+            lastPatientId = duplicatePatientService.createMissingBlockKeys(lastPatientId, BATCH_SIZE);
+            // keep the session from growing with every batch
+            Context.flushSession();
+            Context.clearSession();
+        } while (lastPatientId != null);
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Computes the blocking keys of a patient. Two patients are only compared if they share a key, so each kind of key
+ * catches duplicates that the others would miss:
+ * <ul>
+ * <li>"gf": the phonetic given and family names, in either order, so that swapped names still match</li>
+ * <li>"fy": the phonetic family name with the birth year and gender, for a misspelled or changed given name</li>
+ * <li>"fa": the phonetic family name with the city or village, for a missing or wrong birthdate</li>
+ * </ul>
+ */
+public class PatientBlockKeyGenerator {
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    public Set<String> getBlockKeys(PatientMatchRecord record) {
+        Set<String> keys = new LinkedHashSet<String>();
+        for (String family : record.getFamilyNameKeys()) {
+            for (String given : record.getGivenNameKeys()) {
+                boolean inOrder = given.compareTo(family) <= 0;
+                add(keys, "gf:" + (inOrder ? given : family) + "|" + (inOrder ? family : given));
+            }
+            if (record.getBirthYear() != null && record.getGender() != null) {
+                add(keys, "fy:" + family + "|" + record.getBirthYear() + "|" + record.getGender());
+            }
+            for (String cityVillage : record.getCityVillages()) {
+                add(keys, "fa:" + family + "|" + cityVillage);
+            }
+        }
+        return keys;
+    }
+
+    private void add(Set<String> keys, String key) {
+        keys.add(StringUtils.left(key, MAX_KEY_LENGTH));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.openmrs.module.emrapi.patient.PersonNameKeyGenerator;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The normalized demographics of a patient that blocking keys are made of and that duplicates are scored on. These
+ * are loaded in bulk with plain queries rather than as patients, so that a full pass over the database stays cheap,
+ * and they can be compared from any thread.
+ */
+public class PatientMatchRecord {
+
+    private static final PersonNameKeyGenerator NAME_KEY_GENERATOR = new PersonNameKeyGenerator();
+
+    private final Integer patientId;
+
+    private String gender;
+
+    private Date birthdate;
+
+    private boolean birthdateEstimated;
+
+    private final Set<String> givenNames = new LinkedHashSet<String>();
+
+    private final Set<String> givenNameKeys = new LinkedHashSet<String>();
+
+    private final Set<String> familyNames = new LinkedHashSet<String>();
+
+    private final Set<String> familyNameKeys = new LinkedHashSet<String>();
+
+    private final Set<String> cityVillages = new LinkedHashSet<String>();
+
+    private final Set<String> blockKeys = new LinkedHashSet<String>();
+
+    public PatientMatchRecord(Integer patientId) {
+        this.patientId = patientId;
+    }
+
+    /**
+     * Adds the normalized tokens, and their phonetic keys, of one of the patient's names
+     */
+    public void addName(String givenName, String familyName) {
+        for (String token : NAME_KEY_GENERATOR.getTokens(givenName)) {
+            givenNames.add(token);
+            givenNameKeys.add(NAME_KEY_GENERATOR.getPhoneticKey(token));
+        }
+        for (String token : NAME_KEY_GENERATOR.getTokens(familyName)) {
+            familyNames.add(token);
+            familyNameKeys.add(NAME_KEY_GENERATOR.getPhoneticKey(token));
+        }
+    }
+
+    public void addCityVillage(String cityVillage) {
+        StringBuilder normalized = new StringBuilder();
+        for (String token : NAME_KEY_GENERATOR.getTokens(cityVillage)) {
+            normalized.append(token);
+        }
+        if (normalized.length() > 0) {
+            cityVillages.add(normalized.toString());
+        }
+    }
+
+    public void addBlockKey(String blockKey) {
+        blockKeys.add(blockKey);
+    }
+
+    public Integer getPatientId() {
+        return patientId;
+    }
+
+    public String getGender() {
+        return gender;
+    }
+
+    public void setGender(String gender) {
+        this.gender = gender;
+    }
+
+    public Date getBirthdate() {
+        return birthdate;
+    }
+
+    public void setBirthdate(Date birthdate) {
+        this.birthdate = birthdate;
+    }
+
+    public boolean isBirthdateEstimated() {
+        return birthdateEstimated;
+    }
+
+    public void setBirthdateEstimated(boolean birthdateEstimated) {
+        this.birthdateEstimated = birthdateEstimated;
+    }
+
+    /**
+     * @return the year of birth, or null if the birthdate is not known
+     */
+    public Integer getBirthYear() {
+        if (birthdate == null) {
+            return null;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(birthdate);
+        return calendar.get(Calendar.YEAR);
+    }
+
+    public Set<String> getGivenNames() {
+        return givenNames;
+    }
+
+    public Set<String> getGivenNameKeys() {
+        return givenNameKeys;
+    }
+
+    public Set<String> getFamilyNames() {
+        return familyNames;
+    }
+
+    public Set<String> getFamilyNameKeys() {
+        return familyNameKeys;
+    }
+
+    public Set<String> getCityVillages() {
+        return cityVillages;
+    }
+
+    /**
+     * @return the patient's stored blocking keys, only those of blocks that are small enough to be compared when this
+     *         was loaded for a duplicate search
+     */
+    public Set<String> getBlockKeys() {
+        return blockKeys;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.encounter;
+
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Remembers the name and datatype of each concept seen while mapping one or more encounters, so that obs which
+ * repeat the same concepts only resolve them once, as well as the uuids of concepts looked up by mapping. Meant to live
+ * for a single mapping call, so that it never outlives a change to those concepts; not thread-safe.
+ */
+public class ConceptCache {
+
+    private Locale locale;
+
+    private final Map<Integer, CachedConcept> concepts = new HashMap<Integer, CachedConcept>();
+
+    private final Map<String, String> uuidsByMapping = new HashMap<String, String>();
+
+    /**
+     * @return the locale to display obs values in, looked up once per cache
+     */
+    public Locale getLocale() {
+        if (locale == null) {
+            locale = Context.getLocale();
+        }
+        return locale;
+    }
+
+    /**
+     * @return a new {@link EncounterTransaction.Concept} for the concept, or null if the concept is null
+     */
+    public EncounterTransaction.Concept getConcept(Concept concept) {
+        if (concept == null) {
+            return null;
+        }
+        CachedConcept cachedConcept = get(concept);
+        return new EncounterTransaction.Concept(cachedConcept.uuid, cachedConcept.name);
+    }
+
+    public boolean isNumeric(Concept concept) {
+        return get(concept).numeric;
+    }
+
+    /**
+     * @return the uuid remembered for the concept with the mapping, or null if it hasn't been looked up yet
+     */
+    public String getUuidByMapping(String sourceName, String code) {
+        return uuidsByMapping.get(sourceName + ":" + code);
+    }
+
+    public void putUuidByMapping(String sourceName, String code, String uuid) {
+        uuidsByMapping.put(sourceName + ":" + code, uuid);
+    }
+
+    private CachedConcept get(Concept concept) {
+        Integer conceptId = concept.getConceptId();
+        CachedConcept cachedConcept = conceptId == null ? null : concepts.get(conceptId);
+        if (cachedConcept == null) {
+            cachedConcept = new CachedConcept(concept);
+            if (conceptId != null) {
+                concepts.put(conceptId, cachedConcept);
+            }
+        }
+        return cachedConcept;
+    }
+
+    private static class CachedConcept {
+
+        private final String uuid;
+
+        private final String name;
+
+        private final boolean numeric;
+
+        CachedConcept(Concept concept) {
+            this.uuid = concept.getUuid();
+            this.name = concept.getName().getName();
+            this.numeric = concept.getDatatype() != null && concept.getDatatype().isNumeric();
+        }
+    }
+}
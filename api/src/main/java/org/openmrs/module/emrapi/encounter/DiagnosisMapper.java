@@ -21,9 +21,11 @@ import org.openmrs.module.emrapi.diagnosis.DiagnosisMetadata;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 
 public class DiagnosisMapper {
-    private final ConceptMapper conceptMapper = new ConceptMapper();
-
     public EncounterTransaction.Diagnosis map(Obs obs, DiagnosisMetadata diagnosisMetadata) {
+        return map(obs, diagnosisMetadata, new ConceptCache());
+    }
+
+    public EncounterTransaction.Diagnosis map(Obs obs, DiagnosisMetadata diagnosisMetadata, ConceptCache conceptCache) {
         Diagnosis diagnosis = diagnosisMetadata.toDiagnosis(obs);
         EncounterTransaction.Diagnosis encounterDiagnosis = new EncounterTransaction.Diagnosis();
         encounterDiagnosis.setCertainty(String.valueOf(diagnosis.getCertainty()));
@@ -31,7 +33,7 @@ public class DiagnosisMapper {
         if(StringUtils.isNotBlank(codedOrFreeTextAnswer.getNonCodedAnswer())) {
             encounterDiagnosis.setFreeTextAnswer(codedOrFreeTextAnswer.getNonCodedAnswer());
         } else {
-            encounterDiagnosis.setCodedAnswer(conceptMapper.map(codedOrFreeTextAnswer.getCodedAnswer()));
+            encounterDiagnosis.setCodedAnswer(conceptCache.getConcept(codedOrFreeTextAnswer.getCodedAnswer()));
         }
         encounterDiagnosis.setOrder(String.valueOf(diagnosis.getOrder()));
         encounterDiagnosis.setDiagnosisDate(obs.getObsDatetime());
@@ -17,7 +17,6 @@ import org.openmrs.Concept;
 import org.openmrs.ConceptMap;
 import org.openmrs.Obs;
 import org.openmrs.api.ConceptService;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.module.emrapi.encounter.exception.ConceptNotFoundException;
@@ -35,19 +34,23 @@ public class DispositionMapper {
     }
 
     public EncounterTransaction.Disposition getDisposition(Obs obs) {
+        return getDisposition(obs, new ConceptCache());
+    }
+
+    public EncounterTransaction.Disposition getDisposition(Obs obs, ConceptCache conceptCache) {
         EncounterTransaction.Disposition disposition = new EncounterTransaction.Disposition();
         Set<Obs> groupMembers = obs.getGroupMembers();
         List<EncounterTransaction.Observation> additionalObservations = new ArrayList<EncounterTransaction.Observation>();
         for (Obs groupMember : groupMembers) {
-            if (isDisposition(groupMember)) {
+            if (isDisposition(groupMember, conceptCache)) {
                 disposition.setCode(getConceptMappingCodeBySource(EmrApiConstants.EMR_CONCEPT_SOURCE_NAME, groupMember.getValueCoded().getConceptMappings()));
                 disposition.setVoided(groupMember.getVoided());
                 disposition.setVoidReason(groupMember.getVoidReason());
                 disposition.setExistingObs(groupMember.getUuid());
             } else {
                 EncounterTransaction.Observation observation = new EncounterTransaction.Observation();
-                observation.setConcept(new EncounterTransaction.Concept(groupMember.getConcept().getUuid(), groupMember.getConcept().getName().getName()));
-                observation.setValue(groupMember.getValueAsString(Context.getLocale()));
+                observation.setConcept(conceptCache.getConcept(groupMember.getConcept()));
+                observation.setValue(groupMember.getValueAsString(conceptCache.getLocale()));
                 observation.setVoidReason(groupMember.getVoidReason());
                 observation.setVoided(groupMember.getVoided());
                 observation.setComment(groupMember.getComment());
@@ -70,13 +73,28 @@ public class DispositionMapper {
     }
 
     public boolean isDispositionGroup(Obs obs) {
-        Concept dispositionGroupConcept = getDispositionGroupConcept();
-        return obs.getConcept().getUuid().equals(dispositionGroupConcept.getUuid());
+        return isDispositionGroup(obs, new ConceptCache());
+    }
+
+    /**
+     * @param conceptCache remembers the uuid of the disposition group concept for the rest of the mapping call
+     */
+    public boolean isDispositionGroup(Obs obs, ConceptCache conceptCache) {
+        String uuid = conceptCache.getUuidByMapping(EmrApiConstants.EMR_CONCEPT_SOURCE_NAME, EmrApiConstants.CONCEPT_CODE_DISPOSITION_CONCEPT_SET);
+        if (uuid == null) {
+            uuid = getDispositionGroupConcept().getUuid();
+            conceptCache.putUuidByMapping(EmrApiConstants.EMR_CONCEPT_SOURCE_NAME, EmrApiConstants.CONCEPT_CODE_DISPOSITION_CONCEPT_SET, uuid);
+        }
+        return obs.getConcept().getUuid().equals(uuid);
     }
 
-    boolean isDisposition(Obs obs) {
-        Concept dispositionConcept = getDispositionConcept();
-        return obs.getConcept().getUuid().equals(dispositionConcept.getUuid());
+    boolean isDisposition(Obs obs, ConceptCache conceptCache) {
+        String uuid = conceptCache.getUuidByMapping(EmrApiConstants.EMR_CONCEPT_SOURCE_NAME, EmrApiConstants.CONCEPT_CODE_DISPOSITION);
+        if (uuid == null) {
+            uuid = getDispositionConcept().getUuid();
+            conceptCache.putUuidByMapping(EmrApiConstants.EMR_CONCEPT_SOURCE_NAME, EmrApiConstants.CONCEPT_CODE_DISPOSITION, uuid);
+        }
+        return obs.getConcept().getUuid().equals(uuid);
     }
 
     Concept getDispositionGroupConcept() {
@@ -33,5 +33,22 @@ public interface EmrEncounterService extends OpenmrsService {
 
     EncounterTransaction getActiveEncounter(String patientUuid, String encounterTypeUuid, String visitTypeUuid, Boolean includeAll);
 
+    /**
+     * Same as {@link #getActiveEncounter(String, String, String, Boolean)}, but only loads and maps the sections of
+     * the encounter selected by the projection
+     */
+    EncounterTransaction getActiveEncounter(String patientUuid, String encounterTypeUuid, String visitTypeUuid, Boolean includeAll,
+                                            EncounterTransactionProjection projection);
+
+    /**
+     * Finds the encounters of a visit on a given date. If {@link EncounterSearchParameters#getFields()} is set, only
+     * those sections of the encounters are loaded and mapped.
+     */
     List<EncounterTransaction> find(EncounterSearchParameters encounterSearchParameters);
+
+    /**
+     * Same as {@link #find(EncounterSearchParameters)}, but with the projection already parsed, so
+     * {@link EncounterSearchParameters#getFields()} is ignored
+     */
+    List<EncounterTransaction> find(EncounterSearchParameters encounterSearchParameters, EncounterTransactionProjection projection);
 }
@@ -16,6 +16,7 @@ package org.openmrs.module.emrapi.encounter;
 import org.apache.commons.lang.time.DateUtils;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
 import org.openmrs.Obs;
 import org.openmrs.Patient;
@@ -23,12 +24,15 @@ import org.openmrs.Provider;
 import org.openmrs.Visit;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.EncounterService;
+import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.ProviderService;
 import org.openmrs.api.VisitService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.module.emrapi.encounter.exception.EncounterMatcherNotFoundException;
 import org.openmrs.module.emrapi.encounter.matcher.BaseEncounterMatcher;
@@ -46,7 +50,7 @@ import java.util.UUID;
 
 import static org.apache.commons.lang.StringUtils.isNotEmpty;
 
-public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEncounterService {
+public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEncounterService, GlobalPropertyListener {
 
     private final EncounterTransactionMapper encounterTransactionMapper;
     private PatientService patientService;
@@ -62,13 +66,18 @@ public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEn
 
     private Map<String, BaseEncounterMatcher> encounterMatcherMap = new HashMap<String, BaseEncounterMatcher>();
 
+    private final BaseEncounterMatcher defaultEncounterMatcher;
+
+    // resolved from the emr.encounterMatcher global property on first use, and reset whenever it changes
+    private volatile BaseEncounterMatcher encounterMatcher;
+
     public EmrEncounterServiceImpl(PatientService patientService, VisitService visitService, EncounterService encounterService,
                                    LocationService locationService, ProviderService providerService, AdministrationService administrationService,
                                    EncounterObservationServiceHelper encounterObservationServiceHelper,
                                    EncounterTestOrderServiceHelper encounterTestOrderServiceHelper,
                                    EncounterDrugOrderServiceHelper encounterDrugOrderServiceHelper,
                                    EncounterDispositionServiceHelper encounterDispositionServiceHelper,
-                                   EncounterTransactionMapper encounterTransactionMapper) {
+                                   EncounterTransactionMapper encounterTransactionMapper, EmrEncounterDAO emrEncounterDAO) {
         this.patientService = patientService;
         this.visitService = visitService;
         this.encounterService = encounterService;
@@ -80,6 +89,7 @@ public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEn
         this.encounterDrugOrderServiceHelper = encounterDrugOrderServiceHelper;
         this.encounterDispositionServiceHelper = encounterDispositionServiceHelper;
         this.encounterTransactionMapper = encounterTransactionMapper;
+        this.defaultEncounterMatcher = new DefaultEncounterMatcher(emrEncounterDAO);
     }
 
     @Override
@@ -90,11 +100,33 @@ public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEn
             for (BaseEncounterMatcher encounterMatcher : encounterMatchers) {
                 encounterMatcherMap.put(encounterMatcher.getClass().getCanonicalName(), encounterMatcher);
             }
+            administrationService.addGlobalPropertyListener(this);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    @Override
+    public void onShutdown() {
+        super.onShutdown();
+        administrationService.removeGlobalPropertyListener(this);
+    }
+
+    @Override
+    public boolean supportsPropertyName(String propertyName) {
+        return EmrApiConstants.GP_ENCOUNTER_MATCHER.equals(propertyName);
+    }
+
+    @Override
+    public void globalPropertyChanged(GlobalProperty newValue) {
+        encounterMatcher = null;
+    }
+
+    @Override
+    public void globalPropertyDeleted(String propertyName) {
+        encounterMatcher = null;
+    }
+
     @Override
     public EncounterTransaction save(EncounterTransaction encounterTransaction) {
         Patient patient = patientService.getPatientByUuid(encounterTransaction.getPatientUuid());
@@ -114,6 +146,12 @@ public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEn
 
     @Override
     public EncounterTransaction getActiveEncounter(String patientUuid, String encounterTypeUuid, String visitTypeUuid, Boolean includeAll) {
+        return getActiveEncounter(patientUuid, encounterTypeUuid, visitTypeUuid, includeAll, EncounterTransactionProjection.ALL);
+    }
+
+    @Override
+    public EncounterTransaction getActiveEncounter(String patientUuid, String encounterTypeUuid, String visitTypeUuid, Boolean includeAll,
+                                                   EncounterTransactionProjection projection) {
         Patient patient = patientService.getPatientByUuid(patientUuid);
         EncounterType encounterType = encounterService.getEncounterTypeByUuid(encounterTypeUuid);
 
@@ -132,23 +170,20 @@ public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEn
             return new EncounterTransaction(visit.getUuid(), null);
         }
 
-        return encounterTransactionMapper.map(encounter, includeAll);
+        return encounterTransactionMapper.map(encounter, includeAll, projection);
     }
 
     @Override
     public List<EncounterTransaction> find(EncounterSearchParameters encounterSearchParameters) {
+        return find(encounterSearchParameters, EncounterTransactionProjection.parse(encounterSearchParameters.getFields()));
+    }
+
+    @Override
+    public List<EncounterTransaction> find(EncounterSearchParameters encounterSearchParameters, EncounterTransactionProjection projection) {
         Visit visit = visitService.getVisitByUuid(encounterSearchParameters.getVisitUuid());
         if (visit == null) return new ArrayList<EncounterTransaction>();
 
-        return getEncounterTransactions(getEncountersForDate(encounterSearchParameters.getEncounterDateAsDate(), visit));
-    }
-
-    private List<EncounterTransaction> getEncounterTransactions(List<Encounter> encounters) {
-        List<EncounterTransaction> encounterTransactions = new ArrayList<EncounterTransaction>();
-        for (Encounter encounter : encounters) {
-            encounterTransactions.add(encounterTransactionMapper.map(encounter, true));
-        }
-        return encounterTransactions;
+        return encounterTransactionMapper.map(getEncountersForDate(encounterSearchParameters.getEncounterDateAsDate(), visit), true, projection);
     }
 
     private ArrayList<Encounter> getEncountersForDate(Date encounterDate, Visit visit) {
@@ -193,13 +228,20 @@ public class EmrEncounterServiceImpl extends BaseOpenmrsService implements EmrEn
     }
 
     private Encounter findEncounter(Visit visit, EncounterParameters encounterParameters) {
+        return getEncounterMatcher().findEncounter(visit, encounterParameters);
+    }
 
-        String matcherClass = administrationService.getGlobalProperty("emr.encounterMatcher");
-        BaseEncounterMatcher encounterMatcher = isNotEmpty(matcherClass)? encounterMatcherMap.get(matcherClass) : new DefaultEncounterMatcher();
-        if (encounterMatcher == null) {
-            throw new EncounterMatcherNotFoundException();
+    private BaseEncounterMatcher getEncounterMatcher() {
+        BaseEncounterMatcher matcher = encounterMatcher;
+        if (matcher == null) {
+            String matcherClass = administrationService.getGlobalProperty(EmrApiConstants.GP_ENCOUNTER_MATCHER);
+            matcher = isNotEmpty(matcherClass) ? encounterMatcherMap.get(matcherClass) : defaultEncounterMatcher;
+            if (matcher == null) {
+                throw new EncounterMatcherNotFoundException();
+            }
+            encounterMatcher = matcher;
         }
-        return encounterMatcher.findEncounter(visit, encounterParameters);
+        return matcher;
     }
 
     private Set<Provider> getProviders(Set<EncounterTransaction.Provider> encounteProviders) {
@@ -36,14 +36,30 @@ public class EncounterObservationsMapper {
     }
 
     public void update(EncounterTransaction encounterTransaction, Set<Obs> allObs) {
+        update(encounterTransaction, allObs, EncounterTransactionProjection.ALL);
+    }
+
+    public void update(EncounterTransaction encounterTransaction, Set<Obs> allObs, EncounterTransactionProjection projection) {
+        update(encounterTransaction, allObs, projection, new ConceptCache());
+    }
+
+    public void update(EncounterTransaction encounterTransaction, Set<Obs> allObs, EncounterTransactionProjection projection, ConceptCache conceptCache) {
+        boolean includeDiagnoses = projection.includes(EncounterTransactionProjection.Section.DIAGNOSES);
+        boolean includeDisposition = projection.includes(EncounterTransactionProjection.Section.DISPOSITION);
+        boolean includeObservations = projection.includes(EncounterTransactionProjection.Section.OBSERVATIONS);
         for (Obs obs : allObs) {
             if (getDiagnosisMetadata().isDiagnosis(obs)) {
-                encounterTransaction.addDiagnosis(diagnosisMapper.map(obs, getDiagnosisMetadata()));
-            } else if(dispositionMapper.isDispositionGroup(obs)) {
-                encounterTransaction.setDisposition(dispositionMapper.getDisposition(obs));
-            }
-            else {
-                encounterTransaction.addObservation(observationMapper.map(obs));
+                if (includeDiagnoses) {
+                    encounterTransaction.addDiagnosis(diagnosisMapper.map(obs, getDiagnosisMetadata(), conceptCache));
+                }
+            } else if (includeDisposition || includeObservations) {
+                if (dispositionMapper.isDispositionGroup(obs, conceptCache)) {
+                    if (includeDisposition) {
+                        encounterTransaction.setDisposition(dispositionMapper.getDisposition(obs, conceptCache));
+                    }
+                } else if (includeObservations) {
+                    encounterTransaction.addObservation(observationMapper.map(obs, conceptCache));
+                }
             }
         }
     }
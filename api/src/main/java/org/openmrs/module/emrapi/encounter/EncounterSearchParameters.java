@@ -22,6 +22,7 @@ import java.util.Date;
 public class EncounterSearchParameters {
     private String visitUuid;
     private String encounterDate;
+    private String fields;
 
     public String getVisitUuid() {
         return visitUuid;
@@ -39,6 +40,18 @@ public class EncounterSearchParameters {
         this.encounterDate = encounterDate;
     }
 
+    /**
+     * @return comma-separated sections of the encounters to return, or null for all of them
+     * @see EncounterTransactionProjection#parse(String)
+     */
+    public String getFields() {
+        return fields;
+    }
+
+    public void setFields(String fields) {
+        this.fields = fields;
+    }
+
     public Date getEncounterDateAsDate() {
         try {
             return new SimpleDateFormat("yyyy-MM-dd").parse(encounterDate);
@@ -13,13 +13,23 @@
  */
 package org.openmrs.module.emrapi.encounter;
 
+import org.openmrs.DrugOrder;
 import org.openmrs.Encounter;
+import org.openmrs.Order;
+import org.openmrs.TestOrder;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 public class EncounterTransactionMapper {
     protected EncounterObservationsMapper encounterObservationsMapper;
     protected  EncounterOrdersMapper encounterOrdersMapper;
     protected  EncounterProviderMapper encounterProviderMapper;
+    protected EmrEncounterDAO emrEncounterDAO;
 
     public EncounterTransactionMapper(EncounterObservationsMapper encounterObservationsMapper, EncounterOrdersMapper encounterOrdersMapper, EncounterProviderMapper encounterProviderMapper) {
         this.encounterObservationsMapper = encounterObservationsMapper;
@@ -27,18 +37,79 @@ public class EncounterTransactionMapper {
         this.encounterProviderMapper = encounterProviderMapper;
     }
 
+    public EncounterTransactionMapper(EncounterObservationsMapper encounterObservationsMapper, EncounterOrdersMapper encounterOrdersMapper, EncounterProviderMapper encounterProviderMapper, EmrEncounterDAO emrEncounterDAO) {
+        this(encounterObservationsMapper, encounterOrdersMapper, encounterProviderMapper);
+        this.emrEncounterDAO = emrEncounterDAO;
+    }
+
+    /**
+     * Maps several encounters (typically those of one visit) at once. The obs, providers and orders of all the
+     * encounters are loaded up front in a few queries, rather than lazily one encounter at a time.
+     */
+    public List<EncounterTransaction> map(List<Encounter> encounters, Boolean includeAll) {
+        return map(encounters, includeAll, EncounterTransactionProjection.ALL);
+    }
+
+    /**
+     * Like {@link #map(java.util.List, Boolean)}, but only loads and maps the sections selected by the projection
+     */
+    public List<EncounterTransaction> map(List<Encounter> encounters, Boolean includeAll, EncounterTransactionProjection projection) {
+        if (emrEncounterDAO != null) {
+            if (projection.includesObs()) {
+                emrEncounterDAO.fetchObservations(encounters);
+            }
+            if (projection.includes(EncounterTransactionProjection.Section.PROVIDERS)) {
+                emrEncounterDAO.fetchProviders(encounters);
+            }
+            if (projection.includesOrders()) {
+                emrEncounterDAO.fetchOrders(encounters);
+            }
+        }
+
+        ConceptCache conceptCache = new ConceptCache();
+        List<EncounterTransaction> encounterTransactions = new ArrayList<EncounterTransaction>();
+        for (Encounter encounter : encounters) {
+            encounterTransactions.add(map(encounter, includeAll, projection, conceptCache));
+        }
+        return encounterTransactions;
+    }
 
     public EncounterTransaction map(Encounter encounter, Boolean includeAll) {
+        return map(encounter, includeAll, EncounterTransactionProjection.ALL);
+    }
+
+    public EncounterTransaction map(Encounter encounter, Boolean includeAll, EncounterTransactionProjection projection) {
+        return map(encounter, includeAll, projection, new ConceptCache());
+    }
+
+    private EncounterTransaction map(Encounter encounter, Boolean includeAll, EncounterTransactionProjection projection, ConceptCache conceptCache) {
         EncounterTransaction encounterTransaction = new EncounterTransaction(encounter.getVisit().getUuid(), encounter.getUuid());
         encounterTransaction.setPatientUuid(encounter.getPatient().getUuid());
         encounterTransaction.setEncounterTypeUuid(encounter.getEncounterType().getUuid());
         encounterTransaction.setLocationUuid(encounter.getLocation() != null ? encounter.getLocation().getUuid() : null);
         encounterTransaction.setVisitTypeUuid(encounter.getVisit().getVisitType().getUuid());
         encounterTransaction.setEncounterDateTime(encounter.getEncounterDatetime());
-        encounterObservationsMapper.update(encounterTransaction, encounter.getObsAtTopLevel(includeAll));
-        encounterProviderMapper.update(encounterTransaction, encounter.getEncounterProviders());
-        encounterOrdersMapper.update(encounterTransaction, encounter.getOrders());
+        if (projection.includesObs()) {
+            encounterObservationsMapper.update(encounterTransaction, encounter.getObsAtTopLevel(includeAll), projection, conceptCache);
+        }
+        if (projection.includes(EncounterTransactionProjection.Section.PROVIDERS)) {
+            encounterProviderMapper.update(encounterTransaction, encounter.getEncounterProviders());
+        }
+        if (projection.includesOrders()) {
+            encounterOrdersMapper.update(encounterTransaction, getOrders(encounter, projection));
+        }
         return encounterTransaction;
     }
 
+    private Set<Order> getOrders(Encounter encounter, EncounterTransactionProjection projection) {
+        Set<Order> orders = new LinkedHashSet<Order>();
+        for (Order order : encounter.getOrders()) {
+            if ((order instanceof TestOrder && projection.includes(EncounterTransactionProjection.Section.TEST_ORDERS))
+                    || (order instanceof DrugOrder && projection.includes(EncounterTransactionProjection.Section.DRUG_ORDERS))) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
 }
@@ -0,0 +1,97 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.encounter;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The sections of an {@link org.openmrs.module.emrapi.encounter.domain.EncounterTransaction} that a client asked for,
+ * e.g. "diagnoses,disposition". Sections that are not selected are neither loaded nor mapped, and stay empty.
+ */
+public class EncounterTransactionProjection {
+
+    public enum Section {
+        OBSERVATIONS("observations"),
+        DIAGNOSES("diagnoses"),
+        DISPOSITION("disposition"),
+        PROVIDERS("providers"),
+        TEST_ORDERS("testOrders"),
+        DRUG_ORDERS("drugOrders");
+
+        private final String fieldName;
+
+        Section(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+    }
+
+    public static final EncounterTransactionProjection ALL = new EncounterTransactionProjection(EnumSet.allOf(Section.class));
+
+    private final Set<Section> sections;
+
+    public EncounterTransactionProjection(Set<Section> sections) {
+        Set<Section> copy = EnumSet.noneOf(Section.class);
+        copy.addAll(sections);
+        this.sections = Collections.unmodifiableSet(copy);
+    }
+
+    /**
+     * @param fields comma-separated field names, as they appear in the encounter transaction json
+     * @return the matching projection, or {@link #ALL} if fields is blank
+     * @throws IllegalArgumentException if one of the fields is not a known section
+     */
+    public static EncounterTransactionProjection parse(String fields) {
+        if (StringUtils.isBlank(fields)) {
+            return ALL;
+        }
+        Set<Section> sections = EnumSet.noneOf(Section.class);
+        for (String field : fields.split(",")) {
+            sections.add(getSection(field.trim()));
+        }
+        return new EncounterTransactionProjection(sections);
+    }
+
+    private static Section getSection(String fieldName) {
+        for (Section section : Section.values()) {
+            if (section.getFieldName().equalsIgnoreCase(fieldName)) {
+                return section;
+            }
+        }
+        throw new IllegalArgumentException("Unknown encounter field: " + fieldName);
+    }
+
+    public boolean includes(Section section) {
+        return sections.contains(section);
+    }
+
+    public boolean includesObs() {
+        return includes(Section.OBSERVATIONS) || includes(Section.DIAGNOSES) || includes(Section.DISPOSITION);
+    }
+
+    public boolean includesOrders() {
+        return includes(Section.TEST_ORDERS) || includes(Section.DRUG_ORDERS);
+    }
+
+    public Set<Section> getSections() {
+        return sections;
+    }
+}
@@ -15,24 +15,26 @@ package org.openmrs.module.emrapi.encounter;
 
 import org.openmrs.Concept;
 import org.openmrs.Obs;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 
 public class ObservationMapper {
-    private final ConceptMapper conceptMapper = new ConceptMapper();
 
     public EncounterTransaction.Observation map(Obs obs) {
+        return map(obs, new ConceptCache());
+    }
+
+    public EncounterTransaction.Observation map(Obs obs, ConceptCache conceptCache) {
         Concept concept = obs.getConcept();
-        Object value = concept.getDatatype().isNumeric() ? obs.getValueNumeric() : obs.getValueAsString(Context.getLocale());
+        Object value = conceptCache.isNumeric(concept) ? obs.getValueNumeric() : obs.getValueAsString(conceptCache.getLocale());
         EncounterTransaction.Observation observation = new EncounterTransaction.Observation();
         observation.setUuid(obs.getUuid());
-        observation.setConcept(conceptMapper.map(concept));
+        observation.setConcept(conceptCache.getConcept(concept));
         observation.setValue(value);
         observation.setVoided(obs.getVoided());
         observation.setVoidReason(obs.getVoidReason());
         if(obs.getGroupMembers() != null) {
             for (Obs obsGroupMember : obs.getGroupMembers()) {
-                observation.addGroupMember(map(obsGroupMember));
+                observation.addGroupMember(map(obsGroupMember, conceptCache));
             }
         }
         return observation;
@@ -13,16 +13,32 @@
  */
 package org.openmrs.module.emrapi.encounter.matcher;
 
+import org.hibernate.Hibernate;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
 import org.openmrs.Visit;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
 import org.openmrs.module.emrapi.encounter.EncounterParameters;
 
+import java.util.List;
+
 /**
  * Find {@link org.openmrs.Encounter} from a {@link org.openmrs.Visit} by matching {@link org.openmrs.EncounterType}.
+ * <p/>
+ * If the visit's encounters have not been loaded yet, and a {@link EmrEncounterDAO} is available, the lookup is done
+ * with a query on (visit, encounter type) instead of initializing the whole collection.
  */
 public class DefaultEncounterMatcher implements BaseEncounterMatcher {
 
+    private EmrEncounterDAO emrEncounterDAO;
+
+    public DefaultEncounterMatcher() {
+    }
+
+    public DefaultEncounterMatcher(EmrEncounterDAO emrEncounterDAO) {
+        this.emrEncounterDAO = emrEncounterDAO;
+    }
+
     @Override
     public Encounter findEncounter(Visit visit, EncounterParameters encounterParameters) {
         EncounterType encounterType = encounterParameters.getEncounterType();
@@ -31,11 +47,18 @@ public class DefaultEncounterMatcher implements BaseEncounterMatcher {
             throw new IllegalArgumentException("Encounter Type not found");
         }
 
-        if(visit.getEncounters()!=null){
-            for (Encounter encounter : visit.getEncounters()) {
-                if (encounterType.equals(encounter.getEncounterType())) {
-                    return encounter;
-                }
+        if (visit.getEncounters() == null) {
+            return null;
+        }
+
+        if (emrEncounterDAO != null && visit.getId() != null && !Hibernate.isInitialized(visit.getEncounters())) {
+            List<Encounter> encounters = emrEncounterDAO.getEncountersByVisitAndType(visit, encounterType);
+            return encounters.isEmpty() ? null : encounters.get(0);
+        }
+
+        for (Encounter encounter : visit.getEncounters()) {
+            if (encounterType.equals(encounter.getEncounterType())) {
+                return encounter;
             }
         }
         return null;
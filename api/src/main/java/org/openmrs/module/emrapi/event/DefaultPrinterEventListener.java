@@ -0,0 +1,46 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import javax.jms.Message;
+
+import org.openmrs.event.Event;
+import org.openmrs.event.EventListener;
+import org.openmrs.module.emrapi.printer.DefaultPrinterCache;
+
+/**
+ * Clears the {@link DefaultPrinterCache} when a printer or a location attribute is changed, since the events don't
+ * say which location and printer type were affected. These changes are rare, so the whole cache is cleared on the
+ * listener's thread instead of going through the event executor.
+ */
+public class DefaultPrinterEventListener implements EventListener {
+	
+	public static final Event.Action[] ACTIONS = { Event.Action.CREATED, Event.Action.UPDATED, Event.Action.VOIDED,
+	        Event.Action.UNVOIDED, Event.Action.PURGED };
+	
+	private DefaultPrinterCache defaultPrinterCache;
+	
+	public DefaultPrinterEventListener(DefaultPrinterCache defaultPrinterCache) {
+		this.defaultPrinterCache = defaultPrinterCache;
+	}
+	
+	/**
+	 * @see EventListener#onMessage(javax.jms.Message)
+	 * @param message
+	 */
+	@Override
+	public void onMessage(Message message) {
+		defaultPrinterCache.clear();
+	}
+}
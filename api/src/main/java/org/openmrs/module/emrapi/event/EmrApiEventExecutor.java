@@ -0,0 +1,270 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+
+/**
+ * Runs the work triggered by emrapi event listeners on a fixed number of long-lived daemon threads fed by a bounded
+ * queue, instead of starting a new daemon thread per message.
+ * <p/>
+ * A task submitted with a key is coalesced with a queued task that has the same key and has not started yet, so such
+ * tasks must read the current state when they run rather than capture it when they are submitted. When the queue is
+ * full new tasks are dropped, and {@link #submit} returns false so that the caller can fall back to something cheaper.
+ */
+public class EmrApiEventExecutor {
+
+	public static final int DEFAULT_POOL_SIZE = 2;
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	private static final long POLL_INTERVAL_MILLIS = 1000;
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private volatile boolean running;
+
+	private volatile BlockingQueue<Task> queue = new LinkedBlockingQueue<Task>(DEFAULT_QUEUE_CAPACITY);
+
+	private final ConcurrentMap<String, Task> pendingByKey = new ConcurrentHashMap<String, Task>();
+
+	private final List<Thread> workers = new ArrayList<Thread>();
+
+	private final AtomicLong submittedCount = new AtomicLong();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	/**
+	 * Starts the worker threads, each of them authenticated as the daemon user
+	 *
+	 * @param token the module's daemon token
+	 * @param poolSize the number of worker threads
+	 * @param queueCapacity the maximum number of tasks waiting for a worker
+	 */
+	public synchronized void start(DaemonToken token, int poolSize, int queueCapacity) {
+		if (running) {
+			throw new IllegalStateException("The emrapi event executor is already running");
+		}
+		if (poolSize < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("The pool size and queue capacity must be at least 1");
+		}
+		queue = new LinkedBlockingQueue<Task>(queueCapacity);
+		running = true;
+		for (int i = 0; i < poolSize; i++) {
+			workers.add(Daemon.runInDaemonThread(new Worker(), token));
+		}
+	}
+
+	/**
+	 * Stops accepting tasks and waits for the workers to finish the queued ones
+	 *
+	 * @param timeoutMillis how long to wait for the workers
+	 */
+	public synchronized void stop(long timeoutMillis) {
+		running = false;
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		for (Thread worker : workers) {
+			try {
+				worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		workers.clear();
+		if (!queue.isEmpty()) {
+			log.warn("Discarding " + queue.size() + " emrapi event tasks that did not run before shutdown");
+			droppedCount.addAndGet(queue.size());
+			queue.clear();
+			pendingByKey.clear();
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @see #submit(String, Runnable)
+	 */
+	public boolean submit(Runnable runnable) {
+		return submit(null, runnable);
+	}
+
+	/**
+	 * Queues a task to run on a worker thread
+	 *
+	 * @param key tasks with the same key are coalesced while queued, or null to never coalesce
+	 * @param runnable the task
+	 * @return true if the task (or the queued one it was coalesced with) will run, false if it was dropped
+	 */
+	public boolean submit(String key, Runnable runnable) {
+		if (!running) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+		submittedCount.incrementAndGet();
+
+		Task task = new Task(key, runnable);
+		if (key != null && pendingByKey.putIfAbsent(key, task) != null) {
+			coalescedCount.incrementAndGet();
+			return true;
+		}
+		if (!queue.offer(task)) {
+			if (key != null) {
+				pendingByKey.remove(key, task);
+			}
+			droppedCount.incrementAndGet();
+			log.warn("The emrapi event queue is full, dropping a task");
+			return false;
+		}
+		return true;
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return how many more tasks can be queued before new ones are dropped
+	 */
+	public int getRemainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return the average time from submitting a task to it finishing, in milliseconds
+	 */
+	public double getAverageLatencyMillis() {
+		long finished = completedCount.get() + failedCount.get();
+		return finished == 0 ? 0 : totalLatencyNanos.get() / (finished * 1000000.0);
+	}
+
+	/**
+	 * @return the longest time from submitting a task to it finishing, in milliseconds
+	 */
+	public long getMaxLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+	}
+
+	private void execute(Task task) {
+		if (task.key != null) {
+			pendingByKey.remove(task.key, task);
+		}
+		try {
+			task.runnable.run();
+			completedCount.incrementAndGet();
+		}
+		catch (Exception e) {
+			failedCount.incrementAndGet();
+			log.error("An emrapi event task failed", e);
+		}
+		finally {
+			recordLatency(System.nanoTime() - task.submittedNanos);
+			try {
+				// the worker keeps its session open between tasks, don't let it grow
+				Context.clearSession();
+			}
+			catch (Exception e) {
+				log.warn("Failed to clear the session of an emrapi event worker", e);
+			}
+		}
+	}
+
+	private void recordLatency(long latencyNanos) {
+		totalLatencyNanos.addAndGet(latencyNanos);
+		long max = maxLatencyNanos.get();
+		while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		@Override
+		public void run() {
+			BlockingQueue<Task> tasks = queue;
+			while (running || !tasks.isEmpty()) {
+				Task task;
+				try {
+					task = tasks.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				if (task != null) {
+					execute(task);
+				}
+			}
+		}
+	}
+
+	private static class Task {
+
+		private final String key;
+
+		private final Runnable runnable;
+
+		private final long submittedNanos = System.nanoTime();
+
+		private Task(String key, Runnable runnable) {
+			this.key = key;
+			this.runnable = runnable;
+		}
+	}
+}
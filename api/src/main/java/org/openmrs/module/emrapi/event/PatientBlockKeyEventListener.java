@@ -0,0 +1,93 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Person;
+import org.openmrs.PersonAddress;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.context.Context;
+import org.openmrs.event.Event;
+import org.openmrs.event.EventListener;
+import org.openmrs.module.emrapi.duplicate.DuplicatePatientService;
+
+/**
+ * Keeps the blocking keys used to find duplicate patients up to date when a patient's gender, birthdate or addresses
+ * change, as those make up the "fy" and "fa" keys. Subscribed to {@link Person}, {@link org.openmrs.Patient} and
+ * {@link PersonAddress} events. A patient shares its uuid with its person, so both are looked up as persons. Name
+ * changes are handled by {@link PersonNameEventListener}.
+ */
+public class PatientBlockKeyEventListener implements EventListener {
+	
+	public static final Event.Action[] ACTIONS = { Event.Action.CREATED, Event.Action.UPDATED, Event.Action.VOIDED,
+	        Event.Action.UNVOIDED };
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	private EmrApiEventExecutor eventExecutor;
+	
+	public PatientBlockKeyEventListener(EmrApiEventExecutor eventExecutor) {
+		this.eventExecutor = eventExecutor;
+	}
+	
+	/**
+	 * @see EventListener#onMessage(javax.jms.Message)
+	 * @param message
+	 */
+	@Override
+	public void onMessage(Message message) {
+		final String uuid;
+		try {
+			uuid = ((MapMessage) message).getString("uuid");
+		}
+		catch (JMSException e) {
+			log.error("Failed to read person event", e);
+			return;
+		}
+		
+		boolean accepted = eventExecutor.submit("patientBlockKeys:" + uuid, new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					Integer personId = getPersonId(uuid);
+					if (personId != null) {
+						Context.getService(DuplicatePatientService.class).saveBlockKeys(personId);
+					}
+				}
+				catch (Exception e) {
+					log.error("Failed to update the blocking keys of the patient of " + uuid, e);
+				}
+			}
+		});
+		if (!accepted) {
+			log.warn("Dropped the update of the blocking keys of the patient of " + uuid);
+		}
+	}
+	
+	private Integer getPersonId(String uuid) {
+		PersonService personService = Context.getPersonService();
+		PersonAddress personAddress = personService.getPersonAddressByUuid(uuid);
+		if (personAddress != null) {
+			return personAddress.getPerson().getPersonId();
+		}
+		Person person = personService.getPersonByUuid(uuid);
+		return person != null ? person.getPersonId() : null;
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.api.context.Context;
+import org.openmrs.event.Event;
+import org.openmrs.event.EventListener;
+import org.openmrs.module.emrapi.patient.PatientIdentifierCache;
+
+/**
+ * Keeps the {@link PatientIdentifierCache} consistent with the database. A newly created identifier only invalidates
+ * its own identifier string, while any other change clears the whole cache, since the previous identifier string of
+ * an edited or purged identifier is no longer known. Also subscribed to {@link org.openmrs.Patient} events for
+ * {@link #PATIENT_ACTIONS}, as voiding a patient, e.g. when it is merged, leaves its identifiers as they were.
+ */
+public class PatientIdentifierEventListener implements EventListener {
+	
+	public static final Event.Action[] ACTIONS = { Event.Action.CREATED, Event.Action.UPDATED, Event.Action.VOIDED,
+	        Event.Action.UNVOIDED, Event.Action.PURGED };
+	
+	public static final Event.Action[] PATIENT_ACTIONS = { Event.Action.VOIDED, Event.Action.UNVOIDED,
+	        Event.Action.PURGED };
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	private EmrApiEventExecutor eventExecutor;
+	
+	private PatientIdentifierCache patientIdentifierCache;
+	
+	public PatientIdentifierEventListener(EmrApiEventExecutor eventExecutor, PatientIdentifierCache patientIdentifierCache) {
+		this.eventExecutor = eventExecutor;
+		this.patientIdentifierCache = patientIdentifierCache;
+	}
+	
+	/**
+	 * @see EventListener#onMessage(javax.jms.Message)
+	 * @param message
+	 */
+	@Override
+	public void onMessage(Message message) {
+		try {
+			MapMessage mapMessage = (MapMessage) message;
+			if (Event.Action.CREATED.name().equals(mapMessage.getString("action"))) {
+				invalidateIdentifier(mapMessage.getString("uuid"));
+			} else {
+				patientIdentifierCache.clear();
+			}
+		}
+		catch (JMSException e) {
+			log.error("Failed to read patient identifier event, clearing the patient identifier cache", e);
+			patientIdentifierCache.clear();
+		}
+	}
+	
+	private void invalidateIdentifier(final String uuid) {
+		boolean accepted = eventExecutor.submit("patientIdentifier:" + uuid, new Runnable() {
+			
+			@Override
+			public void run() {
+				PatientIdentifier patientIdentifier = Context.getPatientService().getPatientIdentifierByUuid(uuid);
+				if (patientIdentifier != null) {
+					patientIdentifierCache.invalidate(patientIdentifier.getIdentifier());
+				} else {
+					patientIdentifierCache.clear();
+				}
+			}
+		});
+		if (!accepted) {
+			patientIdentifierCache.clear();
+		}
+	}
+}
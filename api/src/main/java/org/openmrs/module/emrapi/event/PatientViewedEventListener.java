@@ -13,49 +13,60 @@
  */
 package org.openmrs.module.emrapi.event;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
+import javax.jms.JMSException;
 import javax.jms.MapMessage;
 import javax.jms.Message;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Patient;
 import org.openmrs.User;
 import org.openmrs.api.APIException;
-import org.openmrs.api.UserService;
 import org.openmrs.api.context.Context;
-import org.openmrs.api.context.Daemon;
 import org.openmrs.event.EventListener;
-import org.openmrs.module.DaemonToken;
 import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.EmrApiProperties;
-import org.openmrs.module.emrapi.utils.GeneralUtils;
+import org.openmrs.module.emrapi.patient.LastViewedPatientStore;
 
 /**
  * Listens for patient viewed events, the patient found in the message payload gets added to the
- * last viewed patients user property of the specified user,
+ * last viewed patients of the specified user, which are written to the user property by
+ * {@link LastViewedPatientStore#flush()}
  */
 public class PatientViewedEventListener implements EventListener {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
-	private DaemonToken daemonToken;
+	private EmrApiEventExecutor eventExecutor;
+	
+	private EmrApiProperties emrApiProperties;
+	
+	private LastViewedPatientStore lastViewedPatientStore;
 	
-	public PatientViewedEventListener(DaemonToken token) {
-		daemonToken = token;
+	public PatientViewedEventListener(EmrApiEventExecutor eventExecutor, EmrApiProperties emrApiProperties,
+	    LastViewedPatientStore lastViewedPatientStore) {
+		this.eventExecutor = eventExecutor;
+		this.emrApiProperties = emrApiProperties;
+		this.lastViewedPatientStore = lastViewedPatientStore;
 	}
 	
 	/**
 	 * @see EventListener#onMessage(javax.jms.Message)
 	 * @param message
+	 * @should submit the message to the executor keyed by user and patient
 	 */
 	@Override
 	public void onMessage(final Message message) {
-		Daemon.runInDaemonThread(new Runnable() {
+		String key = null;
+		try {
+			MapMessage mapMessage = (MapMessage) message;
+			key = "patientViewed:" + mapMessage.getString(EmrApiConstants.EVENT_KEY_USER_UUID) + ":"
+			        + mapMessage.getString(EmrApiConstants.EVENT_KEY_PATIENT_UUID);
+		}
+		catch (JMSException e) {
+			log.warn("Failed to read the patient viewed event, it will not be coalesced", e);
+		}
+		eventExecutor.submit(key, new Runnable() {
 			
 			@Override
 			public void run() {
@@ -63,10 +74,10 @@ public class PatientViewedEventListener implements EventListener {
 					processMessage(message);
 				}
 				catch (Exception e) {
-					log.error("Failed to update the user's last viewed patients property", e);
+					log.error("Failed to update the user's last viewed patients", e);
 				}
 			}
-		}, daemonToken);
+		});
 	}
 	
 	/**
@@ -76,6 +87,7 @@ public class PatientViewedEventListener implements EventListener {
 	 * @should remove the first patient and add the new one to the start if the list is full
 	 * @should not add a duplicate and should move the existing patient to the start
 	 * @should not remove any patient if a duplicate is added to a full list
+	 * @should write the user property only when the store is flushed
 	 */
 	public void processMessage(Message message) throws Exception {
 		MapMessage mapMessage = (MapMessage) message;
@@ -86,38 +98,9 @@ public class PatientViewedEventListener implements EventListener {
 			throw new APIException("failed to find a patient with uuid:" + patientUuid + " or the patient is not yet saved");
 		}
 		
-		UserService userService = Context.getUserService();
-		User user = userService.getUserByUuid(userUuid);
-		if (user != null && patientToAdd != null) {
-			EmrApiProperties emrProperties = Context.getRegisteredComponents(EmrApiProperties.class).iterator().next();
-			Integer limit = emrProperties.getLastViewedPatientSizeLimit();
-			List<Integer> patientIds = new ArrayList<Integer>(limit);
-			if (limit > 0) {
-				List<Patient> lastViewedPatients = GeneralUtils.getLastViewedPatients(user);
-				patientIds.add(patientToAdd.getId());
-				for (Patient p : lastViewedPatients) {
-					if (patientIds.size() == limit)
-						break;
-					if (patientIds.contains(p.getId()))
-						continue;
-					
-					patientIds.add(p.getId());
-				}
-				
-				Collections.reverse(patientIds);
-			}
-			
-			String property = StringUtils.join(patientIds, ",");
-			if (StringUtils.isNotBlank(property) && property.length() > 255) {
-				//exceeded the user property max size and hence needs trimming.
-				//find the last comma before index 255 and cut off from there
-				//RA-200 Wyclif says patients ids at the end of the string are the most recent
-				//so that is why we trim from begining instead of end.
-				property = property.substring(property.indexOf(',', property.length() - 255) + 1);
-			}
-			
-			userService.setUserProperty(user, EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS,
-				property);
+		User user = Context.getUserService().getUserByUuid(userUuid);
+		if (user != null) {
+			lastViewedPatientStore.add(user, patientToAdd.getId(), emrApiProperties.getLastViewedPatientSizeLimit());
 		}
 	}
 }
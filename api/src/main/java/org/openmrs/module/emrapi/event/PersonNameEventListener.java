@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.PersonName;
+import org.openmrs.api.context.Context;
+import org.openmrs.event.Event;
+import org.openmrs.event.EventListener;
+import org.openmrs.module.emrapi.duplicate.DuplicatePatientService;
+import org.openmrs.module.emrapi.patient.EmrPatientService;
+
+/**
+ * Keeps the person name keys used by patient name search, and the blocking keys used to find duplicate patients, up to
+ * date when person names are saved or voided. Keys of purged names are left behind, they are ignored by the search as
+ * they no longer join to a person name. Changes to a patient's gender, birthdate or addresses are handled by
+ * {@link PatientBlockKeyEventListener}.
+ */
+public class PersonNameEventListener implements EventListener {
+	
+	public static final Event.Action[] ACTIONS = { Event.Action.CREATED, Event.Action.UPDATED, Event.Action.VOIDED,
+	        Event.Action.UNVOIDED };
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	private EmrApiEventExecutor eventExecutor;
+	
+	public PersonNameEventListener(EmrApiEventExecutor eventExecutor) {
+		this.eventExecutor = eventExecutor;
+	}
+	
+	/**
+	 * @see EventListener#onMessage(javax.jms.Message)
+	 * @param message
+	 */
+	@Override
+	public void onMessage(Message message) {
+		final String uuid;
+		try {
+			uuid = ((MapMessage) message).getString("uuid");
+		}
+		catch (JMSException e) {
+			log.error("Failed to read person name event", e);
+			return;
+		}
+		
+		boolean accepted = eventExecutor.submit("personName:" + uuid, new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					PersonName personName = Context.getPersonService().getPersonNameByUuid(uuid);
+					if (personName != null) {
+						Context.getService(EmrPatientService.class).saveNameKeys(personName);
+						Context.getService(DuplicatePatientService.class).saveBlockKeys(personName.getPerson().getPersonId());
+					}
+				}
+				catch (Exception e) {
+					log.error("Failed to update the name keys of person name " + uuid, e);
+				}
+			}
+		});
+		if (!accepted) {
+			log.warn("Dropped the update of the name keys of person name " + uuid);
+		}
+	}
+}
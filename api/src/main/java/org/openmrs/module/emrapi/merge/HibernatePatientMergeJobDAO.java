@@ -0,0 +1,65 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.merge;
+
+import org.hibernate.LockMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.module.emrapi.db.HibernateSingleClassDAO;
+
+import java.util.List;
+
+public class HibernatePatientMergeJobDAO extends HibernateSingleClassDAO<PatientMergeJob> implements PatientMergeJobDAO {
+
+    public HibernatePatientMergeJobDAO() {
+        super(PatientMergeJob.class);
+    }
+
+    @Override
+    public PatientMergeJob getByUuid(String uuid) {
+        return (PatientMergeJob) sessionFactory.getCurrentSession().createCriteria(PatientMergeJob.class)
+                .add(Restrictions.eq("uuid", uuid))
+                .uniqueResult();
+    }
+
+    @Override
+    public List<PatientMergeJob> getPendingJobs() {
+        return (List<PatientMergeJob>) sessionFactory.getCurrentSession().createCriteria(PatientMergeJob.class)
+                .add(Restrictions.in("status", new Object[] { PatientMergeJob.Status.QUEUED, PatientMergeJob.Status.RUNNING }))
+                .addOrder(Order.asc("patientMergeJobId"))
+                .list();
+    }
+
+    @Override
+    public void lockPatients(List<Integer> patientIds) {
+        // in id order, so that two transactions locking the same patients cannot deadlock
+        sessionFactory.getCurrentSession()
+                .createSQLQuery("select patient_id from patient where patient_id in (:patientIds) order by patient_id for update")
+                .setParameterList("patientIds", patientIds)
+                .list();
+    }
+
+    @Override
+    public List<PatientMergeJob> getPendingJobsForPatients(List<Integer> patientIds) {
+        // a locking read sees what other transactions have committed since this one began
+        return (List<PatientMergeJob>) sessionFactory.getCurrentSession().createCriteria(PatientMergeJob.class)
+                .add(Restrictions.in("status", new Object[] { PatientMergeJob.Status.QUEUED, PatientMergeJob.Status.RUNNING }))
+                .add(Restrictions.or(Restrictions.in("preferred.id", patientIds), Restrictions.in("notPreferred.id", patientIds)))
+                .addOrder(Order.asc("patientMergeJobId"))
+                .setLockMode(LockMode.UPGRADE)
+                .list();
+    }
+
+}
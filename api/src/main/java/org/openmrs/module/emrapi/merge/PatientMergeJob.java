@@ -0,0 +1,179 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.merge;
+
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.Patient;
+import org.openmrs.User;
+
+import java.util.Date;
+
+/**
+ * A patient merge that runs in the background, and how far it got
+ *
+ * @see PatientMergeJobService
+ */
+public class PatientMergeJob extends BaseOpenmrsObject {
+
+    public enum Status {QUEUED, RUNNING, COMPLETED, FAILED}
+
+    private Integer patientMergeJobId;
+
+    private Patient preferred;
+
+    private Patient notPreferred;
+
+    private Status status = Status.QUEUED;
+
+    private Integer visitMergesPlanned;
+
+    private int visitsMerged;
+
+    private int encountersMoved;
+
+    private String errorMessage;
+
+    private User creator;
+
+    private Date dateCreated;
+
+    private Date dateStarted;
+
+    private Date dateCompleted;
+
+    public PatientMergeJob() {
+    }
+
+    public PatientMergeJob(Patient preferred, Patient notPreferred) {
+        this.preferred = preferred;
+        this.notPreferred = notPreferred;
+    }
+
+    @Override
+    public Integer getId() {
+        return patientMergeJobId;
+    }
+
+    @Override
+    public void setId(Integer id) {
+        this.patientMergeJobId = id;
+    }
+
+    public Integer getPatientMergeJobId() {
+        return patientMergeJobId;
+    }
+
+    public void setPatientMergeJobId(Integer patientMergeJobId) {
+        this.patientMergeJobId = patientMergeJobId;
+    }
+
+    public Patient getPreferred() {
+        return preferred;
+    }
+
+    public void setPreferred(Patient preferred) {
+        this.preferred = preferred;
+    }
+
+    public Patient getNotPreferred() {
+        return notPreferred;
+    }
+
+    public void setNotPreferred(Patient notPreferred) {
+        this.notPreferred = notPreferred;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return true if the job is waiting or running, i.e. it has to be resumed after a restart
+     */
+    public boolean isPending() {
+        return status == Status.QUEUED || status == Status.RUNNING;
+    }
+
+    /**
+     * @return the number of visit merges the job has done and still has to do, or null if that is not known yet
+     */
+    public Integer getVisitMergesPlanned() {
+        return visitMergesPlanned;
+    }
+
+    public void setVisitMergesPlanned(Integer visitMergesPlanned) {
+        this.visitMergesPlanned = visitMergesPlanned;
+    }
+
+    public int getVisitsMerged() {
+        return visitsMerged;
+    }
+
+    public void setVisitsMerged(int visitsMerged) {
+        this.visitsMerged = visitsMerged;
+    }
+
+    public int getEncountersMoved() {
+        return encountersMoved;
+    }
+
+    public void setEncountersMoved(int encountersMoved) {
+        this.encountersMoved = encountersMoved;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public User getCreator() {
+        return creator;
+    }
+
+    public void setCreator(User creator) {
+        this.creator = creator;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public Date getDateStarted() {
+        return dateStarted;
+    }
+
+    public void setDateStarted(Date dateStarted) {
+        this.dateStarted = dateStarted;
+    }
+
+    public Date getDateCompleted() {
+        return dateCompleted;
+    }
+
+    public void setDateCompleted(Date dateCompleted) {
+        this.dateCompleted = dateCompleted;
+    }
+}
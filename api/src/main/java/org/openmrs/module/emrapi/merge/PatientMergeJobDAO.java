@@ -0,0 +1,45 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.merge;
+
+import org.openmrs.module.emrapi.db.SingleClassDAO;
+
+import java.util.List;
+
+public interface PatientMergeJobDAO extends SingleClassDAO<PatientMergeJob> {
+
+    PatientMergeJob getByUuid(String uuid);
+
+    /**
+     * @return the jobs that are queued or running, oldest first
+     */
+    List<PatientMergeJob> getPendingJobs();
+
+    /**
+     * Locks the rows of the patients until the transaction ends, so that merges involving them are queued one at a time
+     *
+     * @param patientIds
+     */
+    void lockPatients(List<Integer> patientIds);
+
+    /**
+     * Reads the jobs as last committed, rather than as they were when the transaction first read the database
+     *
+     * @param patientIds
+     * @return the jobs that are queued or running for any of the patients
+     */
+    List<PatientMergeJob> getPendingJobsForPatients(List<Integer> patientIds);
+
+}
@@ -0,0 +1,92 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.merge;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.emrapi.adt.VisitMerge;
+import org.openmrs.module.emrapi.event.EmrApiEventExecutor;
+
+import java.util.List;
+
+/**
+ * Runs a patient merge job, one transaction per chunk of visit merges and a last one to merge the patients. Must be
+ * run on a thread with an open session and enough privileges, e.g. a daemon thread.
+ */
+public class PatientMergeJobRunner implements Runnable {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final Integer patientMergeJobId;
+
+    private final int chunkSize;
+
+    private final EmrApiEventExecutor executor;
+
+    /**
+     * @param patientMergeJobId
+     * @param chunkSize the number of visit merges per transaction
+     * @param executor the job stops between chunks once this is stopped, or null to always run to the end
+     */
+    public PatientMergeJobRunner(Integer patientMergeJobId, int chunkSize, EmrApiEventExecutor executor) {
+        this.patientMergeJobId = patientMergeJobId;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+        PatientMergeJobService service = Context.getService(PatientMergeJobService.class);
+        try {
+            if (isStopping()) {
+                // the executor still runs the queued jobs while it stops, leave this one queued
+                log.info("Not starting patient merge job " + patientMergeJobId + ", it will start on the next start");
+                return;
+            }
+            List<VisitMerge> visitMerges = service.startMergeJob(patientMergeJobId);
+            if (visitMerges == null) {
+                return;
+            }
+            endChunk();
+            for (int from = 0; from < visitMerges.size(); from += chunkSize) {
+                if (isStopping()) {
+                    log.info("Stopping patient merge job " + patientMergeJobId + ", it will resume on the next start");
+                    return;
+                }
+                service.mergeVisits(patientMergeJobId, visitMerges.subList(from, Math.min(from + chunkSize, visitMerges.size())));
+                endChunk();
+            }
+            service.completeMergeJob(patientMergeJobId);
+        }
+        catch (Exception e) {
+            log.error("Patient merge job " + patientMergeJobId + " failed", e);
+            Context.clearSession();
+            service.failMergeJob(patientMergeJobId, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+        }
+    }
+
+    private boolean isStopping() {
+        return executor != null && !executor.isRunning();
+    }
+
+    /**
+     * Keeps the session small, as the job may go through many visits
+     */
+    private void endChunk() {
+        Context.flushSession();
+        Context.clearSession();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.merge;
+
+import org.openmrs.Patient;
+import org.openmrs.annotation.Authorized;
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.adt.VisitMerge;
+
+import java.util.List;
+
+/**
+ * Runs {@link org.openmrs.module.emrapi.adt.AdtService#mergePatients(Patient, Patient)} in the background, one job at a
+ * time. The visits are merged a few at a time, each chunk in its own transaction, before the patients themselves are
+ * merged, and the progress is saved in the job so that it can be polled. Jobs that were queued or running when the
+ * server stopped are started again when the module starts.
+ * <p/>
+ * Each step commits on its own, and the visit merges left to do are planned again from the visits that are not merged
+ * yet whenever a job starts, so a job that failed part way can be resumed with {@link #resumeMergeJob} without repeating
+ * the steps that were done.
+ */
+public interface PatientMergeJobService extends OpenmrsService {
+
+    /**
+     * Saves a new job to merge the patients, which will start once the current transaction commits
+     *
+     * @param preferred
+     * @param notPreferred
+     * @return the queued job
+     * @throws IllegalArgumentException if the patients can't be merged (in that order)
+     * @throws org.openmrs.api.APIException if one of the patients is already being merged or too many jobs are queued
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    PatientMergeJob submitMerge(Patient preferred, Patient notPreferred);
+
+    /**
+     * Queues a failed job again. It carries on from the visit merges that were committed before it failed.
+     *
+     * @param job
+     * @return the queued job
+     * @throws IllegalArgumentException if the job has not failed
+     * @throws org.openmrs.api.APIException if one of the patients is being merged by another job
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    PatientMergeJob resumeMergeJob(PatientMergeJob job);
+
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    PatientMergeJob getMergeJob(Integer patientMergeJobId);
+
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    PatientMergeJob getMergeJobByUuid(String uuid);
+
+    /**
+     * Starts running jobs, beginning with those left queued or running by the last shutdown
+     *
+     * @param token the module's daemon token, which the jobs run with
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    void startMergeJobs(DaemonToken token);
+
+    /**
+     * Stops running jobs. A running job stops after its current chunk, and queued jobs don't start, they all resume when
+     * the jobs are next started.
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    void stopMergeJobs();
+
+    /**
+     * Marks the job as running and plans the visit merges that are left to do
+     *
+     * @param patientMergeJobId
+     * @return the visit merges left to do, or null if the job is no longer pending
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    List<VisitMerge> startMergeJob(Integer patientMergeJobId);
+
+    /**
+     * Does one chunk of the visit merges of a job, and records it in the job's progress. Visit merges that were done
+     * already are skipped.
+     *
+     * @param patientMergeJobId
+     * @param visitMerges
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    void mergeVisits(Integer patientMergeJobId, List<VisitMerge> visitMerges);
+
+    /**
+     * Merges the patients of a job, once its visits have been merged, and marks the job as completed
+     *
+     * @param patientMergeJobId
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    void completeMergeJob(Integer patientMergeJobId);
+
+    @Authorized(EmrApiConstants.PRIVILEGE_MERGE_PATIENTS)
+    void failMergeJob(Integer patientMergeJobId, String errorMessage);
+
+}
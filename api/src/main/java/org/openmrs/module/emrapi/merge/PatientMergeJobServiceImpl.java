@@ -0,0 +1,260 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.merge;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Patient;
+import org.openmrs.PersonAttribute;
+import org.openmrs.Visit;
+import org.openmrs.api.APIException;
+import org.openmrs.api.VisitService;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.adt.AdtService;
+import org.openmrs.module.emrapi.adt.VisitMerge;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
+import org.openmrs.module.emrapi.event.EmrApiEventExecutor;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class PatientMergeJobServiceImpl extends BaseOpenmrsService implements PatientMergeJobService {
+
+    public static final int DEFAULT_CHUNK_SIZE = 10;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    private static final long STOP_TIMEOUT_MILLIS = 10000;
+
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 1024;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    // a single worker, so that merges that share a patient never run at the same time
+    private final EmrApiEventExecutor executor = new EmrApiEventExecutor();
+
+    private PatientMergeJobDAO patientMergeJobDAO;
+
+    private EmrEncounterDAO emrEncounterDAO;
+
+    private AdtService adtService;
+
+    private VisitService visitService;
+
+    private EmrApiProperties emrApiProperties;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    public void setPatientMergeJobDAO(PatientMergeJobDAO patientMergeJobDAO) {
+        this.patientMergeJobDAO = patientMergeJobDAO;
+    }
+
+    public void setEmrEncounterDAO(EmrEncounterDAO emrEncounterDAO) {
+        this.emrEncounterDAO = emrEncounterDAO;
+    }
+
+    public void setAdtService(AdtService adtService) {
+        this.adtService = adtService;
+    }
+
+    public void setVisitService(VisitService visitService) {
+        this.visitService = visitService;
+    }
+
+    public void setEmrApiProperties(EmrApiProperties emrApiProperties) {
+        this.emrApiProperties = emrApiProperties;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    @Transactional
+    public PatientMergeJob submitMerge(Patient preferred, Patient notPreferred) {
+        if (preferred == null || notPreferred == null || preferred.getPatientId().equals(notPreferred.getPatientId())) {
+            throw new IllegalArgumentException("Two different patients are needed for a merge");
+        }
+        if (isUnknownPatient(preferred) && !isUnknownPatient(notPreferred)) {
+            throw new IllegalArgumentException("Cannot merge a permanent record into an unknown one");
+        }
+        checkCanQueue(preferred, notPreferred);
+
+        PatientMergeJob job = new PatientMergeJob(preferred, notPreferred);
+        job.setCreator(Context.getAuthenticatedUser());
+        job.setDateCreated(new Date());
+        patientMergeJobDAO.saveOrUpdate(job);
+        queueAfterCommit(job.getPatientMergeJobId());
+        return job;
+    }
+
+    @Override
+    @Transactional
+    public PatientMergeJob resumeMergeJob(PatientMergeJob job) {
+        if (job.getStatus() != PatientMergeJob.Status.FAILED) {
+            throw new IllegalArgumentException("Only a failed patient merge job can be resumed");
+        }
+        checkCanQueue(job.getPreferred(), job.getNotPreferred());
+
+        job.setStatus(PatientMergeJob.Status.QUEUED);
+        job.setErrorMessage(null);
+        job.setDateCompleted(null);
+        patientMergeJobDAO.saveOrUpdate(job);
+        queueAfterCommit(job.getPatientMergeJobId());
+        return job;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PatientMergeJob getMergeJob(Integer patientMergeJobId) {
+        return patientMergeJobDAO.getById(patientMergeJobId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PatientMergeJob getMergeJobByUuid(String uuid) {
+        return patientMergeJobDAO.getByUuid(uuid);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void startMergeJobs(DaemonToken token) {
+        if (!executor.isRunning()) {
+            executor.start(token, 1, DEFAULT_QUEUE_CAPACITY);
+        }
+        for (PatientMergeJob job : patientMergeJobDAO.getPendingJobs()) {
+            log.info("Resuming patient merge job " + job.getUuid());
+            queue(job.getPatientMergeJobId());
+        }
+    }
+
+    @Override
+    public void stopMergeJobs() {
+        executor.stop(STOP_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    @Transactional
+    public List<VisitMerge> startMergeJob(Integer patientMergeJobId) {
+        PatientMergeJob job = patientMergeJobDAO.getById(patientMergeJobId);
+        if (job == null || !job.isPending()) {
+            return null;
+        }
+        // when resuming, the chunks that were committed already are no longer in the plan
+        List<VisitMerge> visitMerges = adtService.planVisitMerges(job.getPreferred(), job.getNotPreferred());
+        job.setStatus(PatientMergeJob.Status.RUNNING);
+        if (job.getDateStarted() == null) {
+            job.setDateStarted(new Date());
+        }
+        job.setVisitMergesPlanned(job.getVisitsMerged() + visitMerges.size());
+        patientMergeJobDAO.saveOrUpdate(job);
+        return visitMerges;
+    }
+
+    @Override
+    @Transactional
+    public void mergeVisits(Integer patientMergeJobId, List<VisitMerge> visitMerges) {
+        PatientMergeJob job = patientMergeJobDAO.getById(patientMergeJobId);
+        for (VisitMerge visitMerge : visitMerges) {
+            // the plan was made in an earlier session
+            Visit preferred = visitService.getVisit(visitMerge.getPreferred().getVisitId());
+            Visit nonPreferred = visitService.getVisit(visitMerge.getNonPreferred().getVisitId());
+            if (preferred == null || nonPreferred == null || nonPreferred.isVoided()) {
+                // merged already, by an earlier run of the job
+                continue;
+            }
+            int encounters = emrEncounterDAO.getEncounterIdsByVisit(nonPreferred).size();
+
+            adtService.mergeVisits(preferred, nonPreferred);
+
+            job.setVisitsMerged(job.getVisitsMerged() + 1);
+            job.setEncountersMoved(job.getEncountersMoved() + encounters);
+        }
+        patientMergeJobDAO.saveOrUpdate(job);
+    }
+
+    @Override
+    @Transactional
+    public void completeMergeJob(Integer patientMergeJobId) {
+        PatientMergeJob job = patientMergeJobDAO.getById(patientMergeJobId);
+        if (!job.getNotPreferred().isVoided()) {
+            adtService.mergePatients(job.getPreferred(), job.getNotPreferred());
+        }
+        job.setStatus(PatientMergeJob.Status.COMPLETED);
+        job.setDateCompleted(new Date());
+        patientMergeJobDAO.saveOrUpdate(job);
+    }
+
+    @Override
+    @Transactional
+    public void failMergeJob(Integer patientMergeJobId, String errorMessage) {
+        PatientMergeJob job = patientMergeJobDAO.getById(patientMergeJobId);
+        job.setStatus(PatientMergeJob.Status.FAILED);
+        job.setErrorMessage(StringUtils.abbreviate(errorMessage, MAX_ERROR_MESSAGE_LENGTH));
+        job.setDateCompleted(new Date());
+        patientMergeJobDAO.saveOrUpdate(job);
+    }
+
+    /**
+     * Locks both patients first, so that a concurrent merge of either one waits for this transaction to end, and then
+     * finds the job it queued
+     */
+    private void checkCanQueue(Patient preferred, Patient notPreferred) {
+        List<Integer> patientIds = Arrays.asList(preferred.getPatientId(), notPreferred.getPatientId());
+        patientMergeJobDAO.lockPatients(patientIds);
+        List<PatientMergeJob> pending = patientMergeJobDAO.getPendingJobsForPatients(patientIds);
+        if (!pending.isEmpty()) {
+            throw new APIException("Patient " + pending.get(0).getPreferred().getPatientId() + " or "
+                    + pending.get(0).getNotPreferred().getPatientId() + " is already being merged");
+        }
+        if (executor.getRemainingCapacity() == 0) {
+            throw new APIException("Too many patient merges are waiting, please try again later");
+        }
+    }
+
+    private void queueAfterCommit(final Integer patientMergeJobId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // the job must be committed before a worker can read it
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    queue(patientMergeJobId);
+                }
+            });
+        } else {
+            queue(patientMergeJobId);
+        }
+    }
+
+    private void queue(Integer patientMergeJobId) {
+        if (!executor.submit(new PatientMergeJobRunner(patientMergeJobId, chunkSize, executor))) {
+            // it stays queued, and will be picked up when the jobs are next started
+            log.warn("Could not start patient merge job " + patientMergeJobId + " now");
+        }
+    }
+
+    private boolean isUnknownPatient(Patient patient) {
+        PersonAttribute attribute = patient.getAttribute(emrApiProperties.getUnknownPatientPersonAttributeType());
+        return attribute != null && "true".equals(attribute.getValue());
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import java.util.Date;
+
+/**
+ * A row in the queue of patients who are checked in (have an active visit) at a location. Rows are ordered by visit
+ * start, and a row can be passed back to {@link EmrPatientService#getCheckedInPatients} to fetch the page after it.
+ */
+public class CheckedInPatient {
+	
+	private Integer visitId;
+	
+	private Integer patientId;
+	
+	private Date visitStartDatetime;
+	
+	private String givenName;
+	
+	private String familyName;
+	
+	private String primaryIdentifier;
+	
+	public CheckedInPatient(Integer visitId, Integer patientId, Date visitStartDatetime) {
+		this.visitId = visitId;
+		this.patientId = patientId;
+		this.visitStartDatetime = visitStartDatetime;
+	}
+	
+	public Integer getVisitId() {
+		return visitId;
+	}
+	
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	public Date getVisitStartDatetime() {
+		return visitStartDatetime;
+	}
+	
+	public String getGivenName() {
+		return givenName;
+	}
+	
+	public void setGivenName(String givenName) {
+		this.givenName = givenName;
+	}
+	
+	public String getFamilyName() {
+		return familyName;
+	}
+	
+	public void setFamilyName(String familyName) {
+		this.familyName = familyName;
+	}
+	
+	public String getPrimaryIdentifier() {
+		return primaryIdentifier;
+	}
+	
+	public void setPrimaryIdentifier(String primaryIdentifier) {
+		this.primaryIdentifier = primaryIdentifier;
+	}
+}
@@ -13,12 +13,62 @@
  */
 package org.openmrs.module.emrapi.patient;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonName;
 
 public interface EmrPatientDAO {
 	
 	List<Patient> findPatients(String query, Location checkedInAt, Integer start, Integer length);
+	
+	/**
+	 * Returns the ids of non-voided patients with a non-voided identifier exactly equal to the given one
+	 * 
+	 * @param identifier the exact identifier, e.g. as read from a barcode
+	 * @param identifierTypes only consider identifiers of these types, or of any type if empty
+	 * @return the matching patient ids, without duplicates
+	 */
+	List<Integer> getPatientIdsByIdentifier(String identifier, Collection<PatientIdentifierType> identifierTypes);
+	
+	/**
+	 * Loads the given patients in one query, with their names and identifiers initialized
+	 * 
+	 * @param patientIds the ids of the patients to load
+	 * @return the non-voided patients among them, in the same order as the ids
+	 */
+	List<Patient> getPatientsByIds(List<Integer> patientIds);
+	
+	/**
+	 * Returns the patients with an active visit at the given location, excluding test patients, ordered by visit start
+	 * 
+	 * @param location the visit location
+	 * @param after only return rows after this one, or from the start if null
+	 * @param maxResults the maximum number of rows to return, or all if null
+	 * @return lightweight rows with the patient's preferred name and primary identifier
+	 */
+	List<CheckedInPatient> getCheckedInPatients(Location location, CheckedInPatient after, Integer maxResults);
+	
+	/**
+	 * @param location the visit location
+	 * @return the total number of rows {@link #getCheckedInPatients} would return for the location
+	 */
+	long getCheckedInPatientCount(Location location);
+	
+	/**
+	 * Replaces the name keys of the given person name, removing them if it is voided
+	 * 
+	 * @param personName a saved person name
+	 */
+	void saveNameKeys(PersonName personName);
+	
+	/**
+	 * @param afterPersonNameId only return person names with a greater id, or all if null
+	 * @param maxResults the maximum number of names to return
+	 * @return non-voided person names that have no name keys yet, in id order
+	 */
+	List<PersonName> getPersonNamesWithoutNameKeys(Integer afterPersonNameId, int maxResults);
 }
@@ -17,6 +17,7 @@ import java.util.List;
 
 import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.PersonName;
 
 /**
  * Public API for patient EMR-related functionality.
@@ -26,4 +27,45 @@ public interface EmrPatientService {
 	List<Patient> findPatients(String query, Location checkedInAt, Integer start, Integer length);
 	
 	Patient findPatientByPrimaryId(String primaryId);
+	
+	/**
+	 * Loads the given patients in a single query, skipping voided or missing ones
+	 * 
+	 * @param patientIds the patient ids
+	 * @return the patients, in the same order as the ids
+	 */
+	List<Patient> getPatients(List<Integer> patientIds);
+	
+	/**
+	 * Returns a page of the patients who are checked in at (have an active visit at) the given location or the
+	 * location that supports visits above it, excluding test patients, ordered by visit start.
+	 * 
+	 * @param checkedInAt the location
+	 * @param after the last row of the previous page, or null for the first page
+	 * @param maxResults the page size, or null for all rows
+	 * @return the page of checked-in patients
+	 */
+	List<CheckedInPatient> getCheckedInPatients(Location checkedInAt, CheckedInPatient after, Integer maxResults);
+	
+	/**
+	 * @param checkedInAt the location
+	 * @return the number of patients {@link #getCheckedInPatients} would return over all pages
+	 */
+	long getCheckedInPatientCount(Location checkedInAt);
+	
+	/**
+	 * Updates the keys {@link #findPatients} uses to look up the given person name
+	 * 
+	 * @param personName a saved person name
+	 */
+	void saveNameKeys(PersonName personName);
+	
+	/**
+	 * Creates the name keys of one batch of person names that do not have any yet
+	 * 
+	 * @param afterPersonNameId only consider person names with a greater id, or all if null
+	 * @param maxNames the batch size
+	 * @return the id of the last person name in the batch, or null if there were none left
+	 */
+	Integer createMissingNameKeys(Integer afterPersonNameId, int maxNames);
 }
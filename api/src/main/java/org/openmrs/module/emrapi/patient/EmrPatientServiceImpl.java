@@ -19,11 +19,13 @@ import java.util.List;
 import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonName;
 import org.openmrs.api.APIException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.adt.AdtService;
+import org.springframework.transaction.annotation.Transactional;
 
 public class EmrPatientServiceImpl extends BaseOpenmrsService implements EmrPatientService {
 	
@@ -74,6 +76,14 @@ public class EmrPatientServiceImpl extends BaseOpenmrsService implements EmrPati
 		List<PatientIdentifierType> patientIdentifierTypes = new ArrayList<PatientIdentifierType>();
 		patientIdentifierTypes.add(primaryIdentifierType);
 		
+		for (Integer patientId : dao.getPatientIdsByIdentifier(primaryId, patientIdentifierTypes)) {
+			Patient patient = patientService.getPatient(patientId);
+			// the identifier cache may not have heard yet that the patient was voided or merged
+			if (patient != null && !patient.isVoided()) {
+				return patient;
+			}
+		}
+		
 		List<Patient> patients = patientService.getPatients(null, primaryId, patientIdentifierTypes, true);
 		
 		if (patients.isEmpty()) {
@@ -82,4 +92,36 @@ public class EmrPatientServiceImpl extends BaseOpenmrsService implements EmrPati
 		
 		return patients.get(0);
 	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Patient> getPatients(List<Integer> patientIds) {
+		return dao.getPatientsByIds(patientIds);
+	}
+	
+	@Override
+	public List<CheckedInPatient> getCheckedInPatients(Location checkedInAt, CheckedInPatient after, Integer maxResults) {
+		return dao.getCheckedInPatients(adtService.getLocationThatSupportsVisits(checkedInAt), after, maxResults);
+	}
+	
+	@Override
+	public long getCheckedInPatientCount(Location checkedInAt) {
+		return dao.getCheckedInPatientCount(adtService.getLocationThatSupportsVisits(checkedInAt));
+	}
+	
+	@Override
+	@Transactional
+	public void saveNameKeys(PersonName personName) {
+		dao.saveNameKeys(personName);
+	}
+	
+	@Override
+	@Transactional
+	public Integer createMissingNameKeys(Integer afterPersonNameId, int maxNames) {
+		List<PersonName> personNames = dao.getPersonNamesWithoutNameKeys(afterPersonNameId, maxNames);
+		for (PersonName personName : personNames) {
+			dao.saveNameKeys(personName);
+		}
+		return personNames.isEmpty() ? null : personNames.get(personNames.size() - 1).getPersonNameId();
+	}
 }
@@ -14,26 +14,48 @@
 package org.openmrs.module.emrapi.patient;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.Type;
 import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonName;
 import org.openmrs.Visit;
 import org.openmrs.api.db.hibernate.PatientSearchCriteria;
 import org.openmrs.module.emrapi.EmrApiProperties;
 
 public class HibernateEmrPatientDAO implements EmrPatientDAO {
 	
+	private static final String CHECKED_IN_PATIENT_RESTRICTIONS = "v.location = :location and v.stopDatetime is null "
+	        + "and v.voided = false and v.patient.voided = false and not exists (select pa.personAttributeId "
+	        + "from PersonAttribute pa where pa.person.id = v.patient.id and pa.attributeType = :testPatientAttributeType "
+	        + "and pa.value = 'true' and pa.voided = false)";
+	
 	private SessionFactory sessionFactory;
 	
 	private EmrApiProperties emrApiProperties;
 	
+	private PatientIdentifierCache patientIdentifierCache;
+	
+	private PersonNameKeyGenerator personNameKeyGenerator = new PersonNameKeyGenerator();
+	
 	public void setSessionFactory(SessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
 	}
@@ -42,25 +64,89 @@ public class HibernateEmrPatientDAO implements EmrPatientDAO {
 		this.emrApiProperties = emrApiProperties;
 	}
 	
+	public void setPatientIdentifierCache(PatientIdentifierCache patientIdentifierCache) {
+		this.patientIdentifierCache = patientIdentifierCache;
+	}
+	
 	@Override
 	public List<Patient> findPatients(String query, Location checkedInAt, Integer start, Integer maxResults) {
 		
-		Criteria criteria;
+		if (StringUtils.isNotBlank(query) && !hasDigit(query)) {
+			List<String> phoneticKeys = personNameKeyGenerator.getPhoneticKeys(query);
+			if (!phoneticKeys.isEmpty()) {
+				return findPatientsByNameKeysAndName(query, phoneticKeys, checkedInAt, start, maxResults);
+			}
+		}
+		
+		Criteria criteria = createPatientCriteria(checkedInAt);
+		if (checkedInAt == null || StringUtils.isNotBlank(query)) {
+			criteria = buildCriteria(query, checkedInAt, criteria);
+		}
+		return list(criteria, start, maxResults);
+	}
+	
+	/**
+	 * Lists the patients with a name token matching the phonetic key of each token of the query, which finds spelling
+	 * variants, followed by the patients found by the LIKE search, which finds names the query is only the start of (e.g.
+	 * Jeanette for Jean) and names whose keys have not been backfilled yet. The LIKE search is only run when the name key
+	 * matches do not fill the requested page, as it cannot use an index.
+	 */
+	private List<Patient> findPatientsByNameKeysAndName(String query, List<String> phoneticKeys, Location checkedInAt,
+	        Integer start, Integer maxResults) {
+		int first = start != null ? start : 0;
+		// which patients land on the requested page depends on both lists up to its end
+		Integer limit = maxResults != null ? first + maxResults : null;
+		
+		Set<Patient> merged = new LinkedHashSet<Patient>(list(createNameKeyCriteria(phoneticKeys, checkedInAt), null, limit));
+		if (limit == null || merged.size() < limit) {
+			merged.addAll(list(buildCriteria(query, checkedInAt, createPatientCriteria(checkedInAt)), null, limit));
+		}
+		
+		List<Patient> patients = new ArrayList<Patient>(merged);
+		int from = Math.min(first, patients.size());
+		int to = maxResults != null ? Math.min(from + maxResults, patients.size()) : patients.size();
+		return new ArrayList<Patient>(patients.subList(from, to));
+	}
+	
+	private Criteria createNameKeyCriteria(List<String> phoneticKeys, Location checkedInAt) {
+		Criteria criteria = createPatientCriteria(checkedInAt);
+		criteria.add(Restrictions.eq("voided", false));
+		criteria.add(nameKeyRestriction(phoneticKeys));
+		return criteria;
+	}
+	
+	private Criterion nameKeyRestriction(List<String> phoneticKeys) {
+		StringBuilder sql = new StringBuilder("{alias}.patient_id in (select k.person_id from emr_person_name_key k "
+		        + "inner join person_name pn on pn.person_name_id = k.person_name_id where pn.voided = ? and k.phonetic_key in (");
+		Object[] values = new Object[phoneticKeys.size() + 2];
+		Type[] types = new Type[phoneticKeys.size() + 2];
+		values[0] = Boolean.FALSE;
+		types[0] = Hibernate.BOOLEAN;
+		for (int i = 0; i < phoneticKeys.size(); i++) {
+			sql.append(i == 0 ? "?" : ", ?");
+			values[i + 1] = phoneticKeys.get(i);
+			types[i + 1] = Hibernate.STRING;
+		}
+		// every token of the query has to match some token of the patient's names
+		sql.append(") group by k.person_id having count(distinct k.phonetic_key) = ?)");
+		values[values.length - 1] = phoneticKeys.size();
+		types[types.length - 1] = Hibernate.INTEGER;
+		return Restrictions.sqlRestriction(sql.toString(), values, types);
+	}
+	
+	private Criteria createPatientCriteria(Location checkedInAt) {
 		if (checkedInAt != null) {
-			criteria = sessionFactory.getCurrentSession().createCriteria(Visit.class);
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Visit.class);
 			criteria.setProjection(Property.forName("patient"));
 			criteria.add(Restrictions.isNull("stopDatetime"));
 			criteria.add(Restrictions.eq("location", checkedInAt));
-			Criteria patientCriteria = criteria.createCriteria("patient");
-			if (StringUtils.isNotBlank(query)) {
-				patientCriteria = buildCriteria(query, patientCriteria);
-			}
-			criteria = patientCriteria;
+			return criteria.createCriteria("patient");
 		} else {
-			criteria = sessionFactory.getCurrentSession().createCriteria(Patient.class);
-			criteria = buildCriteria(query, criteria);
+			return sessionFactory.getCurrentSession().createCriteria(Patient.class);
 		}
-		
+	}
+	
+	private List<Patient> list(Criteria criteria, Integer start, Integer maxResults) {
 		if (start != null) {
 			criteria.setFirstResult(start);
 		}
@@ -72,9 +158,183 @@ public class HibernateEmrPatientDAO implements EmrPatientDAO {
 		return (List<Patient>) criteria.list();
 	}
 	
-	private Criteria buildCriteria(String query, Criteria criteria) {
-		if (query.matches(".*\\d.*")) {
-			// has at least one digit, so treat as an identifier
+	@Override
+	public void saveNameKeys(PersonName personName) {
+		Session session = sessionFactory.getCurrentSession();
+		session.createQuery("delete from PersonNameKey k where k.personNameId = :personNameId")
+		        .setInteger("personNameId", personName.getPersonNameId()).executeUpdate();
+		if (personName.isVoided()) {
+			return;
+		}
+		for (String token : personNameKeyGenerator.getTokens(personName)) {
+			String phoneticKey = personNameKeyGenerator.getPhoneticKey(token);
+			session.save(new PersonNameKey(personName.getPersonNameId(), personName.getPerson().getPersonId(),
+			        StringUtils.left(token, 50), StringUtils.left(phoneticKey, 50)));
+		}
+	}
+	
+	@Override
+	public List<PersonName> getPersonNamesWithoutNameKeys(Integer afterPersonNameId, int maxResults) {
+		return sessionFactory.getCurrentSession()
+		        .createQuery("from PersonName pn where pn.voided = false and pn.personNameId > :afterPersonNameId and not exists "
+		                + "(select k.personNameKeyId from PersonNameKey k where k.personNameId = pn.personNameId) "
+		                + "order by pn.personNameId")
+		        .setInteger("afterPersonNameId", afterPersonNameId != null ? afterPersonNameId : 0)
+		        .setMaxResults(maxResults).list();
+	}
+	
+	@Override
+	public List<Integer> getPatientIdsByIdentifier(String identifier, Collection<PatientIdentifierType> identifierTypes) {
+		List<PatientIdentifierCache.Match> matches = patientIdentifierCache != null ? patientIdentifierCache.get(identifier)
+		        : null;
+		if (matches == null) {
+			long generation = patientIdentifierCache != null ? patientIdentifierCache.getGeneration() : 0;
+			matches = new ArrayList<PatientIdentifierCache.Match>();
+			List<Object[]> rows = sessionFactory.getCurrentSession()
+			        .createQuery("select pi.patient.id, pi.identifierType.id from PatientIdentifier pi "
+			                + "where pi.identifier = :identifier and pi.voided = false and pi.patient.voided = false")
+			        .setString("identifier", identifier).list();
+			for (Object[] row : rows) {
+				matches.add(new PatientIdentifierCache.Match((Integer) row[0], (Integer) row[1]));
+			}
+			if (patientIdentifierCache != null) {
+				patientIdentifierCache.put(identifier, matches, generation);
+			}
+		}
+		
+		Set<Integer> identifierTypeIds = new HashSet<Integer>();
+		if (identifierTypes != null) {
+			for (PatientIdentifierType identifierType : identifierTypes) {
+				identifierTypeIds.add(identifierType.getPatientIdentifierTypeId());
+			}
+		}
+		
+		List<Integer> patientIds = new ArrayList<Integer>();
+		for (PatientIdentifierCache.Match match : matches) {
+			if ((identifierTypeIds.isEmpty() || identifierTypeIds.contains(match.getIdentifierTypeId()))
+			        && !patientIds.contains(match.getPatientId())) {
+				patientIds.add(match.getPatientId());
+			}
+		}
+		return patientIds;
+	}
+	
+	@Override
+	public List<Patient> getPatientsByIds(List<Integer> patientIds) {
+		if (patientIds.isEmpty()) {
+			return new ArrayList<Patient>();
+		}
+		List<Patient> loaded = sessionFactory.getCurrentSession()
+		        .createQuery("select distinct p from Patient p left join fetch p.names left join fetch p.identifiers "
+		                + "where p.patientId in (:patientIds) and p.voided = false")
+		        .setParameterList("patientIds", patientIds).list();
+		
+		Map<Integer, Patient> patientsById = new HashMap<Integer, Patient>();
+		for (Patient patient : loaded) {
+			patientsById.put(patient.getPatientId(), patient);
+		}
+		List<Patient> patients = new ArrayList<Patient>();
+		for (Integer patientId : patientIds) {
+			Patient patient = patientsById.remove(patientId);
+			if (patient != null) {
+				patients.add(patient);
+			}
+		}
+		return patients;
+	}
+	
+	@Override
+	public List<CheckedInPatient> getCheckedInPatients(Location location, CheckedInPatient after, Integer maxResults) {
+		String hql = "select v.visitId, v.patient.id, v.startDatetime from Visit v where " + CHECKED_IN_PATIENT_RESTRICTIONS;
+		if (after != null) {
+			// seek past the last row of the previous page instead of counting off an offset
+			hql += " and (v.startDatetime > :afterStart or (v.startDatetime = :afterStart and v.visitId > :afterVisitId))";
+		}
+		hql += " order by v.startDatetime asc, v.visitId asc";
+		
+		Query query = createCheckedInPatientQuery(hql, location);
+		if (after != null) {
+			query.setTimestamp("afterStart", after.getVisitStartDatetime());
+			query.setInteger("afterVisitId", after.getVisitId());
+		}
+		if (maxResults != null) {
+			query.setMaxResults(maxResults);
+		}
+		
+		List<CheckedInPatient> checkedInPatients = new ArrayList<CheckedInPatient>();
+		Set<Integer> patientIds = new HashSet<Integer>();
+		for (Object[] row : (List<Object[]>) query.list()) {
+			checkedInPatients.add(new CheckedInPatient((Integer) row[0], (Integer) row[1], (Date) row[2]));
+			patientIds.add((Integer) row[1]);
+		}
+		if (patientIds.isEmpty()) {
+			return checkedInPatients;
+		}
+		
+		// one query each for names and identifiers, whatever the page size
+		Map<Integer, Object[]> names = new HashMap<Integer, Object[]>();
+		List<Object[]> nameRows = sessionFactory.getCurrentSession()
+		        .createQuery("select pn.person.id, pn.givenName, pn.familyName from PersonName pn "
+		                + "where pn.person.id in (:patientIds) and pn.voided = false order by pn.preferred desc, pn.personNameId asc")
+		        .setParameterList("patientIds", patientIds).list();
+		for (Object[] row : nameRows) {
+			if (!names.containsKey(row[0])) {
+				names.put((Integer) row[0], row);
+			}
+		}
+		
+		Map<Integer, String> identifiers = new HashMap<Integer, String>();
+		List<Object[]> identifierRows = sessionFactory.getCurrentSession()
+		        .createQuery("select pi.patient.id, pi.identifier from PatientIdentifier pi "
+		                + "where pi.patient.id in (:patientIds) and pi.identifierType = :identifierType and pi.voided = false "
+		                + "order by pi.preferred desc, pi.patientIdentifierId asc")
+		        .setParameterList("patientIds", patientIds)
+		        .setEntity("identifierType", emrApiProperties.getPrimaryIdentifierType()).list();
+		for (Object[] row : identifierRows) {
+			if (!identifiers.containsKey(row[0])) {
+				identifiers.put((Integer) row[0], (String) row[1]);
+			}
+		}
+		
+		for (CheckedInPatient checkedInPatient : checkedInPatients) {
+			Object[] name = names.get(checkedInPatient.getPatientId());
+			if (name != null) {
+				checkedInPatient.setGivenName((String) name[1]);
+				checkedInPatient.setFamilyName((String) name[2]);
+			}
+			checkedInPatient.setPrimaryIdentifier(identifiers.get(checkedInPatient.getPatientId()));
+		}
+		return checkedInPatients;
+	}
+	
+	@Override
+	public long getCheckedInPatientCount(Location location) {
+		String hql = "select count(v.visitId) from Visit v where " + CHECKED_IN_PATIENT_RESTRICTIONS;
+		return ((Number) createCheckedInPatientQuery(hql, location).uniqueResult()).longValue();
+	}
+	
+	private Query createCheckedInPatientQuery(String hql, Location location) {
+		Query query = sessionFactory.getCurrentSession().createQuery(hql);
+		query.setEntity("location", location);
+		query.setEntity("testPatientAttributeType", emrApiProperties.getTestPatientPersonAttributeType());
+		return query;
+	}
+	
+	private boolean hasDigit(String query) {
+		return query.matches(".*\\d.*");
+	}
+	
+	private Criteria buildCriteria(String query, Location checkedInAt, Criteria criteria) {
+		if (hasDigit(query)) {
+			// has at least one digit, so treat as an identifier, and if it is an exact match (e.g. a scanned barcode)
+			// there is no need for the much slower fuzzy identifier search, unless none of the patients it matches is
+			// checked in at the location
+			List<Integer> patientIds = getPatientIdsByIdentifier(query, emrApiProperties.getIdentifierTypesToSearch());
+			if (!patientIds.isEmpty()
+			        && (checkedInAt == null || !list(restrictToPatients(createPatientCriteria(checkedInAt), patientIds), 0, 1)
+			                .isEmpty())) {
+				return restrictToPatients(criteria, patientIds);
+			}
 			return new PatientSearchCriteria(sessionFactory, criteria).prepareCriteria(null, query,
 			    emrApiProperties.getIdentifierTypesToSearch(), true, true, true);
 		} else {
@@ -83,4 +343,10 @@ public class HibernateEmrPatientDAO implements EmrPatientDAO {
 			    new ArrayList<PatientIdentifierType>(), true, true, true);
 		}
 	}
+	
+	private Criteria restrictToPatients(Criteria criteria, List<Integer> patientIds) {
+		criteria.add(Restrictions.in("id", patientIds));
+		criteria.add(Restrictions.eq("voided", false));
+		return criteria;
+	}
 }
@@ -0,0 +1,200 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.User;
+import org.openmrs.api.UserService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.emrapi.EmrApiConstants;
+
+/**
+ * Keeps the patients last viewed by each user in memory, most recent first, so that recording a view and listing the
+ * last viewed patients never touch the database. A user's list is read from the
+ * {@link EmrApiConstants#USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS} user property the first time it is needed, and
+ * changes are written back to that property by {@link #flush()}, so any number of views between two flushes cost a
+ * single write. Users with unsaved changes are never evicted.
+ */
+public class LastViewedPatientStore {
+
+	public static final int DEFAULT_MAX_USERS = 1000;
+
+	/**
+	 * The user property is a varchar(255)
+	 */
+	private static final int MAX_PROPERTY_LENGTH = 255;
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private final Map<Integer, LinkedList<Integer>> patientIdsByUser;
+
+	private final Set<Integer> dirtyUserIds = new LinkedHashSet<Integer>();
+
+	public LastViewedPatientStore() {
+		this(DEFAULT_MAX_USERS);
+	}
+
+	public LastViewedPatientStore(final int maxUsers) {
+		patientIdsByUser = new LinkedHashMap<Integer, LinkedList<Integer>>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, LinkedList<Integer>> eldest) {
+				return size() > maxUsers && !dirtyUserIds.contains(eldest.getKey());
+			}
+		};
+	}
+
+	/**
+	 * @param user
+	 * @return the ids of the patients last viewed by the user, most recent first
+	 */
+	public List<Integer> getPatientIds(User user) {
+		if (user == null || user.getId() == null) {
+			return Collections.emptyList();
+		}
+		synchronized (this) {
+			LinkedList<Integer> patientIds = patientIdsByUser.get(user.getId());
+			if (patientIds != null) {
+				return new ArrayList<Integer>(patientIds);
+			}
+		}
+		LinkedList<Integer> loaded = load(user.getId());
+		synchronized (this) {
+			// another thread may have recorded a view while we were reading the user property
+			LinkedList<Integer> patientIds = patientIdsByUser.get(user.getId());
+			if (patientIds == null) {
+				patientIds = loaded;
+				patientIdsByUser.put(user.getId(), patientIds);
+			}
+			return new ArrayList<Integer>(patientIds);
+		}
+	}
+
+	/**
+	 * Moves the patient to the start of the user's list, dropping the oldest patients beyond the limit
+	 *
+	 * @param user
+	 * @param patientId
+	 * @param limit the maximum number of patients to remember for the user
+	 */
+	public void add(User user, Integer patientId, int limit) {
+		getPatientIds(user);
+		synchronized (this) {
+			LinkedList<Integer> patientIds = patientIdsByUser.get(user.getId());
+			if (patientIds == null) {
+				patientIds = new LinkedList<Integer>();
+				patientIdsByUser.put(user.getId(), patientIds);
+			}
+			patientIds.remove(patientId);
+			if (limit > 0) {
+				patientIds.addFirst(patientId);
+			}
+			while (patientIds.size() > Math.max(limit, 0)) {
+				patientIds.removeLast();
+			}
+			dirtyUserIds.add(user.getId());
+		}
+	}
+
+	public synchronized boolean hasPendingWrites() {
+		return !dirtyUserIds.isEmpty();
+	}
+
+	/**
+	 * Writes the lists that changed since the last flush to the users' properties. Must be called with an open
+	 * session, e.g. from a daemon thread.
+	 */
+	public void flush() {
+		Map<Integer, List<Integer>> pending = new LinkedHashMap<Integer, List<Integer>>();
+		synchronized (this) {
+			for (Integer userId : dirtyUserIds) {
+				LinkedList<Integer> patientIds = patientIdsByUser.get(userId);
+				pending.put(userId, patientIds == null ? new ArrayList<Integer>() : new ArrayList<Integer>(patientIds));
+			}
+			dirtyUserIds.clear();
+		}
+
+		UserService userService = Context.getUserService();
+		for (Map.Entry<Integer, List<Integer>> entry : pending.entrySet()) {
+			try {
+				User user = userService.getUser(entry.getKey());
+				if (user != null) {
+					userService.setUserProperty(user, EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS,
+					    toPropertyValue(entry.getValue()));
+				}
+			}
+			catch (Exception e) {
+				log.error("Failed to save the last viewed patients of user " + entry.getKey(), e);
+				synchronized (this) {
+					dirtyUserIds.add(entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards everything held in memory, including changes that have not been flushed
+	 */
+	public synchronized void clear() {
+		patientIdsByUser.clear();
+		dirtyUserIds.clear();
+	}
+
+	private LinkedList<Integer> load(Integer userId) {
+		LinkedList<Integer> patientIds = new LinkedList<Integer>();
+		//The user object cached in the user's context may not be up to date
+		User user = Context.getUserService().getUser(userId);
+		String property = user == null ? null : user
+		        .getUserProperty(EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS);
+		if (StringUtils.isNotBlank(property)) {
+			//the property holds the most recently viewed patient last
+			String[] ids = property.replaceAll("\\s", "").split(",");
+			for (int i = ids.length - 1; i >= 0; i--) {
+				try {
+					Integer id = Integer.valueOf(ids[i]);
+					if (!patientIds.contains(id)) {
+						patientIds.addLast(id);
+					}
+				}
+				catch (NumberFormatException e) {}
+			}
+		}
+		return patientIds;
+	}
+
+	private String toPropertyValue(List<Integer> patientIds) {
+		List<Integer> oldestFirst = new ArrayList<Integer>(patientIds);
+		Collections.reverse(oldestFirst);
+		String property = StringUtils.join(oldestFirst, ",");
+		if (property.length() > MAX_PROPERTY_LENGTH) {
+			//exceeded the user property max size and hence needs trimming.
+			//find the last comma before index 255 and cut off from there
+			//RA-200 Wyclif says patients ids at the end of the string are the most recent
+			//so that is why we trim from begining instead of end.
+			property = property.substring(property.indexOf(',', property.length() - MAX_PROPERTY_LENGTH) + 1);
+		}
+		return property;
+	}
+}
@@ -31,6 +31,7 @@ import org.openmrs.api.EncounterService;
 import org.openmrs.api.VisitService;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.adt.AdtService;
+import org.openmrs.module.emrapi.adt.VisitOverlapFinder;
 import org.openmrs.module.emrapi.diagnosis.Diagnosis;
 import org.openmrs.module.emrapi.diagnosis.DiagnosisService;
 import org.openmrs.module.emrapi.visit.VisitDomainWrapper;
@@ -221,14 +222,7 @@ public class PatientDomainWrapper {
 		List<Visit> otherVisits = visitService.getVisitsByPatient(otherPatient, true, false);
 		List<Visit> myVisits = getAllVisits();
 
-		for (Visit v : myVisits) {
-			for (Visit o : otherVisits) {
-				if (adtService.visitsOverlap(v, o)) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return new VisitOverlapFinder().anyOverlap(myVisits, otherVisits);
 	}
 
 	public boolean isUnknownPatient() {
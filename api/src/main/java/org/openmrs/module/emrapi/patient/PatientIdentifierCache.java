@@ -0,0 +1,114 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used cache of which patients own a given identifier string. Only lookups that found at least
+ * one patient are cached, so a newly entered identifier is always looked up in the database. Entries must be
+ * invalidated whenever a patient identifier is created, changed, voided or purged.
+ * <p/>
+ * Every invalidation starts a new generation, and matches looked up during an earlier generation are not cached, so that
+ * a lookup that raced with a change can't put the old matches back.
+ */
+public class PatientIdentifierCache {
+	
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	
+	private final Map<String, List<Match>> matchesByIdentifier;
+	
+	private long generation;
+	
+	public PatientIdentifierCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+	
+	public PatientIdentifierCache(final int maxSize) {
+		matchesByIdentifier = new LinkedHashMap<String, List<Match>>(16, 0.75f, true) {
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<Match>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * @param identifier the exact identifier string
+	 * @return the cached matches, or null if the identifier is not cached
+	 */
+	public synchronized List<Match> get(String identifier) {
+		return matchesByIdentifier.get(identifier);
+	}
+	
+	/**
+	 * @return the current generation, to be read before looking up the matches to put
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * @param identifier the exact identifier string
+	 * @param matches the matches found in the database
+	 * @param lookedUpInGeneration the generation before the matches were looked up
+	 */
+	public synchronized void put(String identifier, List<Match> matches, long lookedUpInGeneration) {
+		if (matches == null || matches.isEmpty() || lookedUpInGeneration != generation) {
+			return;
+		}
+		matchesByIdentifier.put(identifier, Collections.unmodifiableList(matches));
+	}
+	
+	public synchronized void invalidate(String identifier) {
+		generation++;
+		matchesByIdentifier.remove(identifier);
+	}
+	
+	public synchronized void clear() {
+		generation++;
+		matchesByIdentifier.clear();
+	}
+	
+	public synchronized int size() {
+		return matchesByIdentifier.size();
+	}
+	
+	/**
+	 * A non-voided patient identifier with the cached identifier string
+	 */
+	public static class Match {
+		
+		private final Integer patientId;
+		
+		private final Integer identifierTypeId;
+		
+		public Match(Integer patientId, Integer identifierTypeId) {
+			this.patientId = patientId;
+			this.identifierTypeId = identifierTypeId;
+		}
+		
+		public Integer getPatientId() {
+			return patientId;
+		}
+		
+		public Integer getIdentifierTypeId() {
+			return identifierTypeId;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+/**
+ * One token of a person name, with its phonetic key, so names can be searched with indexed equality lookups.
+ * 
+ * @see PersonNameKeyGenerator
+ */
+public class PersonNameKey {
+	
+	private Integer personNameKeyId;
+	
+	private Integer personNameId;
+	
+	private Integer personId;
+	
+	private String nameToken;
+	
+	private String phoneticKey;
+	
+	public PersonNameKey() {
+	}
+	
+	public PersonNameKey(Integer personNameId, Integer personId, String nameToken, String phoneticKey) {
+		this.personNameId = personNameId;
+		this.personId = personId;
+		this.nameToken = nameToken;
+		this.phoneticKey = phoneticKey;
+	}
+	
+	public Integer getPersonNameKeyId() {
+		return personNameKeyId;
+	}
+	
+	public void setPersonNameKeyId(Integer personNameKeyId) {
+		this.personNameKeyId = personNameKeyId;
+	}
+	
+	public Integer getPersonNameId() {
+		return personNameId;
+	}
+	
+	public void setPersonNameId(Integer personNameId) {
+		this.personNameId = personNameId;
+	}
+	
+	public Integer getPersonId() {
+		return personId;
+	}
+	
+	public void setPersonId(Integer personId) {
+		this.personId = personId;
+	}
+	
+	public String getNameToken() {
+		return nameToken;
+	}
+	
+	public void setNameToken(String nameToken) {
+		this.nameToken = nameToken;
+	}
+	
+	public String getPhoneticKey() {
+		return phoneticKey;
+	}
+	
+	public void setPhoneticKey(String phoneticKey) {
+		this.phoneticKey = phoneticKey;
+	}
+}
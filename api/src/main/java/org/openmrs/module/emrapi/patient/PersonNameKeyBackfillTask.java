@@ -0,0 +1,41 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Creates the name keys of existing person names, e.g. after the module is first installed. Names saved afterwards are
+ * kept up to date by {@link org.openmrs.module.emrapi.event.PersonNameEventListener}.
+ * 
+ * @see EmrPatientService#createMissingNameKeys(Integer, int)
+ */
+public class PersonNameKeyBackfillTask extends AbstractTask {
+	
+	public static final int BATCH_SIZE = 500;
+	
+	@Override
+	public void execute() {
+		EmrPatientService emrPatientService = Context.getService(EmrPatientService.class);
+		Integer lastPersonNameId = null;
+		do {
+			lastPersonNameId = emrPatientService.createMissingNameKeys(lastPersonNameId, BATCH_SIZE);
+			// keep the session from growing with every batch
+			Context.flushSession();
+			Context.clearSession();
+		} while (lastPersonNameId != null);
+	}
+	
+}
@@ -0,0 +1,127 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.PersonName;
+
+/**
+ * Splits person names into tokens and computes the keys stored in the person name key table. The phonetic key is a
+ * simple rule-based encoding tuned for the French and Haitian Creole spellings seen at our sites, so that e.g. "Jean"
+ * and "Jan", "Philippe" and "Filip" or "Pierre" and "Pyè" get the same key.
+ */
+public class PersonNameKeyGenerator {
+	
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[\\s\\-'.,]+");
+	
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+	
+	private static final Pattern NON_LETTERS = Pattern.compile("[^a-z]");
+	
+	/**
+	 * Rewrite rules applied in order to a normalized token. Upper case letters are placeholders that later rules must
+	 * not rewrite, e.g. the hard "g" of "gue"
+	 */
+	private static final String[][] PHONETIC_RULES = {
+	        { "x", "ks" },
+	        { "ph", "f" }, { "th", "t" }, { "(sch|ch|sh)", "x" },
+	        { "qu", "k" }, { "q", "k" }, { "ck", "k" }, { "c(?=[eiy])", "s" }, { "c", "k" },
+	        { "gu(?=[eiy])", "G" }, { "dj", "j" }, { "g(?=[eiy])", "j" }, { "je(?=[aou])", "j" },
+	        { "(.)\\1+", "$1" },
+	        { "(eaux?|aux?|au)", "o" }, { "ea", "a" },
+	        { "(ai|ei)[mn](?![aeiou])", "in" }, { "[ae][mn](?![aeiou])", "an" }, { "o[mn](?![aeiou])", "on" },
+	        { "[iu][mn](?![aeiou])", "in" },
+	        { "oi", "ua" }, { "ou", "u" }, { "w", "u" }, { "y", "i" }, { "(ai|ei)", "e" },
+	        { "z", "s" }, { "h", "" },
+	        { "[sxtd]+$", "" }, { "(?<=[^aeiou])e$", "" }, { "[sxtd]+$", "" },
+	        { "(.)\\1+", "$1" },
+	        { "e[rz]$", "e" }, { "ie$", "i" } };
+	
+	private static final Pattern[] PHONETIC_PATTERNS = new Pattern[PHONETIC_RULES.length];
+	
+	static {
+		for (int i = 0; i < PHONETIC_RULES.length; i++) {
+			PHONETIC_PATTERNS[i] = Pattern.compile(PHONETIC_RULES[i][0]);
+		}
+	}
+	
+	/**
+	 * @return the distinct normalized tokens of all parts of the given name
+	 */
+	public Set<String> getTokens(PersonName personName) {
+		Set<String> tokens = new LinkedHashSet<String>();
+		for (String part : new String[] { personName.getGivenName(), personName.getMiddleName(),
+		        personName.getFamilyNamePrefix(), personName.getFamilyName(), personName.getFamilyName2() }) {
+			tokens.addAll(getTokens(part));
+		}
+		return tokens;
+	}
+	
+	/**
+	 * @return the distinct normalized tokens of the given text, e.g. a search query
+	 */
+	public Set<String> getTokens(String text) {
+		Set<String> tokens = new LinkedHashSet<String>();
+		if (StringUtils.isBlank(text)) {
+			return tokens;
+		}
+		for (String token : TOKEN_SEPARATOR.split(text)) {
+			String normalized = normalize(token);
+			if (normalized.length() > 0) {
+				tokens.add(normalized);
+			}
+		}
+		return tokens;
+	}
+	
+	/**
+	 * @return the distinct phonetic keys of the tokens of the given text
+	 */
+	public List<String> getPhoneticKeys(String text) {
+		Set<String> keys = new LinkedHashSet<String>();
+		for (String token : getTokens(text)) {
+			keys.add(getPhoneticKey(token));
+		}
+		return new ArrayList<String>(keys);
+	}
+	
+	/**
+	 * Lower-cases the token and strips accents and anything that is not a letter. A cedilla is spelled out as "s", as
+	 * "c" would change how the token sounds.
+	 */
+	public String normalize(String token) {
+		String decomposed = Normalizer.normalize(token.toLowerCase().replace('\u00e7', 's'), Normalizer.Form.NFD);
+		return NON_LETTERS.matcher(DIACRITICS.matcher(decomposed).replaceAll("")).replaceAll("");
+	}
+	
+	/**
+	 * @param normalizedToken a token as returned by {@link #normalize(String)}
+	 * @return the phonetic key of the token
+	 */
+	public String getPhoneticKey(String normalizedToken) {
+		String key = normalizedToken;
+		for (int i = 0; i < PHONETIC_PATTERNS.length; i++) {
+			key = PHONETIC_PATTERNS[i].matcher(key).replaceAll(PHONETIC_RULES[i][1]);
+		}
+		key = key.toLowerCase();
+		return key.length() > 0 ? key : normalizedToken;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import java.io.InputStream;
+
+/**
+ * Decodes base64 text as it is read, so that the decoded bytes never have to be held in memory all at once. Like
+ * {@link javax.xml.bind.DatatypeConverter#parseBase64Binary(String)} it skips characters outside the alphabet, such
+ * as line breaks, and it also accepts the url-safe alphabet and a data URI such as
+ * <code>data:image/jpeg;base64,...</code>
+ */
+public class Base64DecodingInputStream extends InputStream {
+
+    private static final int[] VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = -1;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            VALUES[alphabet.charAt(i)] = i;
+        }
+        VALUES['-'] = 62;
+        VALUES['_'] = 63;
+    }
+
+    private final CharSequence text;
+
+    private int position;
+
+    private final byte[] decoded = new byte[3];
+
+    private int decodedPosition;
+
+    private int decodedLength;
+
+    public Base64DecodingInputStream(CharSequence text) {
+        this.text = text;
+        if (text.length() > 5 && text.subSequence(0, 5).toString().equals("data:")) {
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == ',') {
+                    position = i + 1;
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int read() {
+        if (decodedPosition == decodedLength && !decodeNext()) {
+            return -1;
+        }
+        return decoded[decodedPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        int count = 0;
+        while (count < length) {
+            if (decodedPosition == decodedLength && !decodeNext()) {
+                break;
+            }
+            int n = Math.min(length - count, decodedLength - decodedPosition);
+            System.arraycopy(decoded, decodedPosition, bytes, offset + count, n);
+            decodedPosition += n;
+            count += n;
+        }
+        return count == 0 && length > 0 ? -1 : count;
+    }
+
+    /**
+     * Decodes the next four characters into up to three bytes
+     */
+    private boolean decodeNext() {
+        int bits = 0;
+        int count = 0;
+        while (count < 4 && position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == '=') {
+                // padding, nothing comes after it
+                position = text.length();
+                break;
+            }
+            int value = c < VALUES.length ? VALUES[c] : -1;
+            if (value >= 0) {
+                bits = bits << 6 | value;
+                count++;
+            }
+        }
+        if (count < 2) {
+            return false;
+        }
+        bits <<= 6 * (4 - count);
+        decoded[0] = (byte) (bits >> 16);
+        decoded[1] = (byte) (bits >> 8);
+        decoded[2] = (byte) bits;
+        decodedPosition = 0;
+        decodedLength = count - 1;
+        return true;
+    }
+}
@@ -16,6 +16,8 @@ package org.openmrs.module.emrapi.person.image;
 import org.openmrs.Person;
 import org.openmrs.api.OpenmrsService;
 
+import java.io.InputStream;
+
 /**
  * Public API for person image functionality.
  */
@@ -29,6 +31,44 @@ public interface EmrPersonImageService extends OpenmrsService {
      */
     public PersonImage savePersonImage(PersonImage personImage);
 
+    /**
+     * Saves an image for the specified <code>Person</code> as it is read from the stream. A jpeg is stored as it is
+     * if it has no more pixels than allowed, any other image is decoded, scaled down by a whole factor if it has too
+     * many pixels, and stored as a jpeg.
+     *
+     * @param person
+     * @param imageData the image in a format that can be read by {@link javax.imageio.ImageIO}, the caller closes it
+     * @return the saved image
+     * @throws IllegalArgumentException if the data is too large, not an image, or a truncated or corrupt one
+     * @throws org.openmrs.api.APIException if save fails
+     */
+    public PersonImage savePersonImage(Person person, InputStream imageData);
+
     public PersonImage getCurrentPersonImage(Person person);
 
+    /**
+     * Gets the smallest thumbnail that is at least the given size, making it if it is missing or older than the image
+     *
+     * @param person
+     * @param size the largest width or height wanted, or null for the full-size image
+     * @return the thumbnail, or the full-size image if no thumbnail is large enough
+     */
+    public PersonImage getCurrentPersonImage(Person person, Integer size);
+
+    /**
+     * Makes the thumbnails that are missing, or older than their image, e.g. after the sizes have been changed
+     *
+     * @return the number of images whose thumbnails were made
+     */
+    public int createMissingThumbnails();
+
+    /**
+     * Moves the images and thumbnails stored flat in the person image directory, as they were before images were
+     * sharded, down into their shard directories. Images are found in either place meanwhile.
+     *
+     * @return the number of files moved
+     * @see PersonImageDirectory
+     */
+    public int moveImagesToShardedDirectories();
+
 }
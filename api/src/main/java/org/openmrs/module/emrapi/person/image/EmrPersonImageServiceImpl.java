@@ -21,11 +21,19 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.emrapi.EmrApiProperties;
 
+import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
-import javax.xml.bind.DatatypeConverter;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
 
 public class EmrPersonImageServiceImpl extends BaseOpenmrsService implements EmrPersonImageService {
 
@@ -35,6 +43,8 @@ public class EmrPersonImageServiceImpl extends BaseOpenmrsService implements Emr
 
     private EmrApiProperties emrApiProperties;
 
+    private PersonImageThumbnailer thumbnailer = new PersonImageThumbnailer();
+
     @Override
     public PersonImage savePersonImage(PersonImage personImage) {
         Person person = personImage.getPerson();
@@ -42,28 +52,265 @@ public class EmrPersonImageServiceImpl extends BaseOpenmrsService implements Emr
 
         if (base64EncodedImage == null || base64EncodedImage.isEmpty()) return personImage;
 
-        try {
-            File imageFile = new File(String.format("%s/%s.%s", emrApiProperties.getPersonImageDirectory().getAbsolutePath(), person.getUuid(), imageFormat));
-
-            byte[] decodedBytes = DatatypeConverter.parseBase64Binary(base64EncodedImage);
-            BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(decodedBytes));
-            ImageIO.write(bufferedImage, imageFormat, imageFile);
-            bufferedImage.flush();
+        PersonImage saved = savePersonImage(person, new Base64DecodingInputStream(base64EncodedImage));
+        personImage.setSavedImage(saved.getSavedImage());
+        return personImage;
+    }
 
-            personImage.setSavedImage(imageFile);
+    @Override
+    public PersonImage savePersonImage(Person person, InputStream imageData) {
+        PersonImageDirectory directory = getDirectory();
+        File imageFile = directory.getFile(person.getUuid(), null);
+        File uploadFile = null;
+        try {
+            imageFile.getParentFile().mkdirs();
+            // in the same directory, so that it can be renamed into place
+            uploadFile = File.createTempFile("upload", ".tmp", imageFile.getParentFile());
+            copy(imageData, uploadFile, emrApiProperties.getPersonImageMaxBytes());
+            saveImage(person.getUuid(), uploadFile);
             log.info("Successfully created patient image at " + imageFile);
-
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Update patient image failed for : " + person);
             throw new APIException("Could not save patient image", e);
+        } finally {
+            if (uploadFile != null) {
+                uploadFile.delete();
+            }
+        }
+        return new PersonImage(person, imageFile);
+    }
+
+    /**
+     * Reads the size of the uploaded image from its header, and decodes no more of it than is needed: a jpeg that is
+     * small enough is only decoded at a fraction of its size for the thumbnails
+     */
+    private void saveImage(String personUuid, File uploadFile) throws IOException {
+        List<Integer> thumbnailSizes = emrApiProperties.getPersonImageThumbnailSizes();
+        int maxPixels = emrApiProperties.getPersonImageMaxPixels();
+        boolean keepUpload;
+        BufferedImage image;
+
+        ImageInputStream in = ImageIO.createImageInputStream(uploadFile);
+        if (in == null) {
+            throw new IOException("Could not read " + uploadFile);
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("The person image is not in a known image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                long pixels = (long) width * height;
+                keepUpload = imageFormat.equalsIgnoreCase(reader.getFormatName()) && pixels <= maxPixels;
+                if (keepUpload) {
+                    int largestThumbnail = thumbnailSizes.isEmpty() ? 0 : thumbnailSizes.get(thumbnailSizes.size() - 1);
+                    image = largestThumbnail == 0 ? null
+                            : read(reader, getThumbnailSubsampling(width, height, largestThumbnail));
+                } else {
+                    image = read(reader, (int) Math.ceil(Math.sqrt((double) pixels / maxPixels)));
+                }
+            } catch (IIOException e) {
+                // the uploaded data is truncated or corrupt, the client's mistake rather than ours
+                throw new IllegalArgumentException("The person image could not be read: " + e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+
+        PersonImageDirectory directory = getDirectory();
+        File imageFile = directory.getFile(personUuid, null);
+        synchronized (PersonImageDirectory.getLock(personUuid)) {
+            // if the new ones cannot be made, the old ones must not pass for them, and where modification times are
+            // kept in whole seconds they may look as new as the image
+            for (Integer size : thumbnailSizes) {
+                directory.getFile(personUuid, size).delete();
+            }
+            if (keepUpload) {
+                thumbnailer.replace(uploadFile, imageFile);
+            } else {
+                thumbnailer.write(image, imageFile);
+            }
+            // or the old image would be moved down over the new one
+            directory.deleteFlatFiles(personUuid, thumbnailSizes);
+            if (image != null) {
+                try {
+                    createThumbnails(personUuid, image);
+                } catch (IOException e) {
+                    // they will be made when they are first asked for
+                    log.error("Could not make the thumbnails of " + imageFile, e);
+                }
+            }
+        }
+        if (image != null) {
+            image.flush();
+        }
+    }
+
+    private BufferedImage read(ImageReader reader, int subsampling) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (subsampling > 1) {
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        return reader.read(0, param);
+    }
+
+    private void copy(InputStream in, File file, int maxBytes) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                total += count;
+                if (total > maxBytes) {
+                    throw new IllegalArgumentException("The person image is larger than " + maxBytes + " bytes");
+                }
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            out.close();
         }
-        return personImage;
     }
 
     @Override
     public PersonImage getCurrentPersonImage(Person person) {
-        File file = new File(String.format("%s/%s.%s", emrApiProperties.getPersonImageDirectory().getAbsolutePath(), person.getUuid(), imageFormat));
-        return new PersonImage(person, file);
+        return new PersonImage(person, getDirectory().findFile(person.getUuid(), null));
+    }
+
+    @Override
+    public PersonImage getCurrentPersonImage(Person person, Integer size) {
+        PersonImageDirectory directory = getDirectory();
+        File imageFile = directory.findFile(person.getUuid(), null);
+        Integer thumbnailSize = size == null ? null : getThumbnailSize(size);
+        if (thumbnailSize == null) {
+            return new PersonImage(person, imageFile);
+        }
+        File thumbnailFile = directory.findFile(person.getUuid(), thumbnailSize);
+        if (imageFile.isFile() && isOutdated(thumbnailFile, imageFile)) {
+            try {
+                createThumbnails(person.getUuid(), null);
+                thumbnailFile = directory.getFile(person.getUuid(), thumbnailSize);
+            }
+            catch (IOException e) {
+                log.error("Could not make the thumbnails of " + imageFile, e);
+            }
+        }
+        return new PersonImage(person, thumbnailFile.isFile() ? thumbnailFile : imageFile);
+    }
+
+    @Override
+    public int createMissingThumbnails() {
+        PersonImageDirectory directory = getDirectory();
+        List<Integer> sizes = emrApiProperties.getPersonImageThumbnailSizes();
+        int created = 0;
+        for (String personUuid : directory.getPersonUuids()) {
+            File imageFile = directory.findFile(personUuid, null);
+            for (Integer size : sizes) {
+                if (isOutdated(directory.findFile(personUuid, size), imageFile)) {
+                    try {
+                        createThumbnails(personUuid, null);
+                        created++;
+                    }
+                    catch (IOException e) {
+                        log.error("Could not make the thumbnails of " + imageFile, e);
+                    }
+                    break;
+                }
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public int moveImagesToShardedDirectories() {
+        return getDirectory().moveFlatFiles();
+    }
+
+    /**
+     * Makes the thumbnails that are missing or older than the image, each from the previous one as they get smaller.
+     * Holds the person's lock, so that the thumbnails of an image replaced meanwhile are not written after those of the
+     * new one, which would then look up to date.
+     *
+     * @param personUuid
+     * @param image the image if it has already been read under the lock, or null to read it from its file
+     * @throws IOException
+     */
+    private void createThumbnails(String personUuid, BufferedImage image) throws IOException {
+        PersonImageDirectory directory = getDirectory();
+        List<Integer> sizes = emrApiProperties.getPersonImageThumbnailSizes();
+        synchronized (PersonImageDirectory.getLock(personUuid)) {
+            File imageFile = directory.findFile(personUuid, null);
+            for (int i = sizes.size() - 1; i >= 0; i--) {
+                // checked again, as another request may have made them while this one waited for the lock
+                if (image != null || isOutdated(directory.findFile(personUuid, sizes.get(i)), imageFile)) {
+                    if (image == null) {
+                        image = readForThumbnail(imageFile, sizes.get(i));
+                    }
+                    image = thumbnailer.scale(image, sizes.get(i));
+                    File thumbnailFile = directory.getFile(personUuid, sizes.get(i));
+                    // the image may still be in the top directory
+                    thumbnailFile.getParentFile().mkdirs();
+                    thumbnailer.write(image, thumbnailFile);
+                }
+            }
+        }
+    }
+
+    private BufferedImage readForThumbnail(File imageFile, int size) throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream(imageFile);
+        if (in == null) {
+            throw new IOException("Could not read " + imageFile);
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Could not read " + imageFile);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return read(reader, getThumbnailSubsampling(reader.getWidth(0), reader.getHeight(0), size));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Keeps twice the thumbnail size, as subsampling just drops pixels and the thumbnailer smooths them
+     */
+    private int getThumbnailSubsampling(int width, int height, int size) {
+        return Math.max(1, Math.max(width, height) / (2 * size));
+    }
+
+    private boolean isOutdated(File thumbnailFile, File imageFile) {
+        return !thumbnailFile.isFile() || thumbnailFile.lastModified() < imageFile.lastModified();
+    }
+
+    /**
+     * @return the smallest thumbnail size that is at least the given size, or null if there is none
+     */
+    private Integer getThumbnailSize(int size) {
+        for (Integer thumbnailSize : emrApiProperties.getPersonImageThumbnailSizes()) {
+            if (thumbnailSize >= size) {
+                return thumbnailSize;
+            }
+        }
+        return null;
+    }
+
+    private PersonImageDirectory getDirectory() {
+        return new PersonImageDirectory(emrApiProperties.getPersonImageDirectory());
     }
 
     public void setEmrApiProperties(EmrApiProperties emrApiProperties) {
@@ -0,0 +1,199 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where person images and their thumbnails are stored. Each one goes two directories down, named after the first four
+ * characters of the person's uuid, e.g. <code>1a/2b/1a2b3c4d-....jpeg</code> and <code>1a/2b/1a2b3c4d-..._64.jpeg</code>
+ * for its 64 pixel thumbnail, so that no directory gets too large. Images saved before this layout were stored flat in
+ * the top directory; they are still found there until {@link #moveFlatFiles()} has moved them down.
+ * <p/>
+ * Saving an image and moving it down both hold {@link #getLock(String)}, so that a move never puts an old image over
+ * one that has just been saved.
+ */
+public class PersonImageDirectory {
+
+    public static final String EXTENSION = ".jpeg";
+
+    private static final int SHARD_LENGTH = 2;
+
+    // striped, as persons come and go
+    private static final Object[] LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    private final File directory;
+
+    public PersonImageDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param personUuid
+     * @return what to hold while replacing the person's image and removing its flat copies, or writing its thumbnails,
+     *         shared with persons whose uuids hash alike
+     */
+    public static Object getLock(String personUuid) {
+        return LOCKS[(personUuid.hashCode() & Integer.MAX_VALUE) % LOCKS.length];
+    }
+
+    /**
+     * @param personUuid
+     * @param size the thumbnail size, or null for the image
+     * @return where the image or thumbnail is saved
+     */
+    public File getFile(String personUuid, Integer size) {
+        return new File(getShardDirectory(personUuid), getFileName(personUuid, size));
+    }
+
+    /**
+     * @param personUuid
+     * @param size the thumbnail size, or null for the image
+     * @return the image or thumbnail where it is saved, else where it was stored before images were sharded if it is
+     *         still there, else where it will be saved
+     */
+    public File findFile(String personUuid, Integer size) {
+        File file = getFile(personUuid, size);
+        if (!file.isFile()) {
+            File flatFile = new File(directory, getFileName(personUuid, size));
+            if (flatFile.isFile()) {
+                return flatFile;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Removes the copies of an image and its thumbnails left in the top directory, once it has been saved again. The
+     * caller holds {@link #getLock(String)} from before the image is saved.
+     *
+     * @param personUuid
+     * @param sizes the thumbnail sizes
+     */
+    public void deleteFlatFiles(String personUuid, List<Integer> sizes) {
+        new File(directory, getFileName(personUuid, null)).delete();
+        for (Integer size : sizes) {
+            new File(directory, getFileName(personUuid, size)).delete();
+        }
+    }
+
+    /**
+     * @return the uuids of the persons who have an image, in either layout
+     */
+    public List<String> getPersonUuids() {
+        Set<String> personUuids = new LinkedHashSet<String>();
+        for (File shard : listDirectories(directory)) {
+            for (File subShard : listDirectories(shard)) {
+                addPersonUuids(subShard, personUuids);
+            }
+        }
+        addPersonUuids(directory, personUuids);
+        return new ArrayList<String>(personUuids);
+    }
+
+    /**
+     * Moves the images and thumbnails of the top directory down into their shard directories. Each file is renamed,
+     * so readers find it in one place or the other. A file that has been saved again since is deleted instead.
+     *
+     * @return the number of files moved
+     */
+    public int moveFlatFiles() {
+        File[] files = directory.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(EXTENSION);
+            }
+        });
+        if (files == null) {
+            return 0;
+        }
+        int moved = 0;
+        for (File file : files) {
+            String name = file.getName();
+            int end = name.indexOf('_') >= 0 ? name.indexOf('_') : name.length() - EXTENSION.length();
+            String personUuid = name.substring(0, end);
+            File shardDirectory = getShardDirectory(personUuid);
+            if (shardDirectory.equals(directory)) {
+                continue;
+            }
+            File target = new File(shardDirectory, name);
+            synchronized (getLock(personUuid)) {
+                if (target.isFile()) {
+                    file.delete();
+                } else if ((shardDirectory.isDirectory() || shardDirectory.mkdirs()) && file.renameTo(target)) {
+                    moved++;
+                }
+            }
+        }
+        return moved;
+    }
+
+    private File getShardDirectory(String personUuid) {
+        if (personUuid.length() < 2 * SHARD_LENGTH) {
+            return directory;
+        }
+        File shard = new File(directory, personUuid.substring(0, SHARD_LENGTH));
+        return new File(shard, personUuid.substring(SHARD_LENGTH, 2 * SHARD_LENGTH));
+    }
+
+    private String getFileName(String personUuid, Integer size) {
+        return size == null ? personUuid + EXTENSION : personUuid + "_" + size + EXTENSION;
+    }
+
+    private void addPersonUuids(File directory, Set<String> personUuids) {
+        String[] names = directory.list(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                // thumbnails have the size after an underscore
+                return name.endsWith(EXTENSION) && name.indexOf('_') < 0;
+            }
+        });
+        if (names != null) {
+            for (String name : names) {
+                personUuids.add(name.substring(0, name.length() - EXTENSION.length()));
+            }
+        }
+    }
+
+    private List<File> listDirectories(File directory) {
+        File[] directories = directory.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() && file.getName().length() == SHARD_LENGTH;
+            }
+        });
+        List<File> list = new ArrayList<File>();
+        if (directories != null) {
+            for (File each : directories) {
+                list.add(each);
+            }
+        }
+        return list;
+    }
+}
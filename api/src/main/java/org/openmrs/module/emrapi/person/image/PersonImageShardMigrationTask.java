@@ -0,0 +1,37 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Moves the person images stored flat in the person image directory into the sharded layout, see
+ * {@link PersonImageDirectory}. Images can be read and saved while it runs.
+ *
+ * @see EmrPersonImageService#moveImagesToShardedDirectories()
+ */
+public class PersonImageShardMigrationTask extends AbstractTask {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    @Override
+    public void execute() {
+        int moved = Context.getService(EmrPersonImageService.class).moveImagesToShardedDirectories();
+        log.info("Moved " + moved + " person image files into sharded directories");
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Makes the thumbnails of person images. Images are halved step by step and then scaled bilinearly to their final
+ * size, which looks nearly as good as a bicubic scale for a fraction of the time.
+ */
+public class PersonImageThumbnailer {
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    /**
+     * @param image
+     * @param size the largest width or height of the thumbnail
+     * @return the image scaled down to fit in a square of the size, or the image itself if it already fits
+     */
+    public BufferedImage scale(BufferedImage image, int size) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width <= size && height <= size) {
+            return image;
+        }
+        double ratio = Math.min((double) size / width, (double) size / height);
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        BufferedImage scaled = image;
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+            width /= 2;
+            height /= 2;
+            scaled = draw(scaled, width, height);
+        }
+        if (width != targetWidth || height != targetHeight) {
+            scaled = draw(scaled, targetWidth, targetHeight);
+        }
+        return scaled;
+    }
+
+    /**
+     * Writes the image as a jpeg to a temporary file which then replaces the file, so that a thumbnail being replaced
+     * can still be read meanwhile
+     *
+     * @param image
+     * @param file
+     * @throws IOException
+     */
+    public void write(BufferedImage image, File file) throws IOException {
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        if (image.getColorModel().hasAlpha()) {
+            // jpeg has no transparency
+            image = draw(image, image.getWidth(), image.getHeight());
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageOutputStream out = ImageIO.createImageOutputStream(temporaryFile);
+        boolean written = false;
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+            written = true;
+        }
+        finally {
+            writer.dispose();
+            out.close();
+            if (!written) {
+                temporaryFile.delete();
+            }
+        }
+        replace(temporaryFile, file);
+    }
+
+    /**
+     * Moves a file over another in the same directory, so that readers see either the old file or the new one
+     *
+     * @param temporaryFile
+     * @param file
+     * @throws IOException
+     */
+    public void replace(File temporaryFile, File file) throws IOException {
+        if (!temporaryFile.renameTo(file)) {
+            // renaming over an existing file fails on some platforms
+            file.delete();
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                throw new IOException("Could not create " + file);
+            }
+        }
+    }
+
+    private BufferedImage draw(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the id of the default printer of each type at each location, including that a location has none, so that
+ * looking one up doesn't have to go through the location's attributes and their datatype each time. Must be cleared
+ * whenever a printer or a location attribute changes.
+ * <p/>
+ * Every invalidation starts a new generation, and a value looked up during an earlier generation is not cached, so that
+ * a lookup that raced with a change can't put the old value back.
+ */
+public class DefaultPrinterCache {
+
+    /**
+     * Cached for a location that has no default printer of the type
+     */
+    public static final Integer NO_PRINTER = -1;
+
+    private final Map<String, Integer> printerIds = new HashMap<String, Integer>();
+
+    private long generation;
+
+    /**
+     * @param locationId
+     * @param type
+     * @return the id of the default printer, {@link #NO_PRINTER}, or null if it isn't cached
+     */
+    public synchronized Integer get(Integer locationId, Printer.Type type) {
+        return printerIds.get(key(locationId, type));
+    }
+
+    /**
+     * @return the current generation, to be read before looking up a value to put
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param locationId
+     * @param type
+     * @param printerId the id of the default printer, or null if there is none
+     * @param lookedUpInGeneration the generation before the value was looked up
+     */
+    public synchronized void put(Integer locationId, Printer.Type type, Integer printerId, long lookedUpInGeneration) {
+        if (lookedUpInGeneration == generation) {
+            printerIds.put(key(locationId, type), printerId == null ? NO_PRINTER : printerId);
+        }
+    }
+
+    public synchronized void invalidate(Integer locationId, Printer.Type type) {
+        generation++;
+        printerIds.remove(key(locationId, type));
+    }
+
+    public synchronized void clear() {
+        generation++;
+        printerIds.clear();
+    }
+
+    public synchronized int size() {
+        return printerIds.size();
+    }
+
+    private String key(Integer locationId, Printer.Type type) {
+        return locationId + ":" + type.name();
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.printer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends print jobs to printers from one worker thread and one bounded queue per printer, so that a slow or offline
+ * printer only holds up its own jobs. Each worker keeps its connection open between jobs, writes all the jobs that
+ * queued up while it was busy in one go, and retries a failed connection a few times with an increasing delay. A write
+ * that fails is not retried, as part of it may already have been printed and sending it again could print the same
+ * labels twice; its jobs fail instead. A worker closes its connection and goes away once its printer has been idle for
+ * a while.
+ */
+public class PrintDispatcher {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    public static final int MAX_JOBS_PER_WRITE = 20;
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private static final long IDLE_TIMEOUT_MILLIS = 30000;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final PrinterServiceImpl printerService;
+
+    private final Map<String, PrinterQueue> queues = new HashMap<String, PrinterQueue>();
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private boolean shutdown;
+
+    /**
+     * @param printerService creates the sockets
+     */
+    public PrintDispatcher(PrinterServiceImpl printerService) {
+        this.printerService = printerService;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Queues data to be sent to the printer
+     *
+     * @param data
+     * @param printer
+     * @param encoding
+     * @return the job, already failed if the printer's queue is full
+     */
+    public PrintJob submit(String data, Printer printer, String encoding) {
+        return submit(new PrintJob(data, encoding), printer);
+    }
+
+    /**
+     * Queues a job to be sent to the printer
+     *
+     * @param job
+     * @param printer
+     * @return the job, already failed if the printer's queue is full
+     */
+    public PrintJob submit(PrintJob job, Printer printer) {
+        String key = printer.getIpAddress() + ":" + printer.getPort();
+        synchronized (this) {
+            if (shutdown) {
+                job.fail(new UnableToPrintViaSocketException("Printing has been shut down"));
+                return job;
+            }
+            PrinterQueue queue = queues.get(key);
+            if (queue == null) {
+                queue = new PrinterQueue(key, printer.getName(), printer.getIpAddress(), printer.getPort());
+                queues.put(key, queue);
+                Thread worker = new Thread(queue, "emrapi-printer-" + key);
+                worker.setDaemon(true);
+                worker.start();
+            }
+            if (!queue.jobs.offer(job)) {
+                job.fail(new UnableToPrintViaSocketException("Too many jobs are waiting for printer " + printer.getName()));
+            }
+        }
+        return job;
+    }
+
+    /**
+     * @return the number of printers that currently have a worker
+     */
+    public synchronized int getActivePrinterCount() {
+        return queues.size();
+    }
+
+    /**
+     * Stops accepting jobs, fails the jobs that are still queued, and closes the connections
+     */
+    public void shutdown() {
+        List<PrinterQueue> stopping;
+        synchronized (this) {
+            shutdown = true;
+            stopping = new ArrayList<PrinterQueue>(queues.values());
+            queues.clear();
+        }
+        for (PrinterQueue queue : stopping) {
+            queue.stop();
+        }
+    }
+
+    /**
+     * Removes the queue if it is still empty, so that no job can be added to it after its worker has stopped
+     */
+    private synchronized boolean retire(PrinterQueue queue) {
+        if (!queue.jobs.isEmpty()) {
+            return false;
+        }
+        if (queues.get(queue.key) == queue) {
+            queues.remove(queue.key);
+        }
+        return true;
+    }
+
+    private class PrinterQueue implements Runnable {
+
+        private final String key;
+
+        private final String printerName;
+
+        private final String ipAddress;
+
+        private final String port;
+
+        private final BlockingQueue<PrintJob> jobs = new LinkedBlockingQueue<PrintJob>(queueCapacity);
+
+        private volatile boolean stopped;
+
+        private Socket socket;
+
+        private PrinterQueue(String key, String printerName, String ipAddress, String port) {
+            this.key = key;
+            this.printerName = printerName;
+            this.ipAddress = ipAddress;
+            this.port = port;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    PrintJob job = jobs.poll(IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (stopped) {
+                        if (job != null) {
+                            job.fail(new UnableToPrintViaSocketException("Printing has been shut down"));
+                        }
+                        break;
+                    }
+                    if (job == null) {
+                        if (retire(this)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    List<PrintJob> batch = new ArrayList<PrintJob>();
+                    batch.add(job);
+                    jobs.drainTo(batch, MAX_JOBS_PER_WRITE - 1);
+                    print(batch);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                disconnect();
+                List<PrintJob> left = new ArrayList<PrintJob>();
+                jobs.drainTo(left);
+                failAll(left, new UnableToPrintViaSocketException("Printing has been shut down"));
+            }
+        }
+
+        private void stop() {
+            stopped = true;
+            // wakes the worker up if it is waiting for a job
+            jobs.offer(new PrintJob("", "UTF-8"));
+        }
+
+        private void print(List<PrintJob> batch) throws InterruptedException {
+            List<byte[]> data = new ArrayList<byte[]>(batch.size());
+            int length = 0;
+            for (Iterator<PrintJob> i = batch.iterator(); i.hasNext(); ) {
+                PrintJob job = i.next();
+                if (!job.take()) {
+                    // cancelled while it was queued
+                    i.remove();
+                    continue;
+                }
+                try {
+                    byte[] bytes = job.getBytes();
+                    data.add(bytes);
+                    length += bytes.length;
+                }
+                catch (UnsupportedEncodingException e) {
+                    job.fail(new UnableToPrintViaSocketException("Unable to print to printer " + printerName, e));
+                    i.remove();
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            byte[] payload = data.get(0);
+            if (data.size() > 1) {
+                payload = new byte[length];
+                int offset = 0;
+                for (byte[] bytes : data) {
+                    System.arraycopy(bytes, 0, payload, offset, bytes.length);
+                    offset += bytes.length;
+                }
+            }
+
+            for (int attempt = 1; ; attempt++) {
+                boolean writing = false;
+                try {
+                    OutputStream out = connect();
+                    writing = true;
+                    IOUtils.write(payload, out);
+                    for (PrintJob job : batch) {
+                        job.complete();
+                    }
+                    return;
+                }
+                catch (Exception e) {
+                    disconnect();
+                    if (writing) {
+                        failAll(batch, new UnableToPrintViaSocketException("Unable to print to printer " + printerName
+                                + ", some of the jobs may have been printed", e));
+                        return;
+                    }
+                    if (e instanceof NumberFormatException || attempt >= MAX_ATTEMPTS || stopped) {
+                        failAll(batch, new UnableToPrintViaSocketException("Unable to print to printer " + printerName, e));
+                        return;
+                    }
+                    log.warn("Failed to print to printer " + printerName + ", attempt " + attempt + " of " + MAX_ATTEMPTS, e);
+                    Thread.sleep(RETRY_DELAY_MILLIS << (2 * (attempt - 1)));
+                }
+            }
+        }
+
+        /**
+         * @return the stream to write to, on the open connection if it is still usable or else on a new one
+         */
+        private OutputStream connect() throws IOException {
+            if (socket != null && isStale(socket)) {
+                disconnect();
+            }
+            if (socket == null) {
+                InetAddress addr = InetAddress.getByName(ipAddress);
+                SocketAddress sockaddr = new InetSocketAddress(addr, Integer.valueOf(port));
+                Socket connecting = printerService.createSocket();
+                try {
+                    connecting.connect(sockaddr, CONNECT_TIMEOUT_MILLIS);
+                }
+                catch (IOException e) {
+                    connecting.close();
+                    throw e;
+                }
+                socket = connecting;
+            }
+            return socket.getOutputStream();
+        }
+
+        /**
+         * A connection the printer has closed still accepts a write, so look for the end of the stream first
+         */
+        private boolean isStale(Socket socket) {
+            if (socket.isClosed() || !socket.isConnected() || socket.isInputShutdown()) {
+                return true;
+            }
+            try {
+                socket.setSoTimeout(1);
+                InputStream in = socket.getInputStream();
+                while (in.available() > 0) {
+                    // skip whatever status the printer sent back
+                    in.skip(in.available());
+                }
+                return in.read() < 0;
+            }
+            catch (SocketTimeoutException e) {
+                return false;
+            }
+            catch (IOException e) {
+                return true;
+            }
+        }
+
+        private void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                }
+                catch (IOException e) {
+                    log.error("failed to close the socket to printer " + printerName, e);
+                }
+                socket = null;
+            }
+        }
+
+        private void failAll(List<PrintJob> batch, UnableToPrintViaSocketException e) {
+            for (PrintJob job : batch) {
+                job.fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.printer;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Data queued to be sent to a printer. Completes once the data has been written to the printer, or fails with an
+ * {@link UnableToPrintViaSocketException}. A job can only be cancelled while it is waiting in its printer's queue: once it
+ * has been taken to be sent, it may reach the printer however long that takes, so {@link #cancel(boolean)} returns false.
+ *
+ * @see PrinterService#printViaSocketAsync(String, Printer, String)
+ */
+public class PrintJob extends FutureTask<Void> {
+
+    private static final AtomicLong NEXT_JOB_ID = new AtomicLong(1);
+
+    private static final Runnable NOTHING = new Runnable() {
+
+        @Override
+        public void run() {
+        }
+    };
+
+    private final long jobId = NEXT_JOB_ID.getAndIncrement();
+
+    private final String data;
+
+    private final String encoding;
+
+    private final byte[] bytes;
+
+    // set by whichever comes first, cancelling the job or taking it to be sent
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    public PrintJob(String data, String encoding) {
+        super(NOTHING, null);
+        this.data = data;
+        this.encoding = encoding;
+        this.bytes = null;
+    }
+
+    /**
+     * @param bytes data already in the printer's encoding
+     */
+    public PrintJob(byte[] bytes) {
+        super(NOTHING, null);
+        this.data = null;
+        this.encoding = null;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return an id that is unique among the jobs since the server started
+     */
+    public long getJobId() {
+        return jobId;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return the bytes to send to the printer
+     * @throws UnsupportedEncodingException
+     */
+    public byte[] getBytes() throws UnsupportedEncodingException {
+        return bytes != null ? bytes : data.getBytes(encoding);
+    }
+
+    /**
+     * Cancels the job if it has not been taken to be sent yet
+     *
+     * @return whether the job was cancelled, so will not be sent
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return claimed.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+    }
+
+    /**
+     * Takes the job to be sent, after which it can no longer be cancelled
+     *
+     * @return false if the job has been cancelled
+     */
+    boolean take() {
+        return claimed.compareAndSet(false, true);
+    }
+
+    void complete() {
+        set(null);
+    }
+
+    void fail(UnableToPrintViaSocketException e) {
+        setException(e);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.emrapi.event.EmrApiEventExecutor;
+
+import java.util.Date;
+
+/**
+ * Sends the queued jobs of one printer, oldest first, until there are none left or one fails. Each job is sent and
+ * recorded in its own transaction. Must be run on a thread with an open session and enough privileges, e.g. a daemon
+ * thread, and never on two threads for the same printer at once.
+ */
+public class PrintSpoolDrainer implements Runnable {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final Integer printerId;
+
+    private final EmrApiEventExecutor executor;
+
+    /**
+     * @param printerId
+     * @param executor the drainer stops between jobs once this is stopped, or null to always run to the end
+     */
+    public PrintSpoolDrainer(Integer printerId, EmrApiEventExecutor executor) {
+        this.printerId = printerId;
+        this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+        PrintSpoolService printSpoolService = Context.getService(PrintSpoolService.class);
+        PrinterService printerService = Context.getService(PrinterService.class);
+        while (executor == null || executor.isRunning()) {
+            SpooledPrintJob job = printSpoolService.getNextQueuedJob(printerId);
+            // the jobs after one that is waiting to be retried wait too, so that they print in order
+            if (job == null || !job.isDue(new Date())) {
+                return;
+            }
+            try {
+                printerService.printViaSocket(job.getPayload(), job.getPrinter(), job.getEncoding());
+                printSpoolService.markPrinted(job.getSpooledPrintJobId());
+            }
+            catch (UnableToPrintViaSocketException e) {
+                String error = e.getCause() == null ? e.getMessage() : e.getMessage() + ": " + e.getCause();
+                SpooledPrintJob.Status status = printSpoolService.markFailed(job.getSpooledPrintJobId(), error);
+                if (status == SpooledPrintJob.Status.DEAD) {
+                    log.error("Giving up on spooled print job " + job.getUuid() + ", " + error);
+                } else {
+                    log.warn("Failed to send spooled print job " + job.getUuid() + ", will try again later: " + error);
+                    return;
+                }
+            }
+            finally {
+                Context.flushSession();
+                Context.clearSession();
+            }
+        }
+    }
+}
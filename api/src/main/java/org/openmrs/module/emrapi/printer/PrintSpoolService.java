@@ -0,0 +1,145 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import org.openmrs.Location;
+import org.openmrs.annotation.Authorized;
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.emrapi.EmrApiConstants;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Saves print jobs in a spool table and sends them to their printer in the background, so that a job isn't lost when
+ * its printer is down or the server restarts. The jobs of a printer are sent in the order they were spooled; a job that
+ * can't be sent holds up the jobs after it until it is retried, and after too many attempts it is set aside as DEAD
+ * so that the next ones can go.
+ * <p/>
+ * Jobs are delivered at least once. A job whose send failed or timed out may have been partly or fully printed, and is
+ * sent again when it is retried, so a label can now and then come out twice.
+ * <p/>
+ * The methods that start and stop the spooler and send the jobs are used by the module and its daemon threads, and need
+ * {@link EmrApiConstants#PRIVILEGE_PRINTERS_MANAGE_PRINTERS} when called by anyone else.
+ */
+public interface PrintSpoolService extends OpenmrsService {
+
+    /**
+     * Saves the data to be printed to the specified printer, and sends it once the current transaction commits
+     *
+     * @param data
+     * @param printer
+     * @param encoding
+     * @return the spooled job
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
+    SpooledPrintJob spool(String data, Printer printer, String encoding);
+
+    /**
+     * Saves the data to be printed to the default printer of the specified type
+     * at the specific location, and sends it once the current transaction commits
+     *
+     * @param data
+     * @param type
+     * @param location
+     * @param encoding
+     * @return the spooled job
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
+    SpooledPrintJob spool(String data, Printer.Type type, Location location, String encoding);
+
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
+    SpooledPrintJob getSpooledJobByUuid(String uuid);
+
+    /**
+     * Fetches spooled jobs, newest first
+     *
+     * @param printer null for all printers
+     * @param status null for all statuses
+     * @param firstResult
+     * @param maxResults
+     * @return
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    List<SpooledPrintJob> getSpooledJobs(Printer printer, SpooledPrintJob.Status status, int firstResult, int maxResults);
+
+    /**
+     * @param printer null for all printers
+     * @param status null for all statuses
+     * @return the number of spooled jobs
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    long getSpooledJobCount(Printer printer, SpooledPrintJob.Status status);
+
+    /**
+     * Queues a job again, with its attempts reset, e.g. a DEAD job once its printer has been fixed
+     *
+     * @param job
+     * @return the job
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    SpooledPrintJob requeueSpooledJob(SpooledPrintJob job);
+
+    /**
+     * Deletes old jobs, e.g. those printed more than a few days ago
+     *
+     * @param status
+     * @param before jobs spooled before this date are deleted
+     * @return the number of jobs deleted
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    int purgeSpooledJobs(SpooledPrintJob.Status status, Date before);
+
+    /**
+     * Starts sending the spooled jobs, beginning with those left queued by the last shutdown
+     *
+     * @param token the module's daemon token, which the jobs are sent with
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    void startDraining(DaemonToken token);
+
+    /**
+     * Stops sending jobs. Jobs that are still queued are sent when draining is next started.
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    void stopDraining();
+
+    /**
+     * @return the ids of the printers that have queued jobs
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    List<Integer> getPrinterIdsWithQueuedJobs();
+
+    /**
+     * @param printerId
+     * @return the oldest queued job of the printer, which is the next one to send, or null if there is none
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    SpooledPrintJob getNextQueuedJob(Integer printerId);
+
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    void markPrinted(Integer spooledPrintJobId);
+
+    /**
+     * Records a failed attempt to send a job, and when to try it again
+     *
+     * @param spooledPrintJobId
+     * @param error
+     * @return the job's status, DEAD once it has failed too many times
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_MANAGE_PRINTERS)
+    SpooledPrintJob.Status markFailed(Integer spooledPrintJobId, String error);
+
+}
@@ -0,0 +1,295 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.emrapi.event.EmrApiEventExecutor;
+import org.openmrs.module.emrapi.printer.db.SpooledPrintJobDAO;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class PrintSpoolServiceImpl extends BaseOpenmrsService implements PrintSpoolService {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    public static final int DEFAULT_DRAIN_THREADS = 4;
+
+    private static final int QUEUE_CAPACITY = 100;
+
+    private static final long SCAN_INTERVAL_SECONDS = 15;
+
+    private static final long FIRST_RETRY_DELAY_MILLIS = 30000;
+
+    private static final long MAX_RETRY_DELAY_MILLIS = 3600000;
+
+    private static final long STOP_TIMEOUT_MILLIS = 10000;
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final EmrApiEventExecutor executor = new EmrApiEventExecutor();
+
+    // the printers being drained, so that two workers never send the jobs of a printer out of order
+    private final ConcurrentMap<Integer, Boolean> draining = new ConcurrentHashMap<Integer, Boolean>();
+
+    private ScheduledExecutorService scanner;
+
+    private SpooledPrintJobDAO spooledPrintJobDAO;
+
+    private PrinterService printerService;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private int drainThreads = DEFAULT_DRAIN_THREADS;
+
+    public void setSpooledPrintJobDAO(SpooledPrintJobDAO spooledPrintJobDAO) {
+        this.spooledPrintJobDAO = spooledPrintJobDAO;
+    }
+
+    public void setPrinterService(PrinterService printerService) {
+        this.printerService = printerService;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setDrainThreads(int drainThreads) {
+        this.drainThreads = drainThreads;
+    }
+
+    @Override
+    @Transactional
+    public SpooledPrintJob spool(String data, Printer printer, String encoding) {
+        if (printer == null || printer.getId() == null) {
+            throw new IllegalArgumentException("Only saved printers can be spooled to");
+        }
+        SpooledPrintJob job = new SpooledPrintJob(printer, data, encoding);
+        job.setCreator(Context.getAuthenticatedUser());
+        job.setDateCreated(new Date());
+        spooledPrintJobDAO.saveOrUpdate(job);
+
+        final Integer printerId = printer.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // the job must be committed before a worker can read it
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    drain(printerId);
+                }
+            });
+        } else {
+            drain(printerId);
+        }
+        return job;
+    }
+
+    @Override
+    @Transactional
+    public SpooledPrintJob spool(String data, Printer.Type type, Location location, String encoding) {
+        Printer printer = printerService.getDefaultPrinter(location, type);
+
+        if (printer == null) {
+            throw new IllegalStateException("No default printer assigned for " + location.getDisplayString() + ". Please contact your system administrator");
+        }
+
+        return spool(data, printer, encoding);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SpooledPrintJob getSpooledJobByUuid(String uuid) {
+        return spooledPrintJobDAO.getByUuid(uuid);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SpooledPrintJob> getSpooledJobs(Printer printer, SpooledPrintJob.Status status, int firstResult, int maxResults) {
+        return spooledPrintJobDAO.getJobs(printer, status, firstResult, maxResults);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long getSpooledJobCount(Printer printer, SpooledPrintJob.Status status) {
+        return spooledPrintJobDAO.getJobCount(printer, status);
+    }
+
+    @Override
+    @Transactional
+    public SpooledPrintJob requeueSpooledJob(SpooledPrintJob job) {
+        job.setStatus(SpooledPrintJob.Status.QUEUED);
+        job.setAttempts(0);
+        job.setNextAttemptAfter(null);
+        spooledPrintJobDAO.saveOrUpdate(job);
+
+        final Integer printerId = job.getPrinter().getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    drain(printerId);
+                }
+            });
+        }
+        return job;
+    }
+
+    @Override
+    @Transactional
+    public int purgeSpooledJobs(SpooledPrintJob.Status status, Date before) {
+        return spooledPrintJobDAO.deleteJobs(status, before);
+    }
+
+    @Override
+    public synchronized void startDraining(DaemonToken token) {
+        if (executor.isRunning()) {
+            return;
+        }
+        executor.start(token, drainThreads, QUEUE_CAPACITY);
+        scanner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "emrapi-print-spool-scanner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // the first scan picks up the jobs left queued by the last shutdown, the later ones those due for a retry
+        scanner.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                executor.submit("printSpool.scan", new Runnable() {
+
+                    @Override
+                    public void run() {
+                        for (Integer printerId : Context.getService(PrintSpoolService.class).getPrinterIdsWithQueuedJobs()) {
+                            drain(printerId);
+                        }
+                    }
+                });
+            }
+        }, 0, SCAN_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stopDraining() {
+        if (scanner != null) {
+            scanner.shutdownNow();
+            scanner = null;
+        }
+        executor.stop(STOP_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Integer> getPrinterIdsWithQueuedJobs() {
+        return spooledPrintJobDAO.getPrinterIdsWithQueuedJobs();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SpooledPrintJob getNextQueuedJob(Integer printerId) {
+        return spooledPrintJobDAO.getNextQueuedJob(printerId);
+    }
+
+    @Override
+    @Transactional
+    public void markPrinted(Integer spooledPrintJobId) {
+        SpooledPrintJob job = spooledPrintJobDAO.getById(spooledPrintJobId);
+        Date now = new Date();
+        job.setStatus(SpooledPrintJob.Status.PRINTED);
+        job.setAttempts(job.getAttempts() + 1);
+        job.setDateLastAttempted(now);
+        job.setDatePrinted(now);
+        job.setNextAttemptAfter(null);
+        spooledPrintJobDAO.saveOrUpdate(job);
+    }
+
+    @Override
+    @Transactional
+    public SpooledPrintJob.Status markFailed(Integer spooledPrintJobId, String error) {
+        SpooledPrintJob job = spooledPrintJobDAO.getById(spooledPrintJobId);
+        Date now = new Date();
+        job.setAttempts(job.getAttempts() + 1);
+        job.setDateLastAttempted(now);
+        job.setLastError(StringUtils.abbreviate(error, MAX_ERROR_LENGTH));
+        if (job.getAttempts() >= maxAttempts) {
+            job.setStatus(SpooledPrintJob.Status.DEAD);
+            job.setNextAttemptAfter(null);
+        } else {
+            job.setNextAttemptAfter(new Date(now.getTime() + getRetryDelayMillis(job.getAttempts())));
+        }
+        spooledPrintJobDAO.saveOrUpdate(job);
+        return job.getStatus();
+    }
+
+    /**
+     * Doubles after each attempt, up to an hour
+     */
+    private long getRetryDelayMillis(int attempts) {
+        long delay = FIRST_RETRY_DELAY_MILLIS;
+        for (int i = 1; i < attempts && delay < MAX_RETRY_DELAY_MILLIS; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    private void drain(final Integer printerId) {
+        boolean submitted = executor.submit("printSpool.printer." + printerId, new Runnable() {
+
+            @Override
+            public void run() {
+                if (draining.putIfAbsent(printerId, Boolean.TRUE) != null) {
+                    return;
+                }
+                try {
+                    new PrintSpoolDrainer(printerId, executor).run();
+                }
+                finally {
+                    draining.remove(printerId);
+                }
+                // a job spooled while this printer was being drained may have been missed, rather than wait for the
+                // next scan, drain again if one is due
+                SpooledPrintJob next = Context.getService(PrintSpoolService.class).getNextQueuedJob(printerId);
+                Context.clearSession();
+                if (next != null && next.isDue(new Date()) && executor.isRunning()) {
+                    drain(printerId);
+                }
+            }
+        });
+        if (!submitted) {
+            // it stays queued, and will be picked up by a later scan
+            log.debug("Could not drain the print spool of printer " + printerId + " now");
+        }
+    }
+}
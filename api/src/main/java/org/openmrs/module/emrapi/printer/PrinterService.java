@@ -20,6 +20,7 @@ import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.emrapi.EmrApiConstants;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * TODO move this out of the emrapi module
@@ -114,7 +115,9 @@ public interface PrinterService extends OpenmrsService {
 
     /**
      * Prints the string data to the default printer of the specified type
-     * at the specific location via socket
+     * at the specific location via socket. Blocks the calling thread until
+     * the printer has taken the data, for at most 30 seconds by default
+     * (see {@link PrinterServiceImpl#setPrintTimeoutSeconds(int)})
      *
      * @param data
      * @param location
@@ -124,12 +127,71 @@ public interface PrinterService extends OpenmrsService {
             throws UnableToPrintViaSocketException;
 
     /**
-     * Prints the string data to the specified printer
+     * Prints the string data to the specified printer. Blocks the calling
+     * thread until the printer has taken the data, for at most 30 seconds
+     * by default (see {@link PrinterServiceImpl#setPrintTimeoutSeconds(int)}).
+     * A timeout does not always mean nothing was printed: a job that was
+     * still queued is cancelled, but one that was already being sent may
+     * still print, and the exception message says so.
      *
      * @param data
      * @param printer
+     * @throws UnableToPrintViaSocketException if the printer could not be reached, or did not take the data in time
      */
     @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
     void printViaSocket(String data, Printer printer, String encoding)
             throws UnableToPrintViaSocketException;
+
+    /**
+     * Queues the string data to be printed to the default printer of the specified type
+     * at the specific location, without waiting for it to be printed
+     *
+     * @param data
+     * @param type
+     * @param location
+     * @param encoding
+     * @return the job, which fails with an {@link UnableToPrintViaSocketException} if the data can't be printed
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
+    PrintJob printViaSocketAsync(String data, Printer.Type type, Location location, String encoding);
+
+    /**
+     * Queues the string data to be printed to the specified printer, without waiting for it to be printed
+     *
+     * @param data
+     * @param printer
+     * @param encoding
+     * @return the job, which fails with an {@link UnableToPrintViaSocketException} if the data can't be printed
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
+    PrintJob printViaSocketAsync(String data, Printer printer, String encoding);
+
+    /**
+     * Renders a registered label template with the given values, in the given encoding, and prints it to the
+     * specified printer, blocking like {@link #printViaSocket(String, Printer, String)}
+     *
+     * @param templateName
+     * @param values
+     * @param printer
+     * @param encoding
+     * @throws IllegalArgumentException if no template is registered with that name
+     * @see org.openmrs.module.emrapi.printer.template.LabelTemplateRegistry
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
+    void printLabel(String templateName, Map<String, ?> values, Printer printer, String encoding)
+            throws UnableToPrintViaSocketException;
+
+    /**
+     * Renders a registered label template with the given values, in the given encoding, and queues it to be printed
+     * to the specified printer, without waiting for it to be printed
+     *
+     * @param templateName
+     * @param values
+     * @param printer
+     * @param encoding
+     * @return the job, which fails with an {@link UnableToPrintViaSocketException} if the label can't be printed
+     * @throws IllegalArgumentException if no template is registered with that name
+     */
+    @Authorized(EmrApiConstants.PRIVILEGE_PRINTERS_ACCESS_PRINTERS)
+    PrintJob printLabelAsync(String templateName, Map<String, ?> values, Printer printer, String encoding);
 }
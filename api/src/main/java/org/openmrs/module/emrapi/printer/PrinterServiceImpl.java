@@ -14,9 +14,6 @@
 
 package org.openmrs.module.emrapi.printer;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.openmrs.Location;
 import org.openmrs.LocationAttribute;
 import org.openmrs.LocationAttributeType;
@@ -24,23 +21,45 @@ import org.openmrs.api.LocationService;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.printer.db.PrinterDAO;
+import org.openmrs.module.emrapi.printer.template.LabelBuffer;
+import org.openmrs.module.emrapi.printer.template.LabelTemplate;
+import org.openmrs.module.emrapi.printer.template.LabelTemplateRegistry;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.io.IOException;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketAddress;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class PrinterServiceImpl extends BaseOpenmrsService implements PrinterService {
 
-    private final Log log = LogFactory.getLog(getClass());
+    public static final int DEFAULT_PRINT_TIMEOUT_SECONDS = 30;
+
+    private final PrintDispatcher printDispatcher = new PrintDispatcher(this);
 
     private PrinterDAO printerDAO;
 
     private LocationService locationService;
 
+    private DefaultPrinterCache defaultPrinterCache = new DefaultPrinterCache();
+
+    private LabelTemplateRegistry labelTemplateRegistry = new LabelTemplateRegistry();
+
+    private int printTimeoutSeconds = DEFAULT_PRINT_TIMEOUT_SECONDS;
+
+    // rendering reuses one buffer per thread
+    private final ThreadLocal<LabelBuffer> labelBuffers = new ThreadLocal<LabelBuffer>() {
+
+        @Override
+        protected LabelBuffer initialValue() {
+            return new LabelBuffer();
+        }
+    };
+
     public void setPrinterDAO(PrinterDAO printerDAO) {
         this.printerDAO = printerDAO;
     }
@@ -49,6 +68,21 @@ public class PrinterServiceImpl extends BaseOpenmrsService implements PrinterSer
         this.locationService = locationService;
     }
 
+    public void setDefaultPrinterCache(DefaultPrinterCache defaultPrinterCache) {
+        this.defaultPrinterCache = defaultPrinterCache;
+    }
+
+    public void setLabelTemplateRegistry(LabelTemplateRegistry labelTemplateRegistry) {
+        this.labelTemplateRegistry = labelTemplateRegistry;
+    }
+
+    /**
+     * @param printTimeoutSeconds how long printViaSocket and printLabel wait for the printer, including the retries
+     */
+    public void setPrintTimeoutSeconds(int printTimeoutSeconds) {
+        this.printTimeoutSeconds = printTimeoutSeconds;
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Printer getPrinterById(Integer id) {
@@ -71,6 +105,8 @@ public class PrinterServiceImpl extends BaseOpenmrsService implements PrinterSer
     @Transactional
     public void savePrinter(Printer printer) {
         printerDAO.saveOrUpdate(printer);
+        // e.g. its type may have changed
+        invalidateDefaultPrinters(null, null);
     }
 
     @Override
@@ -97,11 +133,37 @@ public class PrinterServiceImpl extends BaseOpenmrsService implements PrinterSer
         }
 
         locationService.saveLocation(location);
+        invalidateDefaultPrinters(location.getId(), type);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Printer getDefaultPrinter(Location location, Printer.Type type) {
 
+        if (location.getId() == null) {
+            return lookUpDefaultPrinter(location, type);
+        }
+
+        Integer printerId = defaultPrinterCache.get(location.getId(), type);
+        if (DefaultPrinterCache.NO_PRINTER.equals(printerId)) {
+            return null;
+        }
+        if (printerId != null) {
+            // the printer itself comes from the second-level cache
+            Printer printer = printerDAO.getById(printerId);
+            if (printer != null) {
+                return printer;
+            }
+        }
+
+        long generation = defaultPrinterCache.getGeneration();
+        Printer printer = lookUpDefaultPrinter(location, type);
+        defaultPrinterCache.put(location.getId(), type, printer == null ? null : printer.getId(), generation);
+        return printer;
+    }
+
+    private Printer lookUpDefaultPrinter(Location location, Printer.Type type) {
+
         List<LocationAttribute> defaultPrinters = location.getActiveAttributes(getLocationAttributeTypeDefaultPrinter(type));
 
         if (defaultPrinters == null || defaultPrinters.size() == 0) {
@@ -136,49 +198,49 @@ public class PrinterServiceImpl extends BaseOpenmrsService implements PrinterSer
     @Override
     public void printViaSocket(String data, Printer.Type type, Location location, String encoding)
             throws UnableToPrintViaSocketException {
-        Printer printer = getDefaultPrinter(location, type);
-
-        if (printer == null) {
-            throw new IllegalStateException("No default printer assigned for " + location.getDisplayString() + ". Please contact your system administrator");
-        }
-
-        printViaSocket(data, printer, encoding);
+        printViaSocket(data, getDefaultPrinterOrFail(location, type), encoding);
     }
 
     @Override
     public void printViaSocket(String data, Printer printer, String encoding)
             throws UnableToPrintViaSocketException {
 
-        Socket socket = null;
-        // Create a socket with a timeout
-        try {
-            InetAddress addr = InetAddress.getByName(printer.getIpAddress());
-            SocketAddress sockaddr = new InetSocketAddress(addr, Integer.valueOf(printer.getPort()));
+        waitFor(printViaSocketAsync(data, printer, encoding), printer);
+    }
 
-            // Create an unbound socket
-            socket = createSocket();
+    @Override
+    public PrintJob printViaSocketAsync(String data, Printer.Type type, Location location, String encoding) {
+        return printViaSocketAsync(data, getDefaultPrinterOrFail(location, type), encoding);
+    }
 
-            // This method will block no more than timeoutMs.
-            // If the timeout occurs, SocketTimeoutException is thrown.
-            int timeoutMs = 1000;   // 1s
-            socket.connect(sockaddr, timeoutMs);
+    @Override
+    public PrintJob printViaSocketAsync(String data, Printer printer, String encoding) {
+        return printDispatcher.submit(data, printer, encoding);
+    }
 
-            if (encoding.equals("Windows-1252")) {
-                IOUtils.write(data.toString().getBytes("Windows-1252"), socket.getOutputStream());
-            } else {
-                IOUtils.write(data.toString(), socket.getOutputStream(), encoding);
-            }
-        } catch (Exception e) {
-            throw new UnableToPrintViaSocketException("Unable to print to printer " + printer.getName(), e);
-        } finally {
-            try {
-                if (socket != null) {
-                    socket.close();
-                }
-            } catch (IOException e) {
-                log.error("failed to close the socket to printer " + printer.getName(), e);
-            }
+    @Override
+    public void printLabel(String templateName, Map<String, ?> values, Printer printer, String encoding)
+            throws UnableToPrintViaSocketException {
+        waitFor(printLabelAsync(templateName, values, printer, encoding), printer);
+    }
+
+    @Override
+    public PrintJob printLabelAsync(String templateName, Map<String, ?> values, Printer printer, String encoding) {
+        LabelTemplate template = labelTemplateRegistry.getTemplate(templateName);
+        if (template == null) {
+            throw new IllegalArgumentException("No label template named " + templateName);
         }
+        LabelBuffer buffer = labelBuffers.get();
+        buffer.reset(encoding);
+        template.render(values, buffer);
+        // the buffer is reused for the next label, so the job gets its own copy
+        return printDispatcher.submit(new PrintJob(buffer.toByteArray()), printer);
+    }
+
+    @Override
+    public void onShutdown() {
+        super.onShutdown();
+        printDispatcher.shutdown();
     }
 
     // do this is separate method so that we can override it for test purposes
@@ -187,6 +249,68 @@ public class PrinterServiceImpl extends BaseOpenmrsService implements PrinterSer
     }
 
 
+    /**
+     * Invalidates now, and again once the transaction is over, so that a value cached in between (which may have been
+     * rolled back) doesn't stay
+     */
+    private void invalidateDefaultPrinters(final Integer locationId, final Printer.Type type) {
+        invalidateNow(locationId, type);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateNow(locationId, type);
+                }
+            });
+        }
+    }
+
+    private void invalidateNow(Integer locationId, Printer.Type type) {
+        if (locationId == null) {
+            defaultPrinterCache.clear();
+        } else {
+            defaultPrinterCache.invalidate(locationId, type);
+        }
+    }
+
+    private void waitFor(PrintJob job, Printer printer) throws UnableToPrintViaSocketException {
+        try {
+            job.get(printTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnableToPrintViaSocketException) {
+                throw (UnableToPrintViaSocketException) e.getCause();
+            }
+            throw new UnableToPrintViaSocketException("Unable to print to printer " + printer.getName(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new UnableToPrintViaSocketException("Timed out printing to printer " + printer.getName()
+                    + cancelOrWarn(job), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnableToPrintViaSocketException("Interrupted while printing to printer " + printer.getName()
+                    + cancelOrWarn(job), e);
+        }
+    }
+
+    /**
+     * @return the end of the message telling whether the job was stopped, or may still print if it is reprinted
+     */
+    private String cancelOrWarn(PrintJob job) {
+        if (job.cancel(false)) {
+            return ", the job was not sent";
+        }
+        return ", the job was already being sent and may have been printed";
+    }
+
+    private Printer getDefaultPrinterOrFail(Location location, Printer.Type type) {
+        Printer printer = getDefaultPrinter(location, type);
+
+        if (printer == null) {
+            throw new IllegalStateException("No default printer assigned for " + location.getDisplayString() + ". Please contact your system administrator");
+        }
+
+        return printer;
+    }
+
     private LocationAttributeType getLocationAttributeTypeDefaultPrinter(Printer.Type type) {
 
         String locationAttributeTypeUuid = EmrApiConstants.LOCATION_ATTRIBUTE_TYPE_DEFAULT_PRINTER.get(type.name());
@@ -0,0 +1,184 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.printer;
+
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.User;
+
+import java.util.Date;
+
+/**
+ * Data saved to be printed, which stays in the spool until it has been sent to its printer, so that it isn't lost if
+ * the printer is down or the server restarts
+ *
+ * @see PrintSpoolService
+ */
+public class SpooledPrintJob extends BaseOpenmrsObject {
+
+    /**
+     * DEAD jobs failed too many times and are no longer retried, until they are requeued
+     */
+    public enum Status {QUEUED, PRINTED, DEAD}
+
+    private Integer spooledPrintJobId;
+
+    private Printer printer;
+
+    private String encoding;
+
+    private String payload;
+
+    private Status status = Status.QUEUED;
+
+    private int attempts;
+
+    private String lastError;
+
+    private User creator;
+
+    private Date dateCreated;
+
+    private Date dateLastAttempted;
+
+    private Date nextAttemptAfter;
+
+    private Date datePrinted;
+
+    public SpooledPrintJob() {
+    }
+
+    public SpooledPrintJob(Printer printer, String payload, String encoding) {
+        this.printer = printer;
+        this.payload = payload;
+        this.encoding = encoding;
+    }
+
+    @Override
+    public Integer getId() {
+        return spooledPrintJobId;
+    }
+
+    @Override
+    public void setId(Integer id) {
+        this.spooledPrintJobId = id;
+    }
+
+    public Integer getSpooledPrintJobId() {
+        return spooledPrintJobId;
+    }
+
+    public void setSpooledPrintJobId(Integer spooledPrintJobId) {
+        this.spooledPrintJobId = spooledPrintJobId;
+    }
+
+    public Printer getPrinter() {
+        return printer;
+    }
+
+    public void setPrinter(Printer printer) {
+        this.printer = printer;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public User getCreator() {
+        return creator;
+    }
+
+    public void setCreator(User creator) {
+        this.creator = creator;
+    }
+
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(Date dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public Date getDateLastAttempted() {
+        return dateLastAttempted;
+    }
+
+    public void setDateLastAttempted(Date dateLastAttempted) {
+        this.dateLastAttempted = dateLastAttempted;
+    }
+
+    /**
+     * @return when the job may be tried again after a failure, or null if it may be sent right away
+     */
+    public Date getNextAttemptAfter() {
+        return nextAttemptAfter;
+    }
+
+    public void setNextAttemptAfter(Date nextAttemptAfter) {
+        this.nextAttemptAfter = nextAttemptAfter;
+    }
+
+    public Date getDatePrinted() {
+        return datePrinted;
+    }
+
+    public void setDatePrinted(Date datePrinted) {
+        this.datePrinted = datePrinted;
+    }
+
+    /**
+     * @param now
+     * @return true if the job is queued and not waiting before its next attempt
+     */
+    public boolean isDue(Date now) {
+        return status == Status.QUEUED && (nextAttemptAfter == null || !nextAttemptAfter.after(now));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.db;
+
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.module.emrapi.db.HibernateSingleClassDAO;
+import org.openmrs.module.emrapi.printer.Printer;
+import org.openmrs.module.emrapi.printer.SpooledPrintJob;
+
+import java.util.Date;
+import java.util.List;
+
+public class HibernateSpooledPrintJobDAO extends HibernateSingleClassDAO<SpooledPrintJob> implements SpooledPrintJobDAO {
+
+    public HibernateSpooledPrintJobDAO() {
+        super(SpooledPrintJob.class);
+    }
+
+    @Override
+    public SpooledPrintJob getByUuid(String uuid) {
+        return (SpooledPrintJob) createJobCriteria()
+                .add(Restrictions.eq("uuid", uuid))
+                .uniqueResult();
+    }
+
+    @Override
+    public List<Integer> getPrinterIdsWithQueuedJobs() {
+        return (List<Integer>) createJobCriteria()
+                .add(Restrictions.eq("status", SpooledPrintJob.Status.QUEUED))
+                .setProjection(Projections.distinct(Projections.property("printer.printerId")))
+                .list();
+    }
+
+    @Override
+    public SpooledPrintJob getNextQueuedJob(Integer printerId) {
+        return (SpooledPrintJob) createJobCriteria()
+                .add(Restrictions.eq("printer.printerId", printerId))
+                .add(Restrictions.eq("status", SpooledPrintJob.Status.QUEUED))
+                .addOrder(Order.asc("spooledPrintJobId"))
+                .setMaxResults(1)
+                .uniqueResult();
+    }
+
+    @Override
+    public List<SpooledPrintJob> getJobs(Printer printer, SpooledPrintJob.Status status, int firstResult, int maxResults) {
+        return (List<SpooledPrintJob>) addRestrictions(createJobCriteria(), printer, status)
+                .addOrder(Order.desc("spooledPrintJobId"))
+                .setFirstResult(firstResult)
+                .setMaxResults(maxResults)
+                .list();
+    }
+
+    @Override
+    public long getJobCount(Printer printer, SpooledPrintJob.Status status) {
+        Number count = (Number) addRestrictions(createJobCriteria(), printer, status)
+                .setProjection(Projections.rowCount())
+                .uniqueResult();
+        return count.longValue();
+    }
+
+    @Override
+    public int deleteJobs(SpooledPrintJob.Status status, Date before) {
+        return sessionFactory.getCurrentSession()
+                .createQuery("delete from SpooledPrintJob where status = :status and dateCreated < :before")
+                .setParameter("status", status)
+                .setParameter("before", before)
+                .executeUpdate();
+    }
+
+    private Criteria createJobCriteria() {
+        return sessionFactory.getCurrentSession().createCriteria(SpooledPrintJob.class);
+    }
+
+    private Criteria addRestrictions(Criteria criteria, Printer printer, SpooledPrintJob.Status status) {
+        if (printer != null) {
+            criteria.add(Restrictions.eq("printer", printer));
+        }
+        if (status != null) {
+            criteria.add(Restrictions.eq("status", status));
+        }
+        return criteria;
+    }
+}
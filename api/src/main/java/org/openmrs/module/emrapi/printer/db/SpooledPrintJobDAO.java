@@ -0,0 +1,60 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.db;
+
+import org.openmrs.module.emrapi.db.SingleClassDAO;
+import org.openmrs.module.emrapi.printer.Printer;
+import org.openmrs.module.emrapi.printer.SpooledPrintJob;
+
+import java.util.Date;
+import java.util.List;
+
+public interface SpooledPrintJobDAO extends SingleClassDAO<SpooledPrintJob> {
+
+    SpooledPrintJob getByUuid(String uuid);
+
+    /**
+     * @return the ids of the printers that have queued jobs
+     */
+    List<Integer> getPrinterIdsWithQueuedJobs();
+
+    /**
+     * @param printerId
+     * @return the oldest queued job of the printer, or null if there is none
+     */
+    SpooledPrintJob getNextQueuedJob(Integer printerId);
+
+    /**
+     * @param printer null for all printers
+     * @param status null for all statuses
+     * @param firstResult
+     * @param maxResults
+     * @return the jobs, newest first
+     */
+    List<SpooledPrintJob> getJobs(Printer printer, SpooledPrintJob.Status status, int firstResult, int maxResults);
+
+    /**
+     * @param printer null for all printers
+     * @param status null for all statuses
+     */
+    long getJobCount(Printer printer, SpooledPrintJob.Status status);
+
+    /**
+     * @param status
+     * @param before
+     * @return the number of jobs deleted
+     */
+    int deleteJobs(SpooledPrintJob.Status status, Date before);
+
+}
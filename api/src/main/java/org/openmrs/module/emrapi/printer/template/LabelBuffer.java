@@ -0,0 +1,201 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.template;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that labels are rendered into, in the printer's encoding. Meant to be reset and reused for
+ * label after label by one thread, so that rendering doesn't allocate once the buffer has grown to the size of a label.
+ * Not thread-safe.
+ * <p/>
+ * Values are encoded by hand for UTF-8 and for single byte encodings such as Windows-1252, which covers the encodings
+ * printers use; any other encoding goes through a {@link CharsetEncoder}. Either way, characters the encoding doesn't
+ * have become ?, like with {@link String#getBytes(String)}.
+ */
+public class LabelBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final byte UNMAPPABLE = (byte) '?';
+
+    private byte[] bytes;
+
+    private int length;
+
+    private Charset charset;
+
+    private CharsetEncoder encoder;
+
+    private boolean utf8;
+
+    // for single byte encodings, the bytes of the first 256 characters, UNMAPPABLE where there are none
+    private byte[] singleByteTable;
+
+    private final StringBuilder escaped = new StringBuilder();
+
+    public LabelBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public LabelBuffer(int initialCapacity) {
+        bytes = new byte[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity
+     *
+     * @param encoding the encoding of the label to render next
+     * @throws java.nio.charset.UnsupportedCharsetException if the encoding isn't supported
+     */
+    public void reset(String encoding) {
+        length = 0;
+        if (charset == null || !charset.name().equalsIgnoreCase(encoding) && !charset.aliases().contains(encoding)) {
+            charset = Charset.forName(encoding);
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            utf8 = "UTF-8".equals(charset.name());
+            singleByteTable = encoder.maxBytesPerChar() == 1 ? buildSingleByteTable() : null;
+        }
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return a copy of the rendered bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    void write(byte[] data) {
+        ensureCapacity(length + data.length);
+        System.arraycopy(data, 0, bytes, length, data.length);
+        length += data.length;
+    }
+
+    /**
+     * Escapes the value for the language and writes it in the buffer's encoding
+     */
+    void writeValue(CharSequence value, LabelLanguage language) {
+        CharSequence chars = value;
+        for (int i = 0; i < value.length(); i++) {
+            if (language.isSpecial(value.charAt(i))) {
+                escaped.setLength(0);
+                language.escape(value, escaped);
+                chars = escaped;
+                break;
+            }
+        }
+        if (utf8) {
+            writeUtf8(chars);
+        } else if (singleByteTable != null) {
+            writeSingleByte(chars);
+        } else {
+            writeWithEncoder(chars);
+        }
+    }
+
+    private void writeUtf8(CharSequence chars) {
+        int n = chars.length();
+        ensureCapacity(length + n * 3);
+        for (int i = 0; i < n; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xc0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                bytes[length++] = (byte) (0xf0 | codePoint >> 18);
+                bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                bytes[length++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                bytes[length++] = UNMAPPABLE;
+            } else {
+                bytes[length++] = (byte) (0xe0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    private void writeSingleByte(CharSequence chars) {
+        int n = chars.length();
+        ensureCapacity(length + n);
+        for (int i = 0; i < n; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x100) {
+                bytes[length++] = singleByteTable[c];
+            } else {
+                // e.g. Windows-1252 has the euro sign and curly quotes up there
+                writeWithEncoder(chars.subSequence(i, n));
+                return;
+            }
+        }
+    }
+
+    private void writeWithEncoder(CharSequence chars) {
+        CharBuffer in = CharBuffer.wrap(chars);
+        encoder.reset();
+        boolean flushing = false;
+        while (true) {
+            ByteBuffer out = ByteBuffer.wrap(bytes, length, bytes.length - length);
+            CoderResult result = flushing ? encoder.flush(out) : encoder.encode(in, out, true);
+            length = out.position();
+            if (result.isOverflow()) {
+                ensureCapacity(bytes.length + 1);
+            } else if (flushing) {
+                return;
+            } else {
+                flushing = true;
+            }
+        }
+    }
+
+    private byte[] buildSingleByteTable() {
+        byte[] table = new byte[0x100];
+        for (char c = 0; c < 0x100; c++) {
+            table[c] = encoder.canEncode(c) ? String.valueOf(c).getBytes(charset)[0] : UNMAPPABLE;
+        }
+        return table;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
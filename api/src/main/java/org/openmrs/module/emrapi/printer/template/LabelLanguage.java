@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.template;
+
+/**
+ * The printer language of a label template, which decides how values are escaped so that they can't be taken for
+ * commands
+ */
+public enum LabelLanguage {
+
+    /**
+     * Zebra ZPL, where ^ and ~ start commands anywhere in the data, so they are replaced with spaces
+     */
+    ZPL {
+        @Override
+        boolean isSpecial(char c) {
+            return c == '^' || c == '~';
+        }
+
+        @Override
+        void escape(CharSequence value, StringBuilder out) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                out.append(isSpecial(c) ? ' ' : c);
+            }
+        }
+    },
+
+    /**
+     * Eltron EPL, where values go inside double quoted strings
+     */
+    EPL {
+        @Override
+        boolean isSpecial(char c) {
+            return c == '"' || c == '\\';
+        }
+
+        @Override
+        void escape(CharSequence value, StringBuilder out) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (isSpecial(c)) {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+        }
+    };
+
+    abstract boolean isSpecial(char c);
+
+    abstract void escape(CharSequence value, StringBuilder out);
+}
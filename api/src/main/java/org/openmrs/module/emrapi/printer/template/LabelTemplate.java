@@ -0,0 +1,131 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.template;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A ZPL or EPL label with {{field}} placeholders, compiled once into the text between the placeholders and the
+ * placeholder names. The text between the placeholders is encoded once per encoding, so that rendering a label only
+ * copies those bytes and encodes the field values, straight into a {@link LabelBuffer}. Thread-safe.
+ */
+public class LabelTemplate {
+
+    private static final String OPEN = "{{";
+
+    private static final String CLOSE = "}}";
+
+    private final String name;
+
+    private final LabelLanguage language;
+
+    // one more literal than fields: literal, field, literal, ..., field, literal
+    private final String[] literals;
+
+    private final String[] fields;
+
+    private final ConcurrentMap<Charset, byte[][]> encodedLiterals = new ConcurrentHashMap<Charset, byte[][]>();
+
+    private LabelTemplate(String name, LabelLanguage language, String[] literals, String[] fields) {
+        this.name = name;
+        this.language = language;
+        this.literals = literals;
+        this.fields = fields;
+    }
+
+    /**
+     * @param name
+     * @param language
+     * @param text the label, with {{field}} where the field values go
+     * @return the compiled template
+     * @throws IllegalArgumentException if a placeholder isn't closed or has no name
+     */
+    public static LabelTemplate compile(String name, LabelLanguage language, String text) {
+        List<String> literals = new ArrayList<String>();
+        List<String> fields = new ArrayList<String>();
+        int from = 0;
+        int open;
+        while ((open = text.indexOf(OPEN, from)) >= 0) {
+            int close = text.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at " + open + " in label template " + name);
+            }
+            String field = text.substring(open + OPEN.length(), close).trim();
+            if (field.length() == 0) {
+                throw new IllegalArgumentException("Placeholder without a name at " + open + " in label template " + name);
+            }
+            literals.add(text.substring(from, open));
+            fields.add(field);
+            from = close + CLOSE.length();
+        }
+        literals.add(text.substring(from));
+        return new LabelTemplate(name, language, literals.toArray(new String[literals.size()]),
+                fields.toArray(new String[fields.size()]));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LabelLanguage getLanguage() {
+        return language;
+    }
+
+    /**
+     * @return the names of the fields, in the order they first appear
+     */
+    public Set<String> getFieldNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        Collections.addAll(names, fields);
+        return names;
+    }
+
+    /**
+     * Renders the label at the end of the buffer, in the buffer's encoding
+     *
+     * @param values the field values, whose toString() is printed; missing and null values print nothing
+     * @param buffer
+     */
+    public void render(Map<String, ?> values, LabelBuffer buffer) {
+        byte[][] encoded = getEncodedLiterals(buffer.getCharset());
+        for (int i = 0; i < fields.length; i++) {
+            buffer.write(encoded[i]);
+            Object value = values.get(fields[i]);
+            if (value != null) {
+                buffer.writeValue(value instanceof CharSequence ? (CharSequence) value : value.toString(), language);
+            }
+        }
+        buffer.write(encoded[fields.length]);
+    }
+
+    private byte[][] getEncodedLiterals(Charset charset) {
+        byte[][] encoded = encodedLiterals.get(charset);
+        if (encoded == null) {
+            encoded = new byte[literals.length][];
+            for (int i = 0; i < literals.length; i++) {
+                encoded[i] = literals[i].getBytes(charset);
+            }
+            encodedLiterals.putIfAbsent(charset, encoded);
+        }
+        return encoded;
+    }
+}
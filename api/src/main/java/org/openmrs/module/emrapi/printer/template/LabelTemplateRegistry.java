@@ -0,0 +1,62 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The label templates that can be printed by name, typically registered by modules when they start
+ *
+ * @see org.openmrs.module.emrapi.printer.PrinterService#printLabel
+ */
+public class LabelTemplateRegistry {
+
+    private final ConcurrentMap<String, LabelTemplate> templates = new ConcurrentHashMap<String, LabelTemplate>();
+
+    /**
+     * Compiles and registers a template, replacing any template with the same name
+     *
+     * @param name
+     * @param language
+     * @param text
+     * @return the compiled template
+     */
+    public LabelTemplate register(String name, LabelLanguage language, String text) {
+        LabelTemplate template = LabelTemplate.compile(name, language, text);
+        templates.put(name, template);
+        return template;
+    }
+
+    /**
+     * @param name
+     * @return the template, or null if none is registered with that name
+     */
+    public LabelTemplate getTemplate(String name) {
+        return templates.get(name);
+    }
+
+    public void unregister(String name) {
+        templates.remove(name);
+    }
+
+    public List<String> getTemplateNames() {
+        List<String> names = new ArrayList<String>(templates.keySet());
+        Collections.sort(names);
+        return names;
+    }
+}
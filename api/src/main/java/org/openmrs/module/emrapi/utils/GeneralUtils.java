@@ -26,6 +26,8 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.patient.EmrPatientService;
+import org.openmrs.module.emrapi.patient.LastViewedPatientStore;
 import org.openmrs.util.LocaleUtility;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
@@ -238,40 +240,48 @@ public class GeneralUtils {
     }
 
     /**
-     * Gets the value of the user property
-     * EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS for the user as a list of patients
-     * in reverse order impying the patient that was first added comes last while the last added one
-     * comes first
+     * Gets the patients last viewed by the user (as kept in the
+     * EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS user property) in reverse order
+     * impying the patient that was first added comes last while the last added one comes first.
+     * The patients are loaded in a single query and voided ones are skipped
      *
      * @param user
      * @should return a list of the patients last viewed by the specified user
      */
     public static List<Patient> getLastViewedPatients(User user) {
-        List<Patient> lastViewed = new ArrayList<Patient>();
-        if (user != null) {
-            //The user object cached in the user's context needs to be up to date
-            user = Context.getUserService().getUser(user.getId());
-            String lastViewedPatientIdsString = user
-                    .getUserProperty(EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS);
-            if (StringUtils.isNotBlank(lastViewedPatientIdsString)) {
-                PatientService ps = Context.getPatientService();
-                lastViewedPatientIdsString = lastViewedPatientIdsString.replaceAll("\\s", "");
-                String[] patientIds = lastViewedPatientIdsString.split(",");
-                for (String pId : patientIds) {
-                    try {
-                        Patient p = ps.getPatient(Integer.valueOf(pId));
-                        if (p != null) {
-                            lastViewed.add(p);
-                        }
-                    }
-                    catch (NumberFormatException e) {}
+        if (user == null) {
+            return new ArrayList<Patient>();
+        }
+        return Context.getService(EmrPatientService.class).getPatients(getLastViewedPatientIds(user));
+    }
+
+    /**
+     * @return the ids of the patients last viewed by the user, most recent first, from the in-memory store if it is
+     * registered and otherwise from the user property
+     */
+    private static List<Integer> getLastViewedPatientIds(User user) {
+        List<LastViewedPatientStore> stores = Context.getRegisteredComponents(LastViewedPatientStore.class);
+        if (stores != null && !stores.isEmpty()) {
+            return stores.get(0).getPatientIds(user);
+        }
+
+        List<Integer> patientIds = new ArrayList<Integer>();
+        //The user object cached in the user's context needs to be up to date
+        user = Context.getUserService().getUser(user.getId());
+        String lastViewedPatientIdsString = user
+                .getUserProperty(EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS);
+        if (StringUtils.isNotBlank(lastViewedPatientIdsString)) {
+            lastViewedPatientIdsString = lastViewedPatientIdsString.replaceAll("\\s", "");
+            for (String pId : lastViewedPatientIdsString.split(",")) {
+                try {
+                    patientIds.add(Integer.valueOf(pId));
                 }
+                catch (NumberFormatException e) {}
             }
         }
+        Collections.reverse(patientIds);
 
-        Collections.reverse(lastViewed);
-
-        return lastViewed;
+        return patientIds;
     }
 
 }
@@ -17,6 +17,9 @@ import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.emrapi.visit.contract.VisitRequest;
 import org.openmrs.module.emrapi.visit.contract.VisitResponse;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * <pre>
  * Handy service to find a {@link org.openmrs.Visit}.
@@ -24,4 +27,14 @@ import org.openmrs.module.emrapi.visit.contract.VisitResponse;
  */
 public interface EmrVisitService extends OpenmrsService {
     VisitResponse find(VisitRequest visitRequest);
+
+    /**
+     * Writes the JSON form of the {@link VisitResponse} that {@link #find(VisitRequest)} would return directly to the
+     * given stream, without building it in memory first. Intended for visits with many encounters.
+     *
+     * @param visitRequest identifies the visit
+     * @param outputStream the stream to write to, which is flushed but not closed
+     * @throws IOException if writing to the stream fails
+     */
+    void write(VisitRequest visitRequest, OutputStream outputStream) throws IOException;
 }
@@ -19,21 +19,37 @@ import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.emrapi.encounter.exception.VisitNotFoundException;
 import org.openmrs.module.emrapi.visit.contract.VisitRequest;
 import org.openmrs.module.emrapi.visit.contract.VisitResponse;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
 
 public class EmrVisitServiceImpl extends BaseOpenmrsService implements EmrVisitService {
     private VisitService visitService;
     private VisitResponseMapper visitResponseMapper;
+    private VisitResponseWriter visitResponseWriter;
 
-    public EmrVisitServiceImpl(VisitService visitService, VisitResponseMapper visitResponseMapper) {
+    public EmrVisitServiceImpl(VisitService visitService, VisitResponseMapper visitResponseMapper, VisitResponseWriter visitResponseWriter) {
         this.visitService = visitService;
         this.visitResponseMapper = visitResponseMapper;
+        this.visitResponseWriter = visitResponseWriter;
     }
 
     @Override
     public VisitResponse find(VisitRequest visitRequest) {
+        return visitResponseMapper.map(getVisit(visitRequest));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void write(VisitRequest visitRequest, OutputStream outputStream) throws IOException {
+        visitResponseWriter.write(getVisit(visitRequest), outputStream);
+    }
+
+    private Visit getVisit(VisitRequest visitRequest) {
         Visit visit = visitService.getVisitByUuid(visitRequest.getVisitUuid());
         if(visit == null)
             throw new VisitNotFoundException("Visit by uuid "+ visitRequest.getVisitUuid() + " does not exist");
-        return visitResponseMapper.map(visit);
+        return visit;
     }
 }
@@ -16,8 +16,12 @@ package org.openmrs.module.emrapi.visit;
 import org.openmrs.Encounter;
 import org.openmrs.Visit;
 import org.openmrs.module.emrapi.encounter.EncounterTransactionMapper;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.module.emrapi.visit.contract.VisitResponse;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class VisitResponseMapper {
     private EncounterTransactionMapper encounterTransactionMapper;
 
@@ -28,8 +32,9 @@ public class VisitResponseMapper {
     public VisitResponse map(Visit visit) {
         if(visit == null) return null;
         VisitResponse visitResponse = new VisitResponse(visit.getUuid());
-        for (Encounter encounter : visit.getEncounters()) {
-            visitResponse.addEncounter(encounterTransactionMapper.map(encounter, true));
+        List<Encounter> encounters = new ArrayList<Encounter>(visit.getEncounters());
+        for (EncounterTransaction encounterTransaction : encounterTransactionMapper.map(encounters, true)) {
+            visitResponse.addEncounter(encounterTransaction);
         }
         return visitResponse;
     }
@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.visit;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.Encounter;
+import org.openmrs.Visit;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
+import org.openmrs.module.emrapi.encounter.EncounterTransactionMapper;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the same JSON as a serialized {@link org.openmrs.module.emrapi.visit.contract.VisitResponse}, but loads,
+ * maps and writes the visit's encounters a chunk at a time and evicts each chunk from the session once written, so
+ * memory use does not grow with the size of the visit.
+ */
+public class VisitResponseWriter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 25;
+
+    private EncounterTransactionMapper encounterTransactionMapper;
+
+    private EmrEncounterDAO emrEncounterDAO;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    public VisitResponseWriter(EncounterTransactionMapper encounterTransactionMapper, EmrEncounterDAO emrEncounterDAO) {
+        this.encounterTransactionMapper = encounterTransactionMapper;
+        this.emrEncounterDAO = emrEncounterDAO;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public void write(Visit visit, OutputStream outputStream) throws IOException {
+        // the generator is flushed but not closed, so the caller still owns the stream
+        write(visit, objectMapper.getJsonFactory().createJsonGenerator(outputStream, JsonEncoding.UTF8));
+    }
+
+    public void write(Visit visit, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("visitUuid", visit.getUuid());
+        generator.writeArrayFieldStart("encounters");
+
+        List<Integer> encounterIds = emrEncounterDAO.getEncounterIdsByVisit(visit);
+        for (int from = 0; from < encounterIds.size(); from += chunkSize) {
+            List<Integer> chunk = encounterIds.subList(from, Math.min(from + chunkSize, encounterIds.size()));
+            List<Encounter> encounters = emrEncounterDAO.getEncountersByIds(chunk);
+            for (EncounterTransaction encounterTransaction : encounterTransactionMapper.map(encounters, true)) {
+                generator.writeObject(encounterTransaction);
+            }
+            generator.flush();
+            emrEncounterDAO.evict(encounters);
+        }
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.flush();
+    }
+}
@@ -46,6 +46,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -432,4 +433,39 @@ public class AdtServiceComponentTest extends BaseModuleContextSensitiveTest {
         activeVisit = service.getActiveVisit(patient, location);
         assertNotNull(activeVisit);
     }
+
+    @Test
+    public void shouldExcludeVisitsOfTestPatientsFromActiveVisits() throws Exception {
+        executeDataSet("checkedInPatientsComponentTestDataset.xml");
+
+        List<VisitDomainWrapper> activeVisits = service.getActiveVisits(locationService.getLocation(1000));
+
+        List<Integer> visitIds = new ArrayList<Integer>();
+        for (VisitDomainWrapper activeVisit : activeVisits) {
+            visitIds.add(activeVisit.getVisit().getVisitId());
+        }
+        assertThat(visitIds.size(), is(3));
+        assertTrue(visitIds.containsAll(Arrays.asList(2000, 2001, 2002)));
+    }
+
+    @Test
+    public void shouldMoveEncountersWithTheirObsWhenMergingVisitsOfDifferentPatients() throws Exception {
+        Encounter encounter = encounterService.getEncounter(1002);
+        Obs obs = new Obs(encounter.getPatient(), conceptService.getConcept(5089), encounter.getEncounterDatetime(), encounter.getLocation());
+        obs.setValueNumeric(70d);
+        encounter.addObs(obs);
+        encounterService.saveEncounter(encounter);
+
+        Visit merged = service.mergeVisits(visitService.getVisit(1001), visitService.getVisit(1002));
+        Context.flushSession();
+        Context.clearSession();
+
+        encounter = encounterService.getEncounter(1002);
+        assertThat(merged.getVisitId(), is(1001));
+        assertThat(encounter.getVisit().getVisitId(), is(1001));
+        assertThat(encounter.getPatient().getPatientId(), is(7));
+        assertThat(Context.getObsService().getObs(obs.getObsId()).getPerson().getPersonId(), is(7));
+        assertThat(CollectionUtils.select(visitService.getVisit(1001).getEncounters(), NON_VOIDED).size(), is(2));
+        assertTrue(visitService.getVisit(1002).isVoided());
+    }
 }
@@ -47,6 +47,7 @@ import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.EmrApiProperties;
 import org.openmrs.module.emrapi.TestUtils;
 import org.openmrs.module.emrapi.adt.exception.ExistingVisitDuringTimePeriodException;
+import org.openmrs.module.emrapi.db.EmrVisitDAO;
 import org.openmrs.module.emrapi.disposition.DispositionService;
 import org.openmrs.module.emrapi.visit.VisitDomainWrapper;
 import org.openmrs.serialization.SerializationException;
@@ -103,6 +104,7 @@ public class AdtServiceTest {
     ProviderService mockProviderService;
     PatientService mockPatientService;
     DispositionService mockDispositionService;
+    EmrVisitDAO mockEmrVisitDAO;
     EmrApiProperties emrApiProperties;
 
     private Person personForCurrentUser;
@@ -123,6 +125,7 @@ public class AdtServiceTest {
     private Location inpatientDepartment;
     private Location radiologyDepartment;
     private PersonAttributeType unknownPatientPersonAttributeType;
+    private PersonAttributeType testPatientPersonAttributeType;
     private PatientIdentifierType paperRecordIdentifierType;
 
     @Before
@@ -144,6 +147,7 @@ public class AdtServiceTest {
         mockEncounterService = mock(EncounterService.class);
         mockPatientService = mock(PatientService.class);
         mockDispositionService = mock(DispositionService.class);
+        mockEmrVisitDAO = mock(EmrVisitDAO.class);
 
         checkInClerkEncounterRole = new EncounterRole();
         checkInEncounterType = new EncounterType();
@@ -176,6 +180,9 @@ public class AdtServiceTest {
         unknownPatientPersonAttributeType.setName(EmrApiConstants.UNKNOWN_PATIENT_PERSON_ATTRIBUTE_TYPE_NAME);
         unknownPatientPersonAttributeType.setFormat("java.lang.String");
 
+        testPatientPersonAttributeType = new PersonAttributeType();
+        testPatientPersonAttributeType.setPersonAttributeTypeId(11);
+
         paperRecordIdentifierType = new PatientIdentifierType();
 
         emrApiProperties = mock(EmrApiProperties.class);
@@ -187,6 +194,7 @@ public class AdtServiceTest {
         when(emrApiProperties.getAtFacilityVisitType()).thenReturn(atFacilityVisitType);
         when(emrApiProperties.getCheckInClerkEncounterRole()).thenReturn(checkInClerkEncounterRole);
         when(emrApiProperties.getUnknownPatientPersonAttributeType()).thenReturn(unknownPatientPersonAttributeType);
+        when(emrApiProperties.getTestPatientPersonAttributeType()).thenReturn(testPatientPersonAttributeType);
         when(emrApiProperties.getAdmissionForm()).thenReturn(admissionForm);
         when(emrApiProperties.getDischargeForm()).thenReturn(null); // to test the case when no form is specified
         when(emrApiProperties.getTransferForm()).thenReturn(transferForm);
@@ -198,6 +206,7 @@ public class AdtServiceTest {
         service.setProviderService(mockProviderService);
         service.setEmrApiProperties(emrApiProperties);
         service.setDispositionService(mockDispositionService);
+        service.setEmrVisitDAO(mockEmrVisitDAO);
         this.service = service;
     }
 
@@ -294,6 +303,8 @@ public class AdtServiceTest {
         Visit mergedVisit = service.mergeVisits(visit2, visit3);
         assertNotNull(mergedVisit);
         assertSame(visit2, mergedVisit);
+        verify(mockEmrVisitDAO).moveEncounters(visit3, visit2);
+        verify(mockEncounterService, never()).saveEncounter(any(Encounter.class));
     }
 
     @Test
@@ -495,16 +506,22 @@ public class AdtServiceTest {
         expectedLocations.add(outpatientDepartment);
         expectedLocations.add(inpatientDepartment);
 
-        when(
-                mockVisitService.getVisits(any(Collection.class), any(Collection.class), eq(expectedLocations),
-                        any(Collection.class), any(Date.class), any(Date.class), any(Date.class), any(Date.class), any(Map.class),
-                        eq(false), eq(false))).thenReturn(Arrays.asList(visit1, visit2));
+        when(mockEmrVisitDAO.getActiveVisits(expectedLocations, testPatientPersonAttributeType.getId()))
+                .thenReturn(Arrays.asList(visit1, visit2));
 
         List<VisitDomainWrapper> activeVisitSummaries = service.getActiveVisits(mirebalaisHospital);
 
         assertThat(activeVisitSummaries, TestUtils.isCollectionOfExactlyElementsWithProperties("visit", visit1, visit2));
     }
 
+    @Test
+    public void shouldResolveTheTestPatientAttributeTypeOnlyOnce() throws Exception {
+        service.getActiveVisits(mirebalaisHospital);
+        service.getActiveVisits(mirebalaisHospital);
+
+        verify(emrApiProperties, times(1)).getTestPatientPersonAttributeType();
+    }
+
     @Test
     public void shouldCloseInactiveVisitWithLastEncounterDateAfterVisitExpireTime() {
         Visit visit = new Visit();
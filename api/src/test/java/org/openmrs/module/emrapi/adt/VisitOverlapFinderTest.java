@@ -0,0 +1,261 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.adt;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Visit;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.VisitService;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.db.EmrVisitDAO;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the sweep against the nested loops it replaced, on randomly generated visits
+ */
+public class VisitOverlapFinderTest {
+
+    private static final int RUNS = 300;
+
+    private static final Date BASE_DATE = new Date(1356998400000L);
+
+    private List<Location> locations;
+
+    @Before
+    public void setUp() {
+        // two unrelated location trees, each with a visit location, departments and a ward
+        locations = new ArrayList<Location>();
+        for (int tree = 0; tree < 2; tree++) {
+            Location hospital = new Location();
+            locations.add(hospital);
+            for (int department = 0; department < 2; department++) {
+                Location child = new Location();
+                hospital.addChildLocation(child);
+                locations.add(child);
+                Location ward = new Location();
+                child.addChildLocation(ward);
+                locations.add(ward);
+            }
+        }
+        locations.add(null);
+    }
+
+    @Test
+    public void anyOverlap_shouldAgreeWithComparingEveryPair() {
+        for (int run = 0; run < RUNS; run++) {
+            Random random = new Random(run);
+            List<Visit> visits = randomVisits(random, new Patient(), random.nextInt(15));
+            List<Visit> otherVisits = randomVisits(random, new Patient(), random.nextInt(15));
+
+            boolean expected = false;
+            for (Visit v : visits) {
+                for (Visit o : otherVisits) {
+                    expected = expected || referenceVisitsOverlap(v, o);
+                }
+            }
+
+            assertEquals("run " + run, expected, new VisitOverlapFinder().anyOverlap(visits, otherVisits));
+        }
+    }
+
+    @Test
+    public void findCandidates_shouldIncludeEveryOverlappingVisit() {
+        for (int run = 0; run < RUNS; run++) {
+            Random random = new Random(run);
+            List<Visit> visits = randomVisits(random, new Patient(), random.nextInt(15));
+            List<Visit> otherVisits = randomVisits(random, new Patient(), random.nextInt(15));
+
+            VisitOverlapFinder finder = new VisitOverlapFinder();
+            Map<Visit, List<Visit>> candidates = finder.findCandidates(visits, otherVisits);
+            Map<Visit, List<Visit>> ownCandidates = finder.findCandidates(visits);
+            for (Visit v : visits) {
+                for (Visit o : otherVisits) {
+                    assertEquals("run " + run, referenceVisitsOverlap(v, o), finder.overlap(v, o));
+                    if (referenceVisitsOverlap(v, o)) {
+                        assertTrue("run " + run, candidates.get(v).contains(o));
+                    }
+                }
+                for (Visit o : visits) {
+                    if (o != v && referenceVisitsOverlap(v, o)) {
+                        assertTrue("run " + run, ownCandidates.get(v).contains(o));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mergePatients_shouldMergeTheSameVisitsAsComparingEveryPair() {
+        for (int run = 0; run < RUNS; run++) {
+            Patient preferred = new Patient();
+            Patient notPreferred = new Patient();
+            Random random = new Random(run);
+            int preferredCount = random.nextInt(12);
+            int notPreferredCount = random.nextInt(12);
+            List<Visit> preferredVisits = randomVisits(random, preferred, preferredCount);
+            List<Visit> notPreferredVisits = randomVisits(random, notPreferred, notPreferredCount);
+
+            random = new Random(run);
+            random.nextInt(12);
+            random.nextInt(12);
+            List<Visit> expectedPreferredVisits = randomVisits(random, preferred, preferredCount);
+            List<Visit> expectedNotPreferredVisits = randomVisits(random, notPreferred, notPreferredCount);
+            referenceMergePatientVisits(new ArrayList<Visit>(expectedPreferredVisits), expectedNotPreferredVisits);
+
+            buildService(preferred, preferredVisits, notPreferred, notPreferredVisits).mergePatients(preferred, notPreferred);
+
+            assertSameVisits("run " + run, expectedPreferredVisits, preferredVisits);
+            assertSameVisits("run " + run, expectedNotPreferredVisits, notPreferredVisits);
+        }
+    }
+
+    private AdtServiceImpl buildService(Patient preferred, List<Visit> preferredVisits, Patient notPreferred,
+                                        List<Visit> notPreferredVisits) {
+        VisitService visitService = mock(VisitService.class);
+        when(visitService.getVisitsByPatient(preferred, true, false)).thenReturn(new ArrayList<Visit>(preferredVisits));
+        when(visitService.getVisitsByPatient(notPreferred, true, false)).thenReturn(new ArrayList<Visit>(notPreferredVisits));
+        doAnswer(new Answer<Visit>() {
+            @Override
+            public Visit answer(InvocationOnMock invocation) throws Throwable {
+                Visit visit = (Visit) invocation.getArguments()[0];
+                visit.setVoided(true);
+                return visit;
+            }
+        }).when(visitService).voidVisit(any(Visit.class), anyString());
+
+        EmrApiProperties emrApiProperties = mock(EmrApiProperties.class);
+        PersonAttributeType unknownPatient = new PersonAttributeType();
+        unknownPatient.setPersonAttributeTypeId(10);
+        when(emrApiProperties.getUnknownPatientPersonAttributeType()).thenReturn(unknownPatient);
+
+        AdtServiceImpl service = new AdtServiceImpl();
+        service.setVisitService(visitService);
+        service.setPatientService(mock(PatientService.class));
+        service.setEmrApiProperties(emrApiProperties);
+        service.setEmrVisitDAO(mock(EmrVisitDAO.class));
+        return service;
+    }
+
+    private void assertSameVisits(String message, List<Visit> expected, List<Visit> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message, expected.get(i).getStartDatetime(), actual.get(i).getStartDatetime());
+            assertEquals(message, expected.get(i).getStopDatetime(), actual.get(i).getStopDatetime());
+            assertEquals(message, expected.get(i).isVoided(), actual.get(i).isVoided());
+        }
+    }
+
+    private List<Visit> randomVisits(Random random, Patient patient, int count) {
+        List<Visit> visits = new ArrayList<Visit>();
+        for (int i = 0; i < count; i++) {
+            Visit visit = new Visit();
+            visit.setPatient(patient);
+            visit.setLocation(locations.get(random.nextInt(locations.size())));
+            int startDay = random.nextInt(60);
+            visit.setStartDatetime(DateUtils.addDays(BASE_DATE, startDay));
+            if (random.nextInt(5) > 0) {
+                visit.setStopDatetime(DateUtils.addDays(BASE_DATE, startDay + random.nextInt(8)));
+            }
+            visits.add(visit);
+        }
+        return visits;
+    }
+
+    /**
+     * The visit merging of AdtServiceImpl#mergePatients before it used the sweep
+     */
+    private void referenceMergePatientVisits(List<Visit> preferredVisits, List<Visit> notPreferredVisits) {
+        for (Visit losing : notPreferredVisits) {
+            if (!losing.isVoided()) {
+                for (Visit winning : preferredVisits) {
+                    if (!winning.isVoided() && referenceVisitsOverlap(losing, winning)) {
+                        referenceMergeVisits(winning, losing);
+                        break;
+                    }
+                }
+            }
+        }
+
+        Collections.sort(preferredVisits, new Comparator<Visit>() {
+            @Override
+            public int compare(Visit left, Visit right) {
+                return OpenmrsUtil.compareWithNullAsEarliest(left.getStartDatetime(), right.getStartDatetime());
+            }
+        });
+        for (int i = 0; i < preferredVisits.size(); ++i) {
+            Visit visit = preferredVisits.get(i);
+            if (!visit.isVoided()) {
+                for (int j = i + 1; j < preferredVisits.size(); ++j) {
+                    Visit candidate = preferredVisits.get(j);
+                    if (!candidate.isVoided() && referenceVisitsOverlap(visit, candidate)) {
+                        referenceMergeVisits(visit, candidate);
+                    }
+                }
+            }
+        }
+    }
+
+    private void referenceMergeVisits(Visit preferred, Visit nonPreferred) {
+        if (OpenmrsUtil.compareWithNullAsEarliest(nonPreferred.getStartDatetime(), preferred.getStartDatetime()) < 0) {
+            preferred.setStartDatetime(nonPreferred.getStartDatetime());
+        }
+        if (preferred.getStopDatetime() != null && OpenmrsUtil.compareWithNullAsLatest(preferred.getStopDatetime(), nonPreferred.getStopDatetime()) < 0) {
+            preferred.setStopDatetime(nonPreferred.getStopDatetime());
+        }
+        nonPreferred.setVoided(true);
+    }
+
+    private boolean referenceVisitsOverlap(Visit v1, Visit v2) {
+        Location where1 = v1.getLocation();
+        Location where2 = v2.getLocation();
+        if ((where1 == null && where2 == null) ||
+                referenceIsSameOrAncestor(where1, where2) ||
+                referenceIsSameOrAncestor(where2, where1)) {
+            return (OpenmrsUtil.compareWithNullAsLatest(v1.getStartDatetime(), v2.getStopDatetime()) <= 0)
+                    && (OpenmrsUtil.compareWithNullAsLatest(v2.getStartDatetime(), v1.getStopDatetime()) <= 0);
+        }
+        return false;
+    }
+
+    private boolean referenceIsSameOrAncestor(Location a, Location b) {
+        if (a == null || b == null) {
+            return a == null && b == null;
+        }
+        return a.equals(b) || referenceIsSameOrAncestor(a, b.getParentLocation());
+    }
+}
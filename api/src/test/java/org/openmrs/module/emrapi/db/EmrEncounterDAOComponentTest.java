@@ -5,9 +5,11 @@ import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
+import org.openmrs.Visit;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.EncounterService;
 import org.openmrs.api.ObsService;
+import org.openmrs.api.VisitService;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -30,6 +32,9 @@ public class EmrEncounterDAOComponentTest extends BaseModuleContextSensitiveTest
     @Autowired
     private EncounterService encounterService;
 
+    @Autowired
+    private VisitService visitService;
+
     @Before
     public void beforeAllTests() throws Exception {
         executeDataSet("emrEncounterDAOComponentTestDataset.xml");
@@ -92,4 +97,22 @@ public class EmrEncounterDAOComponentTest extends BaseModuleContextSensitiveTest
         assertThat(encounters.get(0).getId(),is(1000));
     }
 
+    @Test
+    public void getEncountersByVisitAndType_shouldReturnEncountersOfTypeMostRecentFirst() {
+        Visit visit = visitService.getVisit(1000);
+        EncounterType encounterType = encounterService.getEncounterType(2);
+        List<Encounter> encounters = emrEncounterDAO.getEncountersByVisitAndType(visit, encounterType);
+        assertThat(encounters.size(), is(2));
+        assertThat(encounters.get(0).getId(), is(1004));
+        assertThat(encounters.get(1).getId(), is(1003));
+    }
+
+    @Test
+    public void getEncountersByVisitAndType_shouldReturnEmptyListIfNoEncounterOfType() {
+        Visit visit = visitService.getVisit(1000);
+        EncounterType encounterType = encounterService.getEncounterType(1);
+        List<Encounter> encounters = emrEncounterDAO.getEncountersByVisitAndType(visit, encounterType);
+        assertThat(encounters.size(), is(0));
+    }
+
 }
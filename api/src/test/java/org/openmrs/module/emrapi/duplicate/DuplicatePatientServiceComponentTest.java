@@ -0,0 +1,108 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openmrs.Patient;
+import org.openmrs.PersonName;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class DuplicatePatientServiceComponentTest extends BaseModuleContextSensitiveTest {
+
+    @Autowired
+    private DuplicatePatientService duplicatePatientService;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("baseTestDataset.xml");
+    }
+
+    @Test
+    public void shouldFindPatientsThatDifferOnlyByTheSpellingOfTheirGivenName() throws Exception {
+        Patient patient = patientService.getPatient(7);
+        Patient duplicate = patientService.getPatient(8);
+        setName(patient, "Collet", "Chebaskwony");
+        setName(duplicate, "Kolet", "Chebaskwony");
+        duplicate.setGender(patient.getGender());
+        duplicate.setBirthdate(patient.getBirthdate());
+        patientService.savePatient(patient);
+        patientService.savePatient(duplicate);
+        Context.flushSession();
+
+        Integer lastPatientId = null;
+        do {
+            lastPatientId = duplicatePatientService.createMissingBlockKeys(lastPatientId, 2);
+        } while (lastPatientId != null);
+
+        List<DuplicatePatientCandidate> duplicates = duplicatePatientService.getDuplicates(0.75, 10);
+
+        assertThat(duplicates.size(), is(1));
+        assertThat(duplicates.get(0).getPatientId(), is(7));
+        assertThat(duplicates.get(0).getOtherPatientId(), is(8));
+        assertTrue(duplicates.get(0).getScore() >= 0.8);
+    }
+
+    @Test
+    public void shouldNotFindPatientsOnceOneOfThemIsVoided() throws Exception {
+        Patient patient = patientService.getPatient(7);
+        Patient duplicate = patientService.getPatient(8);
+        setName(patient, "Collet", "Chebaskwony");
+        setName(duplicate, "Collet", "Chebaskwony");
+        patientService.savePatient(patient);
+        patientService.savePatient(duplicate);
+        Context.flushSession();
+        duplicatePatientService.saveBlockKeys(7);
+        duplicatePatientService.saveBlockKeys(8);
+        assertThat(duplicatePatientService.getDuplicates(0, 10).size(), is(1));
+
+        patientService.voidPatient(duplicate, "testing");
+        Context.flushSession();
+        duplicatePatientService.saveBlockKeys(8);
+
+        assertThat(duplicatePatientService.getDuplicates(0, 10).size(), is(0));
+    }
+
+    @Test(expected = APIAuthenticationException.class)
+    public void shouldNotLetUnprivilegedUsersListDuplicates() throws Exception {
+        Context.logout();
+
+        duplicatePatientService.getDuplicates(0, 10);
+    }
+
+    private void setName(Patient patient, String givenName, String familyName) {
+        for (PersonName name : patient.getNames()) {
+            name.setGivenName(givenName);
+            name.setMiddleName(null);
+            name.setFamilyName(familyName);
+        }
+    }
+}
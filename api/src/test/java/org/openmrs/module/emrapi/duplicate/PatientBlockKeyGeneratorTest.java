@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.duplicate;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PatientBlockKeyGeneratorTest {
+
+    private PatientBlockKeyGenerator generator = new PatientBlockKeyGenerator();
+
+    @Test
+    public void shouldMakeKeysFromNamesBirthYearGenderAndCity() {
+        PatientMatchRecord record = new PatientMatchRecord(1);
+        record.addName("Jean", "Pierre");
+        record.setGender("M");
+        record.setBirthdate(new LocalDate(1980, 5, 17).toDate());
+        record.addCityVillage("Cange");
+
+        Set<String> keys = generator.getBlockKeys(record);
+
+        assertEquals(3, keys.size());
+        assertTrue(keys.contains("fy:pi|1980|M"));
+        assertTrue(keys.contains("fa:pi|cange"));
+    }
+
+    @Test
+    public void shouldGiveSwappedAndMisspelledNamesACommonKey() {
+        PatientMatchRecord record = new PatientMatchRecord(1);
+        record.addName("Jean", "Pierre");
+        PatientMatchRecord swapped = new PatientMatchRecord(2);
+        swapped.addName("Py\u00e8", "Jan");
+
+        assertFalse(Collections.disjoint(generator.getBlockKeys(record), generator.getBlockKeys(swapped)));
+    }
+
+    @Test
+    public void shouldScoreTheSamePersonHigherThanSomeoneElse() {
+        DefaultDuplicatePatientScorer scorer = new DefaultDuplicatePatientScorer();
+        PatientMatchRecord record = new PatientMatchRecord(1);
+        record.addName("Philippe", "Joseph");
+        record.setGender("M");
+        record.setBirthdate(new LocalDate(1980, 5, 17).toDate());
+        PatientMatchRecord sameWithTypo = new PatientMatchRecord(2);
+        sameWithTypo.addName("Filip", "Joseph");
+        sameWithTypo.setGender("M");
+        sameWithTypo.setBirthdate(new LocalDate(1980, 5, 17).toDate());
+        PatientMatchRecord relative = new PatientMatchRecord(3);
+        relative.addName("Marie", "Joseph");
+        relative.setGender("F");
+        relative.setBirthdate(new LocalDate(1985, 1, 2).toDate());
+
+        assertEquals(0.9, scorer.score(record, sameWithTypo), 0.001);
+        assertEquals(0.35, scorer.score(record, relative), 0.001);
+    }
+}
@@ -0,0 +1,57 @@
+package org.openmrs.module.emrapi.encounter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.Concept;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ConceptCacheTest {
+
+    @Mock
+    private Concept concept;
+    @Mock
+    private ConceptDatatype conceptDatatype;
+
+    private ConceptCache conceptCache;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(concept.getConceptId()).thenReturn(5089);
+        when(concept.getUuid()).thenReturn("weight-uuid");
+        when(concept.getName()).thenReturn(new ConceptName("WEIGHT (KG)", null));
+        when(concept.getDatatype()).thenReturn(conceptDatatype);
+        when(conceptDatatype.isNumeric()).thenReturn(true);
+        conceptCache = new ConceptCache();
+    }
+
+    @Test
+    public void shouldResolveEachConceptOnlyOnce() {
+        EncounterTransaction.Concept first = conceptCache.getConcept(concept);
+        EncounterTransaction.Concept second = conceptCache.getConcept(concept);
+        assertTrue(conceptCache.isNumeric(concept));
+
+        assertEquals("weight-uuid", second.getUuid());
+        assertEquals("WEIGHT (KG)", second.getName());
+        assertNotSame(first, second);
+        verify(concept, times(1)).getName();
+        verify(concept, times(1)).getDatatype();
+    }
+
+    @Test
+    public void shouldMapNullConceptToNull() {
+        assertNull(conceptCache.getConcept(null));
+    }
+}
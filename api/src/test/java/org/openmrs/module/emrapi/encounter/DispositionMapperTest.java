@@ -0,0 +1,57 @@
+package org.openmrs.module.emrapi.encounter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.api.ConceptService;
+import org.openmrs.module.emrapi.EmrApiConstants;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class DispositionMapperTest {
+
+    @Mock
+    private ConceptService conceptService;
+
+    private DispositionMapper dispositionMapper;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        dispositionMapper = new DispositionMapper(conceptService);
+    }
+
+    @Test
+    public void shouldLookUpTheDispositionGroupConceptOncePerMappingCall() {
+        when(conceptService.getConceptByMapping(EmrApiConstants.CONCEPT_CODE_DISPOSITION_CONCEPT_SET,
+                EmrApiConstants.EMR_CONCEPT_SOURCE_NAME)).thenReturn(concept("old-uuid"), concept("new-uuid"));
+        ConceptCache conceptCache = new ConceptCache();
+
+        assertTrue(dispositionMapper.isDispositionGroup(obs("old-uuid"), conceptCache));
+        assertFalse(dispositionMapper.isDispositionGroup(obs("other-uuid"), conceptCache));
+        verify(conceptService, times(1)).getConceptByMapping(EmrApiConstants.CONCEPT_CODE_DISPOSITION_CONCEPT_SET,
+                EmrApiConstants.EMR_CONCEPT_SOURCE_NAME);
+
+        // the concept mapped to the code changed, and the next mapping call sees it
+        assertTrue(dispositionMapper.isDispositionGroup(obs("new-uuid"), new ConceptCache()));
+    }
+
+    private Concept concept(String uuid) {
+        Concept concept = new Concept();
+        concept.setUuid(uuid);
+        return concept;
+    }
+
+    private Obs obs(String conceptUuid) {
+        Obs obs = new Obs();
+        obs.setConcept(concept(conceptUuid));
+        return obs;
+    }
+}
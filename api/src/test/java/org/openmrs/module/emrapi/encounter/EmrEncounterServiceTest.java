@@ -12,6 +12,7 @@ import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.ProviderService;
 import org.openmrs.api.VisitService;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 
 import java.util.List;
@@ -46,6 +47,8 @@ public class EmrEncounterServiceTest {
 
     @Mock
     private EncounterTransactionMapper encounterTransactionMapper;
+    @Mock
+    private EmrEncounterDAO emrEncounterDAO;
 
     private EmrEncounterService emrEncounterService;
 
@@ -54,7 +57,7 @@ public class EmrEncounterServiceTest {
         initMocks(this);
         emrEncounterService = new EmrEncounterServiceImpl(patientService,visitService,encounterService,locationService,providerService,
                 administrationService,encounterObservationServiceHelper,encounterTestOrderServiceHelper,encounterDrugOrderServiceHelper,
-                encounterDispositionServiceHelper,encounterTransactionMapper);
+                encounterDispositionServiceHelper,encounterTransactionMapper,emrEncounterDAO);
 
         Patient patient = new Patient(1);
         patient.setUuid("patient-uuid");
@@ -25,6 +25,10 @@ import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import java.util.Arrays;
 import java.util.HashSet;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -61,8 +65,8 @@ public class EncounterObservationsMapperTest {
         when(diagnosisMetadata.isDiagnosis(obs3)).thenReturn(true);
 
         EncounterTransaction.Disposition disposition = new EncounterTransaction.Disposition();
-        when(dispositionMapper.isDispositionGroup(obs4)).thenReturn(true);
-        when(dispositionMapper.getDisposition(obs4)).thenReturn(disposition);
+        when(dispositionMapper.isDispositionGroup(eq(obs4), any(ConceptCache.class))).thenReturn(true);
+        when(dispositionMapper.getDisposition(eq(obs4), any(ConceptCache.class))).thenReturn(disposition);
 
         encounterObservationsMapper.update(encounterTransaction, allObs);
 
@@ -70,4 +74,26 @@ public class EncounterObservationsMapperTest {
         Assert.assertEquals(disposition, encounterTransaction.getDisposition());
         Assert.assertEquals(1, encounterTransaction.getObservations().size());
     }
+
+    @Test
+    public void testUpdateMapsOnlySelectedSections() throws Exception {
+        EncounterTransaction encounterTransaction = new EncounterTransaction();
+        Obs diagnosisObs = new Obs();
+        Obs dispositionObs = new Obs();
+        Obs otherObs = new Obs();
+        HashSet<Obs> allObs = new HashSet<Obs>(Arrays.asList(diagnosisObs, dispositionObs, otherObs));
+        when(diagnosisMetadata.isDiagnosis(diagnosisObs)).thenReturn(true);
+
+        EncounterTransaction.Disposition disposition = new EncounterTransaction.Disposition();
+        when(dispositionMapper.isDispositionGroup(eq(dispositionObs), any(ConceptCache.class))).thenReturn(true);
+        when(dispositionMapper.getDisposition(eq(dispositionObs), any(ConceptCache.class))).thenReturn(disposition);
+
+        encounterObservationsMapper.update(encounterTransaction, allObs, EncounterTransactionProjection.parse("disposition"));
+
+        Assert.assertEquals(0, encounterTransaction.getDiagnoses().size());
+        Assert.assertEquals(disposition, encounterTransaction.getDisposition());
+        Assert.assertEquals(0, encounterTransaction.getObservations().size());
+        verify(diagnosisMapper, never()).map(any(Obs.class), any(DiagnosisMetadata.class), any(ConceptCache.class));
+        verify(observationMapper, never()).map(any(Obs.class), any(ConceptCache.class));
+    }
 }
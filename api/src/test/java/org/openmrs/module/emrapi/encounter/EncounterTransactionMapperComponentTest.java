@@ -0,0 +1,153 @@
+package org.openmrs.module.emrapi.encounter;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.Encounter;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.VisitService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.disposition.DispositionService;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+import org.openmrs.module.emrapi.test.ContextSensitiveMetadataTestUtils;
+import org.openmrs.module.emrapi.test.builder.ConceptBuilder;
+import org.openmrs.module.emrapi.test.builder.ObsBuilder;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class EncounterTransactionMapperComponentTest extends BaseModuleContextSensitiveTest {
+
+    // the number of statements needed to map a visit must not grow with the number of encounters in it
+    private static final long MAX_QUERIES_TO_MAP_VISIT = 20;
+
+    @Autowired
+    private EncounterTransactionMapper encounterTransactionMapper;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Autowired
+    private ConceptService conceptService;
+
+    @Autowired
+    private DispositionService dispositionService;
+
+    @Autowired
+    private EmrApiProperties emrApiProperties;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private VisitService visitService;
+
+    @Autowired
+    private EncounterService encounterService;
+
+    @Autowired
+    private LocationService locationService;
+
+    @Autowired
+    private ProviderService providerService;
+
+    private Concept textConcept;
+
+    private Concept groupConcept;
+
+    @Before
+    public void setUp() throws Exception {
+        ContextSensitiveMetadataTestUtils.setupDiagnosisMetadata(conceptService, emrApiProperties);
+        ContextSensitiveMetadataTestUtils.setupDispositionDescriptor(conceptService, dispositionService);
+
+        ConceptDatatype textDatatype = conceptService.getConceptDatatypeByName("Text");
+        ConceptDatatype naDatatype = conceptService.getConceptDatatypeByName("N/A");
+        ConceptClass misc = conceptService.getConceptClassByName("Misc");
+        ConceptClass convSet = conceptService.getConceptClassByName("ConvSet");
+
+        textConcept = new ConceptBuilder(conceptService, textDatatype, misc).addName("Mapping test comment").saveAndGet();
+        groupConcept = new ConceptBuilder(conceptService, naDatatype, convSet).addName("Mapping test group")
+                .addSetMembers(textConcept).saveAndGet();
+    }
+
+    @Test
+    public void map_shouldLoadAVisitWithABoundedNumberOfQueriesRegardlessOfEncounterCount() throws Exception {
+        Integer smallVisitId = createVisit(DateUtil.parseDate("2012-01-01", "yyyy-MM-dd"), 2);
+        Integer largeVisitId = createVisit(DateUtil.parseDate("2012-02-01", "yyyy-MM-dd"), 10);
+
+        long smallVisitQueries = countQueriesToMapVisit(smallVisitId, 2);
+        long largeVisitQueries = countQueriesToMapVisit(largeVisitId, 10);
+
+        assertThat(smallVisitQueries, lessThanOrEqualTo(MAX_QUERIES_TO_MAP_VISIT));
+        assertThat(largeVisitQueries, lessThanOrEqualTo(MAX_QUERIES_TO_MAP_VISIT));
+        assertThat(largeVisitQueries, lessThanOrEqualTo(smallVisitQueries));
+    }
+
+    private long countQueriesToMapVisit(Integer visitId, int expectedEncounters) {
+        Context.flushSession();
+        Context.clearSession();
+
+        Visit visit = visitService.getVisit(visitId);
+        List<Encounter> encounters = new ArrayList<Encounter>(visit.getEncounters());
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        List<EncounterTransaction> encounterTransactions = encounterTransactionMapper.map(encounters, true);
+        long queries = statistics.getPrepareStatementCount();
+        statistics.setStatisticsEnabled(false);
+
+        assertThat(encounterTransactions.size(), is(expectedEncounters));
+        for (EncounterTransaction encounterTransaction : encounterTransactions) {
+            assertThat(encounterTransaction.getObservations().size(), is(2));
+            assertThat(encounterTransaction.getProviders().size(), is(1));
+        }
+        return queries;
+    }
+
+    private Integer createVisit(Date startDate, int numberOfEncounters) {
+        Patient patient = patientService.getPatient(7);
+        Location location = locationService.getLocation(1);
+
+        Visit visit = new Visit(patient, visitService.getVisitType(1), startDate);
+        visit.setLocation(location);
+        visitService.saveVisit(visit);
+
+        for (int i = 0; i < numberOfEncounters; i++) {
+            Encounter encounter = new Encounter();
+            encounter.setPatient(patient);
+            encounter.setEncounterType(encounterService.getEncounterType(1));
+            encounter.setLocation(location);
+            encounter.setEncounterDatetime(startDate);
+            encounter.addProvider(encounterService.getEncounterRole(1), providerService.getProvider(1));
+            encounter.addObs(new ObsBuilder().setPerson(patient).setObsDatetime(startDate)
+                    .setConcept(textConcept).setValue("comment " + i).get());
+            encounter.addObs(new ObsBuilder().setPerson(patient).setObsDatetime(startDate)
+                    .setConcept(groupConcept).addMember(textConcept, "member " + i).get());
+            visit.addEncounter(encounter);
+            encounterService.saveEncounter(encounter);
+        }
+        return visit.getId();
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.openmrs.module.emrapi.encounter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EncounterTransactionProjectionTest {
+
+    @Test
+    public void parse_shouldReturnAllSectionsForBlankFields() {
+        assertSame(EncounterTransactionProjection.ALL, EncounterTransactionProjection.parse(null));
+        assertSame(EncounterTransactionProjection.ALL, EncounterTransactionProjection.parse(" "));
+    }
+
+    @Test
+    public void parse_shouldSelectOnlyTheRequestedSections() {
+        EncounterTransactionProjection projection = EncounterTransactionProjection.parse("diagnoses, disposition");
+
+        assertEquals(2, projection.getSections().size());
+        assertTrue(projection.includes(EncounterTransactionProjection.Section.DIAGNOSES));
+        assertTrue(projection.includes(EncounterTransactionProjection.Section.DISPOSITION));
+        assertTrue(projection.includesObs());
+        assertFalse(projection.includesOrders());
+        assertFalse(projection.includes(EncounterTransactionProjection.Section.PROVIDERS));
+    }
+
+    @Test
+    public void parse_shouldMatchJsonFieldNames() {
+        EncounterTransactionProjection projection = EncounterTransactionProjection.parse("testOrders,drugorders");
+
+        assertTrue(projection.includes(EncounterTransactionProjection.Section.TEST_ORDERS));
+        assertTrue(projection.includes(EncounterTransactionProjection.Section.DRUG_ORDERS));
+        assertFalse(projection.includesObs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_shouldFailForUnknownFields() {
+        EncounterTransactionProjection.parse("diagnoses,vitals");
+    }
+}
@@ -0,0 +1,79 @@
+package org.openmrs.module.emrapi.encounter.matcher;
+
+import org.hibernate.collection.PersistentSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterType;
+import org.openmrs.Visit;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
+import org.openmrs.module.emrapi.encounter.EncounterParameters;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultEncounterMatcherTest {
+
+    private EmrEncounterDAO emrEncounterDAO;
+
+    private DefaultEncounterMatcher matcher;
+
+    private EncounterType encounterType;
+
+    @Before
+    public void setUp() {
+        emrEncounterDAO = mock(EmrEncounterDAO.class);
+        matcher = new DefaultEncounterMatcher(emrEncounterDAO);
+        encounterType = new EncounterType(1);
+    }
+
+    @Test
+    public void shouldMatchFromLoadedEncountersWithoutQuerying() {
+        Encounter other = new Encounter(1);
+        other.setEncounterType(new EncounterType(2));
+        Encounter expected = new Encounter(2);
+        expected.setEncounterType(encounterType);
+
+        Visit visit = new Visit(1);
+        visit.setEncounters(new HashSet<Encounter>(Arrays.asList(other, expected)));
+
+        Encounter encounter = matcher.findEncounter(visit, EncounterParameters.instance().setEncounterType(encounterType));
+
+        assertThat(encounter, is(expected));
+        verify(emrEncounterDAO, never()).getEncountersByVisitAndType(any(Visit.class), any(EncounterType.class));
+    }
+
+    @Test
+    public void shouldQueryByVisitAndTypeWhenEncountersAreNotLoaded() {
+        Encounter expected = new Encounter(2);
+        expected.setEncounterType(encounterType);
+
+        Visit visit = new Visit(1);
+        visit.setEncounters(new PersistentSet(null));
+        when(emrEncounterDAO.getEncountersByVisitAndType(visit, encounterType)).thenReturn(Arrays.asList(expected));
+
+        Encounter encounter = matcher.findEncounter(visit, EncounterParameters.instance().setEncounterType(encounterType));
+
+        assertThat(encounter, is(expected));
+    }
+
+    @Test
+    public void shouldReturnNullWhenNoEncounterOfTypeInUnloadedVisit() {
+        Visit visit = new Visit(1);
+        visit.setEncounters(new PersistentSet(null));
+        when(emrEncounterDAO.getEncountersByVisitAndType(visit, encounterType)).thenReturn(Arrays.<Encounter>asList());
+
+        Encounter encounter = matcher.findEncounter(visit, EncounterParameters.instance().setEncounterType(encounterType));
+
+        assertThat(encounter, is(nullValue()));
+    }
+}
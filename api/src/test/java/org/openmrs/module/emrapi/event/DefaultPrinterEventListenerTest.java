@@ -0,0 +1,45 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.junit.Test;
+import org.openmrs.module.emrapi.printer.DefaultPrinterCache;
+import org.openmrs.module.emrapi.printer.Printer;
+
+public class DefaultPrinterEventListenerTest {
+	
+	/**
+	 * @verifies clear the default printer cache
+	 * @see DefaultPrinterEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldClearTheDefaultPrinterCache() throws Exception {
+		DefaultPrinterCache cache = new DefaultPrinterCache();
+		cache.put(1, Printer.Type.LABEL, 5, cache.getGeneration());
+		cache.put(2, Printer.Type.ID_CARD, 6, cache.getGeneration());
+		long generation = cache.getGeneration();
+		
+		new DefaultPrinterEventListener(cache).onMessage(new ActiveMQMapMessage());
+		
+		assertEquals(0, cache.size());
+		assertNull(cache.get(1, Printer.Type.LABEL));
+		// a lookup that started before the event must not put its value back
+		cache.put(1, Printer.Type.LABEL, 5, generation);
+		assertNull(cache.get(1, Printer.Type.LABEL));
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Daemon.class, Context.class })
+public class EmrApiEventExecutorTest {
+
+    private EmrApiEventExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(Context.class);
+        PowerMockito.mockStatic(Daemon.class);
+        when(Daemon.runInDaemonThread(any(Runnable.class), any(DaemonToken.class))).thenAnswer(new Answer<Thread>() {
+
+            @Override
+            public Thread answer(InvocationOnMock invocation) throws Throwable {
+                Thread thread = new Thread((Runnable) invocation.getArguments()[0]);
+                thread.start();
+                return thread;
+            }
+        });
+        executor = new EmrApiEventExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.stop(5000);
+    }
+
+    @Test
+    public void shouldCoalesceQueuedTasksWithTheSameKeyAndDropTasksWhenTheQueueIsFull() throws Exception {
+        executor.start(null, 1, 2);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger keyedRuns = new AtomicInteger();
+        Runnable keyed = new Runnable() {
+
+            @Override
+            public void run() {
+                keyedRuns.incrementAndGet();
+            }
+        };
+
+        executor.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(executor.submit("key", keyed));
+        assertTrue(executor.submit("key", keyed));
+        assertTrue(executor.submit(new NoOp()));
+        assertFalse(executor.submit(new NoOp()));
+        assertEquals(2, executor.getQueueDepth());
+
+        release.countDown();
+        executor.stop(5000);
+
+        assertEquals(1, keyedRuns.get());
+        assertEquals(5, executor.getSubmittedCount());
+        assertEquals(1, executor.getCoalescedCount());
+        assertEquals(1, executor.getDroppedCount());
+        assertEquals(3, executor.getCompletedCount());
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void shouldCountFailedTasksAndKeepRunning() throws Exception {
+        executor.start(null, 1, 10);
+
+        executor.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                throw new IllegalStateException("testing");
+            }
+        });
+        executor.submit(new NoOp());
+        executor.stop(5000);
+
+        assertEquals(1, executor.getFailedCount());
+        assertEquals(1, executor.getCompletedCount());
+        assertFalse(executor.submit(new NoOp()));
+    }
+
+    private static class NoOp implements Runnable {
+
+        @Override
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+import javax.jms.MapMessage;
+
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Patient;
+import org.openmrs.PersonAddress;
+import org.openmrs.api.PatientService;
+import org.openmrs.event.Event;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class PatientBlockKeyEventListenerTest extends BaseModuleContextSensitiveTest {
+	
+	@Autowired
+	private PatientService patientService;
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	private EmrApiEventExecutor eventExecutor;
+	
+	private Patient patient;
+	
+	@Before
+	public void setUp() {
+		eventExecutor = mock(EmrApiEventExecutor.class);
+		when(eventExecutor.submit(anyString(), any(Runnable.class))).thenAnswer(new Answer<Boolean>() {
+			
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				((Runnable) invocation.getArguments()[1]).run();
+				return true;
+			}
+		});
+		patient = patientService.getPatient(7);
+	}
+	
+	/**
+	 * @verifies recompute the address keys of the patient of a saved person address
+	 * @see PatientBlockKeyEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldRecomputeTheAddressKeysOfThePatientOfASavedPersonAddress() throws Exception {
+		PersonAddress address = new PersonAddress();
+		address.setCityVillage("Mirebalais");
+		patient.addAddress(address);
+		patientService.savePatient(patient);
+		
+		new PatientBlockKeyEventListener(eventExecutor).onMessage(createMessage(Event.Action.CREATED, address.getUuid()));
+		
+		verify(eventExecutor).submit(eq("patientBlockKeys:" + address.getUuid()), any(Runnable.class));
+		assertTrue(hasKey("fa:", "|mirebalais"));
+	}
+	
+	/**
+	 * @verifies recompute the birth year keys of an updated patient
+	 * @see PatientBlockKeyEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldRecomputeTheBirthYearKeysOfAnUpdatedPatient() throws Exception {
+		patient.setBirthdate(new SimpleDateFormat("yyyy-MM-dd").parse("1983-04-01"));
+		patient.setGender("F");
+		patientService.savePatient(patient);
+		
+		new PatientBlockKeyEventListener(eventExecutor).onMessage(createMessage(Event.Action.UPDATED, patient.getUuid()));
+		
+		assertTrue(hasKey("fy:", "|1983|F"));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private boolean hasKey(String prefix, String suffix) {
+		sessionFactory.getCurrentSession().flush();
+		List<String> keys = sessionFactory.getCurrentSession().createQuery(
+		    "select k.blockKey from PatientBlockKey k where k.patientId = :patientId").setInteger("patientId",
+		    patient.getPatientId()).list();
+		for (String key : keys) {
+			if (key.startsWith(prefix) && key.endsWith(suffix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private MapMessage createMessage(Event.Action action, String uuid) throws Exception {
+		MapMessage message = new ActiveMQMapMessage();
+		message.setString("action", action.name());
+		message.setString("uuid", uuid);
+		return message;
+	}
+}
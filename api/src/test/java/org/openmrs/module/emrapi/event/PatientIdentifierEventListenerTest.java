@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import javax.jms.MapMessage;
+
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.api.PatientService;
+import org.openmrs.event.Event;
+import org.openmrs.module.emrapi.patient.PatientIdentifierCache;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class PatientIdentifierEventListenerTest extends BaseModuleContextSensitiveTest {
+	
+	@Autowired
+	private PatientService patientService;
+	
+	private EmrApiEventExecutor eventExecutor;
+	
+	private PatientIdentifierCache cache;
+	
+	private PatientIdentifier patientIdentifier;
+	
+	@Before
+	public void setUp() {
+		eventExecutor = mock(EmrApiEventExecutor.class);
+		cache = new PatientIdentifierCache();
+		patientIdentifier = patientService.getPatient(7).getPatientIdentifier();
+		cache.put(patientIdentifier.getIdentifier(), Arrays.asList(new PatientIdentifierCache.Match(7, 1)),
+		    cache.getGeneration());
+		cache.put("OTHER-1", Arrays.asList(new PatientIdentifierCache.Match(8, 1)), cache.getGeneration());
+	}
+	
+	/**
+	 * @verifies invalidate the identifier of a created patient identifier
+	 * @see PatientIdentifierEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldInvalidateTheIdentifierOfACreatedPatientIdentifier() throws Exception {
+		when(eventExecutor.submit(anyString(), any(Runnable.class))).thenAnswer(new Answer<Boolean>() {
+			
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				((Runnable) invocation.getArguments()[1]).run();
+				return true;
+			}
+		});
+		
+		new PatientIdentifierEventListener(eventExecutor, cache).onMessage(createMessage(Event.Action.CREATED));
+		
+		verify(eventExecutor).submit(eq("patientIdentifier:" + patientIdentifier.getUuid()), any(Runnable.class));
+		assertNull(cache.get(patientIdentifier.getIdentifier()));
+		assertNotNull(cache.get("OTHER-1"));
+	}
+	
+	/**
+	 * @verifies clear the cache if the executor does not accept the invalidation
+	 * @see PatientIdentifierEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldClearTheCacheIfTheExecutorDoesNotAcceptTheInvalidation() throws Exception {
+		when(eventExecutor.submit(anyString(), any(Runnable.class))).thenReturn(false);
+		
+		new PatientIdentifierEventListener(eventExecutor, cache).onMessage(createMessage(Event.Action.CREATED));
+		
+		assertEquals(0, cache.size());
+	}
+	
+	/**
+	 * @verifies clear the cache when a patient identifier is changed, voided or purged
+	 * @see PatientIdentifierEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldClearTheCacheWhenAPatientIdentifierIsChangedVoidedOrPurged() throws Exception {
+		for (Event.Action action : new Event.Action[] { Event.Action.UPDATED, Event.Action.VOIDED, Event.Action.PURGED }) {
+			cache.put("OTHER-1", Arrays.asList(new PatientIdentifierCache.Match(8, 1)), cache.getGeneration());
+			long generation = cache.getGeneration();
+			
+			new PatientIdentifierEventListener(eventExecutor, cache).onMessage(createMessage(action));
+			
+			assertEquals(0, cache.size());
+			// a lookup that started before the event must not put its matches back
+			cache.put("OTHER-1", Arrays.asList(new PatientIdentifierCache.Match(8, 1)), generation);
+			assertNull(cache.get("OTHER-1"));
+		}
+	}
+	
+	/**
+	 * @verifies clear the cache when a patient is voided, as its identifiers are left as they were
+	 * @see PatientIdentifierEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldClearTheCacheWhenAPatientIsVoidedAsItsIdentifiersAreLeftAsTheyWere() throws Exception {
+		MapMessage message = createMessage(Event.Action.VOIDED);
+		message.setString("uuid", patientService.getPatient(7).getUuid());
+		
+		new PatientIdentifierEventListener(eventExecutor, cache).onMessage(message);
+		
+		assertEquals(0, cache.size());
+	}
+	
+	private MapMessage createMessage(Event.Action action) throws Exception {
+		MapMessage message = new ActiveMQMapMessage();
+		message.setString("action", action.name());
+		message.setString("uuid", patientIdentifier.getUuid());
+		return message;
+	}
+}
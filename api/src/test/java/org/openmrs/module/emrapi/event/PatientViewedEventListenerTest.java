@@ -14,6 +14,9 @@
 package org.openmrs.module.emrapi.event;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
 import java.util.List;
@@ -25,6 +28,7 @@ import org.apache.activemq.command.ActiveMQMapMessage;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.openmrs.GlobalProperty;
 import org.openmrs.Patient;
 import org.openmrs.User;
@@ -32,6 +36,8 @@ import org.openmrs.api.AdministrationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.UserService;
 import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.EmrApiProperties;
+import org.openmrs.module.emrapi.patient.LastViewedPatientStore;
 import org.openmrs.module.emrapi.utils.GeneralUtils;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -47,14 +53,25 @@ public class PatientViewedEventListenerTest extends BaseModuleContextSensitiveTe
 	@Autowired
 	private AdministrationService adminService;
 	
+	@Autowired
+	private LastViewedPatientStore lastViewedPatientStore;
+	
 	private User user;
 	
-	private PatientViewedEventListener listener = new PatientViewedEventListener(null);
+	@Autowired
+	private EmrApiProperties emrApiProperties;
+	
+	private EmrApiEventExecutor eventExecutor;
+	
+	private PatientViewedEventListener listener;
 	
 	@Before
 	public void setup() {
 		if (user == null)
 			user = userService.getUser(502);
+		lastViewedPatientStore.clear();
+		eventExecutor = mock(EmrApiEventExecutor.class);
+		listener = new PatientViewedEventListener(eventExecutor, emrApiProperties, lastViewedPatientStore);
 	}
 	
 	private void setInitialLastViewedPatients(List<Integer> patientIds) {
@@ -157,4 +174,42 @@ public class PatientViewedEventListenerTest extends BaseModuleContextSensitiveTe
 		assertEquals(7, lastViewed.get(2).getId().intValue());
 		assertEquals(6, lastViewed.get(3).getId().intValue());
 	}
+	
+	/**
+	 * @verifies write the user property only when the store is flushed
+	 * @see PatientViewedEventListener#processMessage(javax.jms.Message)
+	 */
+	@Test
+	public void processMessage_shouldWriteTheUserPropertyOnlyWhenTheStoreIsFlushed() throws Exception {
+		setInitialLastViewedPatients(Arrays.asList(2, 6));
+		listener.processMessage(createMessage(patientService.getPatient(7), user));
+		listener.processMessage(createMessage(patientService.getPatient(999), user));
+		
+		assertEquals("2,6", userService.getUser(user.getId()).getUserProperty(
+		    EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS));
+		
+		lastViewedPatientStore.flush();
+		
+		assertEquals("2,6,7,999", userService.getUser(user.getId()).getUserProperty(
+		    EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS));
+	}
+	
+	/**
+	 * @verifies submit the message to the executor keyed by user and patient
+	 * @see PatientViewedEventListener#onMessage(javax.jms.Message)
+	 */
+	@Test
+	public void onMessage_shouldSubmitTheMessageToTheExecutorKeyedByUserAndPatient() throws Exception {
+		setInitialLastViewedPatients(Arrays.asList(2, 6));
+		Patient patient = patientService.getPatient(7);
+		
+		listener.onMessage(createMessage(patient, user));
+		
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		verify(eventExecutor).submit(eq("patientViewed:" + user.getUuid() + ":" + patient.getUuid()), task.capture());
+		task.getValue().run();
+		lastViewedPatientStore.flush();
+		assertEquals("2,6,7", userService.getUser(user.getId()).getUserProperty(
+		    EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS));
+	}
 }
@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.emrapi.merge;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openmrs.Patient;
+import org.openmrs.Visit;
+import org.openmrs.api.APIException;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.VisitService;
+import org.openmrs.module.emrapi.adt.VisitMerge;
+import org.openmrs.module.emrapi.event.EmrApiEventExecutor;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+public class PatientMergeJobServiceComponentTest extends BaseModuleContextSensitiveTest {
+
+    @Autowired
+    private PatientMergeJobService patientMergeJobService;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private VisitService visitService;
+
+    @Before
+    public void setUp() throws Exception {
+        executeDataSet("baseTestDataset.xml");
+    }
+
+    @Test
+    public void shouldMergePatientsInTheBackgroundAndRecordTheProgress() throws Exception {
+        PatientMergeJob job = patientMergeJobService.submitMerge(patientService.getPatient(7), patientService.getPatient(8));
+        assertThat(job.getStatus(), is(PatientMergeJob.Status.QUEUED));
+        assertNotNull(job.getUuid());
+
+        // what the job's worker would do once the submitting transaction commits
+        new PatientMergeJobRunner(job.getPatientMergeJobId(), 1, null).run();
+
+        job = patientMergeJobService.getMergeJobByUuid(job.getUuid());
+        assertThat(job.getStatus(), is(PatientMergeJob.Status.COMPLETED));
+        assertThat(job.getVisitMergesPlanned(), is(1));
+        assertThat(job.getVisitsMerged(), is(1));
+        assertThat(job.getEncountersMoved(), is(1));
+        assertNotNull(job.getDateStarted());
+        assertNotNull(job.getDateCompleted());
+
+        List<Visit> visits = visitService.getVisitsByPatient(patientService.getPatient(7));
+        assertThat(visits.size(), is(1));
+        assertTrue(patientService.getPatient(8).isVoided());
+    }
+
+    @Test
+    public void shouldNotResumeAJobThatIsNoLongerPending() throws Exception {
+        PatientMergeJob job = patientMergeJobService.submitMerge(patientService.getPatient(7), patientService.getPatient(8));
+        patientMergeJobService.failMergeJob(job.getPatientMergeJobId(), "testing");
+
+        new PatientMergeJobRunner(job.getPatientMergeJobId(), 1, null).run();
+
+        job = patientMergeJobService.getMergeJobByUuid(job.getUuid());
+        assertThat(job.getStatus(), is(PatientMergeJob.Status.FAILED));
+        assertThat(job.getVisitsMerged(), is(0));
+        assertTrue(!patientService.getPatient(8).isVoided());
+    }
+
+    @Test
+    public void shouldResumeAFailedJobWithoutRepeatingTheVisitMergesItDid() throws Exception {
+        PatientMergeJob job = patientMergeJobService.submitMerge(patientService.getPatient(7), patientService.getPatient(8));
+        List<VisitMerge> visitMerges = patientMergeJobService.startMergeJob(job.getPatientMergeJobId());
+        patientMergeJobService.mergeVisits(job.getPatientMergeJobId(), visitMerges);
+        patientMergeJobService.failMergeJob(job.getPatientMergeJobId(), "testing");
+
+        job = patientMergeJobService.resumeMergeJob(patientMergeJobService.getMergeJobByUuid(job.getUuid()));
+        assertThat(job.getStatus(), is(PatientMergeJob.Status.QUEUED));
+        assertNull(job.getErrorMessage());
+
+        // the visit merge that was done already is skipped if it is run again
+        patientMergeJobService.mergeVisits(job.getPatientMergeJobId(), visitMerges);
+        new PatientMergeJobRunner(job.getPatientMergeJobId(), 1, null).run();
+
+        job = patientMergeJobService.getMergeJobByUuid(job.getUuid());
+        assertThat(job.getStatus(), is(PatientMergeJob.Status.COMPLETED));
+        assertThat(job.getVisitsMerged(), is(1));
+        assertThat(job.getEncountersMoved(), is(1));
+        assertThat(visitService.getVisitsByPatient(patientService.getPatient(7)).size(), is(1));
+        assertTrue(patientService.getPatient(8).isVoided());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotResumeAJobThatHasNotFailed() throws Exception {
+        PatientMergeJob job = patientMergeJobService.submitMerge(patientService.getPatient(7), patientService.getPatient(8));
+
+        patientMergeJobService.resumeMergeJob(job);
+    }
+
+    @Test
+    public void shouldLeaveAQueuedJobQueuedWhenTheJobsAreStopping() throws Exception {
+        PatientMergeJob job = patientMergeJobService.submitMerge(patientService.getPatient(7), patientService.getPatient(8));
+
+        // an executor that is not running, like one that is stopping and draining its queue
+        new PatientMergeJobRunner(job.getPatientMergeJobId(), 1, new EmrApiEventExecutor()).run();
+
+        job = patientMergeJobService.getMergeJobByUuid(job.getUuid());
+        assertThat(job.getStatus(), is(PatientMergeJob.Status.QUEUED));
+        assertNull(job.getDateStarted());
+    }
+
+    @Test(expected = APIException.class)
+    public void shouldNotSubmitAMergeOfAPatientThatIsAlreadyBeingMerged() throws Exception {
+        Patient patient = patientService.getPatient(8);
+        patientMergeJobService.submitMerge(patientService.getPatient(7), patient);
+        patientMergeJobService.submitMerge(patientService.getPatient(2), patient);
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PersonName;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.PatientService;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmrPatientServiceComponentTest extends BaseModuleContextSensitiveTest {
+
+    @Autowired
+    private EmrPatientService emrPatientService;
+
+    @Autowired
+    private PatientIdentifierCache patientIdentifierCache;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private AdministrationService adminService;
+
+    @Autowired
+    private LocationService locationService;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    private Patient patient;
+
+    private PatientIdentifier patientIdentifier;
+
+    @Before
+    public void setUp() {
+        patient = patientService.getPatient(7);
+        patientIdentifier = patient.getPatientIdentifier();
+        adminService.saveGlobalProperty(new GlobalProperty(EmrApiConstants.PRIMARY_IDENTIFIER_TYPE,
+                patientIdentifier.getIdentifierType().getId().toString()));
+        patientIdentifierCache.clear();
+    }
+
+    @Test
+    public void shouldFindPatientByPrimaryIdThroughExactIdentifierMatch() {
+        Patient found = emrPatientService.findPatientByPrimaryId(patientIdentifier.getIdentifier());
+
+        assertEquals(patient, found);
+        assertEquals(1, patientIdentifierCache.size());
+    }
+
+    @Test(expected = APIException.class)
+    public void shouldNotFindAVoidedPatientByPrimaryIdThroughTheIdentifierCache() {
+        emrPatientService.findPatientByPrimaryId(patientIdentifier.getIdentifier());
+        assertEquals(1, patientIdentifierCache.size());
+        // as when a patient is merged into another, before the cache hears of it
+        patientService.voidPatient(patient, "testing");
+
+        emrPatientService.findPatientByPrimaryId(patientIdentifier.getIdentifier());
+    }
+
+    @Test
+    public void shouldFindPatientsByExactIdentifier() {
+        List<Patient> found = emrPatientService.findPatients(patientIdentifier.getIdentifier(), null, null, null);
+
+        assertEquals(1, found.size());
+        assertEquals(patient, found.get(0));
+    }
+
+    @Test
+    public void shouldNotMatchOrCacheVoidedIdentifiers() {
+        patientService.voidPatientIdentifier(patientIdentifier, "testing");
+
+        emrPatientService.findPatients(patientIdentifier.getIdentifier(), null, null, null);
+
+        assertEquals(0, patientIdentifierCache.size());
+    }
+
+    @Test
+    public void shouldPageThroughCheckedInPatientsInVisitStartOrderExcludingTestPatients() throws Exception {
+        executeDataSet("baseTestDataset.xml");
+        executeDataSet("checkedInPatientsComponentTestDataset.xml");
+        Location location = locationService.getLocation(1000);
+
+        List<CheckedInPatient> firstPage = emrPatientService.getCheckedInPatients(location, null, 2);
+        List<CheckedInPatient> secondPage = emrPatientService.getCheckedInPatients(location, firstPage.get(1), 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals(2000, firstPage.get(0).getVisitId().intValue());
+        assertEquals(2001, firstPage.get(1).getVisitId().intValue());
+        assertEquals(1, secondPage.size());
+        assertEquals(2002, secondPage.get(0).getVisitId().intValue());
+        assertEquals(3L, emrPatientService.getCheckedInPatientCount(location));
+
+        CheckedInPatient checkedInPatient = secondPage.get(0);
+        Patient patient = patientService.getPatient(7);
+        PatientIdentifier primaryIdentifier = patient.getPatientIdentifier(patientService.getPatientIdentifierType(1));
+        assertEquals(7, checkedInPatient.getPatientId().intValue());
+        assertEquals(patient.getGivenName(), checkedInPatient.getGivenName());
+        assertEquals(patient.getFamilyName(), checkedInPatient.getFamilyName());
+        assertEquals(primaryIdentifier == null ? null : primaryIdentifier.getIdentifier(), checkedInPatient.getPrimaryIdentifier());
+    }
+
+    @Test
+    public void shouldReturnNoCheckedInPatientsAfterTheLastRow() throws Exception {
+        executeDataSet("baseTestDataset.xml");
+        executeDataSet("checkedInPatientsComponentTestDataset.xml");
+        Location location = locationService.getLocation(1000);
+
+        List<CheckedInPatient> all = emrPatientService.getCheckedInPatients(location, null, null);
+
+        assertEquals(3, all.size());
+        assertTrue(emrPatientService.getCheckedInPatients(location, all.get(2), 10).isEmpty());
+    }
+
+    @Test
+    public void shouldFindPatientsByPhoneticVariantsOfTheirNames() {
+        PersonName personName = patient.getPersonName();
+        personName.setGivenName("Philippe");
+        personName.setFamilyName("D\u00e9sir\u00e9");
+        patientService.savePatient(patient);
+        emrPatientService.saveNameKeys(personName);
+
+        List<Patient> found = emrPatientService.findPatients("Filip Dezire", null, null, null);
+
+        assertEquals(1, found.size());
+        assertEquals(patient, found.get(0));
+    }
+
+    @Test
+    public void shouldFindPatientsByTheStartOfTheirNamesAlongWithPhoneticMatches() {
+        PersonName personName = patient.getPersonName();
+        personName.setGivenName("Jeanette");
+        patientService.savePatient(patient);
+        emrPatientService.saveNameKeys(personName);
+        Patient other = patientService.getPatient(8);
+        PersonName otherName = other.getPersonName();
+        otherName.setGivenName("Jan");
+        patientService.savePatient(other);
+        emrPatientService.saveNameKeys(otherName);
+
+        List<Patient> found = emrPatientService.findPatients("Jean", null, null, null);
+
+        assertTrue(found.contains(patient));
+        assertTrue(found.contains(other));
+        assertEquals(other, found.get(0));
+        assertEquals(found.subList(1, 2), emrPatientService.findPatients("Jean", null, 1, 1));
+        // a page filled by name key matches needs no LIKE search
+        assertEquals(Arrays.asList(other), emrPatientService.findPatients("Jean", null, 0, 1));
+    }
+
+    @Test
+    public void shouldBackfillMissingNameKeys() {
+        PersonName personName = patient.getPersonName();
+        assertTrue(getNameKeys(personName).isEmpty());
+
+        assertNotNull(emrPatientService.createMissingNameKeys(null, 1000));
+
+        PersonNameKeyGenerator generator = new PersonNameKeyGenerator();
+        Set<String> expectedTokens = generator.getTokens(personName);
+        List<PersonNameKey> keys = getNameKeys(personName);
+        assertEquals(expectedTokens.size(), keys.size());
+        for (PersonNameKey key : keys) {
+            assertEquals(patient.getPersonId(), key.getPersonId());
+            assertTrue(expectedTokens.contains(key.getNameToken()));
+            assertEquals(generator.getPhoneticKey(key.getNameToken()), key.getPhoneticKey());
+        }
+        assertNull(emrPatientService.createMissingNameKeys(null, 1000));
+    }
+
+    @Test
+    public void shouldLoadPatientsInTheGivenOrderSkippingVoidedOnes() {
+        patientService.voidPatient(patientService.getPatient(6), "testing");
+
+        List<Patient> patients = emrPatientService.getPatients(Arrays.asList(8, 6, 7, 2, 12345));
+
+        assertEquals(3, patients.size());
+        assertEquals(8, patients.get(0).getId().intValue());
+        assertEquals(7, patients.get(1).getId().intValue());
+        assertEquals(2, patients.get(2).getId().intValue());
+        assertEquals(patient.getGivenName(), patients.get(1).getGivenName());
+    }
+
+    private List<PersonNameKey> getNameKeys(PersonName personName) {
+        return sessionFactory.getCurrentSession().createQuery("from PersonNameKey k where k.personNameId = :personNameId")
+                .setInteger("personNameId", personName.getPersonNameId()).list();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PatientIdentifierCacheTest {
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedIdentifierWhenFull() {
+        PatientIdentifierCache cache = new PatientIdentifierCache(2);
+        cache.put("A1", Arrays.asList(new PatientIdentifierCache.Match(1, 1)), cache.getGeneration());
+        cache.put("B2", Arrays.asList(new PatientIdentifierCache.Match(2, 1)), cache.getGeneration());
+        cache.get("A1");
+        cache.put("C3", Arrays.asList(new PatientIdentifierCache.Match(3, 1)), cache.getGeneration());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("A1"));
+        assertNull(cache.get("B2"));
+        assertNotNull(cache.get("C3"));
+    }
+
+    @Test
+    public void shouldNotCacheIdentifiersWithoutMatches() {
+        PatientIdentifierCache cache = new PatientIdentifierCache();
+        cache.put("A1", new ArrayList<PatientIdentifierCache.Match>(), cache.getGeneration());
+
+        assertNull(cache.get("A1"));
+    }
+
+    @Test
+    public void shouldInvalidateSingleIdentifier() {
+        PatientIdentifierCache cache = new PatientIdentifierCache();
+        cache.put("A1", Arrays.asList(new PatientIdentifierCache.Match(1, 1)), cache.getGeneration());
+        cache.put("B2", Arrays.asList(new PatientIdentifierCache.Match(2, 1)), cache.getGeneration());
+
+        cache.invalidate("A1");
+
+        assertNull(cache.get("A1"));
+        assertNotNull(cache.get("B2"));
+    }
+
+    @Test
+    public void shouldNotCacheMatchesLookedUpBeforeAnInvalidation() {
+        PatientIdentifierCache cache = new PatientIdentifierCache();
+        long generation = cache.getGeneration();
+
+        cache.invalidate("A1");
+        cache.put("A1", Arrays.asList(new PatientIdentifierCache.Match(1, 1)), generation);
+        assertNull(cache.get("A1"));
+
+        generation = cache.getGeneration();
+        cache.clear();
+        cache.put("A1", Arrays.asList(new PatientIdentifierCache.Match(1, 1)), generation);
+        assertNull(cache.get("A1"));
+
+        cache.put("A1", Arrays.asList(new PatientIdentifierCache.Match(1, 1)), cache.getGeneration());
+        assertNotNull(cache.get("A1"));
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.patient;
+
+import org.junit.Test;
+import org.openmrs.PersonName;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+public class PersonNameKeyGeneratorTest {
+
+    private PersonNameKeyGenerator generator = new PersonNameKeyGenerator();
+
+    @Test
+    public void shouldGiveFrenchAndCreoleSpellingsTheSamePhoneticKey() {
+        assertSamePhoneticKey("Jean", "Jan");
+        assertSamePhoneticKey("Philippe", "Filip");
+        assertSamePhoneticKey("Pierre", "Py\u00e8");
+        assertSamePhoneticKey("Jacques", "Jak");
+        assertSamePhoneticKey("Fran\u00e7ois", "Franswa");
+        assertSamePhoneticKey("Louis", "Lwi");
+        assertSamePhoneticKey("Joseph", "Joz\u00e8f");
+        assertSamePhoneticKey("D\u00e9sir\u00e9", "Dezire");
+    }
+
+    @Test
+    public void shouldNormalizeCaseAccentsAndPunctuation() {
+        assertEquals("desire", generator.normalize("D\u00e9sir\u00e9"));
+        assertEquals("oneil", generator.normalize("O'Neil"));
+    }
+
+    @Test
+    public void shouldSplitAllNamePartsIntoDistinctTokens() {
+        PersonName personName = new PersonName("Jean-Baptiste", "Marie", "Jean");
+
+        assertEquals(Arrays.asList("jean", "baptiste", "marie"), new ArrayList<String>(generator.getTokens(personName)));
+    }
+
+    private void assertSamePhoneticKey(String spelling, String otherSpelling) {
+        assertEquals(generator.getPhoneticKey(generator.normalize(spelling)),
+                generator.getPhoneticKey(generator.normalize(otherSpelling)));
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class Base64DecodingInputStreamTest {
+
+    @Test
+    public void shouldDecodeLikeDatatypeConverter() throws Exception {
+        Random random = new Random(1);
+        for (int length = 0; length < 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String base64 = DatatypeConverter.printBase64Binary(data);
+
+            assertArrayEquals(data, IOUtils.toByteArray(new Base64DecodingInputStream(base64)));
+            assertArrayEquals(data, IOUtils.toByteArray(new Base64DecodingInputStream(base64.replaceAll("(.{8})", "$1\r\n"))));
+        }
+    }
+
+    @Test
+    public void shouldDecodeADataUriWithoutPadding() throws Exception {
+        byte[] decoded = IOUtils.toByteArray(new Base64DecodingInputStream("data:image/jpeg;base64,/9j/4A"));
+
+        assertArrayEquals(new byte[] { (byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0 }, decoded);
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Person;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.EmrApiProperties;
+
+import javax.imageio.ImageIO;
+import javax.xml.bind.DatatypeConverter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EmrPersonImageServiceImplTest {
+
+    private EmrPersonImageServiceImpl service;
+
+    private EmrApiProperties emrApiProperties;
+
+    private File directory;
+
+    private Person person;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("person_images", "");
+        directory.delete();
+        directory.mkdirs();
+
+        emrApiProperties = mock(EmrApiProperties.class);
+        when(emrApiProperties.getPersonImageDirectory()).thenReturn(directory);
+        when(emrApiProperties.getPersonImageThumbnailSizes()).thenReturn(Arrays.asList(64, 200));
+        when(emrApiProperties.getPersonImageMaxBytes()).thenReturn(EmrApiConstants.DEFAULT_PERSON_IMAGE_MAX_BYTES);
+        when(emrApiProperties.getPersonImageMaxPixels()).thenReturn(EmrApiConstants.DEFAULT_PERSON_IMAGE_MAX_PIXELS);
+
+        service = new EmrPersonImageServiceImpl();
+        service.setEmrApiProperties(emrApiProperties);
+
+        person = new Person();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldGetTheSmallestThumbnailThatIsAtLeastTheSize() throws Exception {
+        save(600, 400);
+
+        assertEquals(person.getUuid() + "_64.jpeg", file(32).getName());
+        assertEquals(person.getUuid() + "_64.jpeg", file(64).getName());
+        assertEquals(person.getUuid() + "_200.jpeg", file(100).getName());
+        assertEquals(person.getUuid() + ".jpeg", file(300).getName());
+        assertEquals(person.getUuid() + ".jpeg", file(null).getName());
+        assertEquals(200, ImageIO.read(file(200)).getWidth());
+        assertEquals(64, ImageIO.read(file(64)).getWidth());
+    }
+
+    @Test
+    public void shouldRemakeAThumbnailThatIsOlderThanItsImage() throws Exception {
+        save(600, 400);
+        long imageSaved = file(null).lastModified();
+        file(64).setLastModified(imageSaved - 60000);
+
+        File thumbnail = file(64);
+
+        assertEquals(person.getUuid() + "_64.jpeg", thumbnail.getName());
+        assertTrue(thumbnail.lastModified() >= imageSaved);
+    }
+
+    @Test
+    public void shouldMakeTheMissingThumbnailsOfImagesSavedWithoutThem() throws Exception {
+        File imageFile = service.getCurrentPersonImage(person).getSavedImage();
+        imageFile.getParentFile().mkdirs();
+        ImageIO.write(new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB), "jpeg", imageFile);
+
+        assertEquals(1, service.createMissingThumbnails());
+
+        assertEquals(0, service.createMissingThumbnails());
+        assertEquals(person.getUuid() + "_64.jpeg", file(64).getName());
+        assertEquals(person.getUuid() + "_200.jpeg", file(200).getName());
+    }
+
+    @Test
+    public void shouldMakeTheThumbnailsOfANewSize() throws Exception {
+        save(600, 400);
+        when(emrApiProperties.getPersonImageThumbnailSizes()).thenReturn(Arrays.asList(64, 128, 200));
+
+        assertEquals(1, service.createMissingThumbnails());
+
+        assertEquals(0, service.createMissingThumbnails());
+        assertEquals(128, ImageIO.read(file(128)).getWidth());
+    }
+
+    @Test
+    public void shouldNotWriteTheThumbnailsOfAnImageReplacedWhileWaitingToMakeThem() throws Exception {
+        save(600, 400);
+        file(64).setLastModified(file(null).lastModified() - 60000);
+        final File[] served = new File[1];
+        Thread request = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                served[0] = file(64);
+            }
+        });
+
+        // a save with the request for the outdated thumbnail coming in part way through it
+        synchronized (PersonImageDirectory.getLock(person.getUuid())) {
+            request.start();
+            waitUntilBlocked(request);
+            save(400, 600);
+        }
+        request.join(5000);
+
+        BufferedImage thumbnail = ImageIO.read(served[0]);
+        assertEquals(64, thumbnail.getHeight());
+        assertTrue(thumbnail.getWidth() < 64);
+    }
+
+    @Test
+    public void shouldStoreAJpegThatIsSmallEnoughAsItIs() throws Exception {
+        byte[] upload = bytes(600, 400, "jpeg");
+
+        service.savePersonImage(person, new ByteArrayInputStream(upload));
+
+        assertArrayEquals(upload, FileUtils.readFileToByteArray(file(null)));
+    }
+
+    @Test
+    public void shouldStoreAPngAsAJpeg() throws Exception {
+        service.savePersonImage(person, new ByteArrayInputStream(bytes(600, 400, "png")));
+
+        byte[] saved = FileUtils.readFileToByteArray(file(null));
+        // the start of image marker
+        assertEquals((byte) 0xFF, saved[0]);
+        assertEquals((byte) 0xD8, saved[1]);
+        assertEquals(600, ImageIO.read(file(null)).getWidth());
+    }
+
+    @Test
+    public void shouldScaleDownAnImageWithTooManyPixelsWhileDecodingIt() throws Exception {
+        when(emrApiProperties.getPersonImageMaxPixels()).thenReturn(100 * 100);
+
+        service.savePersonImage(person, new ByteArrayInputStream(bytes(600, 400, "jpeg")));
+
+        // every fifth pixel, the smallest whole factor that brings it under the maximum
+        BufferedImage saved = ImageIO.read(file(null));
+        assertEquals(120, saved.getWidth());
+        assertEquals(80, saved.getHeight());
+        assertEquals(64, ImageIO.read(file(64)).getWidth());
+    }
+
+    @Test
+    public void shouldRefuseAnImageLargerThanTheMaximumWithoutKeepingIt() throws Exception {
+        byte[] upload = bytes(600, 400, "png");
+        when(emrApiProperties.getPersonImageMaxBytes()).thenReturn(upload.length - 1);
+
+        try {
+            service.savePersonImage(person, new ByteArrayInputStream(upload));
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+        File imageFile = file(null);
+        assertFalse(imageFile.exists());
+        assertEquals(0, imageFile.getParentFile().list().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseATruncatedImage() throws Exception {
+        byte[] upload = bytes(600, 400, "png");
+
+        service.savePersonImage(person, new ByteArrayInputStream(Arrays.copyOf(upload, 40)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseDataThatIsNotAnImage() throws Exception {
+        service.savePersonImage(person, new ByteArrayInputStream("not an image".getBytes("UTF-8")));
+    }
+
+    private void save(int width, int height) throws Exception {
+        PersonImage personImage = new PersonImage();
+        personImage.setPerson(person);
+        personImage.setBase64EncodedImage(DatatypeConverter.printBase64Binary(bytes(width, height, "jpeg")));
+        service.savePersonImage(personImage);
+    }
+
+    /**
+     * @param size the thumbnail size, or null for the image
+     * @return the file that is served for the size
+     */
+    private File file(Integer size) {
+        return service.getCurrentPersonImage(person, size).getSavedImage();
+    }
+
+    private void waitUntilBlocked(Thread thread) throws InterruptedException {
+        long giveUp = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.BLOCKED) {
+            assertTrue("the request did not wait for the save", thread.isAlive());
+            assertTrue("the request did not reach the thumbnails", System.currentTimeMillis() < giveUp);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * @return an image of noise, which compresses about as badly as a photo
+     */
+    private byte[] bytes(int width, int height, String format) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PersonImageDirectoryTest {
+
+    private File root;
+
+    private PersonImageDirectory directory;
+
+    @Before
+    public void setUp() throws Exception {
+        root = File.createTempFile("personImages", "");
+        root.delete();
+        root.mkdirs();
+        directory = new PersonImageDirectory(root);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Test
+    public void shouldStoreImagesTwoDirectoriesDown() {
+        assertEquals(new File(root, "1a/2b/1a2b3c4d.jpeg"), directory.getFile("1a2b3c4d", null));
+        assertEquals(new File(root, "1a/2b/1a2b3c4d_64.jpeg"), directory.getFile("1a2b3c4d", 64));
+    }
+
+    @Test
+    public void shouldFindImagesStoredFlatUntilTheyAreMoved() throws Exception {
+        File flatImage = new File(root, "1a2b3c4d.jpeg");
+        File flatThumbnail = new File(root, "1a2b3c4d_64.jpeg");
+        FileUtils.writeStringToFile(flatImage, "image");
+        FileUtils.writeStringToFile(flatThumbnail, "thumbnail");
+        assertEquals(flatImage, directory.findFile("1a2b3c4d", null));
+        assertEquals(Arrays.asList("1a2b3c4d"), directory.getPersonUuids());
+
+        assertEquals(2, directory.moveFlatFiles());
+
+        assertFalse(flatImage.exists());
+        assertEquals(directory.getFile("1a2b3c4d", null), directory.findFile("1a2b3c4d", null));
+        assertEquals("thumbnail", FileUtils.readFileToString(directory.findFile("1a2b3c4d", 64)));
+        assertEquals(Arrays.asList("1a2b3c4d"), directory.getPersonUuids());
+    }
+
+    @Test
+    public void shouldDropAFlatImageThatHasBeenSavedAgain() throws Exception {
+        FileUtils.writeStringToFile(new File(root, "1a2b3c4d.jpeg"), "old");
+        FileUtils.writeStringToFile(directory.getFile("1a2b3c4d", null), "new");
+
+        assertEquals(0, directory.moveFlatFiles());
+
+        assertTrue(directory.getFile("1a2b3c4d", null).isFile());
+        assertEquals("new", FileUtils.readFileToString(directory.findFile("1a2b3c4d", null)));
+        assertFalse(new File(root, "1a2b3c4d.jpeg").exists());
+    }
+
+    @Test
+    public void shouldNotMoveAFlatImageOverOneSavedMeanwhile() throws Exception {
+        FileUtils.writeStringToFile(new File(root, "1a2b3c4d.jpeg"), "old");
+        final int[] moved = new int[1];
+        Thread migration = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                moved[0] = directory.moveFlatFiles();
+            }
+        });
+
+        // what a save does, with the migration starting part way through it
+        synchronized (PersonImageDirectory.getLock("1a2b3c4d")) {
+            migration.start();
+            waitUntilBlocked(migration);
+            File imageFile = directory.getFile("1a2b3c4d", null);
+            imageFile.getParentFile().mkdirs();
+            FileUtils.writeStringToFile(imageFile, "new");
+            directory.deleteFlatFiles("1a2b3c4d", Arrays.asList(64));
+        }
+        migration.join(5000);
+
+        assertEquals(0, moved[0]);
+        assertEquals("new", FileUtils.readFileToString(directory.findFile("1a2b3c4d", null)));
+        assertFalse(new File(root, "1a2b3c4d.jpeg").exists());
+    }
+
+    private void waitUntilBlocked(Thread thread) throws InterruptedException {
+        long giveUp = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.BLOCKED) {
+            assertTrue("the migration did not wait for the save", thread.isAlive());
+            assertTrue("the migration did not reach the image", System.currentTimeMillis() < giveUp);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.person.image;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PersonImageThumbnailerTest {
+
+    private PersonImageThumbnailer thumbnailer = new PersonImageThumbnailer();
+
+    @Test
+    public void shouldScaleTheLongerSideDownToTheSize() {
+        BufferedImage thumbnail = thumbnailer.scale(new BufferedImage(1200, 1600, BufferedImage.TYPE_INT_RGB), 200);
+
+        assertEquals(150, thumbnail.getWidth());
+        assertEquals(200, thumbnail.getHeight());
+    }
+
+    @Test
+    public void shouldNotScaleUpAnImageThatAlreadyFits() {
+        BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+
+        assertSame(image, thumbnailer.scale(image, 64));
+    }
+
+    @Test
+    public void shouldReplaceAThumbnailWithAReadableJpeg() throws Exception {
+        File file = File.createTempFile("thumbnail", ".jpeg");
+        try {
+            thumbnailer.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), file);
+
+            BufferedImage written = ImageIO.read(file);
+            assertEquals(64, written.getWidth());
+            assertEquals(48, written.getHeight());
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
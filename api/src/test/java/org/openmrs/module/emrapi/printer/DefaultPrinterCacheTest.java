@@ -0,0 +1,57 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DefaultPrinterCacheTest {
+
+    @Test
+    public void shouldRememberThatALocationHasNoDefaultPrinter() {
+        DefaultPrinterCache cache = new DefaultPrinterCache();
+        cache.put(1, Printer.Type.LABEL, 5, cache.getGeneration());
+        cache.put(1, Printer.Type.ID_CARD, null, cache.getGeneration());
+
+        assertEquals(Integer.valueOf(5), cache.get(1, Printer.Type.LABEL));
+        assertEquals(DefaultPrinterCache.NO_PRINTER, cache.get(1, Printer.Type.ID_CARD));
+        assertNull(cache.get(2, Printer.Type.LABEL));
+    }
+
+    @Test
+    public void shouldInvalidateOneLocationAndType() {
+        DefaultPrinterCache cache = new DefaultPrinterCache();
+        cache.put(1, Printer.Type.LABEL, 5, cache.getGeneration());
+        cache.put(1, Printer.Type.ID_CARD, 6, cache.getGeneration());
+
+        cache.invalidate(1, Printer.Type.LABEL);
+
+        assertNull(cache.get(1, Printer.Type.LABEL));
+        assertEquals(Integer.valueOf(6), cache.get(1, Printer.Type.ID_CARD));
+    }
+
+    @Test
+    public void shouldNotCacheAValueLookedUpBeforeAnInvalidation() {
+        DefaultPrinterCache cache = new DefaultPrinterCache();
+        long generation = cache.getGeneration();
+        cache.clear();
+
+        cache.put(1, Printer.Type.LABEL, 5, generation);
+
+        assertNull(cache.get(1, Printer.Type.LABEL));
+        assertEquals(0, cache.size());
+    }
+}
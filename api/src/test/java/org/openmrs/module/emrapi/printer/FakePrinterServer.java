@@ -0,0 +1,304 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A network printer simulated on one NIO thread, for tests and benchmarks. It can be made slow to accept connections,
+ * slow to take data in, and made to reset connections now and then, and it counts what happened. It can also keep what
+ * it was sent, and once stopped its port refuses connections.
+ *
+ * @see PrintBenchmark
+ */
+public class FakePrinterServer {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ServerSocketChannel serverChannel;
+
+    private final Selector selector;
+
+    private volatile long acceptLatencyNanos;
+
+    private final long bytesPerSecond;
+
+    private final double failureRate;
+
+    private final Random random = new Random(42);
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+
+    private final AtomicLong connectionsReset = new AtomicLong();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private final AtomicLong openConnections = new AtomicLong();
+
+    // only kept when asked for, as a benchmark sends a lot
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    private volatile boolean keepReceivedData;
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    // read throttling: bytes that may be read now, refilled at bytesPerSecond
+    private double budget;
+
+    private long lastRefillNanos;
+
+    private long nextAcceptNanos;
+
+    /**
+     * A printer that accepts connections and takes data in as fast as it can, and keeps what it is sent
+     */
+    public FakePrinterServer() throws IOException {
+        this(0, 0, 0);
+        keepReceivedData = true;
+    }
+
+    /**
+     * @param acceptLatencyMillis how long each connection waits to be accepted, one after the other
+     * @param bytesPerSecond how fast the printer takes data in, or 0 for as fast as possible
+     * @param failureRate the chance that a connection is reset as it is accepted, and again each time data arrives
+     */
+    public FakePrinterServer(long acceptLatencyMillis, long bytesPerSecond, double failureRate) throws IOException {
+        this.acceptLatencyNanos = acceptLatencyMillis * 1000000;
+        this.bytesPerSecond = bytesPerSecond;
+        this.failureRate = failureRate;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress("127.0.0.1", 0), 1000);
+        serverChannel.configureBlocking(false);
+        selector = Selector.open();
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void start() {
+        lastRefillNanos = System.nanoTime();
+        thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    serve();
+                }
+                catch (IOException e) {
+                    if (running) {
+                        log.error("Fake printer " + getPort() + " stopped", e);
+                    }
+                }
+            }
+        }, "fake-printer-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the printer, after which connecting to its port is refused. Does nothing if it was stopped already.
+     */
+    public void stop() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        thread.join(5000);
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    public String getPort() {
+        return String.valueOf(serverChannel.socket().getLocalPort());
+    }
+
+    /**
+     * @param acceptLatencyMillis how long each connection waits to be accepted from now on
+     */
+    public void setAcceptLatencyMillis(long acceptLatencyMillis) {
+        this.acceptLatencyNanos = acceptLatencyMillis * 1000000;
+    }
+
+    /**
+     * Waits until the printer has received at least the expected number of bytes, if it keeps what it is sent
+     *
+     * @param expected
+     * @param timeoutMillis
+     * @param encoding
+     * @return everything received so far, decoded with the encoding
+     */
+    public String waitForData(int expected, long timeoutMillis, String encoding) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (received) {
+            while (received.size() < expected && System.currentTimeMillis() < deadline) {
+                received.wait(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            return received.toString(encoding);
+        }
+    }
+
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.get();
+    }
+
+    public long getConnectionsReset() {
+        return connectionsReset.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the connections accepted and not yet closed by either side
+     */
+    public long getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private void serve() throws IOException {
+        while (running) {
+            long now = System.nanoTime();
+            refill(now);
+            boolean mayRead = bytesPerSecond <= 0 || budget >= 1;
+            boolean mayAccept = acceptLatencyNanos <= 0 || nextAcceptNanos == 0 || now >= nextAcceptNanos;
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid()) {
+                    key.interestOps(key.channel() == serverChannel ? (mayAccept ? SelectionKey.OP_ACCEPT : 0)
+                            : (mayRead ? SelectionKey.OP_READ : 0));
+                }
+            }
+
+            long timeoutMillis = 0;
+            if (!mayAccept) {
+                timeoutMillis = Math.max(1, (nextAcceptNanos - now) / 1000000);
+            }
+            if (!mayRead) {
+                timeoutMillis = timeoutMillis == 0 ? 1 : Math.min(timeoutMillis, 1);
+            }
+            if (timeoutMillis > 0) {
+                selector.select(timeoutMillis);
+            } else {
+                selector.select();
+            }
+
+            for (Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext(); ) {
+                SelectionKey key = i.next();
+                i.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept(System.nanoTime());
+                } else if (key.isReadable()) {
+                    read(key);
+                }
+            }
+        }
+    }
+
+    private void accept(long now) throws IOException {
+        if (acceptLatencyNanos > 0 && nextAcceptNanos == 0) {
+            // a connection is waiting, it will be accepted once the latency has passed
+            nextAcceptNanos = now + acceptLatencyNanos;
+            return;
+        }
+        SocketChannel channel = serverChannel.accept();
+        nextAcceptNanos = 0;
+        if (channel == null) {
+            return;
+        }
+        connectionsAccepted.incrementAndGet();
+        if (random.nextDouble() < failureRate) {
+            reset(channel);
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        openConnections.incrementAndGet();
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        readBuffer.clear();
+        if (bytesPerSecond > 0) {
+            readBuffer.limit((int) Math.min(readBuffer.capacity(), Math.max(1, budget)));
+        }
+        int count;
+        try {
+            count = channel.read(readBuffer);
+        }
+        catch (IOException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            key.cancel();
+            channel.close();
+            openConnections.decrementAndGet();
+            return;
+        }
+        bytesReceived.addAndGet(count);
+        budget -= count;
+        if (keepReceivedData && count > 0) {
+            byte[] data = new byte[count];
+            readBuffer.flip();
+            readBuffer.get(data);
+            synchronized (received) {
+                received.write(data, 0, count);
+                received.notifyAll();
+            }
+        }
+        if (count > 0 && random.nextDouble() < failureRate) {
+            // whatever the client wrote after this is lost, as with a real printer
+            key.cancel();
+            reset(channel);
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * A reset rather than a clean close, like a printer that fell over
+     */
+    private void reset(SocketChannel channel) throws IOException {
+        channel.socket().setSoLinger(true, 0);
+        channel.close();
+        connectionsReset.incrementAndGet();
+    }
+
+    private void refill(long now) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        budget = Math.min(budget + (now - lastRefillNanos) * bytesPerSecond / 1e9, Math.max(1, bytesPerSecond / 10.0));
+        lastRefillNanos = now;
+    }
+}
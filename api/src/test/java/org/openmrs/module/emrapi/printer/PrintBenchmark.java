@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prints labels to {@link FakePrinterServer}s through {@link PrinterService#printViaSocket(String, Printer, String)}
+ * from many threads at once, and reports jobs per second, latency percentiles and how many connections were opened.
+ * Not a test, run it by hand:
+ * <pre>
+ * java -cp ... org.openmrs.module.emrapi.printer.PrintBenchmark [jobs] [threads] [printers] [acceptLatencyMillis]
+ *     [bytesPerSecond] [failureRate]
+ * </pre>
+ * For example <code>20000 64 4 5 0 0</code> for fast printers, or <code>2000 64 4 50 20000 0.05</code> for slow
+ * printers that sometimes drop the connection.
+ */
+public class PrintBenchmark {
+
+    private static final String LABEL = "^XA^CI28^MTD^FWB"
+            + "^FO050,200^FB2150,1,0,L,0^AS^FDLef\u00e8vre, Ren\u00e9e^FS"
+            + "^FO100,200^FB2150,1,0,L,0^AU^FD12 Mar 1984 (29y) F^FS"
+            + "^FO160,200^FB2150,1,0,L,0^AU^FDSalle d'urgence^FS"
+            + "^FO100,2000^AT^FDY2ARM5^FS"
+            + "^FO100,2400^BY4^BCN,150,N^FDY2ARM5^FS"
+            + "^XZ";
+
+    public static void main(String[] args) throws Exception {
+        final int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int printerCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long acceptLatencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 5;
+        long bytesPerSecond = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        double failureRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+
+        List<FakePrinterServer> servers = new ArrayList<FakePrinterServer>();
+        final List<Printer> printers = new ArrayList<Printer>();
+        for (int i = 0; i < printerCount; i++) {
+            FakePrinterServer server = new FakePrinterServer(acceptLatencyMillis, bytesPerSecond, failureRate);
+            server.start();
+            servers.add(server);
+            Printer printer = new Printer();
+            printer.setName("Fake printer " + (i + 1));
+            printer.setIpAddress("127.0.0.1");
+            printer.setPort(server.getPort());
+            printers.add(printer);
+        }
+
+        final AtomicInteger socketsCreated = new AtomicInteger();
+        final PrinterServiceImpl printerService = new PrinterServiceImpl() {
+
+            @Override
+            protected Socket createSocket() {
+                socketsCreated.incrementAndGet();
+                return super.createSocket();
+            }
+        };
+
+        final long[] latencies = new long[jobs];
+        final AtomicInteger nextJob = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch ready = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> clients = new ArrayList<Future<Void>>();
+        for (int i = 0; i < threads; i++) {
+            clients.add(executor.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    ready.await();
+                    for (int job = nextJob.getAndIncrement(); job < jobs; job = nextJob.getAndIncrement()) {
+                        long start = System.nanoTime();
+                        try {
+                            printerService.printViaSocket(LABEL, printers.get(job % printers.size()), "UTF-8");
+                        }
+                        catch (UnableToPrintViaSocketException e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[job] = System.nanoTime() - start;
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        ready.countDown();
+        for (Future<Void> client : clients) {
+            client.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        // the dispatcher keeps a connection open to each printer it has a worker for
+        long openConnections = 0;
+        for (FakePrinterServer server : servers) {
+            openConnections += server.getOpenConnections();
+        }
+
+        executor.shutdown();
+        printerService.onShutdown();
+        long accepted = 0;
+        long reset = 0;
+        long bytesReceived = 0;
+        for (FakePrinterServer server : servers) {
+            server.stop();
+            accepted += server.getConnectionsAccepted();
+            reset += server.getConnectionsReset();
+            bytesReceived += server.getBytesReceived();
+        }
+
+        Arrays.sort(latencies);
+        System.out.println(String.format("%d jobs, %d threads, %d printers, accept latency %d ms, %s, failure rate %.2f",
+                jobs, threads, printerCount, acceptLatencyMillis,
+                bytesPerSecond > 0 ? bytesPerSecond + " bytes/s" : "unthrottled", failureRate));
+        System.out.println(String.format("throughput   %,.0f jobs/s in %.2f s, %d failed", jobs / (elapsed / 1e9),
+                elapsed / 1e9, failures.get()));
+        System.out.println(String.format("latency      p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                latencies[jobs - 1] / 1e6));
+        System.out.println(String.format("connections  %d opened, %d accepted, %d reset by the printers, %d still open",
+                socketsCreated.get(), accepted, reset, openConnections));
+        System.out.println(String.format("data         %,d bytes received, %,d bytes sent for jobs that did not fail",
+                bytesReceived, (long) (jobs - failures.get()) * LABEL.getBytes("UTF-8").length));
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class PrintSpoolServiceComponentTest extends BaseModuleContextSensitiveTest {
+
+    @Autowired
+    private PrintSpoolService printSpoolService;
+
+    @Autowired
+    private PrinterService printerService;
+
+    private FakePrinterServer fakePrinter;
+
+    private Printer printer;
+
+    @Before
+    public void setUp() throws Exception {
+        fakePrinter = new FakePrinterServer();
+        fakePrinter.start();
+
+        printer = new Printer();
+        printer.setName("Fake printer");
+        printer.setIpAddress("127.0.0.1");
+        printer.setPort(fakePrinter.getPort());
+        printer.setType(Printer.Type.LABEL);
+        printerService.savePrinter(printer);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fakePrinter.stop();
+    }
+
+    @Test
+    public void shouldSendSpooledJobsInOrderToASlowPrinter() throws Exception {
+        fakePrinter.setAcceptLatencyMillis(300);
+        SpooledPrintJob first = printSpoolService.spool("first", printer, "UTF-8");
+        SpooledPrintJob second = printSpoolService.spool("second", printer, "UTF-8");
+        assertThat(first.getStatus(), is(SpooledPrintJob.Status.QUEUED));
+
+        // what a drain worker does once the spooling transaction commits
+        new PrintSpoolDrainer(printer.getId(), null).run();
+
+        assertThat(fakePrinter.waitForData(11, 5000, "UTF-8"), is("firstsecond"));
+        first = printSpoolService.getSpooledJobByUuid(first.getUuid());
+        assertThat(first.getStatus(), is(SpooledPrintJob.Status.PRINTED));
+        assertThat(first.getAttempts(), is(1));
+        assertNotNull(first.getDatePrinted());
+        assertThat(printSpoolService.getSpooledJobByUuid(second.getUuid()).getStatus(), is(SpooledPrintJob.Status.PRINTED));
+        assertThat(printSpoolService.getSpooledJobCount(printer, SpooledPrintJob.Status.QUEUED), is(0L));
+    }
+
+    @Test
+    public void shouldKeepJobsQueuedInOrderWhileThePrinterRefusesConnections() throws Exception {
+        fakePrinter.stop();
+        SpooledPrintJob first = printSpoolService.spool("first", printer, "UTF-8");
+        SpooledPrintJob second = printSpoolService.spool("second", printer, "UTF-8");
+
+        new PrintSpoolDrainer(printer.getId(), null).run();
+
+        first = printSpoolService.getSpooledJobByUuid(first.getUuid());
+        assertThat(first.getStatus(), is(SpooledPrintJob.Status.QUEUED));
+        assertThat(first.getAttempts(), is(1));
+        assertNotNull(first.getLastError());
+        assertNotNull(first.getNextAttemptAfter());
+        // held back behind the first job
+        assertThat(printSpoolService.getSpooledJobByUuid(second.getUuid()).getAttempts(), is(0));
+
+        // the first job isn't due again yet, so nothing is tried
+        new PrintSpoolDrainer(printer.getId(), null).run();
+        assertThat(printSpoolService.getSpooledJobByUuid(first.getUuid()).getAttempts(), is(1));
+        assertThat(printSpoolService.getPrinterIdsWithQueuedJobs().contains(printer.getId()), is(true));
+    }
+
+    @Test
+    public void shouldSetAsideAJobThatFailedTooOftenUntilItIsRequeued() throws Exception {
+        SpooledPrintJob job = printSpoolService.spool("label", printer, "UTF-8");
+        SpooledPrintJob.Status status = null;
+        for (int i = 0; i < PrintSpoolServiceImpl.DEFAULT_MAX_ATTEMPTS; i++) {
+            status = printSpoolService.markFailed(job.getSpooledPrintJobId(), "testing");
+        }
+        assertThat(status, is(SpooledPrintJob.Status.DEAD));
+        assertThat(printSpoolService.getSpooledJobs(printer, SpooledPrintJob.Status.DEAD, 0, 10).size(), is(1));
+        assertNull(printSpoolService.getNextQueuedJob(printer.getId()));
+
+        job = printSpoolService.requeueSpooledJob(printSpoolService.getSpooledJobByUuid(job.getUuid()));
+        assertThat(job.getAttempts(), is(0));
+        new PrintSpoolDrainer(printer.getId(), null).run();
+
+        assertThat(fakePrinter.waitForData(5, 5000, "UTF-8"), is("label"));
+        assertThat(printSpoolService.getSpooledJobByUuid(job.getUuid()).getStatus(), is(SpooledPrintJob.Status.PRINTED));
+    }
+
+    @Test(expected = APIAuthenticationException.class)
+    public void shouldNotLetUnprivilegedUsersMarkAJobAsPrinted() throws Exception {
+        SpooledPrintJob job = printSpoolService.spool("label", printer, "UTF-8");
+        Context.logout();
+
+        printSpoolService.markPrinted(job.getSpooledPrintJobId());
+    }
+}
@@ -19,6 +19,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openmrs.Location;
 import org.openmrs.LocationAttributeType;
 import org.openmrs.api.LocationService;
@@ -26,24 +28,43 @@ import org.openmrs.module.emrapi.printer.Printer;
 import org.openmrs.module.emrapi.printer.PrinterService;
 import org.openmrs.module.emrapi.printer.PrinterServiceImpl;
 import org.openmrs.module.emrapi.printer.UnableToPrintViaSocketException;
+import org.openmrs.module.emrapi.printer.db.PrinterDAO;
+import org.openmrs.module.emrapi.printer.template.LabelLanguage;
+import org.openmrs.module.emrapi.printer.template.LabelTemplateRegistry;
+import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -171,6 +192,30 @@ public class PrinterServiceTest {
         assertNull(printerService.getDefaultPrinter(location, Printer.Type.LABEL));
     }
 
+    @Test
+    public void shouldServeTheDefaultPrinterFromTheCacheUntilItIsChanged() {
+
+        PrinterDAO printerDAO = mock(PrinterDAO.class);
+        ((PrinterServiceImpl) printerService).setPrinterDAO(printerDAO);
+
+        Printer printer = new Printer();
+        printer.setId(1);
+        printer.setType(Printer.Type.LABEL);
+        when(printerDAO.getById(1)).thenReturn(printer);
+
+        Location location = new Location(1);
+        printerService.setDefaultPrinter(location, Printer.Type.LABEL, printer);
+
+        assertThat(printerService.getDefaultPrinter(location, Printer.Type.LABEL), is(printer));
+        assertThat(printerService.getDefaultPrinter(location, Printer.Type.LABEL), is(printer));
+        // once to set the default printer and once for the first lookup, the second one is cached
+        verify(locationService, times(2)).getLocationAttributeTypeByUuid(eq("bd6c1c10-38d3-11e2-81c1-0800200c9a66"));
+        verify(printerDAO).getById(1);
+
+        printerService.setDefaultPrinter(location, Printer.Type.LABEL, null);
+        assertNull(printerService.getDefaultPrinter(location, Printer.Type.LABEL));
+    }
+
     @Test
     public void shouldPrintToSocket() throws IOException, UnableToPrintViaSocketException {
 
@@ -187,7 +232,154 @@ public class PrinterServiceTest {
         verify(mockedSocket).getOutputStream();
 
         verifyStatic();
-        IOUtils.write(eq(testData), any(OutputStream.class), eq("UTF-8"));
+        IOUtils.write(eq(testData.getBytes("UTF-8")), any(OutputStream.class));
+    }
+
+    @Test
+    public void shouldSendJobsQueuedForABusyPrinterOverOneConnectionInOneWrite() throws Exception {
+
+        mockStatic(IOUtils.class);
+
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch printerReady = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                connecting.countDown();
+                printerReady.await();
+                return null;
+            }
+        }).when(mockedSocket).connect(any(SocketAddress.class), anyInt());
+        when(mockedSocket.isConnected()).thenReturn(true);
+        when(mockedSocket.getInputStream()).thenReturn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new SocketTimeoutException();
+            }
+        });
+
+        Printer printer = new Printer();
+        printer.setIpAddress("127.0.0.1") ;
+        printer.setPort("9100");
+
+        PrintJob first = printerService.printViaSocketAsync("first", printer, "UTF-8");
+        connecting.await();
+        PrintJob second = printerService.printViaSocketAsync("second", printer, "UTF-8");
+        PrintJob third = printerService.printViaSocketAsync("third", printer, "UTF-8");
+        printerReady.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        third.get(5, TimeUnit.SECONDS);
+
+        verify(mockedSocket).connect(argThat(new IsExpectedSocketAddress("127.0.0.1", "9100")), eq(1000));
+
+        verifyStatic();
+        IOUtils.write(eq("first".getBytes("UTF-8")), any(OutputStream.class));
+        verifyStatic();
+        IOUtils.write(eq("secondthird".getBytes("UTF-8")), any(OutputStream.class));
+    }
+
+    @Test
+    public void shouldRetryAFailedConnection() throws Exception {
+
+        mockStatic(IOUtils.class);
+        doThrow(new ConnectException()).doNothing().when(mockedSocket).connect(any(SocketAddress.class), anyInt());
+
+        Printer printer = new Printer();
+        printer.setIpAddress("127.0.0.1") ;
+        printer.setPort("9100");
+
+        printerService.printViaSocket("test data", printer, "UTF-8");
+        verify(mockedSocket, times(2)).connect(argThat(new IsExpectedSocketAddress("127.0.0.1", "9100")), eq(1000));
+
+        verifyStatic();
+        IOUtils.write(eq("test data".getBytes("UTF-8")), any(OutputStream.class));
+    }
+
+    @Test
+    public void shouldNotSendTheJobsAgainIfTheWriteFails() throws Exception {
+
+        mockStatic(IOUtils.class);
+        PowerMockito.doThrow(new SocketException("Connection reset")).when(IOUtils.class);
+        IOUtils.write(any(byte[].class), any(OutputStream.class));
+
+        Printer printer = new Printer();
+        printer.setIpAddress("127.0.0.1") ;
+        printer.setPort("9100");
+
+        try {
+            printerService.printViaSocket("test data", printer, "UTF-8");
+            fail();
+        } catch (UnableToPrintViaSocketException e) {
+            // some of the data may have reached the printer
+        }
+        verify(mockedSocket).connect(any(SocketAddress.class), anyInt());
+
+        verifyStatic(times(1));
+        IOUtils.write(any(byte[].class), any(OutputStream.class));
+    }
+
+    @Test
+    public void shouldOnlyCancelAJobThatHasNotBeenTakenToBeSent() throws Exception {
+
+        mockStatic(IOUtils.class);
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch printerReady = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                connecting.countDown();
+                printerReady.await();
+                return null;
+            }
+        }).when(mockedSocket).connect(any(SocketAddress.class), anyInt());
+
+        Printer printer = new Printer();
+        printer.setIpAddress("127.0.0.1") ;
+        printer.setPort("9100");
+
+        PrintJob first = printerService.printViaSocketAsync("first", printer, "UTF-8");
+        connecting.await();
+        PrintJob second = printerService.printViaSocketAsync("second", printer, "UTF-8");
+
+        assertFalse(first.cancel(false));
+        assertTrue(second.cancel(false));
+        printerReady.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        printerService.printViaSocket("third", printer, "UTF-8");
+
+        verifyStatic();
+        IOUtils.write(eq("first".getBytes("UTF-8")), any(OutputStream.class));
+        verifyStatic();
+        IOUtils.write(eq("third".getBytes("UTF-8")), any(OutputStream.class));
+    }
+
+    @Test
+    public void shouldSayThatAJobThatTimedOutWhileBeingSentMayHaveBeenPrinted() throws Exception {
+
+        mockStatic(IOUtils.class);
+        final CountDownLatch printerReady = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                printerReady.await();
+                return null;
+            }
+        }).when(mockedSocket).connect(any(SocketAddress.class), anyInt());
+        ((PrinterServiceImpl) printerService).setPrintTimeoutSeconds(1);
+
+        Printer printer = new Printer();
+        printer.setIpAddress("127.0.0.1") ;
+        printer.setPort("9100");
+
+        try {
+            printerService.printViaSocket("test data", printer, "UTF-8");
+            fail();
+        } catch (UnableToPrintViaSocketException e) {
+            assertTrue(e.getMessage().contains("may have been printed"));
+        } finally {
+            printerReady.countDown();
+        }
     }
 
     @Test
@@ -209,6 +401,28 @@ public class PrinterServiceTest {
         IOUtils.write(eq(testData.getBytes("Windows-1252")), any(OutputStream.class));
     }
 
+    @Test
+    public void shouldPrintARegisteredLabelTemplate() throws Exception {
+
+        mockStatic(IOUtils.class);
+
+        LabelTemplateRegistry registry = new LabelTemplateRegistry();
+        registry.register("wristband", LabelLanguage.ZPL, "^XA^FD{{name}}^FS^XZ");
+        ((PrinterServiceImpl) printerService).setLabelTemplateRegistry(registry);
+
+        Printer printer = new Printer();
+        printer.setIpAddress("127.0.0.1") ;
+        printer.setPort("9100");
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "Ren\u00e9e");
+        printerService.printLabel("wristband", values, printer, "Windows-1252");
+        verify(mockedSocket).connect(argThat(new IsExpectedSocketAddress("127.0.0.1", "9100")), eq(1000));
+
+        verifyStatic();
+        IOUtils.write(eq("^XA^FDRen\u00e9e^FS^XZ".getBytes("Windows-1252")), any(OutputStream.class));
+    }
+
     @Test(expected = UnableToPrintViaSocketException.class)
     public void shouldFailIfInvalidIpAddress() throws UnableToPrintViaSocketException {
 
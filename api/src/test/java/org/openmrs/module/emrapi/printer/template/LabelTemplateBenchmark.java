@@ -0,0 +1,85 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.template;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares rendering a wristband with a {@link LabelTemplate} to building the label string by concatenation and
+ * encoding it, as callers of printViaSocket do. Not a test, run it by hand:
+ * <pre>
+ * java -cp ... org.openmrs.module.emrapi.printer.template.LabelTemplateBenchmark [labels] [encoding]
+ * </pre>
+ */
+public class LabelTemplateBenchmark {
+
+    private static final String WRISTBAND = "^XA^CI28^MTD^FWB"
+            + "^FO050,200^FB2150,1,0,L,0^AS^FD{{name}}^FS"
+            + "^FO100,200^FB2150,1,0,L,0^AU^FD{{birthdate}} {{age}} {{gender}}^FS"
+            + "^FO160,200^FB2150,1,0,L,0^AU^FD{{location}}^FS"
+            + "^FO100,2000^AT^FD{{identifier}}^FS"
+            + "^FO100,2400^BY4^BCN,150,N^FD{{identifier}}^FS"
+            + "^XZ";
+
+    public static void main(String[] args) throws Exception {
+        int labels = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String encoding = args.length > 1 ? args[1] : "Windows-1252";
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "Lef\u00e8vre, Ren\u00e9e");
+        values.put("birthdate", "12 Mar 1984");
+        values.put("age", "(29y)");
+        values.put("gender", "F");
+        values.put("location", "Salle d'urgence");
+        values.put("identifier", "Y2ARM5");
+
+        LabelTemplate template = LabelTemplate.compile("wristband", LabelLanguage.ZPL, WRISTBAND);
+        LabelBuffer buffer = new LabelBuffer();
+
+        for (int round = 1; round <= 3; round++) {
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < labels; i++) {
+                bytes += concatenate(values).getBytes(encoding).length;
+            }
+            report("round " + round + ", concatenation", labels, bytes, System.nanoTime() - start);
+
+            bytes = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < labels; i++) {
+                buffer.reset(encoding);
+                template.render(values, buffer);
+                bytes += buffer.getLength();
+            }
+            report("round " + round + ", template", labels, bytes, System.nanoTime() - start);
+        }
+    }
+
+    private static String concatenate(Map<String, Object> values) {
+        return "^XA^CI28^MTD^FWB"
+                + "^FO050,200^FB2150,1,0,L,0^AS^FD" + values.get("name") + "^FS"
+                + "^FO100,200^FB2150,1,0,L,0^AU^FD" + values.get("birthdate") + " " + values.get("age") + " "
+                + values.get("gender") + "^FS"
+                + "^FO160,200^FB2150,1,0,L,0^AU^FD" + values.get("location") + "^FS"
+                + "^FO100,2000^AT^FD" + values.get("identifier") + "^FS"
+                + "^FO100,2400^BY4^BCN,150,N^FD" + values.get("identifier") + "^FS"
+                + "^XZ";
+    }
+
+    private static void report(String what, int labels, long bytes, long nanos) {
+        System.out.println(String.format("%-28s %,12.0f labels/s  (%d bytes each)", what,
+                labels / (nanos / 1e9), bytes / labels));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.printer.template;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LabelTemplateTest {
+
+    @Test
+    public void shouldRenderTheValuesInThePrintersEncoding() throws Exception {
+        LabelTemplate template = LabelTemplate.compile("wristband", LabelLanguage.ZPL,
+                "^XA^FO10,10^FD{{name}}^FS^FO10,50^FD{{ identifier }}^FS^XZ");
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "Ren\u00e9e Lef\u00e8vre");
+        values.put("identifier", 1234);
+
+        LabelBuffer buffer = new LabelBuffer(8);
+        buffer.reset("Windows-1252");
+        template.render(values, buffer);
+
+        assertArrayEquals("^XA^FO10,10^FDRen\u00e9e Lef\u00e8vre^FS^FO10,50^FD1234^FS^XZ".getBytes("Windows-1252"),
+                buffer.toByteArray());
+    }
+
+    @Test
+    public void shouldStartAgainWhenTheBufferIsReset() throws Exception {
+        LabelTemplate template = LabelTemplate.compile("test", LabelLanguage.ZPL, "^FD{{name}}^FS");
+        Map<String, Object> values = new HashMap<String, Object>();
+        LabelBuffer buffer = new LabelBuffer();
+
+        values.put("name", "\u00e9");
+        buffer.reset("Windows-1252");
+        template.render(values, buffer);
+        values.put("name", "\u00e9");
+        buffer.reset("UTF-8");
+        template.render(values, buffer);
+
+        assertArrayEquals("^FD\u00e9^FS".getBytes("UTF-8"), buffer.toByteArray());
+    }
+
+    @Test
+    public void shouldKeepValuesFromBeingTakenForCommands() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("name", "A^XZ~JR \"B\\");
+        LabelBuffer buffer = new LabelBuffer();
+
+        buffer.reset("UTF-8");
+        LabelTemplate.compile("zpl", LabelLanguage.ZPL, "^FD{{name}}^FS").render(values, buffer);
+        assertEquals("^FDA XZ JR \"B\\^FS", new String(buffer.toByteArray(), "UTF-8"));
+
+        buffer.reset("UTF-8");
+        LabelTemplate.compile("epl", LabelLanguage.EPL, "A10,10,0,3,1,1,N,\"{{name}}\"").render(values, buffer);
+        assertEquals("A10,10,0,3,1,1,N,\"A^XZ~JR \\\"B\\\\\"", new String(buffer.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void shouldPrintNothingForAMissingValue() throws Exception {
+        LabelBuffer buffer = new LabelBuffer();
+        buffer.reset("UTF-8");
+
+        LabelTemplate.compile("test", LabelLanguage.ZPL, "^FD{{name}}^FS").render(new HashMap<String, Object>(), buffer);
+
+        assertEquals("^FD^FS", new String(buffer.toByteArray(), "UTF-8"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotCompileAnUnclosedPlaceholder() {
+        LabelTemplate.compile("test", LabelLanguage.ZPL, "^FD{{name^FS");
+    }
+}
@@ -7,15 +7,16 @@ import org.mockito.Mockito;
 import org.openmrs.Patient;
 import org.openmrs.User;
 import org.openmrs.api.AdministrationService;
-import org.openmrs.api.PatientService;
 import org.openmrs.api.UserService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.patient.EmrPatientService;
 import org.openmrs.util.OpenmrsConstants;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -67,15 +68,13 @@ public class GeneralUtilsTest {
         user.setUserProperty(EmrApiConstants.USER_PROPERTY_NAME_LAST_VIEWED_PATIENT_IDS, "2,6,7");
         PowerMockito.mockStatic(Context.class);
         AdministrationService as = mock(AdministrationService.class);
-        PatientService ps = mock(PatientService.class);
+        EmrPatientService eps = mock(EmrPatientService.class);
         UserService us = mock(UserService.class);
         when(Context.getAdministrationService()).thenReturn(as);
-        when(Context.getPatientService()).thenReturn(ps);
+        when(Context.getService(EmrPatientService.class)).thenReturn(eps);
         when(Context.getUserService()).thenReturn(us);
         when(as.getGlobalProperty(Mockito.eq(EmrApiConstants.UNKNOWN_PATIENT_PERSON_ATTRIBUTE_TYPE_NAME))).thenReturn("");
-        when(ps.getPatient(eq(2))).thenReturn(new Patient(2));
-        when(ps.getPatient(eq(6))).thenReturn(new Patient(6));
-        when(ps.getPatient(eq(7))).thenReturn(new Patient(7));
+        when(eps.getPatients(eq(Arrays.asList(7, 6, 2)))).thenReturn(Arrays.asList(new Patient(7), new Patient(6), new Patient(2)));
         when(us.getUser(eq(user.getId()))).thenReturn(user);
 
         List<Patient> lastViewed = GeneralUtils.getLastViewedPatients(user);
@@ -22,6 +22,7 @@ import org.openmrs.module.emrapi.encounter.exception.VisitNotFoundException;
 import org.openmrs.module.emrapi.visit.contract.VisitRequest;
 import org.openmrs.module.emrapi.visit.contract.VisitResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
@@ -34,13 +35,15 @@ public class EmrVisitServiceImplTest {
     private VisitService visitService;
     @Mock
     private VisitResponseMapper visitResponseMapper;
+    @Mock
+    private VisitResponseWriter visitResponseWriter;
 
     private EmrVisitService emrVisitService;
 
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        emrVisitService = new EmrVisitServiceImpl(visitService, visitResponseMapper);
+        emrVisitService = new EmrVisitServiceImpl(visitService, visitResponseMapper, visitResponseWriter);
     }
 
     @Test
@@ -64,4 +67,24 @@ public class EmrVisitServiceImplTest {
 
         emrVisitService.find(visitRequest);
     }
+
+    @Test
+    public void shouldWriteVisitToStream() throws Exception {
+        VisitRequest visitRequest = new VisitRequest(UUID.randomUUID().toString());
+        Visit visit = new Visit();
+        when(visitService.getVisitByUuid(visitRequest.getVisitUuid())).thenReturn(visit);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        emrVisitService.write(visitRequest, outputStream);
+
+        verify(visitResponseWriter).write(visit, outputStream);
+    }
+
+    @Test(expected = VisitNotFoundException.class)
+    public void shouldRaiseExceptionWhenWritingNonExistingVisit() throws Exception {
+        VisitRequest visitRequest = new VisitRequest(UUID.randomUUID().toString());
+        when(visitService.getVisitByUuid(visitRequest.getVisitUuid())).thenReturn(null);
+
+        emrVisitService.write(visitRequest, new ByteArrayOutputStream());
+    }
 }
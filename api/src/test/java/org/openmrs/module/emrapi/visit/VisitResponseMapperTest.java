@@ -20,8 +20,13 @@ import org.mockito.Mock;
 import org.openmrs.Encounter;
 import org.openmrs.Visit;
 import org.openmrs.module.emrapi.encounter.EncounterTransactionMapper;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.module.emrapi.visit.contract.VisitResponse;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 public class VisitResponseMapperTest {
@@ -38,12 +43,16 @@ public class VisitResponseMapperTest {
     @Test
     public void testMapsVisit() throws Exception {
         Visit visit = new Visit();
-        visit.addEncounter(new Encounter());
+        Encounter encounter = new Encounter();
+        visit.addEncounter(encounter);
+        EncounterTransaction encounterTransaction = new EncounterTransaction();
+        when(encounterTransactionMapper.map(new ArrayList<Encounter>(visit.getEncounters()), true)).thenReturn(Arrays.asList(encounterTransaction));
 
         VisitResponse visitResponse = visitResponseMapper.map(visit);
 
         Assert.assertEquals(visit.getUuid(), visitResponse.getVisitUuid());
         Assert.assertEquals(visit.getEncounters().size(), visitResponse.getEncounters().size());
+        Assert.assertSame(encounterTransaction, visitResponse.getEncounters().get(0));
     }
 
     @Test
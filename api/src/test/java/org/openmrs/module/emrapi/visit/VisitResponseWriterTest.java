@@ -0,0 +1,93 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.visit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.Encounter;
+import org.openmrs.Visit;
+import org.openmrs.module.emrapi.db.EmrEncounterDAO;
+import org.openmrs.module.emrapi.encounter.EncounterTransactionMapper;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class VisitResponseWriterTest {
+    @Mock
+    private EncounterTransactionMapper encounterTransactionMapper;
+    @Mock
+    private EmrEncounterDAO emrEncounterDAO;
+
+    private VisitResponseWriter visitResponseWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        visitResponseWriter = new VisitResponseWriter(encounterTransactionMapper, emrEncounterDAO);
+        visitResponseWriter.setChunkSize(2);
+    }
+
+    @Test
+    public void shouldWriteEncountersInChunksAndEvictEachChunk() throws Exception {
+        Visit visit = new Visit();
+        when(emrEncounterDAO.getEncounterIdsByVisit(visit)).thenReturn(Arrays.asList(1, 2, 3));
+        List<Encounter> firstChunk = Arrays.asList(new Encounter(1), new Encounter(2));
+        List<Encounter> secondChunk = Arrays.asList(new Encounter(3));
+        when(emrEncounterDAO.getEncountersByIds(Arrays.asList(1, 2))).thenReturn(firstChunk);
+        when(emrEncounterDAO.getEncountersByIds(Arrays.asList(3))).thenReturn(secondChunk);
+        when(encounterTransactionMapper.map(firstChunk, true)).thenReturn(Arrays.asList(
+                new EncounterTransaction(visit.getUuid(), "encounter-1"), new EncounterTransaction(visit.getUuid(), "encounter-2")));
+        when(encounterTransactionMapper.map(secondChunk, true)).thenReturn(Arrays.asList(
+                new EncounterTransaction(visit.getUuid(), "encounter-3")));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        visitResponseWriter.write(visit, outputStream);
+
+        Map<String, Object> response = new ObjectMapper().readValue(outputStream.toByteArray(), Map.class);
+        assertEquals(visit.getUuid(), response.get("visitUuid"));
+        List<String> encounterUuids = new ArrayList<String>();
+        for (Map<String, Object> encounter : (List<Map<String, Object>>) response.get("encounters")) {
+            encounterUuids.add((String) encounter.get("encounterUuid"));
+        }
+        assertEquals(Arrays.asList("encounter-1", "encounter-2", "encounter-3"), encounterUuids);
+        verify(emrEncounterDAO).evict(firstChunk);
+        verify(emrEncounterDAO).evict(secondChunk);
+    }
+
+    @Test
+    public void shouldWriteEmptyEncounterListForVisitWithoutEncounters() throws Exception {
+        Visit visit = new Visit();
+        when(emrEncounterDAO.getEncounterIdsByVisit(visit)).thenReturn(Collections.<Integer>emptyList());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        visitResponseWriter.write(visit, outputStream);
+
+        assertEquals("{\"visitUuid\":\"" + visit.getUuid() + "\",\"encounters\":[]}", outputStream.toString("UTF-8"));
+        verify(emrEncounterDAO, never()).evict(anyCollection());
+    }
+}
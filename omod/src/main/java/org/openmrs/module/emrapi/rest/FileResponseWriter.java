@@ -0,0 +1,207 @@
+package org.openmrs.module.emrapi.rest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes a file to the response with an ETag and a Last-Modified date, answers conditional requests with 304 Not
+ * Modified, and serves a single byte range when one is asked for.
+ * <p/>
+ * On Tomcat connectors that support sendfile the file is handed to the connector, which sends it without copying it
+ * through the JVM. Otherwise it is transferred from a {@link FileChannel} to the response.
+ */
+public class FileResponseWriter {
+
+    public static final String DEFAULT_CACHE_CONTROL = "private, no-cache";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final String cacheControl;
+
+    public FileResponseWriter() {
+        this(DEFAULT_CACHE_CONTROL);
+    }
+
+    /**
+     * @param cacheControl the Cache-Control header to send, patient data should never be cached by shared caches
+     */
+    public FileResponseWriter(String cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    /**
+     * @param file must exist
+     * @param contentType
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    public void write(File file, String contentType, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long length = file.length();
+        // HTTP dates have a resolution of seconds
+        long lastModified = file.lastModified() / 1000 * 1000;
+        String eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader("ETag", eTag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Cache-Control", cacheControl);
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if (isNotModified(request, eTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        if (range != null && isRangeValid(request, eTag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType(contentType);
+        response.setHeader("Content-Length", String.valueOf(count));
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end + 1 - position, out);
+                if (transferred <= 0) {
+                    // the file got shorter since its length was read
+                    break;
+                }
+                position += transferred;
+            }
+        }
+        finally {
+            in.close();
+        }
+        response.flushBuffer();
+    }
+
+    private boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is sent
+            return matches(ifNoneMatch, eTag);
+        }
+        long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * A range is only served if the client's copy, named by If-Range, is still the current one
+     */
+    private boolean isRangeValid(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"")) {
+            return ifRange.trim().equals(eTag);
+        }
+        return getDateHeader(request, "If-Range") == lastModified;
+    }
+
+    private boolean matches(String ifNoneMatch, String eTag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                // weak comparison is fine for a conditional GET
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        }
+        catch (IllegalArgumentException e) {
+            // not a date
+            return -1;
+        }
+    }
+
+    /**
+     * @return the first and last byte, an empty array to send the whole file, or null if the range can't be satisfied
+     */
+    static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            // other units, and several ranges, which would need a multipart response
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.length() == 0) {
+                // the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return null;
+                }
+                return new long[] { Math.max(0, length - suffix), length - 1 };
+            }
+            long start = Long.parseLong(first);
+            if (last.length() == 0) {
+                return start < length ? new long[] { start, length - 1 } : null;
+            }
+            long end = Long.parseLong(last);
+            if (end < start) {
+                return new long[0];
+            }
+            if (start >= length) {
+                return null;
+            }
+            return new long[] { start, Math.min(end, length - 1) };
+        }
+        catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
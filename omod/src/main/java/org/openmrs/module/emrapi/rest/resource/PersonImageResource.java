@@ -5,6 +5,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.emrapi.person.image.EmrPersonImageService;
 import org.openmrs.module.emrapi.person.image.PersonImage;
 import org.openmrs.module.emrapi.rest.EmrModuleContext;
+import org.openmrs.module.emrapi.rest.FileResponseWriter;
 import org.openmrs.module.emrapi.rest.exception.PersonNotFoundException;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
@@ -13,21 +14,21 @@ import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
 import org.openmrs.module.webservices.rest.web.response.GenericRestException;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
-import org.openmrs.util.OpenmrsUtil;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 
 @Resource(name = RestConstants.VERSION_1 + "/personimage", supportedClass = PersonImage.class, supportedOpenmrsVersions = "1.9.*")
 public class PersonImageResource extends DelegatingCrudResource<PersonImage> {
 
+    private final FileResponseWriter fileResponseWriter = new FileResponseWriter();
+
     @Override
     public List<Representation> getAvailableRepresentations() {
         return Arrays.asList(Representation.DEFAULT, Representation.FULL);
@@ -58,24 +59,44 @@ public class PersonImageResource extends DelegatingCrudResource<PersonImage> {
 
     @Override
     public PersonImage getByUniqueId(String personUuid) {
+        return getPersonImage(personUuid, null);
+    }
+
+    private PersonImage getPersonImage(String personUuid, Integer size) {
         Person person = Context.getPersonService().getPersonByUuid(personUuid);
         if (person == null) {
             throw new PersonNotFoundException(String.format("Person with UUID:%s not found.", personUuid));
         }
-        return Context.getService(EmrPersonImageService.class).getCurrentPersonImage(person);
+        return Context.getService(EmrPersonImageService.class).getCurrentPersonImage(person, size);
+    }
+
+    /**
+     * @return the size parameter, the largest width or height of the thumbnail wanted, or null for the full-size image
+     */
+    private Integer getSize(RequestContext context) {
+        String size = context.getRequest() == null ? null : context.getRequest().getParameter("size");
+        if (size == null || size.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(size.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalRequestException("size must be a number of pixels: " + size);
+        }
     }
 
     @Override
     public Object retrieve(String uuid, RequestContext context) throws ResponseException {
-        PersonImage personImage = getByUniqueId(uuid);
-        InputStream inputStream;
+        PersonImage personImage = getPersonImage(uuid, getSize(context));
+        File savedImage = personImage.getSavedImage();
+        if (savedImage == null || !savedImage.isFile()) {
+            throw new ObjectNotFoundException();
+        }
 
         try {
-            inputStream = new FileInputStream(personImage.getSavedImage());
-            OpenmrsUtil.copyFile(inputStream, context.getResponse().getOutputStream());
-            context.getResponse().flushBuffer();
+            fileResponseWriter.write(savedImage, "image/jpeg", context.getRequest(), context.getResponse());
         } catch (IOException e) {
-            throw new GenericRestException("Failure when loading the file for uuid: " + uuid, e.getCause());
+            throw new GenericRestException("Failure when loading the file for uuid: " + uuid, e);
         }
 
         return null;
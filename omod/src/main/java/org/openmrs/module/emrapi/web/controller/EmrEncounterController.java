@@ -17,6 +17,7 @@ package org.openmrs.module.emrapi.web.controller;
 import org.apache.commons.lang.StringUtils;
 import org.openmrs.module.emrapi.encounter.EmrEncounterService;
 import org.openmrs.module.emrapi.encounter.EncounterSearchParameters;
+import org.openmrs.module.emrapi.encounter.EncounterTransactionProjection;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.module.emrapi.web.exception.InvalidInputException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
@@ -48,15 +49,15 @@ public class EmrEncounterController extends BaseRestController {
     @RequestMapping(method = RequestMethod.GET, value = "/active")
     @ResponseBody
     public EncounterTransaction getActiveEncounter(@RequestParam String patientUuid, String encounterTypeUuid,
-                                                   String visitTypeUuid, Boolean includeAll) {
-        return emrEncounterService.getActiveEncounter(patientUuid, encounterTypeUuid, visitTypeUuid, includeAll);
+                                                   String visitTypeUuid, Boolean includeAll, String fields) {
+        return emrEncounterService.getActiveEncounter(patientUuid, encounterTypeUuid, visitTypeUuid, includeAll, getProjection(fields));
     }
 
     @RequestMapping(method = RequestMethod.GET)
     @ResponseBody
     public List<EncounterTransaction> find(EncounterSearchParameters encounterSearchParameters) {
         checkForValidInput(encounterSearchParameters);
-        return emrEncounterService.find(encounterSearchParameters);
+        return emrEncounterService.find(encounterSearchParameters, getProjection(encounterSearchParameters.getFields()));
     }
 
     private void checkForValidInput(EncounterSearchParameters encounterSearchParameters) {
@@ -73,6 +74,14 @@ public class EmrEncounterController extends BaseRestController {
             throw new InvalidInputException("Date format needs to be 'yyyy-MM-dd'. Incorrect Date:" + encounterDate + ".", e);
         }
     }
+
+    private EncounterTransactionProjection getProjection(String fields) {
+        try {
+            return EncounterTransactionProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException(e.getMessage(), e);
+        }
+    }
 }
 
 
@@ -0,0 +1,46 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.web.controller;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.emrapi.visit.EmrVisitService;
+import org.openmrs.module.emrapi.visit.contract.VisitRequest;
+import org.openmrs.module.emrapi.web.exception.InvalidInputException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@Controller
+@RequestMapping(value = "/rest/emrapi/visit")
+public class EmrVisitController extends BaseRestController {
+
+    @Autowired
+    private EmrVisitService emrVisitService;
+
+    @RequestMapping(method = RequestMethod.GET)
+    public void find(@RequestParam(required = false) String visitUuid, HttpServletResponse response) throws IOException {
+        if (StringUtils.isBlank(visitUuid))
+            throw new InvalidInputException("Visit UUID cannot be empty.");
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        emrVisitService.write(new VisitRequest(visitUuid), response.getOutputStream());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.web.controller;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Patient;
+import org.openmrs.api.PatientService;
+import org.openmrs.module.emrapi.merge.PatientMergeJob;
+import org.openmrs.module.emrapi.merge.PatientMergeJobService;
+import org.openmrs.module.emrapi.web.exception.InvalidInputException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Controller
+@RequestMapping(value = "/rest/emrapi/mergeJob")
+public class PatientMergeJobController extends BaseRestController {
+
+    @Autowired
+    private PatientMergeJobService patientMergeJobService;
+
+    @Autowired
+    private PatientService patientService;
+
+    @RequestMapping(method = RequestMethod.POST)
+    @ResponseBody
+    public Map<String, Object> submit(@RequestParam(required = false) String preferred,
+                                      @RequestParam(required = false) String notPreferred) {
+        try {
+            return toResponse(patientMergeJobService.submitMerge(getPatient(preferred), getPatient(notPreferred)));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException(e.getMessage(), e);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/{uuid}")
+    @ResponseBody
+    public Map<String, Object> get(@PathVariable("uuid") String uuid) {
+        return toResponse(getJob(uuid));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/{uuid}/resume")
+    @ResponseBody
+    public Map<String, Object> resume(@PathVariable("uuid") String uuid) {
+        try {
+            return toResponse(patientMergeJobService.resumeMergeJob(getJob(uuid)));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException(e.getMessage(), e);
+        }
+    }
+
+    private PatientMergeJob getJob(String uuid) {
+        PatientMergeJob job = patientMergeJobService.getMergeJobByUuid(uuid);
+        if (job == null)
+            throw new InvalidInputException("No patient merge job with UUID " + uuid + ".");
+        return job;
+    }
+
+    private Patient getPatient(String uuid) {
+        if (StringUtils.isBlank(uuid))
+            throw new InvalidInputException("Patient UUID cannot be empty.");
+        Patient patient = patientService.getPatientByUuid(uuid);
+        if (patient == null)
+            throw new InvalidInputException("No patient with UUID " + uuid + ".");
+        return patient;
+    }
+
+    private Map<String, Object> toResponse(PatientMergeJob job) {
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("uuid", job.getUuid());
+        response.put("preferred", job.getPreferred().getUuid());
+        response.put("notPreferred", job.getNotPreferred().getUuid());
+        response.put("status", job.getStatus().name());
+        response.put("visitMergesPlanned", job.getVisitMergesPlanned());
+        response.put("visitsMerged", job.getVisitsMerged());
+        response.put("encountersMoved", job.getEncountersMoved());
+        response.put("errorMessage", job.getErrorMessage());
+        response.put("dateCreated", job.getDateCreated());
+        response.put("dateStarted", job.getDateStarted());
+        response.put("dateCompleted", job.getDateCompleted());
+        return response;
+    }
+}
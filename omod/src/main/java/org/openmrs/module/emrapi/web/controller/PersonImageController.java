@@ -0,0 +1,84 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.web.controller;
+
+import org.openmrs.Person;
+import org.openmrs.api.PersonService;
+import org.openmrs.module.emrapi.person.image.EmrPersonImageService;
+import org.openmrs.module.emrapi.person.image.PersonImage;
+import org.openmrs.module.emrapi.web.exception.InvalidInputException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Uploads person images without base64, either as the body of the request (e.g. with a Content-Type of image/jpeg) or
+ * as the <code>file</code> part of a multipart form
+ */
+@Controller
+@RequestMapping(value = "/rest/emrapi/personimage")
+public class PersonImageController extends BaseRestController {
+
+    @Autowired
+    private EmrPersonImageService emrPersonImageService;
+
+    @Autowired
+    private PersonService personService;
+
+    @RequestMapping(method = RequestMethod.POST, value = "/{personUuid}")
+    @ResponseBody
+    public Map<String, Object> upload(@PathVariable("personUuid") String personUuid, HttpServletRequest request)
+            throws IOException {
+        Person person = personService.getPersonByUuid(personUuid);
+        if (person == null)
+            throw new InvalidInputException("No person with UUID " + personUuid + ".");
+
+        InputStream imageData = getImageData(request);
+        PersonImage personImage;
+        try {
+            personImage = emrPersonImageService.savePersonImage(person, imageData);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException(e.getMessage(), e);
+        } finally {
+            imageData.close();
+        }
+
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("person", person.getUuid());
+        response.put("size", personImage.getSavedImage().length());
+        return response;
+    }
+
+    private InputStream getImageData(HttpServletRequest request) throws IOException {
+        if (request instanceof MultipartHttpServletRequest) {
+            MultipartFile file = ((MultipartHttpServletRequest) request).getFile("file");
+            if (file == null)
+                throw new InvalidInputException("The image must be sent as the file part.");
+            return file.getInputStream();
+        }
+        return request.getInputStream();
+    }
+}
@@ -0,0 +1,99 @@
+package org.openmrs.module.emrapi.rest;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class FileResponseWriterTest {
+
+    private FileResponseWriter writer = new FileResponseWriter();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("personImage", ".jpeg");
+        FileUtils.writeStringToFile(file, "0123456789");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void shouldSendTheFileWithValidators() throws Exception {
+        MockHttpServletResponse response = write(new MockHttpServletRequest());
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+        assertEquals("10", response.getHeader("Content-Length"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertNotNull(response.getHeader("ETag"));
+        assertNotNull(response.getHeader("Last-Modified"));
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedWhenTheClientHasTheCurrentFile() throws Exception {
+        String eTag = (String) write(new MockHttpServletRequest()).getHeader("ETag");
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", eTag);
+        MockHttpServletResponse response = write(request);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-Modified-Since", file.lastModified());
+        assertEquals(304, write(request).getStatus());
+
+        request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"something-else\"");
+        assertEquals(200, write(request).getStatus());
+    }
+
+    @Test
+    public void shouldSendTheRequestedRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = write(request);
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+
+        request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=-3");
+        assertEquals("789", write(request).getContentAsString());
+
+        request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=10-");
+        response = write(request);
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    public void shouldSendTheWholeFileIfTheRangeIsForAnOlderVersion() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", "\"older\"");
+        MockHttpServletResponse response = write(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    private MockHttpServletResponse write(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(file, "image/jpeg", request, response);
+        return response;
+    }
+}
@@ -0,0 +1,95 @@
+package org.openmrs.module.emrapi.rest.resource;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Person;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.person.image.EmrPersonImageService;
+import org.openmrs.module.emrapi.person.image.PersonImage;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.imageio.ImageIO;
+import javax.xml.bind.DatatypeConverter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class PersonImageResourceTest extends BaseModuleWebContextSensitiveTest {
+
+    private PersonImageResource resource;
+
+    private File directory;
+
+    private Person person;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("person_images", "");
+        directory.delete();
+        directory.mkdirs();
+        Context.getAdministrationService().saveGlobalProperty(
+                new GlobalProperty(EmrApiConstants.GP_PERSON_IMAGES_DIRECTORY, directory.getAbsolutePath()));
+        Context.getAdministrationService().saveGlobalProperty(
+                new GlobalProperty(EmrApiConstants.GP_PERSON_IMAGE_THUMBNAIL_SIZES, "64,200"));
+
+        resource = (PersonImageResource) Context.getService(RestService.class).getResourceBySupportedClass(PersonImage.class);
+        person = Context.getPersonService().getPerson(7);
+
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB), "jpeg", image);
+        PersonImage personImage = new PersonImage();
+        personImage.setPerson(person);
+        personImage.setBase64EncodedImage(DatatypeConverter.printBase64Binary(image.toByteArray()));
+        Context.getService(EmrPersonImageService.class).savePersonImage(personImage);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldSendTheThumbnailOfTheRequestedSize() throws Exception {
+        assertEquals(200, retrieve("100").getWidth());
+        assertEquals(64, retrieve("64").getWidth());
+    }
+
+    @Test
+    public void shouldSendTheFullSizeImageWithoutASize() throws Exception {
+        assertEquals(600, retrieve(null).getWidth());
+        assertEquals(600, retrieve("1000").getWidth());
+    }
+
+    @Test(expected = IllegalRequestException.class)
+    public void shouldRefuseASizeThatIsNotANumber() throws Exception {
+        retrieve("large");
+    }
+
+    private BufferedImage retrieve(String size) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (size != null) {
+            request.addParameter("size", size);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContext context = new RequestContext();
+        context.setRequest(request);
+        context.setResponse(response);
+
+        resource.retrieve(person.getUuid(), context);
+
+        assertEquals(200, response.getStatus());
+        return ImageIO.read(new ByteArrayInputStream(response.getContentAsByteArray()));
+    }
+}
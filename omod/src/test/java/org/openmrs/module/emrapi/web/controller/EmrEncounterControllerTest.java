@@ -15,17 +15,22 @@ package org.openmrs.module.emrapi.web.controller;
 
 import org.codehaus.jackson.type.TypeReference;
 import org.joda.time.DateTime;
+import org.junit.After;
 import org.junit.Test;
 import org.openmrs.ConceptDatatype;
 import org.openmrs.DrugOrder;
 import org.openmrs.Encounter;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Obs;
 import org.openmrs.Order;
 import org.openmrs.TestOrder;
 import org.openmrs.Visit;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.VisitService;
+import org.openmrs.module.emrapi.EmrApiConstants;
 import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
 import org.openmrs.module.emrapi.encounter.exception.EncounterMatcherNotFoundException;
+import org.openmrs.module.emrapi.web.exception.InvalidInputException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mock.web.MockHttpServletResponse;
 
@@ -41,14 +46,31 @@ import java.util.Set;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @org.springframework.test.context.ContextConfiguration(locations = {"classpath:moduleApplicationContext.xml"}, inheritLocations = true)
 public class EmrEncounterControllerTest extends BaseEmrControllerTest {
 
+    private static final String CANCER_DIAGNOSIS_UUID = "d102c80f-1yz9-4da3-bb88-8122ce8868dh";
+
+    private static final String MALARIA_DIAGNOSIS_UUID = "604dcce9-bcd9-48a8-b2f5-112743cf1db8";
+
     @Autowired
     private VisitService visitService;
 
+    @Autowired
+    private AdministrationService administrationService;
+
+    @After
+    public void resetEncounterMatcher() {
+        // the matcher is cached by the service, so make sure it does not leak into the other tests
+        GlobalProperty encounterMatcher = administrationService.getGlobalPropertyObject(EmrApiConstants.GP_ENCOUNTER_MATCHER);
+        if (encounterMatcher != null) {
+            administrationService.purgeGlobalProperty(encounterMatcher);
+        }
+    }
+
     @Test
     public void shouldCreateVisitWhenNoVisitsAreActive() throws Exception {
         executeDataSet("shouldCreateVisitWhenNoVisitsAreActive.xml");
@@ -91,6 +113,7 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
     @Test
     public void shouldUpdateMatchingEncounterWhenCustomMatchingStrategyIsProvided() throws Exception {
         executeDataSet("shouldUpdateMatchingEncounterWhenCustomMatchingStrategyIsProvided.xml");
+        notifyEncounterMatcherChanged();
 
         String json = "{ \"patientUuid\" : \"a76e8d23-0c38-408c-b2a8-ea5540f01b51\", " +
                 "\"visitTypeUuid\" : \"b45ca846-c79a-11e2-b0c0-8e397087571c\", " +
@@ -104,6 +127,7 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
     @Test(expected = EncounterMatcherNotFoundException.class)
     public void shouldReturnErrorWhenInvalidMatchingStrategyIsProvided() throws Exception {
         executeDataSet("shouldReturnErrorWhenInvalidMatchingStrategyIsProvided.xml");
+        notifyEncounterMatcherChanged();
 
         String json = "{ \"patientUuid\" : \"a76e8d23-0c38-408c-b2a8-ea5540f01b51\", " +
                 "\"visitTypeUuid\" : \"b45ca846-c79a-11e2-b0c0-8e397087571c\", " +
@@ -219,6 +243,57 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
 
     @Test
     public void shouldGetEncounterTransactionByDate() throws Exception {
+        String visitUuid = saveEncountersOnTwoDays();
+
+        List<EncounterTransaction> encounterTransactions = deserialize(handle(newGetRequest("/rest/emrapi/encounter", new Parameter[]{new Parameter("visitUuid", visitUuid), new Parameter("encounterDate", "2005-01-01")})), new TypeReference<List<EncounterTransaction>>() {});
+
+
+        assertEquals(1, encounterTransactions.size());
+        EncounterTransaction fetchedEncounterTransaction = encounterTransactions.get(0);
+        assertEquals(visitUuid, fetchedEncounterTransaction.getVisitUuid());
+        assertEquals("a76e8d23-0c38-408c-b2a8-ea5540f01b51", fetchedEncounterTransaction.getPatientUuid());
+        assertEquals("b45ca846-c79a-11e2-b0c0-8e397087571c", fetchedEncounterTransaction.getVisitTypeUuid());
+        assertEquals("2b377dba-62c3-4e53-91ef-b51c68899891", fetchedEncounterTransaction.getEncounterTypeUuid());
+        assertEquals("2005-01-01", new SimpleDateFormat("yyyy-MM-dd").format(fetchedEncounterTransaction.getEncounterDateTime()));
+        //Assert Observations
+        assertEquals(1, fetchedEncounterTransaction.getObservations().size());
+        assertEquals("4f3c2244-9d6a-439e-b88a-6e8873489ea7", fetchedEncounterTransaction.getObservations().get(0).getConcept().getUuid());
+        assertEquals(1, fetchedEncounterTransaction.getObservations().get(0).getGroupMembers().size());
+        assertEquals("82e5f23e-e0b3-4e53-b6bb-c09c1c7fb8b0", fetchedEncounterTransaction.getObservations().get(0).getGroupMembers().get(0).getConcept().getUuid());
+        assertEquals(20.0, fetchedEncounterTransaction.getObservations().get(0).getGroupMembers().get(0).getValue());
+        //Assert Diagnosis data
+        assertEquals(2, fetchedEncounterTransaction.getDiagnoses().size());
+        EncounterTransaction.Diagnosis cancerDiagnosis = getDiagnosisByUuid(fetchedEncounterTransaction.getDiagnoses(), CANCER_DIAGNOSIS_UUID);
+        assertNotNull(cancerDiagnosis);
+        assertEquals("PRIMARY", cancerDiagnosis.getOrder());
+        assertEquals("CONFIRMED", cancerDiagnosis.getCertainty());
+        assertEquals(CANCER_DIAGNOSIS_UUID, cancerDiagnosis.getCodedAnswer().getUuid());
+        assertNotNull(getDiagnosisByUuid(fetchedEncounterTransaction.getDiagnoses(), MALARIA_DIAGNOSIS_UUID));
+        //Assert Disposition data
+        EncounterTransaction.Disposition fetchedDisposition = fetchedEncounterTransaction.getDisposition();
+        assertEquals("ADMIT", fetchedDisposition.getCode());
+        assertNotNull(fetchedDisposition.getExistingObs());
+        assertEquals(1, fetchedDisposition.getAdditionalObs().size());
+        assertEquals("Admit him to ICU.", fetchedDisposition.getAdditionalObs().get(0).getValue());
+        assertEquals("Disposition Note", fetchedDisposition.getAdditionalObs().get(0).getConcept().getName());
+    }
+
+    @Test
+    public void shouldGetOnlyTheRequestedFieldsOfTheEncounterTransactions() throws Exception {
+        String visitUuid = saveEncountersOnTwoDays();
+
+        List<EncounterTransaction> encounterTransactions = deserialize(handle(newGetRequest("/rest/emrapi/encounter", new Parameter[]{new Parameter("visitUuid", visitUuid), new Parameter("encounterDate", "2005-01-01"), new Parameter("fields", "diagnoses")})), new TypeReference<List<EncounterTransaction>>() {});
+
+        assertEquals(1, encounterTransactions.size());
+        EncounterTransaction fetchedEncounterTransaction = encounterTransactions.get(0);
+        assertEquals(visitUuid, fetchedEncounterTransaction.getVisitUuid());
+        assertEquals(2, fetchedEncounterTransaction.getDiagnoses().size());
+        assertNotNull(getDiagnosisByUuid(fetchedEncounterTransaction.getDiagnoses(), CANCER_DIAGNOSIS_UUID));
+        assertEquals(0, fetchedEncounterTransaction.getObservations().size());
+        assertNull(fetchedEncounterTransaction.getDisposition());
+    }
+
+    private String saveEncountersOnTwoDays() throws Exception {
         executeDataSet("baseMetaData.xml");
         executeDataSet("dispositionMetaData.xml");
         executeDataSet("diagnosisMetaData.xml");
@@ -230,8 +305,6 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
                     "\"encounterDateTime\" : \"2004-01-01T10:00:00.000+0000\" " +
                 "}";
         EncounterTransaction encounter1Response = deserialize(handle(newPostRequest("/rest/emrapi/encounter", encounter1PostData)), EncounterTransaction.class);
-        String cancerDiagnosisUuid = "d102c80f-1yz9-4da3-bb88-8122ce8868dh";
-        String malariaDiagnosisUuid = "604dcce9-bcd9-48a8-b2f5-112743cf1db8";
         String visitUuid = encounter1Response.getVisitUuid();
         String encounter2PostData = "{" +
                 "\"patientUuid\" : \"a76e8d23-0c38-408c-b2a8-ea5540f01b51\", " +
@@ -246,8 +319,8 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
                     "}" +
                 "]," +
                 "\"diagnoses\":[" +
-                    "{\"order\":\"PRIMARY\", \"certainty\": \"CONFIRMED\", \"codedAnswer\": { \"uuid\": \"" + cancerDiagnosisUuid + "\"} }," +
-                    "{\"order\":\"PRIMARY\", \"certainty\": \"CONFIRMED\", \"codedAnswer\": { \"uuid\": \"" + malariaDiagnosisUuid + "\"} }" +
+                    "{\"order\":\"PRIMARY\", \"certainty\": \"CONFIRMED\", \"codedAnswer\": { \"uuid\": \"" + CANCER_DIAGNOSIS_UUID + "\"} }," +
+                    "{\"order\":\"PRIMARY\", \"certainty\": \"CONFIRMED\", \"codedAnswer\": { \"uuid\": \"" + MALARIA_DIAGNOSIS_UUID + "\"} }" +
                 "], " +
                 "\"disposition\": {" +
                 "    \"code\": \"ADMIT\"," +
@@ -265,38 +338,7 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
         EncounterTransaction encounter2Response = deserialize(handle(newPostRequest("/rest/emrapi/encounter", encounter2PostData)), EncounterTransaction.class);
         assertEquals(encounter1Response.getVisitUuid(), encounter2Response.getVisitUuid());
         assertNotEquals(encounter1Response.getEncounterUuid(), encounter2Response.getEncounterUuid());
-
-        List<EncounterTransaction> encounterTransactions = deserialize(handle(newGetRequest("/rest/emrapi/encounter", new Parameter[]{new Parameter("visitUuid", visitUuid), new Parameter("encounterDate", "2005-01-01")})), new TypeReference<List<EncounterTransaction>>() {});
-
-
-        assertEquals(1, encounterTransactions.size());
-        EncounterTransaction fetchedEncounterTransaction = encounterTransactions.get(0);
-        assertEquals(visitUuid, fetchedEncounterTransaction.getVisitUuid());
-        assertEquals("a76e8d23-0c38-408c-b2a8-ea5540f01b51", fetchedEncounterTransaction.getPatientUuid());
-        assertEquals("b45ca846-c79a-11e2-b0c0-8e397087571c", fetchedEncounterTransaction.getVisitTypeUuid());
-        assertEquals("2b377dba-62c3-4e53-91ef-b51c68899891", fetchedEncounterTransaction.getEncounterTypeUuid());
-        assertEquals("2005-01-01", new SimpleDateFormat("yyyy-MM-dd").format(fetchedEncounterTransaction.getEncounterDateTime()));
-        //Assert Observations
-        assertEquals(1, fetchedEncounterTransaction.getObservations().size());
-        assertEquals("4f3c2244-9d6a-439e-b88a-6e8873489ea7", fetchedEncounterTransaction.getObservations().get(0).getConcept().getUuid());
-        assertEquals(1, fetchedEncounterTransaction.getObservations().get(0).getGroupMembers().size());
-        assertEquals("82e5f23e-e0b3-4e53-b6bb-c09c1c7fb8b0", fetchedEncounterTransaction.getObservations().get(0).getGroupMembers().get(0).getConcept().getUuid());
-        assertEquals(20.0, fetchedEncounterTransaction.getObservations().get(0).getGroupMembers().get(0).getValue());
-        //Assert Diagnosis data
-        assertEquals(2, fetchedEncounterTransaction.getDiagnoses().size());
-        EncounterTransaction.Diagnosis cancerDiagnosis = getDiagnosisByUuid(fetchedEncounterTransaction.getDiagnoses(), cancerDiagnosisUuid);
-        assertNotNull(cancerDiagnosis);
-        assertEquals("PRIMARY", cancerDiagnosis.getOrder());
-        assertEquals("CONFIRMED", cancerDiagnosis.getCertainty());
-        assertEquals(cancerDiagnosisUuid, cancerDiagnosis.getCodedAnswer().getUuid());
-        assertNotNull(getDiagnosisByUuid(fetchedEncounterTransaction.getDiagnoses(), malariaDiagnosisUuid));
-        //Assert Disposition data
-        EncounterTransaction.Disposition fetchedDisposition = fetchedEncounterTransaction.getDisposition();
-        assertEquals("ADMIT", fetchedDisposition.getCode());
-        assertNotNull(fetchedDisposition.getExistingObs());
-        assertEquals(1, fetchedDisposition.getAdditionalObs().size());
-        assertEquals("Admit him to ICU.", fetchedDisposition.getAdditionalObs().get(0).getValue());
-        assertEquals("Disposition Note", fetchedDisposition.getAdditionalObs().get(0).getConcept().getName());
+        return visitUuid;
     }
 
     private EncounterTransaction.Diagnosis getDiagnosisByUuid(List<EncounterTransaction.Diagnosis> diagnoses, String diagnosisUuid) {
@@ -434,6 +476,12 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
 
     }
 
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenUnknownFieldsAreRequested() throws Exception {
+        handle(newGetRequest("/rest/emrapi/encounter", new Parameter[]{new Parameter("visitUuid", "1e5d5d48-6b78-11e0-93c3-18a905e044dc"),
+                new Parameter("encounterDate", "2005-01-01"), new Parameter("fields", "diagnoses,vitals")}));
+    }
+
     private <T> List<T> getOrdersOfType(List<Order> orders, Class<T> clazz) {
         List<T> matchingOrders = new ArrayList<T>();
         for (Order order : orders) {
@@ -443,4 +491,9 @@ public class EmrEncounterControllerTest extends BaseEmrControllerTest {
         }
         return matchingOrders;
     }
+
+    private void notifyEncounterMatcherChanged() {
+        // global properties loaded from a dataset bypass the service, so listeners have to be told explicitly
+        administrationService.saveGlobalProperty(administrationService.getGlobalPropertyObject(EmrApiConstants.GP_ENCOUNTER_MATCHER));
+    }
 }
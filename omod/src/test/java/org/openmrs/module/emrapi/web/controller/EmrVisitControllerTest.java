@@ -0,0 +1,87 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.web.controller;
+
+import org.codehaus.jackson.type.TypeReference;
+import org.junit.Test;
+import org.openmrs.Visit;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.VisitService;
+import org.openmrs.module.emrapi.encounter.domain.EncounterTransaction;
+import org.openmrs.module.emrapi.encounter.exception.VisitNotFoundException;
+import org.openmrs.module.emrapi.web.exception.InvalidInputException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@org.springframework.test.context.ContextConfiguration(locations = {"classpath:moduleApplicationContext.xml"}, inheritLocations = true)
+public class EmrVisitControllerTest extends BaseEmrControllerTest {
+
+    @Autowired
+    private VisitService visitService;
+
+    @Autowired
+    private PatientService patientService;
+
+    @Test
+    public void shouldWriteTheEncountersOfTheVisit() throws Exception {
+        executeDataSet("shouldCreateVisitWhenNoVisitsAreActive.xml");
+        String json = "{ \"patientUuid\" : \"a76e8d23-0c38-408c-b2a8-ea5540f01b51\", \"visitTypeUuid\" : \"b45ca846-c79a-11e2-b0c0-8e397087571c\"," +
+                "\"encounterTypeUuid\": \"2b377dba-62c3-4e53-91ef-b51c68899890\" }";
+        EncounterTransaction saved = deserialize(handle(newPostRequest("/rest/emrapi/encounter", json)), EncounterTransaction.class);
+
+        MockHttpServletResponse response = handle(newGetRequest("/rest/emrapi/visit", new Parameter("visitUuid", saved.getVisitUuid())));
+
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getContentType().startsWith("application/json"));
+        Map<String, Object> visit = deserialize(response, new TypeReference<Map<String, Object>>() {});
+        assertEquals(saved.getVisitUuid(), visit.get("visitUuid"));
+        List<Map<String, Object>> encounters = (List<Map<String, Object>>) visit.get("encounters");
+        assertEquals(1, encounters.size());
+        assertEquals(saved.getEncounterUuid(), encounters.get(0).get("encounterUuid"));
+        assertEquals("a76e8d23-0c38-408c-b2a8-ea5540f01b51", encounters.get(0).get("patientUuid"));
+    }
+
+    @Test
+    public void shouldWriteAnEmptyListOfEncountersForAVisitWithoutEncounters() throws Exception {
+        Visit visit = visitService.saveVisit(new Visit(patientService.getPatient(2), visitService.getVisitType(1), new Date()));
+
+        MockHttpServletResponse response = handle(newGetRequest("/rest/emrapi/visit", new Parameter("visitUuid", visit.getUuid())));
+
+        Map<String, Object> written = deserialize(response, new TypeReference<Map<String, Object>>() {});
+        assertEquals(visit.getUuid(), written.get("visitUuid"));
+        assertTrue(((List<?>) written.get("encounters")).isEmpty());
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenTheVisitUuidIsMissing() throws Exception {
+        handle(newGetRequest("/rest/emrapi/visit"));
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenTheVisitUuidIsBlank() throws Exception {
+        handle(newGetRequest("/rest/emrapi/visit", new Parameter("visitUuid", " ")));
+    }
+
+    @Test(expected = VisitNotFoundException.class)
+    public void shouldReturnErrorWhenTheVisitDoesNotExist() throws Exception {
+        handle(newGetRequest("/rest/emrapi/visit", new Parameter("visitUuid", "no-such-visit")));
+    }
+}
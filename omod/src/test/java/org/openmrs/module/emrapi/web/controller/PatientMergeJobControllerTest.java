@@ -0,0 +1,119 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.web.controller;
+
+import org.codehaus.jackson.type.TypeReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Patient;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.PersonService;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.merge.PatientMergeJob;
+import org.openmrs.module.emrapi.merge.PatientMergeJobService;
+import org.openmrs.module.emrapi.web.exception.InvalidInputException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@org.springframework.test.context.ContextConfiguration(locations = {"classpath:moduleApplicationContext.xml"}, inheritLocations = true)
+public class PatientMergeJobControllerTest extends BaseEmrControllerTest {
+
+    @Autowired
+    private PatientService patientService;
+
+    @Autowired
+    private PersonService personService;
+
+    @Autowired
+    private PatientMergeJobService patientMergeJobService;
+
+    private Patient preferred;
+
+    private Patient notPreferred;
+
+    @Before
+    public void setUp() {
+        PersonAttributeType unknownPatient = new PersonAttributeType();
+        unknownPatient.setName(EmrApiConstants.UNKNOWN_PATIENT_PERSON_ATTRIBUTE_TYPE_NAME);
+        unknownPatient.setFormat("java.lang.String");
+        personService.savePersonAttributeType(unknownPatient);
+        preferred = patientService.getPatient(7);
+        notPreferred = patientService.getPatient(8);
+    }
+
+    @Test
+    public void shouldSubmitAMergeAndReturnTheQueuedJob() throws Exception {
+        Map<String, Object> job = deserialize(handle(newRequest(RequestMethod.POST, "/rest/emrapi/mergeJob",
+                new Parameter("preferred", preferred.getUuid()), new Parameter("notPreferred", notPreferred.getUuid()))),
+                new TypeReference<Map<String, Object>>() {});
+
+        assertEquals(preferred.getUuid(), job.get("preferred"));
+        assertEquals(notPreferred.getUuid(), job.get("notPreferred"));
+        assertEquals("QUEUED", job.get("status"));
+        assertEquals(0, job.get("visitsMerged"));
+
+        Map<String, Object> polled = deserialize(handle(newGetRequest("/rest/emrapi/mergeJob/" + job.get("uuid"))),
+                new TypeReference<Map<String, Object>>() {});
+        assertEquals(job.get("uuid"), polled.get("uuid"));
+        assertEquals("QUEUED", polled.get("status"));
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenAPatientIsMissing() throws Exception {
+        handle(newRequest(RequestMethod.POST, "/rest/emrapi/mergeJob", new Parameter("preferred", preferred.getUuid())));
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenAPatientDoesNotExist() throws Exception {
+        handle(newRequest(RequestMethod.POST, "/rest/emrapi/mergeJob",
+                new Parameter("preferred", preferred.getUuid()), new Parameter("notPreferred", "no-such-patient")));
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenThePatientsAreTheSame() throws Exception {
+        handle(newRequest(RequestMethod.POST, "/rest/emrapi/mergeJob",
+                new Parameter("preferred", preferred.getUuid()), new Parameter("notPreferred", preferred.getUuid())));
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenTheJobDoesNotExist() throws Exception {
+        handle(newGetRequest("/rest/emrapi/mergeJob/no-such-job"));
+    }
+
+    @Test
+    public void shouldResumeAFailedJob() throws Exception {
+        PatientMergeJob job = patientMergeJobService.submitMerge(preferred, notPreferred);
+        patientMergeJobService.failMergeJob(job.getPatientMergeJobId(), "testing");
+
+        Map<String, Object> resumed = deserialize(handle(newRequest(RequestMethod.POST, "/rest/emrapi/mergeJob/" + job.getUuid() + "/resume")),
+                new TypeReference<Map<String, Object>>() {});
+
+        assertEquals(job.getUuid(), resumed.get("uuid"));
+        assertEquals("QUEUED", resumed.get("status"));
+        assertNull(resumed.get("errorMessage"));
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenResumingAJobThatHasNotFailed() throws Exception {
+        PatientMergeJob job = patientMergeJobService.submitMerge(preferred, notPreferred);
+
+        handle(newRequest(RequestMethod.POST, "/rest/emrapi/mergeJob/" + job.getUuid() + "/resume"));
+    }
+}
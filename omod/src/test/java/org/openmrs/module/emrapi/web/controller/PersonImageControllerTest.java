@@ -0,0 +1,101 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.emrapi.web.controller;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.jackson.type.TypeReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Person;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.emrapi.EmrApiConstants;
+import org.openmrs.module.emrapi.person.image.PersonImageDirectory;
+import org.openmrs.module.emrapi.web.exception.InvalidInputException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+@org.springframework.test.context.ContextConfiguration(locations = {"classpath:moduleApplicationContext.xml"}, inheritLocations = true)
+public class PersonImageControllerTest extends BaseEmrControllerTest {
+
+    @Autowired
+    private PersonService personService;
+
+    private File directory;
+
+    private Person person;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("person_images", "");
+        directory.delete();
+        directory.mkdirs();
+        Context.getAdministrationService().saveGlobalProperty(new GlobalProperty(EmrApiConstants.GP_PERSON_IMAGES_DIRECTORY,
+                directory.getAbsolutePath()));
+        person = personService.getPerson(7);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void shouldSaveTheImageSentAsTheBody() throws Exception {
+        byte[] image = png(60, 40);
+
+        MockHttpServletResponse response = handle(newImageRequest(image));
+
+        Map<String, Object> saved = deserialize(response, new TypeReference<Map<String, Object>>() {});
+        assertEquals(person.getUuid(), saved.get("person"));
+        assertEquals(60, ImageIO.read(new PersonImageDirectory(directory).getFile(person.getUuid(), null)).getWidth());
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenTheImageIsTruncated() throws Exception {
+        handle(newImageRequest(Arrays.copyOf(png(60, 40), 40)));
+    }
+
+    @Test(expected = InvalidInputException.class)
+    public void shouldReturnErrorWhenTheBodyIsNotAnImage() throws Exception {
+        handle(newImageRequest("not an image".getBytes("UTF-8")));
+    }
+
+    private MockHttpServletRequest newImageRequest(byte[] image) {
+        MockHttpServletRequest request = new MockHttpServletRequest(RequestMethod.POST.toString(),
+                "/rest/emrapi/personimage/" + person.getUuid());
+        request.addHeader("content-type", "image/png");
+        request.setContent(image);
+        return request;
+    }
+
+    private byte[] png(int width, int height) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}